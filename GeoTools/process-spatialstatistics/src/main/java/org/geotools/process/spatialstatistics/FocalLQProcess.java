@@ -93,6 +93,15 @@ public class FocalLQProcess extends AbstractStatisticsProcess {
             Double searchDistance = (Double) Params.getValue(input,
                     FocalLQProcessFactory.searchDistance,
                     FocalLQProcessFactory.searchDistance.sample);
+
+            Integer numberOfNeighbors = (Integer) Params.getValue(input,
+                    FocalLQProcessFactory.numberOfNeighbors,
+                    FocalLQProcessFactory.numberOfNeighbors.sample);
+
+            Integer parallelism = (Integer) Params.getValue(input,
+                    FocalLQProcessFactory.parallelism,
+                    FocalLQProcessFactory.parallelism.sample);
+
             if (inputFeatures == null || xField == null || yField == null) {
                 throw new NullPointerException("All parameters required");
             }
@@ -108,6 +117,8 @@ public class FocalLQProcess extends AbstractStatisticsProcess {
             SimpleFeatureCollection resultFc = null;
             FocalLQOperation process = new FocalLQOperation();
             process.setDistanceBand(searchDistance);
+            process.setNumberOfNeighbors(numberOfNeighbors);
+            process.setParallelism(parallelism);
             resultFc = process.execute(inputFeatures, xField, yField);
             // end process
 
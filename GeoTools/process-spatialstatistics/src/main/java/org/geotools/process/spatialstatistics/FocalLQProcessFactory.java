@@ -89,6 +89,17 @@ public class FocalLQProcessFactory extends SpatialStatisticsProcessFactory {
             getResource("FocalLQ.searchDistance.description"), false, 0, 1, Double.valueOf(0.0),
             null);
 
+    /** numberOfNeighbors */
+    public static final Parameter<Integer> numberOfNeighbors = new Parameter<Integer>(
+            "numberOfNeighbors", Integer.class, getResource("FocalLQ.numberOfNeighbors.title"),
+            getResource("FocalLQ.numberOfNeighbors.description"), false, 0, 1,
+            Integer.valueOf(0), null);
+
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("FocalLQ.parallelism.title"),
+            getResource("FocalLQ.parallelism.description"), false, 0, 1, Integer.valueOf(1), null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
@@ -96,6 +107,8 @@ public class FocalLQProcessFactory extends SpatialStatisticsProcessFactory {
         parameterInfo.put(xField.key, xField);
         parameterInfo.put(yField.key, yField);
         parameterInfo.put(searchDistance.key, searchDistance);
+        parameterInfo.put(numberOfNeighbors.key, numberOfNeighbors);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
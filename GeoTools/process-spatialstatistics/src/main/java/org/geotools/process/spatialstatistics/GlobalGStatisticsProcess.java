@@ -30,6 +30,7 @@ import org.geotools.process.spatialstatistics.autocorrelation.GlobalGStatisticOp
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.FormatUtils;
 import org.geotools.process.spatialstatistics.core.Params;
+import org.geotools.process.spatialstatistics.core.SpatialWeightsCache;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
 import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
@@ -141,6 +142,7 @@ public class GlobalGStatisticsProcess extends AbstractStatisticsProcess {
                 process.setSpatialConceptType(spatialConcept);
                 process.setDistanceType(distanceMethod);
                 process.setStandardizationType(standardization);
+                process.setWeightsCache(SpatialWeightsCache.getDefault());
 
                 // searchDistance
                 if (searchDistance > 0 && !Double.isNaN(searchDistance)) {
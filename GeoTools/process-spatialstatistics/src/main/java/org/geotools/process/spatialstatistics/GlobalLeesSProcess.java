@@ -30,6 +30,7 @@ import org.geotools.process.spatialstatistics.autocorrelation.GlobalLeesSOperati
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.FormatUtils;
 import org.geotools.process.spatialstatistics.core.Params;
+import org.geotools.process.spatialstatistics.core.SpatialWeightsCache;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
 import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
@@ -148,6 +149,7 @@ public class GlobalLeesSProcess extends AbstractStatisticsProcess {
                 process.setSpatialConceptType(spatialConcept);
                 process.setDistanceType(distanceMethod);
                 process.setStandardizationType(standardization);
+                process.setWeightsCache(SpatialWeightsCache.getDefault());
 
                 // searchDistance
                 if (searchDistance > 0 && !Double.isNaN(searchDistance)) {
@@ -0,0 +1,347 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.process.Process;
+import org.geotools.process.ProcessException;
+import org.geotools.process.ProcessFactory;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalMoranIStatisticOperation.MoransI;
+import org.geotools.process.spatialstatistics.autocorrelation.IncrementalMoransIOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.IncrementalMoransIOperation.IncrementalMoransI;
+import org.geotools.process.spatialstatistics.core.FeatureTypes;
+import org.geotools.process.spatialstatistics.core.FormatUtils;
+import org.geotools.process.spatialstatistics.core.Params;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.text.Text;
+import org.geotools.util.NullProgressListener;
+import org.geotools.util.logging.Logging;
+import org.opengis.util.ProgressListener;
+
+import com.thoughtworks.xstream.annotations.XStreamImplicit;
+
+/**
+ * Measures spatial autocorrelation for a series of distances and reports the distances at which
+ * the z-score of the Global Moran's I peaks.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class IncrementalMoransIProcess extends AbstractStatisticsProcess {
+    protected static final Logger LOGGER = Logging.getLogger(IncrementalMoransIProcess.class);
+
+    private boolean started = false;
+
+    public IncrementalMoransIProcess(ProcessFactory factory) {
+        super(factory);
+    }
+
+    public ProcessFactory getFactory() {
+        return factory;
+    }
+
+    public static IncrementalMoransIProcessResult process(SimpleFeatureCollection inputFeatures,
+            String inputField, SpatialConcept spatialConcept, DistanceMethod distanceMethod,
+            Integer numberOfBands, Double beginDistance, Double distanceIncrement,
+            ProgressListener monitor) {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put(IncrementalMoransIProcessFactory.inputFeatures.key, inputFeatures);
+        map.put(IncrementalMoransIProcessFactory.inputField.key, inputField);
+        map.put(IncrementalMoransIProcessFactory.spatialConcept.key, spatialConcept);
+        map.put(IncrementalMoransIProcessFactory.distanceMethod.key, distanceMethod);
+        map.put(IncrementalMoransIProcessFactory.numberOfBands.key, numberOfBands);
+        map.put(IncrementalMoransIProcessFactory.beginDistance.key, beginDistance);
+        map.put(IncrementalMoransIProcessFactory.distanceIncrement.key, distanceIncrement);
+
+        Process process = new IncrementalMoransIProcess(null);
+        Map<String, Object> resultMap;
+        try {
+            resultMap = process.execute(map, monitor);
+            return (IncrementalMoransIProcessResult) resultMap
+                    .get(IncrementalMoransIProcessFactory.RESULT.key);
+        } catch (ProcessException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+        }
+
+        return new IncrementalMoransIProcessResult(inputFeatures.getSchema().getTypeName(),
+                inputField, null);
+    }
+
+    @Override
+    public Map<String, Object> execute(Map<String, Object> input, ProgressListener monitor)
+            throws ProcessException {
+        if (started)
+            throw new IllegalStateException("Process can only be run once");
+        started = true;
+
+        if (monitor == null)
+            monitor = new NullProgressListener();
+        try {
+            monitor.started();
+            monitor.setTask(Text.text("Grabbing arguments"));
+            monitor.progress(10.0f);
+
+            SimpleFeatureCollection inputFeatures = (SimpleFeatureCollection) Params.getValue(
+                    input, IncrementalMoransIProcessFactory.inputFeatures, null);
+            String inputField = (String) Params.getValue(input,
+                    IncrementalMoransIProcessFactory.inputField, null);
+            if (inputFeatures == null || inputField == null) {
+                throw new NullPointerException("inputFeatures and inputField parameters required");
+            }
+
+            inputField = FeatureTypes.validateProperty(inputFeatures.getSchema(), inputField);
+            if (inputFeatures.getSchema().indexOf(inputField) == -1) {
+                throw new NullPointerException(inputField + " field does not exist!");
+            }
+
+            SpatialConcept spatialConcept = (SpatialConcept) Params.getValue(input,
+                    IncrementalMoransIProcessFactory.spatialConcept,
+                    IncrementalMoransIProcessFactory.spatialConcept.sample);
+
+            DistanceMethod distanceMethod = (DistanceMethod) Params.getValue(input,
+                    IncrementalMoransIProcessFactory.distanceMethod,
+                    IncrementalMoransIProcessFactory.distanceMethod.sample);
+
+            Integer numberOfBands = (Integer) Params.getValue(input,
+                    IncrementalMoransIProcessFactory.numberOfBands,
+                    IncrementalMoransIProcessFactory.numberOfBands.sample);
+
+            Double beginDistance = (Double) Params.getValue(input,
+                    IncrementalMoransIProcessFactory.beginDistance,
+                    IncrementalMoransIProcessFactory.beginDistance.sample);
+
+            Double distanceIncrement = (Double) Params.getValue(input,
+                    IncrementalMoransIProcessFactory.distanceIncrement,
+                    IncrementalMoransIProcessFactory.distanceIncrement.sample);
+
+            monitor.setTask(Text.text("Processing ..."));
+            monitor.progress(25.0f);
+
+            if (monitor.isCanceled()) {
+                return null; // user has canceled this operation
+            }
+
+            // start process
+            String typeName = inputFeatures.getSchema().getTypeName();
+            IncrementalMoransIProcessResult processResult = null;
+            try {
+                IncrementalMoransIOperation process = new IncrementalMoransIOperation();
+                process.setSpatialConceptType(spatialConcept);
+                process.setDistanceType(distanceMethod);
+                process.setNumberOfBands(numberOfBands);
+                process.setBeginDistance(beginDistance);
+                process.setDistanceIncrement(distanceIncrement);
+
+                IncrementalMoransI ret = process.execute(inputFeatures, inputField);
+                processResult = new IncrementalMoransIProcessResult(typeName, inputField, ret);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, e.getMessage(), e);
+                processResult = new IncrementalMoransIProcessResult(typeName, inputField, null);
+            }
+            // end process
+
+            monitor.setTask(Text.text("Encoding result"));
+            monitor.progress(90.0f);
+
+            Map<String, Object> resultMap = new HashMap<String, Object>();
+            resultMap.put(IncrementalMoransIProcessFactory.RESULT.key, processResult);
+            monitor.complete(); // same as 100.0f
+
+            return resultMap;
+        } catch (Exception eek) {
+            monitor.exceptionOccurred(eek);
+            return null;
+        } finally {
+            monitor.dispose();
+        }
+    }
+
+    public static class IncrementalMoransIProcessResult {
+
+        String typeName;
+
+        String propertyName;
+
+        String first_Peak;
+
+        String max_Peak;
+
+        @XStreamImplicit
+        List<DistanceBand> distanceBands = new ArrayList<DistanceBand>();
+
+        public IncrementalMoransIProcessResult(String typeName, String propertyName,
+                IncrementalMoransI ret) {
+            this.typeName = typeName;
+            this.propertyName = propertyName;
+
+            if (ret == null) {
+                this.first_Peak = FormatUtils.format(Double.NaN);
+                this.max_Peak = FormatUtils.format(Double.NaN);
+                return;
+            }
+
+            this.first_Peak = FormatUtils.format(ret.getFirstPeakDistance());
+            this.max_Peak = FormatUtils.format(ret.getMaxPeakDistance());
+            for (int b = 0; b < ret.getBandCount(); b++) {
+                distanceBands.add(new DistanceBand(ret.getMoransI(b)));
+            }
+        }
+
+        public String getTypeName() {
+            return typeName;
+        }
+
+        public void setTypeName(String typeName) {
+            this.typeName = typeName;
+        }
+
+        public String getPropertyName() {
+            return propertyName;
+        }
+
+        public void setPropertyName(String propertyName) {
+            this.propertyName = propertyName;
+        }
+
+        public String getFirst_Peak() {
+            return first_Peak;
+        }
+
+        public void setFirst_Peak(String first_Peak) {
+            this.first_Peak = first_Peak;
+        }
+
+        public String getMax_Peak() {
+            return max_Peak;
+        }
+
+        public void setMax_Peak(String max_Peak) {
+            this.max_Peak = max_Peak;
+        }
+
+        public List<DistanceBand> getDistanceBands() {
+            return distanceBands;
+        }
+
+        public void setDistanceBands(List<DistanceBand> distanceBands) {
+            this.distanceBands = distanceBands;
+        }
+
+        @Override
+        public String toString() {
+            final String separator = System.getProperty("line.separator");
+
+            StringBuffer sb = new StringBuffer();
+            sb.append("TypeName: ").append(typeName).append(separator);
+            sb.append("PropertyName: ").append(propertyName).append(separator);
+            sb.append("First Peak: ").append(first_Peak).append(separator);
+            sb.append("Max Peak: ").append(max_Peak).append(separator);
+            for (DistanceBand distanceBand : distanceBands) {
+                sb.append(distanceBand.toString()).append(separator);
+            }
+
+            return sb.toString();
+        }
+
+        public static class DistanceBand {
+
+            String distance;
+
+            String observed_Index;
+
+            String expected_Index;
+
+            String variance;
+
+            String z_Score;
+
+            String p_Value;
+
+            public DistanceBand(MoransI ret) {
+                this.distance = FormatUtils.format(ret.getDistanceThreshold());
+                this.observed_Index = FormatUtils.format(ret.getObservedIndex());
+                this.expected_Index = FormatUtils.format(ret.getExpectedIndex());
+                this.variance = FormatUtils.format(ret.getZVariance());
+                this.z_Score = FormatUtils.format(ret.getZScore());
+                this.p_Value = FormatUtils.format(ret.getPValue());
+            }
+
+            public String getDistance() {
+                return distance;
+            }
+
+            public void setDistance(String distance) {
+                this.distance = distance;
+            }
+
+            public String getObserved_Index() {
+                return observed_Index;
+            }
+
+            public void setObserved_Index(String observed_Index) {
+                this.observed_Index = observed_Index;
+            }
+
+            public String getExpected_Index() {
+                return expected_Index;
+            }
+
+            public void setExpected_Index(String expected_Index) {
+                this.expected_Index = expected_Index;
+            }
+
+            public String getVariance() {
+                return variance;
+            }
+
+            public void setVariance(String variance) {
+                this.variance = variance;
+            }
+
+            public String getZ_Score() {
+                return z_Score;
+            }
+
+            public void setZ_Score(String z_Score) {
+                this.z_Score = z_Score;
+            }
+
+            public String getP_Value() {
+                return p_Value;
+            }
+
+            public void setP_Value(String p_Value) {
+                this.p_Value = p_Value;
+            }
+
+            @Override
+            public String toString() {
+                return "Distance: " + distance + ", Moran Index: " + observed_Index
+                        + ", z Score: " + z_Score + ", p Value: " + p_Value;
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import org.geotools.data.Parameter;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.NameImpl;
+import org.geotools.process.Process;
+import org.geotools.process.spatialstatistics.IncrementalMoransIProcess.IncrementalMoransIProcessResult;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.util.KVP;
+import org.geotools.util.logging.Logging;
+import org.opengis.util.InternationalString;
+
+/**
+ * IncrementalMoransIProcessFactory
+ * 
+ * @author Minpa Lee, MangoSystem
+ * 
+ * @source $URL$
+ */
+public class IncrementalMoransIProcessFactory extends SpatialStatisticsProcessFactory {
+    protected static final Logger LOGGER = Logging.getLogger(IncrementalMoransIProcessFactory.class);
+
+    private static final String PROCESS_NAME = "IncrementalMoransI";
+
+    /*
+     * IncrementalMoransI(SimpleFeatureCollection inputFeatures, String inputField, SpatialConcept spatialConcept, DistanceMethod distanceMethod,
+     * Integer numberOfBands, Double beginDistance, Double distanceIncrement) : IncrementalMoransI
+     */
+
+    public IncrementalMoransIProcessFactory() {
+        super(new NameImpl(NAMESPACE, PROCESS_NAME));
+    }
+
+    @Override
+    public Process create() {
+        return new IncrementalMoransIProcess(this);
+    }
+
+    @Override
+    public InternationalString getTitle() {
+        return getResource("IncrementalMoransI.title");
+    }
+
+    @Override
+    public InternationalString getDescription() {
+        return getResource("IncrementalMoransI.description");
+    }
+
+    /** inputFeatures */
+    public static final Parameter<SimpleFeatureCollection> inputFeatures = new Parameter<SimpleFeatureCollection>(
+            "inputFeatures", SimpleFeatureCollection.class,
+            getResource("IncrementalMoransI.inputFeatures.title"),
+            getResource("IncrementalMoransI.inputFeatures.description"), true, 1, 1, null, null);
+
+    /** inputField */
+    public static final Parameter<String> inputField = new Parameter<String>("inputField",
+            String.class, getResource("IncrementalMoransI.inputField.title"),
+            getResource("IncrementalMoransI.inputField.description"), true, 1, 1, null, new KVP(
+                    Parameter.OPTIONS, "inputFeatures.Number"));
+
+    /** spatialConcept */
+    public static final Parameter<SpatialConcept> spatialConcept = new Parameter<SpatialConcept>(
+            "spatialConcept", SpatialConcept.class,
+            getResource("IncrementalMoransI.spatialConcept.title"),
+            getResource("IncrementalMoransI.spatialConcept.description"), false, 0, 1,
+            SpatialConcept.FIXEDDISTANCEBAND, null);
+
+    /** distanceMethod */
+    public static final Parameter<DistanceMethod> distanceMethod = new Parameter<DistanceMethod>(
+            "distanceMethod", DistanceMethod.class,
+            getResource("IncrementalMoransI.distanceMethod.title"),
+            getResource("IncrementalMoransI.distanceMethod.description"), false, 0, 1,
+            DistanceMethod.Euclidean, null);
+
+    /** numberOfBands */
+    public static final Parameter<Integer> numberOfBands = new Parameter<Integer>(
+            "numberOfBands", Integer.class, getResource("IncrementalMoransI.numberOfBands.title"),
+            getResource("IncrementalMoransI.numberOfBands.description"), false, 0, 1,
+            Integer.valueOf(10), null);
+
+    /** beginDistance */
+    public static final Parameter<Double> beginDistance = new Parameter<Double>(
+            "beginDistance", Double.class, getResource("IncrementalMoransI.beginDistance.title"),
+            getResource("IncrementalMoransI.beginDistance.description"), false, 0, 1,
+            Double.valueOf(0.0), null);
+
+    /** distanceIncrement */
+    public static final Parameter<Double> distanceIncrement = new Parameter<Double>(
+            "distanceIncrement", Double.class,
+            getResource("IncrementalMoransI.distanceIncrement.title"),
+            getResource("IncrementalMoransI.distanceIncrement.description"), false, 0, 1,
+            Double.valueOf(0.0), null);
+
+    @Override
+    protected Map<String, Parameter<?>> getParameterInfo() {
+        HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
+        parameterInfo.put(inputFeatures.key, inputFeatures);
+        parameterInfo.put(inputField.key, inputField);
+        parameterInfo.put(spatialConcept.key, spatialConcept);
+        parameterInfo.put(distanceMethod.key, distanceMethod);
+        parameterInfo.put(numberOfBands.key, numberOfBands);
+        parameterInfo.put(beginDistance.key, beginDistance);
+        parameterInfo.put(distanceIncrement.key, distanceIncrement);
+        return parameterInfo;
+    }
+
+    /** result */
+    public static final Parameter<IncrementalMoransIProcessResult> RESULT = new Parameter<IncrementalMoransIProcessResult>(
+            "result", IncrementalMoransIProcessResult.class, getResource("IncrementalMoransI.result.title"),
+            getResource("IncrementalMoransI.result.description"));
+
+    static final Map<String, Parameter<?>> resultInfo = new TreeMap<String, Parameter<?>>();
+    static {
+        resultInfo.put(RESULT.key, RESULT);
+    }
+
+    @Override
+    protected Map<String, Parameter<?>> getResultInfo(Map<String, Object> parameters)
+            throws IllegalArgumentException {
+        return Collections.unmodifiableMap(resultInfo);
+    }
+
+}
@@ -57,10 +57,20 @@ public class JoinCountStatisticsProcess extends AbstractStatisticsProcess {
 
     public static JoinCountProcessResult process(SimpleFeatureCollection inputFeatures,
             Filter blackExpression, ContiguityType contiguityType, ProgressListener monitor) {
+        return process(inputFeatures, blackExpression, contiguityType, Integer.valueOf(0),
+                Integer.valueOf(0), Integer.valueOf(1), monitor);
+    }
+
+    public static JoinCountProcessResult process(SimpleFeatureCollection inputFeatures,
+            Filter blackExpression, ContiguityType contiguityType, Integer permutations,
+            Integer seed, Integer parallelism, ProgressListener monitor) {
         Map<String, Object> map = new HashMap<String, Object>();
         map.put(JoinCountStatisticsProcessFactory.inputFeatures.key, inputFeatures);
         map.put(JoinCountStatisticsProcessFactory.blackExpression.key, blackExpression);
         map.put(JoinCountStatisticsProcessFactory.contiguityType.key, contiguityType);
+        map.put(JoinCountStatisticsProcessFactory.permutations.key, permutations);
+        map.put(JoinCountStatisticsProcessFactory.seed.key, seed);
+        map.put(JoinCountStatisticsProcessFactory.parallelism.key, parallelism);
 
         Process process = new JoinCountStatisticsProcess(null);
         Map<String, Object> resultMap;
@@ -103,6 +113,18 @@ public class JoinCountStatisticsProcess extends AbstractStatisticsProcess {
                     JoinCountStatisticsProcessFactory.contiguityType,
                     JoinCountStatisticsProcessFactory.contiguityType.sample);
 
+            Integer permutations = (Integer) Params.getValue(input,
+                    JoinCountStatisticsProcessFactory.permutations,
+                    JoinCountStatisticsProcessFactory.permutations.sample);
+
+            Integer seed = (Integer) Params.getValue(input,
+                    JoinCountStatisticsProcessFactory.seed,
+                    JoinCountStatisticsProcessFactory.seed.sample);
+
+            Integer parallelism = (Integer) Params.getValue(input,
+                    JoinCountStatisticsProcessFactory.parallelism,
+                    JoinCountStatisticsProcessFactory.parallelism.sample);
+
             monitor.setTask(Text.text("Processing ..."));
             monitor.progress(25.0f);
 
@@ -112,6 +134,9 @@ public class JoinCountStatisticsProcess extends AbstractStatisticsProcess {
 
             // start process
             JoinCountStatisticsOperation operation = new JoinCountStatisticsOperation();
+            operation.setPermutations(permutations);
+            operation.setPermutationSeed(seed.longValue());
+            operation.setParallelism(parallelism);
             JoinCount joinCount = operation.execute(inputFeatures, blackExpression, contiguityType);
             // end process
 
@@ -170,6 +195,14 @@ public class JoinCountStatisticsProcess extends AbstractStatisticsProcess {
 
         double zScoreBW = 0;
 
+        int permutations = 0;
+
+        double pValueBB = Double.NaN;
+
+        double pValueWW = Double.NaN;
+
+        double pValueBW = Double.NaN;
+
         public JoinCountProcessResult(JoinCount joinCount) {
             this.typeName = joinCount.getTypeName();
             this.contiguityType = joinCount.getContiguityType();
@@ -189,6 +222,10 @@ public class JoinCountStatisticsProcess extends AbstractStatisticsProcess {
             this.zScoreBB = joinCount.getzScoreBB();
             this.zScoreBW = joinCount.getzScoreBW();
             this.zScoreWW = joinCount.getzScoreWW();
+            this.permutations = joinCount.getPermutations();
+            this.pValueBB = joinCount.getpValueBB();
+            this.pValueBW = joinCount.getpValueBW();
+            this.pValueWW = joinCount.getpValueWW();
         }
 
         public String getTypeName() {
@@ -263,6 +300,22 @@ public class JoinCountStatisticsProcess extends AbstractStatisticsProcess {
             return zScoreBW;
         }
 
+        public int getPermutations() {
+            return permutations;
+        }
+
+        public double getpValueBB() {
+            return pValueBB;
+        }
+
+        public double getpValueWW() {
+            return pValueWW;
+        }
+
+        public double getpValueBW() {
+            return pValueBW;
+        }
+
         @SuppressWarnings("nls")
         @Override
         public String toString() {
@@ -293,6 +346,13 @@ public class JoinCountStatisticsProcess extends AbstractStatisticsProcess {
             sb.append("Z-statistics WW Joins: ").append(getzScoreWW()).append(sep);
             sb.append("Z-statistics BW Joins: ").append(getzScoreBW()).append(sep);
 
+            if (getPermutations() > 0) {
+                sb.append("Permutations: ").append(getPermutations()).append(sep);
+                sb.append("Pseudo p-value BB Joins: ").append(getpValueBB()).append(sep);
+                sb.append("Pseudo p-value WW Joins: ").append(getpValueWW()).append(sep);
+                sb.append("Pseudo p-value BW Joins: ").append(getpValueBW()).append(sep);
+            }
+
             return sb.toString();
         }
     }
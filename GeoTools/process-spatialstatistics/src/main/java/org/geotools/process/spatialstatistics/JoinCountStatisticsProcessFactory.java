@@ -48,7 +48,8 @@ public class JoinCountStatisticsProcessFactory extends SpatialStatisticsProcessF
     private static final String PROCESS_NAME = "JoinCount";
 
     /*
-     * JoinCount(SimpleFeatureCollection inputFeatures, Filter blackExpression, ContiguityType contiguityType): JoinCountProcessResult
+     * JoinCount(SimpleFeatureCollection inputFeatures, Filter blackExpression, ContiguityType contiguityType, Integer permutations,
+     * Integer seed, Integer parallelism): JoinCountProcessResult
      */
 
     public JoinCountStatisticsProcessFactory() {
@@ -88,12 +89,30 @@ public class JoinCountStatisticsProcessFactory extends SpatialStatisticsProcessF
             getResource("JoinCount.contiguityType.description"), false, 0, 1, ContiguityType.Queen,
             null);
 
+    /** permutations */
+    public static final Parameter<Integer> permutations = new Parameter<Integer>("permutations",
+            Integer.class, getResource("JoinCount.permutations.title"),
+            getResource("JoinCount.permutations.description"), false, 0, 1, Integer.valueOf(0), null);
+
+    /** seed */
+    public static final Parameter<Integer> seed = new Parameter<Integer>("seed", Integer.class,
+            getResource("JoinCount.seed.title"), getResource("JoinCount.seed.description"), false, 0, 1,
+            Integer.valueOf(0), null);
+
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("JoinCount.parallelism.title"),
+            getResource("JoinCount.parallelism.description"), false, 0, 1, Integer.valueOf(1), null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
         parameterInfo.put(inputFeatures.key, inputFeatures);
         parameterInfo.put(blackExpression.key, blackExpression);
         parameterInfo.put(contiguityType.key, contiguityType);
+        parameterInfo.put(permutations.key, permutations);
+        parameterInfo.put(seed.key, seed);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
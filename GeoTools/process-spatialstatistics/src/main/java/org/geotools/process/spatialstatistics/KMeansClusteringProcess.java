@@ -54,11 +54,14 @@ public class KMeansClusteringProcess extends AbstractStatisticsProcess {
     }
 
     public static SimpleFeatureCollection process(SimpleFeatureCollection inputFeatures,
-            String targetField, Integer numberOfClusters, ProgressListener monitor) {
+            String targetField, Integer numberOfClusters, Integer seed, Integer miniBatchSize,
+            ProgressListener monitor) {
         Map<String, Object> map = new HashMap<String, Object>();
         map.put(KMeansClusteringProcessFactory.inputFeatures.key, inputFeatures);
         map.put(KMeansClusteringProcessFactory.targetField.key, targetField);
         map.put(KMeansClusteringProcessFactory.numberOfClusters.key, numberOfClusters);
+        map.put(KMeansClusteringProcessFactory.seed.key, seed);
+        map.put(KMeansClusteringProcessFactory.miniBatchSize.key, miniBatchSize);
 
         Process process = new KMeansClusteringProcess(null);
         Map<String, Object> resultMap;
@@ -107,6 +110,13 @@ public class KMeansClusteringProcess extends AbstractStatisticsProcess {
                 throw new NullPointerException("Number of clusters must be greater than 1");
             }
 
+            Integer seed = (Integer) Params.getValue(input, KMeansClusteringProcessFactory.seed,
+                    KMeansClusteringProcessFactory.seed.sample);
+
+            Integer miniBatchSize = (Integer) Params.getValue(input,
+                    KMeansClusteringProcessFactory.miniBatchSize,
+                    KMeansClusteringProcessFactory.miniBatchSize.sample);
+
             monitor.setTask(Text.text("Processing ..."));
             monitor.progress(25.0f);
 
@@ -116,6 +126,8 @@ public class KMeansClusteringProcess extends AbstractStatisticsProcess {
 
             // start process
             KMeansClusterOperation operator = new KMeansClusterOperation();
+            operator.setSeed(seed.longValue());
+            operator.setMiniBatchSize(miniBatchSize.intValue());
             SimpleFeatureCollection resultFc = null;
             resultFc = operator.execute(inputFeatures, targetField, numberOfClusters);
             // end process
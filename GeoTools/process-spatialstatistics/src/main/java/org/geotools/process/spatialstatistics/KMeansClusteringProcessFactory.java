@@ -43,7 +43,10 @@ public class KMeansClusteringProcessFactory extends SpatialStatisticsProcessFact
 
     private static final String PROCESS_NAME = "KMeansClustering";
 
-    // KMeansClustering(SimpleFeatureCollection inputFeatures, String targetField, Integer numberOfClusters): SimpleFeatureCollection
+    /*
+     * KMeansClustering(SimpleFeatureCollection inputFeatures, String targetField, Integer numberOfClusters,
+     * Integer seed, Integer miniBatchSize): SimpleFeatureCollection
+     */
 
     public KMeansClusteringProcessFactory() {
         super(new NameImpl(NAMESPACE, PROCESS_NAME));
@@ -82,12 +85,26 @@ public class KMeansClusteringProcessFactory extends SpatialStatisticsProcessFact
             getResource("KMeansClustering.numberOfClusters.title"),
             getResource("KMeansClustering.numberOfClusters.description"), true, 1, 1, 5, null);
 
+    /** seed */
+    public static final Parameter<Integer> seed = new Parameter<Integer>("seed", Integer.class,
+            getResource("KMeansClustering.seed.title"),
+            getResource("KMeansClustering.seed.description"), false, 0, 1, Integer.valueOf(0),
+            null);
+
+    /** miniBatchSize */
+    public static final Parameter<Integer> miniBatchSize = new Parameter<Integer>(
+            "miniBatchSize", Integer.class, getResource("KMeansClustering.miniBatchSize.title"),
+            getResource("KMeansClustering.miniBatchSize.description"), false, 0, 1,
+            Integer.valueOf(0), null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
         parameterInfo.put(inputFeatures.key, inputFeatures);
         parameterInfo.put(targetField.key, targetField);
         parameterInfo.put(numberOfClusters.key, numberOfClusters);
+        parameterInfo.put(seed.key, seed);
+        parameterInfo.put(miniBatchSize.key, miniBatchSize);
         return parameterInfo;
     }
 
@@ -28,6 +28,7 @@ import org.geotools.process.ProcessFactory;
 import org.geotools.process.spatialstatistics.autocorrelation.LocalGStatisticOperation;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.Params;
+import org.geotools.process.spatialstatistics.core.SpatialWeightsCache;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
 import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
@@ -123,6 +124,17 @@ public class LocalGStatisticsProcess extends AbstractStatisticsProcess {
                     LocalGStatisticsProcessFactory.searchDistance,
                     LocalGStatisticsProcessFactory.searchDistance.sample);
 
+            Integer parallelism = (Integer) Params.getValue(input,
+                    LocalGStatisticsProcessFactory.parallelism,
+                    LocalGStatisticsProcessFactory.parallelism.sample);
+
+            Integer permutations = (Integer) Params.getValue(input,
+                    LocalGStatisticsProcessFactory.permutations,
+                    LocalGStatisticsProcessFactory.permutations.sample);
+
+            Integer seed = (Integer) Params.getValue(input, LocalGStatisticsProcessFactory.seed,
+                    LocalGStatisticsProcessFactory.seed.sample);
+
             monitor.setTask(Text.text("Processing ..."));
             monitor.progress(25.0f);
 
@@ -137,12 +149,17 @@ public class LocalGStatisticsProcess extends AbstractStatisticsProcess {
                 process.setSpatialConceptType(spatialConcept);
                 process.setDistanceType(distanceMethod);
                 process.setStandardizationType(standardization);
+                process.setWeightsCache(SpatialWeightsCache.getDefault());
 
                 // searchDistance
                 if (searchDistance > 0 && !Double.isNaN(searchDistance)) {
                     process.setDistanceBand(searchDistance);
                 }
 
+                process.setParallelism(parallelism);
+                process.setPermutations(permutations);
+                process.setPermutationSeed(seed.longValue());
+
                 resultFc = process.execute(inputFeatures, inputField);
             } catch (Exception ee) {
                 monitor.exceptionOccurred(ee);
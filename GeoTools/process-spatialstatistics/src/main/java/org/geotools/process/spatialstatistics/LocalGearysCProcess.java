@@ -28,6 +28,7 @@ import org.geotools.process.ProcessFactory;
 import org.geotools.process.spatialstatistics.autocorrelation.LocalGearysCOperation;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.Params;
+import org.geotools.process.spatialstatistics.core.SpatialWeightsCache;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
 import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
@@ -122,6 +123,17 @@ public class LocalGearysCProcess extends AbstractStatisticsProcess {
                     LocalGearysCProcessFactory.searchDistance,
                     LocalGearysCProcessFactory.searchDistance.sample);
 
+            Integer parallelism = (Integer) Params.getValue(input,
+                    LocalGearysCProcessFactory.parallelism,
+                    LocalGearysCProcessFactory.parallelism.sample);
+
+            Integer permutations = (Integer) Params.getValue(input,
+                    LocalGearysCProcessFactory.permutations,
+                    LocalGearysCProcessFactory.permutations.sample);
+
+            Integer seed = (Integer) Params.getValue(input, LocalGearysCProcessFactory.seed,
+                    LocalGearysCProcessFactory.seed.sample);
+
             monitor.setTask(Text.text("Processing ..."));
             monitor.progress(25.0f);
 
@@ -136,12 +148,17 @@ public class LocalGearysCProcess extends AbstractStatisticsProcess {
                 process.setSpatialConceptType(spatialConcept);
                 process.setDistanceType(distanceMethod);
                 process.setStandardizationType(standardization);
+                process.setWeightsCache(SpatialWeightsCache.getDefault());
 
                 // searchDistance
                 if (searchDistance > 0 && !Double.isNaN(searchDistance)) {
                     process.setDistanceBand(searchDistance);
                 }
 
+                process.setParallelism(parallelism);
+                process.setPermutations(permutations);
+                process.setPermutationSeed(seed.longValue());
+
                 resultFc = process.execute(inputFeatures, inputField);
             } catch (Exception ee) {
                 monitor.exceptionOccurred(ee);
@@ -109,6 +109,21 @@ public class LocalGearysCProcessFactory extends SpatialStatisticsProcessFactory
             getResource("LocalGearysC.searchDistance.description"), false, 0, 1,
             Double.valueOf(0.0), null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("LocalGearysC.parallelism.title"),
+            getResource("LocalGearysC.parallelism.description"), false, 0, 1, Integer.valueOf(1), null);
+
+    /** permutations */
+    public static final Parameter<Integer> permutations = new Parameter<Integer>("permutations",
+            Integer.class, getResource("LocalGearysC.permutations.title"),
+            getResource("LocalGearysC.permutations.description"), false, 0, 1, Integer.valueOf(0), null);
+
+    /** seed */
+    public static final Parameter<Integer> seed = new Parameter<Integer>("seed", Integer.class,
+            getResource("LocalGearysC.seed.title"), getResource("LocalGearysC.seed.description"), false, 0, 1,
+            Integer.valueOf(0), null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
@@ -118,6 +133,9 @@ public class LocalGearysCProcessFactory extends SpatialStatisticsProcessFactory
         parameterInfo.put(distanceMethod.key, distanceMethod);
         parameterInfo.put(standardization.key, standardization);
         parameterInfo.put(searchDistance.key, searchDistance);
+        parameterInfo.put(parallelism.key, parallelism);
+        parameterInfo.put(permutations.key, permutations);
+        parameterInfo.put(seed.key, seed);
         return parameterInfo;
     }
 
@@ -28,6 +28,7 @@ import org.geotools.process.ProcessFactory;
 import org.geotools.process.spatialstatistics.autocorrelation.LocalLeesSOperation;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.Params;
+import org.geotools.process.spatialstatistics.core.SpatialWeightsCache;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
 import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
@@ -130,6 +131,10 @@ public class LocalLeesSProcess extends AbstractStatisticsProcess {
                     LocalLeesSProcessFactory.searchDistance,
                     LocalLeesSProcessFactory.searchDistance.sample);
 
+            Integer parallelism = (Integer) Params.getValue(input,
+                    LocalLeesSProcessFactory.parallelism,
+                    LocalLeesSProcessFactory.parallelism.sample);
+
             monitor.setTask(Text.text("Processing ..."));
             monitor.progress(25.0f);
 
@@ -144,12 +149,15 @@ public class LocalLeesSProcess extends AbstractStatisticsProcess {
                 process.setSpatialConceptType(spatialConcept);
                 process.setDistanceType(distanceMethod);
                 process.setStandardizationType(standardization);
+                process.setWeightsCache(SpatialWeightsCache.getDefault());
 
                 // searchDistance
                 if (searchDistance > 0 && !Double.isNaN(searchDistance)) {
                     process.setDistanceBand(searchDistance);
                 }
 
+                process.setParallelism(parallelism);
+
                 resultFc = process.execute(inputFeatures, inputField);
             } catch (Exception ee) {
                 monitor.exceptionOccurred(ee);
@@ -107,6 +107,11 @@ public class LocalLeesSProcessFactory extends SpatialStatisticsProcessFactory {
             getResource("LocalLeesS.searchDistance.description"), false, 0, 1, Double.valueOf(0.0),
             null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("LocalLeesS.parallelism.title"),
+            getResource("LocalLeesS.parallelism.description"), false, 0, 1, Integer.valueOf(1), null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
@@ -116,6 +121,7 @@ public class LocalLeesSProcessFactory extends SpatialStatisticsProcessFactory {
         parameterInfo.put(distanceMethod.key, distanceMethod);
         parameterInfo.put(standardization.key, standardization);
         parameterInfo.put(searchDistance.key, searchDistance);
+        parameterInfo.put(parallelism.key, parallelism);
         return parameterInfo;
     }
 
@@ -28,6 +28,7 @@ import org.geotools.process.ProcessFactory;
 import org.geotools.process.spatialstatistics.autocorrelation.LocalMoranIStatisticOperation;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.Params;
+import org.geotools.process.spatialstatistics.core.SpatialWeightsCache;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
 import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
@@ -123,6 +124,17 @@ public class LocalMoransIProcess extends AbstractStatisticsProcess {
                     LocalMoransIProcessFactory.searchDistance,
                     LocalMoransIProcessFactory.searchDistance.sample);
 
+            Integer parallelism = (Integer) Params.getValue(input,
+                    LocalMoransIProcessFactory.parallelism,
+                    LocalMoransIProcessFactory.parallelism.sample);
+
+            Integer permutations = (Integer) Params.getValue(input,
+                    LocalMoransIProcessFactory.permutations,
+                    LocalMoransIProcessFactory.permutations.sample);
+
+            Integer seed = (Integer) Params.getValue(input, LocalMoransIProcessFactory.seed,
+                    LocalMoransIProcessFactory.seed.sample);
+
             monitor.setTask(Text.text("Processing ..."));
             monitor.progress(25.0f);
 
@@ -137,12 +149,17 @@ public class LocalMoransIProcess extends AbstractStatisticsProcess {
                 process.setSpatialConceptType(spatialConcept);
                 process.setDistanceType(distanceMethod);
                 process.setStandardizationType(standardization);
+                process.setWeightsCache(SpatialWeightsCache.getDefault());
 
                 // searchDistance
                 if (searchDistance > 0 && !Double.isNaN(searchDistance)) {
                     process.setDistanceBand(searchDistance);
                 }
 
+                process.setParallelism(parallelism);
+                process.setPermutations(permutations);
+                process.setPermutationSeed(seed.longValue());
+
                 resultFc = process.execute(inputFeatures, inputField);
             } catch (Exception ee) {
                 monitor.exceptionOccurred(ee);
@@ -109,6 +109,21 @@ public class LocalMoransIProcessFactory extends SpatialStatisticsProcessFactory
             getResource("LocalMoransI.searchDistance.description"), false, 0, 1,
             Double.valueOf(0.0), null);
 
+    /** parallelism */
+    public static final Parameter<Integer> parallelism = new Parameter<Integer>("parallelism",
+            Integer.class, getResource("LocalMoransI.parallelism.title"),
+            getResource("LocalMoransI.parallelism.description"), false, 0, 1, Integer.valueOf(1), null);
+
+    /** permutations */
+    public static final Parameter<Integer> permutations = new Parameter<Integer>("permutations",
+            Integer.class, getResource("LocalMoransI.permutations.title"),
+            getResource("LocalMoransI.permutations.description"), false, 0, 1, Integer.valueOf(0), null);
+
+    /** seed */
+    public static final Parameter<Integer> seed = new Parameter<Integer>("seed", Integer.class,
+            getResource("LocalMoransI.seed.title"), getResource("LocalMoransI.seed.description"), false, 0, 1,
+            Integer.valueOf(0), null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
@@ -118,6 +133,9 @@ public class LocalMoransIProcessFactory extends SpatialStatisticsProcessFactory
         parameterInfo.put(distanceMethod.key, distanceMethod);
         parameterInfo.put(standardization.key, standardization);
         parameterInfo.put(searchDistance.key, searchDistance);
+        parameterInfo.put(parallelism.key, parallelism);
+        parameterInfo.put(permutations.key, permutations);
+        parameterInfo.put(seed.key, seed);
         return parameterInfo;
     }
 
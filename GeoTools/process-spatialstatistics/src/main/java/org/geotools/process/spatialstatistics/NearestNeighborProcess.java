@@ -55,11 +55,13 @@ public class NearestNeighborProcess extends AbstractStatisticsProcess {
     }
 
     public static NearestNeighborResult process(SimpleFeatureCollection inputFeatures,
-            DistanceMethod distanceMethod, Double area, ProgressListener monitor) {
+            DistanceMethod distanceMethod, Double area, Boolean edgeCorrection,
+            ProgressListener monitor) {
         Map<String, Object> map = new HashMap<String, Object>();
         map.put(NearestNeighborProcessFactory.inputFeatures.key, inputFeatures);
         map.put(NearestNeighborProcessFactory.distanceMethod.key, distanceMethod);
         map.put(NearestNeighborProcessFactory.area.key, area);
+        map.put(NearestNeighborProcessFactory.edgeCorrection.key, edgeCorrection);
 
         Process process = new NearestNeighborProcess(null);
         Map<String, Object> resultMap;
@@ -97,6 +99,9 @@ public class NearestNeighborProcess extends AbstractStatisticsProcess {
                     NearestNeighborProcessFactory.distanceMethod.sample);
             Double area = (Double) Params.getValue(input, NearestNeighborProcessFactory.area,
                     Double.valueOf(0.0));
+            Boolean edgeCorrection = (Boolean) Params.getValue(input,
+                    NearestNeighborProcessFactory.edgeCorrection,
+                    NearestNeighborProcessFactory.edgeCorrection.sample);
 
             monitor.setTask(Text.text("Processing ..."));
             monitor.progress(25.0f);
@@ -107,6 +112,8 @@ public class NearestNeighborProcess extends AbstractStatisticsProcess {
 
             // start process
             NNIOperation operation = new NNIOperation();
+            operation.setDistanceType(distanceMethod);
+            operation.setEdgeCorrection(edgeCorrection.booleanValue());
             if (area == null) {
                 area = Double.valueOf(0.0d);
             }
@@ -45,7 +45,8 @@ public class NearestNeighborProcessFactory extends SpatialStatisticsProcessFacto
     private static final String PROCESS_NAME = "NearestNeighborIndex";
 
     /*
-     * NearestNeighborIndex(SimpleFeatureCollection inputFeatures, DistanceMethod distanceMethod, Double NearestNeighbor): XML
+     * NearestNeighborIndex(SimpleFeatureCollection inputFeatures, DistanceMethod distanceMethod, Double area,
+     * Boolean edgeCorrection): XML
      */
 
     public NearestNeighborProcessFactory() {
@@ -85,12 +86,19 @@ public class NearestNeighborProcessFactory extends SpatialStatisticsProcessFacto
             getResource("NearestNeighbor.area.title"),
             getResource("NearestNeighbor.area.description"), false, 0, 1, 0.0, null);
 
+    /** edgeCorrection */
+    public static final Parameter<Boolean> edgeCorrection = new Parameter<Boolean>(
+            "edgeCorrection", Boolean.class, getResource("NearestNeighbor.edgeCorrection.title"),
+            getResource("NearestNeighbor.edgeCorrection.description"), false, 0, 1,
+            Boolean.FALSE, null);
+
     @Override
     protected Map<String, Parameter<?>> getParameterInfo() {
         HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
         parameterInfo.put(inputFeatures.key, inputFeatures);
         parameterInfo.put(distanceMethod.key, distanceMethod);
         parameterInfo.put(area.key, area);
+        parameterInfo.put(edgeCorrection.key, edgeCorrection);
         return parameterInfo;
     }
 
@@ -0,0 +1,299 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.process.Process;
+import org.geotools.process.ProcessException;
+import org.geotools.process.ProcessFactory;
+import org.geotools.process.spatialstatistics.core.FormatUtils;
+import org.geotools.process.spatialstatistics.core.Params;
+import org.geotools.process.spatialstatistics.pattern.RipleysKOperation;
+import org.geotools.process.spatialstatistics.pattern.RipleysKOperation.RipleysK;
+import org.geotools.text.Text;
+import org.geotools.util.NullProgressListener;
+import org.geotools.util.logging.Logging;
+import org.opengis.util.ProgressListener;
+
+import com.thoughtworks.xstream.annotations.XStreamImplicit;
+
+/**
+ * Determines whether features exhibit statistically significant clustering or dispersion over a
+ * range of distances using Ripley's K function, reported as L(d).
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class RipleysKProcess extends AbstractStatisticsProcess {
+    protected static final Logger LOGGER = Logging.getLogger(RipleysKProcess.class);
+
+    private boolean started = false;
+
+    public RipleysKProcess(ProcessFactory factory) {
+        super(factory);
+    }
+
+    public ProcessFactory getFactory() {
+        return factory;
+    }
+
+    public static RipleysKProcessResult process(SimpleFeatureCollection inputFeatures,
+            Integer numberOfBands, Double beginDistance, Double distanceIncrement,
+            Boolean edgeCorrection, Integer permutations, Integer seed, ProgressListener monitor) {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put(RipleysKProcessFactory.inputFeatures.key, inputFeatures);
+        map.put(RipleysKProcessFactory.numberOfBands.key, numberOfBands);
+        map.put(RipleysKProcessFactory.beginDistance.key, beginDistance);
+        map.put(RipleysKProcessFactory.distanceIncrement.key, distanceIncrement);
+        map.put(RipleysKProcessFactory.edgeCorrection.key, edgeCorrection);
+        map.put(RipleysKProcessFactory.permutations.key, permutations);
+        map.put(RipleysKProcessFactory.seed.key, seed);
+
+        Process process = new RipleysKProcess(null);
+        Map<String, Object> resultMap;
+        try {
+            resultMap = process.execute(map, monitor);
+            return (RipleysKProcessResult) resultMap.get(RipleysKProcessFactory.RESULT.key);
+        } catch (ProcessException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+        }
+
+        return new RipleysKProcessResult(inputFeatures.getSchema().getTypeName(), null);
+    }
+
+    @Override
+    public Map<String, Object> execute(Map<String, Object> input, ProgressListener monitor)
+            throws ProcessException {
+        if (started)
+            throw new IllegalStateException("Process can only be run once");
+        started = true;
+
+        if (monitor == null)
+            monitor = new NullProgressListener();
+        try {
+            monitor.started();
+            monitor.setTask(Text.text("Grabbing arguments"));
+            monitor.progress(10.0f);
+
+            SimpleFeatureCollection inputFeatures = (SimpleFeatureCollection) Params.getValue(
+                    input, RipleysKProcessFactory.inputFeatures, null);
+            if (inputFeatures == null) {
+                throw new NullPointerException("inputFeatures parameter required");
+            }
+
+            Integer numberOfBands = (Integer) Params.getValue(input,
+                    RipleysKProcessFactory.numberOfBands,
+                    RipleysKProcessFactory.numberOfBands.sample);
+
+            Double beginDistance = (Double) Params.getValue(input,
+                    RipleysKProcessFactory.beginDistance,
+                    RipleysKProcessFactory.beginDistance.sample);
+
+            Double distanceIncrement = (Double) Params.getValue(input,
+                    RipleysKProcessFactory.distanceIncrement,
+                    RipleysKProcessFactory.distanceIncrement.sample);
+
+            Boolean edgeCorrection = (Boolean) Params.getValue(input,
+                    RipleysKProcessFactory.edgeCorrection,
+                    RipleysKProcessFactory.edgeCorrection.sample);
+
+            Integer permutations = (Integer) Params.getValue(input,
+                    RipleysKProcessFactory.permutations,
+                    RipleysKProcessFactory.permutations.sample);
+
+            Integer seed = (Integer) Params.getValue(input, RipleysKProcessFactory.seed,
+                    RipleysKProcessFactory.seed.sample);
+
+            monitor.setTask(Text.text("Processing ..."));
+            monitor.progress(25.0f);
+
+            if (monitor.isCanceled()) {
+                return null; // user has canceled this operation
+            }
+
+            // start process
+            String typeName = inputFeatures.getSchema().getTypeName();
+            RipleysKProcessResult processResult = null;
+            try {
+                RipleysKOperation process = new RipleysKOperation();
+                process.setNumberOfBands(numberOfBands);
+                process.setBeginDistance(beginDistance);
+                process.setDistanceIncrement(distanceIncrement);
+                process.setEdgeCorrection(edgeCorrection);
+                process.setPermutations(permutations);
+                process.setSeed(seed.longValue());
+
+                RipleysK ret = process.execute(inputFeatures);
+                processResult = new RipleysKProcessResult(typeName, ret);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, e.getMessage(), e);
+                processResult = new RipleysKProcessResult(typeName, null);
+            }
+            // end process
+
+            monitor.setTask(Text.text("Encoding result"));
+            monitor.progress(90.0f);
+
+            Map<String, Object> resultMap = new HashMap<String, Object>();
+            resultMap.put(RipleysKProcessFactory.RESULT.key, processResult);
+            monitor.complete(); // same as 100.0f
+
+            return resultMap;
+        } catch (Exception eek) {
+            monitor.exceptionOccurred(eek);
+            return null;
+        } finally {
+            monitor.dispose();
+        }
+    }
+
+    public static class RipleysKProcessResult {
+
+        String typeName;
+
+        @XStreamImplicit
+        List<DistanceBand> distanceBands = new ArrayList<DistanceBand>();
+
+        public RipleysKProcessResult(String typeName, RipleysK ret) {
+            this.typeName = typeName;
+
+            if (ret == null) {
+                return;
+            }
+
+            for (int b = 0; b < ret.getBandCount(); b++) {
+                distanceBands.add(new DistanceBand(ret, b));
+            }
+        }
+
+        public String getTypeName() {
+            return typeName;
+        }
+
+        public void setTypeName(String typeName) {
+            this.typeName = typeName;
+        }
+
+        public List<DistanceBand> getDistanceBands() {
+            return distanceBands;
+        }
+
+        public void setDistanceBands(List<DistanceBand> distanceBands) {
+            this.distanceBands = distanceBands;
+        }
+
+        @Override
+        public String toString() {
+            final String separator = System.getProperty("line.separator");
+
+            StringBuffer sb = new StringBuffer();
+            sb.append("TypeName: ").append(typeName).append(separator);
+            for (DistanceBand distanceBand : distanceBands) {
+                sb.append(distanceBand.toString()).append(separator);
+            }
+
+            return sb.toString();
+        }
+
+        public static class DistanceBand {
+
+            String distance;
+
+            String expected_L;
+
+            String observed_L;
+
+            String difference;
+
+            String low_Envelope;
+
+            String high_Envelope;
+
+            public DistanceBand(RipleysK ret, int band) {
+                this.distance = FormatUtils.format(ret.getDistance(band));
+                this.expected_L = FormatUtils.format(ret.getExpectedL(band));
+                this.observed_L = FormatUtils.format(ret.getObservedL(band));
+                this.difference = FormatUtils.format(ret.getDifference(band));
+                this.low_Envelope = FormatUtils.format(ret.getLowerEnvelope(band));
+                this.high_Envelope = FormatUtils.format(ret.getUpperEnvelope(band));
+            }
+
+            public String getDistance() {
+                return distance;
+            }
+
+            public void setDistance(String distance) {
+                this.distance = distance;
+            }
+
+            public String getExpected_L() {
+                return expected_L;
+            }
+
+            public void setExpected_L(String expected_L) {
+                this.expected_L = expected_L;
+            }
+
+            public String getObserved_L() {
+                return observed_L;
+            }
+
+            public void setObserved_L(String observed_L) {
+                this.observed_L = observed_L;
+            }
+
+            public String getDifference() {
+                return difference;
+            }
+
+            public void setDifference(String difference) {
+                this.difference = difference;
+            }
+
+            public String getLow_Envelope() {
+                return low_Envelope;
+            }
+
+            public void setLow_Envelope(String low_Envelope) {
+                this.low_Envelope = low_Envelope;
+            }
+
+            public String getHigh_Envelope() {
+                return high_Envelope;
+            }
+
+            public void setHigh_Envelope(String high_Envelope) {
+                this.high_Envelope = high_Envelope;
+            }
+
+            @Override
+            public String toString() {
+                return "Distance: " + distance + ", Expected L: " + expected_L + ", Observed L: "
+                        + observed_L + ", Low Envelope: " + low_Envelope + ", High Envelope: "
+                        + high_Envelope;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import org.geotools.data.Parameter;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.NameImpl;
+import org.geotools.process.Process;
+import org.geotools.process.spatialstatistics.RipleysKProcess.RipleysKProcessResult;
+import org.geotools.util.logging.Logging;
+import org.opengis.util.InternationalString;
+
+/**
+ * RipleysKProcessFactory
+ * 
+ * @author Minpa Lee, MangoSystem
+ * 
+ * @source $URL$
+ */
+public class RipleysKProcessFactory extends SpatialStatisticsProcessFactory {
+    protected static final Logger LOGGER = Logging.getLogger(RipleysKProcessFactory.class);
+
+    private static final String PROCESS_NAME = "RipleysK";
+
+    /*
+     * RipleysK(SimpleFeatureCollection inputFeatures, Integer numberOfBands, Double beginDistance, Double distanceIncrement,
+     * Boolean edgeCorrection, Integer permutations, Integer seed) : RipleysK
+     */
+
+    public RipleysKProcessFactory() {
+        super(new NameImpl(NAMESPACE, PROCESS_NAME));
+    }
+
+    @Override
+    public Process create() {
+        return new RipleysKProcess(this);
+    }
+
+    @Override
+    public InternationalString getTitle() {
+        return getResource("RipleysK.title");
+    }
+
+    @Override
+    public InternationalString getDescription() {
+        return getResource("RipleysK.description");
+    }
+
+    /** inputFeatures */
+    public static final Parameter<SimpleFeatureCollection> inputFeatures = new Parameter<SimpleFeatureCollection>(
+            "inputFeatures", SimpleFeatureCollection.class,
+            getResource("RipleysK.inputFeatures.title"),
+            getResource("RipleysK.inputFeatures.description"), true, 1, 1, null, null);
+
+    /** numberOfBands */
+    public static final Parameter<Integer> numberOfBands = new Parameter<Integer>(
+            "numberOfBands", Integer.class, getResource("RipleysK.numberOfBands.title"),
+            getResource("RipleysK.numberOfBands.description"), false, 0, 1, Integer.valueOf(10),
+            null);
+
+    /** beginDistance */
+    public static final Parameter<Double> beginDistance = new Parameter<Double>(
+            "beginDistance", Double.class, getResource("RipleysK.beginDistance.title"),
+            getResource("RipleysK.beginDistance.description"), false, 0, 1, Double.valueOf(0.0),
+            null);
+
+    /** distanceIncrement */
+    public static final Parameter<Double> distanceIncrement = new Parameter<Double>(
+            "distanceIncrement", Double.class, getResource("RipleysK.distanceIncrement.title"),
+            getResource("RipleysK.distanceIncrement.description"), false, 0, 1,
+            Double.valueOf(0.0), null);
+
+    /** edgeCorrection */
+    public static final Parameter<Boolean> edgeCorrection = new Parameter<Boolean>(
+            "edgeCorrection", Boolean.class, getResource("RipleysK.edgeCorrection.title"),
+            getResource("RipleysK.edgeCorrection.description"), false, 0, 1, Boolean.FALSE, null);
+
+    /** permutations */
+    public static final Parameter<Integer> permutations = new Parameter<Integer>("permutations",
+            Integer.class, getResource("RipleysK.permutations.title"),
+            getResource("RipleysK.permutations.description"), false, 0, 1, Integer.valueOf(9),
+            null);
+
+    /** seed */
+    public static final Parameter<Integer> seed = new Parameter<Integer>("seed", Integer.class,
+            getResource("RipleysK.seed.title"), getResource("RipleysK.seed.description"), false,
+            0, 1, Integer.valueOf(0), null);
+
+    @Override
+    protected Map<String, Parameter<?>> getParameterInfo() {
+        HashMap<String, Parameter<?>> parameterInfo = new LinkedHashMap<String, Parameter<?>>();
+        parameterInfo.put(inputFeatures.key, inputFeatures);
+        parameterInfo.put(numberOfBands.key, numberOfBands);
+        parameterInfo.put(beginDistance.key, beginDistance);
+        parameterInfo.put(distanceIncrement.key, distanceIncrement);
+        parameterInfo.put(edgeCorrection.key, edgeCorrection);
+        parameterInfo.put(permutations.key, permutations);
+        parameterInfo.put(seed.key, seed);
+        return parameterInfo;
+    }
+
+    /** result */
+    public static final Parameter<RipleysKProcessResult> RESULT = new Parameter<RipleysKProcessResult>(
+            "result", RipleysKProcessResult.class, getResource("RipleysK.result.title"),
+            getResource("RipleysK.result.description"));
+
+    static final Map<String, Parameter<?>> resultInfo = new TreeMap<String, Parameter<?>>();
+    static {
+        resultInfo.put(RESULT.key, RESULT);
+    }
+
+    @Override
+    protected Map<String, Parameter<?>> getResultInfo(Map<String, Object> parameters)
+            throws IllegalArgumentException {
+        return Collections.unmodifiableMap(resultInfo);
+    }
+
+}
@@ -17,13 +17,21 @@
 package org.geotools.process.spatialstatistics.autocorrelation;
 
 import java.io.File;
+import java.nio.charset.Charset;
 import java.util.logging.Logger;
 
+import org.geotools.process.spatialstatistics.core.AbstractSpatialWeightMatrix.SpatialWeightMatrixType;
+import org.geotools.process.spatialstatistics.core.ConditionalPermutation;
 import org.geotools.process.spatialstatistics.core.DistanceFactory;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
+import org.geotools.process.spatialstatistics.core.SpatialWeightMatrixResult;
+import org.geotools.process.spatialstatistics.core.SpatialWeightsCache;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
 import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
 import org.geotools.process.spatialstatistics.operations.GeneralOperation;
+import org.geotools.process.spatialstatistics.storage.DataStoreFactory;
 import org.geotools.util.logging.Logging;
 
 /**
@@ -46,6 +54,16 @@ public abstract class AbstractStatisticsOperation extends GeneralOperation {
 
     private File spatialWeightsFile = null;
 
+    private SpatialWeightMatrixResult spatialWeights = null;
+
+    private SpatialWeightsCache weightsCache = null;
+
+    private int parallelism = 1;
+
+    private int permutations = 0;
+
+    private long permutationSeed = ConditionalPermutation.DEFAULT_SEED;
+
     protected final DistanceFactory factory = DistanceFactory.newInstance();
 
     public void setDistanceType(DistanceMethod distanceType) {
@@ -80,6 +98,56 @@ public abstract class AbstractStatisticsOperation extends GeneralOperation {
         return spatialWeightsFile;
     }
 
+    /**
+     * Sets a preloaded weights matrix used with {@link SpatialConcept#SPATIALWEIGHTSFROMFILE}, so
+     * that several statistics can share weights without reading the file again.
+     */
+    public void setSpatialWeights(SpatialWeightMatrixResult spatialWeights) {
+        this.spatialWeights = spatialWeights;
+    }
+
+    public SpatialWeightMatrixResult getSpatialWeights() {
+        return spatialWeights;
+    }
+
+    /**
+     * Returns the weights for {@link SpatialConcept#SPATIALWEIGHTSFROMFILE}, loading the spatial
+     * weights file on first use, or null for the distance based concepts.
+     */
+    protected SpatialWeightMatrixResult loadSpatialWeights() {
+        if (spatialConceptType != SpatialConcept.SPATIALWEIGHTSFROMFILE) {
+            return null;
+        }
+
+        if (spatialWeights == null) {
+            if (spatialWeightsFile == null) {
+                throw new IllegalArgumentException("spatialWeightsFile is required!");
+            }
+
+            SpatialWeightMatrixResult loaded = new SpatialWeightMatrixResult(
+                    SpatialWeightMatrixType.Distance);
+            Charset charset = Charset.forName(DataStoreFactory.DEFAULT_CHARSET);
+            if (!loaded.load(spatialWeightsFile, charset)) {
+                throw new IllegalArgumentException("Cannot load spatial weights file: "
+                        + spatialWeightsFile.getPath());
+            }
+            spatialWeights = loaded;
+        }
+        return spatialWeights;
+    }
+
+    /**
+     * Sets the cache used to share distance based weights between executions on the same
+     * features, or null to always rebuild them.
+     */
+    public void setWeightsCache(SpatialWeightsCache weightsCache) {
+        this.weightsCache = weightsCache;
+    }
+
+    public SpatialWeightsCache getWeightsCache() {
+        return weightsCache;
+    }
+
     public void setSpatialConceptType(SpatialConcept spatialConcept) {
         this.spatialConceptType = spatialConcept;
     }
@@ -88,4 +156,51 @@ public abstract class AbstractStatisticsOperation extends GeneralOperation {
         return spatialConceptType;
     }
 
+    /**
+     * Sets the number of worker threads used for per-feature statistics.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    protected void computeFeatures(int featureCount, ParallelRange.Task task) {
+        int threads = parallelism <= 0 ? ParallelRange.getDefaultParallelism() : parallelism;
+        ParallelRange.execute(threads, featureCount, task);
+    }
+
+    /**
+     * Sets the number of conditional permutations used for the pseudo p-values of the local
+     * statistics. 0 (the default) skips the permutation test.
+     */
+    public void setPermutations(int permutations) {
+        this.permutations = permutations;
+    }
+
+    public int getPermutations() {
+        return permutations;
+    }
+
+    /**
+     * Sets the seed of the permutation test; the same seed always gives the same pseudo p-values.
+     */
+    public void setPermutationSeed(long permutationSeed) {
+        this.permutationSeed = permutationSeed;
+    }
+
+    public long getPermutationSeed() {
+        return permutationSeed;
+    }
+
+    protected double[] computePseudoPValues(SparseWeightMatrix weights,
+            ConditionalPermutation.Statistic statistic) {
+        ConditionalPermutation permutation = new ConditionalPermutation(permutations,
+                permutationSeed);
+        permutation.setParallelism(parallelism);
+        return permutation.execute(weights, statistic);
+    }
+
 }
@@ -23,7 +23,10 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.FormatUtils;
-import org.geotools.process.spatialstatistics.core.SpatialEvent;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.PointKdTree;
+import org.geotools.process.spatialstatistics.core.PointKdTree.NeighborHeap;
+import org.geotools.process.spatialstatistics.core.SpatialEventStore;
 import org.geotools.process.spatialstatistics.core.SpatialWeightMatrix2;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
@@ -32,10 +35,12 @@ import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.filter.Filter;
 
 /**
- * Calculates a Focal Location Quotients (Focal LQ).
+ * Calculates a Focal Location Quotients (Focal LQ). <br>
+ * The focal window of a feature is either every feature within the distance band or, when a
+ * number of neighbors is set, the feature and its k nearest neighbors. Windows are found with the
+ * KD-tree of the weights matrix, so the focal sums only visit the features inside the window.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -60,6 +65,20 @@ public class FocalLQOperation extends AbstractStatisticsOperation {
 
     double[] dcZValue;
 
+    private int numberOfNeighbors = 0;
+
+    public int getNumberOfNeighbors() {
+        return numberOfNeighbors;
+    }
+
+    /**
+     * Sets the size of an adaptive focal window: the feature and its k nearest neighbors. 0 (the
+     * default) uses the fixed distance band.
+     */
+    public void setNumberOfNeighbors(int numberOfNeighbors) {
+        this.numberOfNeighbors = numberOfNeighbors;
+    }
+
     public FocalLQOperation() {
         this.setSpatialConceptType(SpatialConcept.FIXEDDISTANCEBAND);
         this.setStandardizationType(StandardizationMethod.NONE);
@@ -73,7 +92,8 @@ public class FocalLQOperation extends AbstractStatisticsOperation {
         swMatrix.distanceBandWidth = this.getDistanceBand();
         swMatrix.buildWeightMatrix(inputFeatures, fieldName1, fieldName2, this.getDistanceType());
 
-        int featureCount = swMatrix.Events.size();
+        final SpatialEventStore events = swMatrix.getEventStore();
+        final int featureCount = events.size();
 
         // Calculate a spatial LQ for each feature in the data set.
         dcLocalLQ = new double[featureCount];
@@ -85,47 +105,92 @@ public class FocalLQOperation extends AbstractStatisticsOperation {
         final double dXY = swMatrix.dZSum / swMatrix.dPopSum;
 
         // # Calculate LQ for each feature i.
-        for (int i = 0; i < featureCount; i++) {
-            SpatialEvent curE = swMatrix.Events.get(i);
-
-            // # Initialize working variables.
-            double dLocalObsSum = 0.0; // All Count
-            double dLocalPopSum = 0.0; // Count
-
-            // # Look for local neighbors
-            for (int j = 0; j < featureCount; j++) {
-                SpatialEvent destE = swMatrix.Events.get(j);
-
-                if (swMatrix.distanceBandWidth > 0) {
-                    // apply search radius
-                    double dDist = factory.getDistance(curE, destE, getDistanceType());
-                    if (dDist <= swMatrix.distanceBandWidth) {
-                        dLocalObsSum += destE.weight;
-                        dLocalPopSum += destE.population;
-                    }
-                } else {
-                    // apply all features
-                    dLocalObsSum += destE.weight;
-                    dLocalPopSum += destE.population;
+        computeFeatures(featureCount, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                FocalSum focalSum = new FocalSum(events);
+                NeighborHeap heap = numberOfNeighbors > 0 ? new NeighborHeap(numberOfNeighbors)
+                        : null;
+                for (int i = start; i < end; i++) {
+                    focalSum.clear();
+                    sumFocalWindow(i, focalSum, heap);
+                    computeFocalLQ(i, dXY, focalSum.obsSum, focalSum.popSum);
                 }
             }
+        });
+
+        // global LQ += ABS(local lq)
+        for (int i = 0; i < featureCount; i++) {
+            locationQuotient += Math.abs(dcLocalLQ[i]);
+        }
 
-            double dxy = dLocalPopSum == 0.0 ? 0.0 : dLocalObsSum / dLocalPopSum; // y / x
-            double tmpval2 = dLocalObsSum * dXY; // x * Y/X
-            double tmpval4 = 0.0;
-            if (curE.weight != 0.0) {
-                tmpval4 = curE.population / curE.weight; // y / x
+        return buildFeatureCollection(inputFeatures);
+    }
+
+    private void sumFocalWindow(int i, FocalSum focalSum, NeighborHeap heap) {
+        SpatialEventStore events = swMatrix.getEventStore();
+        PointKdTree spatialIndex = swMatrix.getSpatialIndex();
+        double x = events.getX(i);
+        double y = events.getY(i);
+
+        if (heap != null) {
+            // adaptive window: the feature and its k nearest neighbors
+            focalSum.visit(i, 0.0);
+            spatialIndex.nearest(x, y, i, getDistanceType(), heap);
+            for (int k = 0; k < heap.size(); k++) {
+                focalSum.visit(heap.getIndex(k), heap.getDistance(k));
             }
+        } else if (swMatrix.distanceBandWidth > 0) {
+            // apply search radius
+            spatialIndex.query(x, y, swMatrix.distanceBandWidth, getDistanceType(), focalSum);
+        } else {
+            // apply all features
+            focalSum.obsSum = swMatrix.dZSum;
+            focalSum.popSum = swMatrix.dPopSum;
+        }
+    }
 
-            localLQ[i] = validateDouble(tmpval4 / dXY);
-            dcLocalLQ[i] = validateDouble(dxy / dXY);
-            dcZValue[i] = validateDouble((dLocalPopSum - tmpval2) / Math.sqrt(tmpval2));
+    private void computeFocalLQ(int i, double dXY, double dLocalObsSum, double dLocalPopSum) {
+        SpatialEventStore events = swMatrix.getEventStore();
+        double weight = events.getWeight(i);
 
-            // global LQ += ABS(local lq)
-            locationQuotient += Math.abs(dcLocalLQ[i]);
+        double dxy = dLocalPopSum == 0.0 ? 0.0 : dLocalObsSum / dLocalPopSum; // y / x
+        double tmpval2 = dLocalObsSum * dXY; // x * Y/X
+        double tmpval4 = 0.0;
+        if (weight != 0.0) {
+            tmpval4 = events.getPopulation(i) / weight; // y / x
         }
 
-        return buildFeatureCollection(inputFeatures);
+        localLQ[i] = validateDouble(tmpval4 / dXY);
+        dcLocalLQ[i] = validateDouble(dxy / dXY);
+        dcZValue[i] = validateDouble((dLocalPopSum - tmpval2) / Math.sqrt(tmpval2));
+    }
+
+    // sums the observed and population values of the features in a focal window
+    static final class FocalSum implements PointKdTree.Visitor {
+        private final double[] weights;
+
+        private final double[] populations;
+
+        double obsSum = 0.0;
+
+        double popSum = 0.0;
+
+        FocalSum(SpatialEventStore events) {
+            this.weights = events.getWeights();
+            this.populations = events.getPopulations();
+        }
+
+        void clear() {
+            obsSum = 0.0;
+            popSum = 0.0;
+        }
+
+        @Override
+        public void visit(int index, double distance) {
+            obsSum += weights[index];
+            popSum += populations[index];
+        }
     }
 
     private double validateDouble(double val) {
@@ -153,7 +218,7 @@ public class FocalLQOperation extends AbstractStatisticsOperation {
         int idx = 0;
         SimpleFeatureIterator featureIter = null;
         try {
-            featureIter = inputFeatures.subCollection(Filter.INCLUDE).features();
+            featureIter = inputFeatures.features();
             while (featureIter.hasNext()) {
                 final SimpleFeature feature = featureIter.next();
 
@@ -21,7 +21,6 @@ import java.util.logging.Logger;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.core.SSUtils.StatEnum;
-import org.geotools.process.spatialstatistics.core.SpatialEvent;
 import org.geotools.process.spatialstatistics.core.SpatialWeightMatrix;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
@@ -51,99 +50,13 @@ public class GlobalGearysCOperation extends AbstractStatisticsOperation {
 
     public GearysC execute(SimpleFeatureCollection inputFeatures, String inputField) {
         swMatrix = new SpatialWeightMatrix(getSpatialConceptType(), getStandardizationType());
+        swMatrix.setSpatialWeights(loadSpatialWeights());
+        swMatrix.setWeightsCache(getWeightsCache());
         swMatrix.distanceBandWidth = this.getDistanceBand();
         swMatrix.buildWeightMatrix(inputFeatures, inputField, this.getDistanceType());
 
-        double dSumWC = 0.0; // summation of weighted co-variance (dWij * dCij)
-        double dSumW = 0.0; // summation of all weights (dWij)
-        double dM2 = 0.0;
-        double dM4 = 0.0;
-        double dSumS1 = 0.0;
-        double dSumS2 = 0.0;
-
-        // # Calculate sample mean.
-        double n = swMatrix.Events.size() * 1.0;
-        double dZMean = swMatrix.dZSum / n;
-
-        for (SpatialEvent curE : swMatrix.Events) {
-            double dWijS2Sum = 0.0;
-            double dWjiS2Sum = 0.0;
-            double dZiDeviation = curE.weight - dZMean; // Calculate deviation from mean
-            dM2 += Math.pow(dZiDeviation, 2.0);
-            dM4 += Math.pow(dZiDeviation, 4.0);
-
-            // # Look for i's local neighbors
-            for (SpatialEvent destE : swMatrix.Events) {
-                if (curE.oid == destE.oid)
-                    continue;
-
-                // For Geary, the cross-product uses the actual values themselves at each location
-                // (xi - xj)^2
-                double dCij = Math.pow(curE.weight - destE.weight, 2.0);
-
-                // Calculate the weight (dWij)
-                double dWij = 0.0;
-                double dWji = 0.0;
-
-                if (this.getSpatialConceptType() == SpatialConcept.POLYGONCONTIGUITY) {
-                    dWij = 0.0;
-                    // if (destE is neighbor ) dWij = 1.0;
-                    dWji = dWij;
-                } else {
-                    dWij = swMatrix.getWeight(curE, destE);
-                    dWji = dWij;
-                }
-
-                if (getStandardizationType() == StandardizationMethod.ROW) {
-                    dWij = swMatrix.standardizeWeight(curE, dWij);
-                    dWji = swMatrix.standardizeWeight(destE, dWji);
-                }
-
-                // Create sums needed to calculate
-                dSumWC += dWij * dCij;
-                dSumW += dWij;
-                dWijS2Sum += dWij;
-                dWjiS2Sum += dWji;
-                dSumS1 += Math.pow(dWij + dWji, 2.0);
-            }
-            dSumS2 += Math.pow(dWijS2Sum + dWjiS2Sum, 2.0);
-        }
-        dSumS1 = 0.5 * dSumS1;
-
-        dM2 = dM2 / (n - 1.0);
-        dM4 = dM4 / (n - 1.0);
-
-        // Geary’s c ranges from zero to infinity, with an expected value of 1 under no autocorrelation.
-        // Values from zero to one indicate positive spatial autocorrelation,
-        // values above 1 negative spatial autocorrelation.
-        double b2 = dM4 / (dM2 * dM2);
-        double dExpected = 1.0;
-
-        if (dSumW <= 0.0)
-            return new GearysC();
-
-        // Finally, we can calculate
-        double dGearysC = dSumWC / (2.0 * dM2 * dSumW);
-
-        // variance of c
-        double W2 = Math.pow(dSumW, 2.0);
-        double n2 = Math.pow(n, 2.0);
-        double div = n * (n - 2.0) * (n - 3.0);
-        double A = ((n - 1) * dSumS1 * (n2 - (3.0 * n) + 3.0 - ((n - 1) * b2))) / (div * W2);
-        double B = ((n - 1) * dSumS2 * (n2 + (3.0 * n) - 6.0 - ((n2 - n + 2) * b2)))
-                / (4.0 * div * W2);
-        double C = (n2 - 3.0 - (Math.pow(n - 1, 2.0) * b2)) / div;
-
-        double rVariance = A - B + C;
-
-        // finally build result
-        GearysC gearysC = new GearysC(dGearysC, dExpected, rVariance);
-        gearysC.setConceptualization(getSpatialConceptType());
-        gearysC.setDistanceMethod(getDistanceType());
-        gearysC.setRowStandardization(getStandardizationType());
-        gearysC.setDistanceThreshold(swMatrix.distanceBandWidth);
-
-        return gearysC;
+        // S0, S1, S2 and the cross-products in one pass over the sparse weights
+        return new GlobalStatisticsKernel(swMatrix, this).getGearysC();
     }
 
     public static final class GearysC {
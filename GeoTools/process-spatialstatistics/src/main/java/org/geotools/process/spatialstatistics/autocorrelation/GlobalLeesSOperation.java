@@ -21,7 +21,7 @@ import java.util.logging.Logger;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.core.SSUtils.StatEnum;
-import org.geotools.process.spatialstatistics.core.SpatialEvent;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
 import org.geotools.process.spatialstatistics.core.SpatialWeightMatrix;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
@@ -49,6 +49,8 @@ public class GlobalLeesSOperation extends AbstractStatisticsOperation {
 
     public LeesS execute(SimpleFeatureCollection inputFeatures, String inputField) {
         swMatrix = new SpatialWeightMatrix(getSpatialConceptType(), getStandardizationType());
+        swMatrix.setSpatialWeights(loadSpatialWeights());
+        swMatrix.setWeightsCache(getWeightsCache());
         swMatrix.distanceBandWidth = this.getDistanceBand();
         swMatrix.buildWeightMatrix(inputFeatures, inputField, this.getDistanceType());
 
@@ -62,22 +64,28 @@ public class GlobalLeesSOperation extends AbstractStatisticsOperation {
         double dSumS2 = 0.0;
 
         // clculate sample mean.
-        double n = swMatrix.Events.size();
+        final int featureCount = swMatrix.getEventCount();
+        final double[] values = swMatrix.getEventStore().getWeights();
+        double n = featureCount;
         double dZMean = swMatrix.dZSum / n;
 
-        for (SpatialEvent curE : swMatrix.Events) {
+        for (int i = 0; i < featureCount; i++) {
             double dWijS2Sum = 0.0;
             double dWjiS2Sum = 0.0;
             double dWCijSum = 0.0;
-            double dZiDeviation = curE.weight - dZMean;
+            double dZiDeviation = values[i] - dZMean;
             dM2 += Math.pow(dZiDeviation, 2.0);
             dM4 += Math.pow(dZiDeviation, 4.0);
 
-            for (SpatialEvent destE : swMatrix.Events) {
-                if (curE.oid == destE.oid)
+            SparseWeightMatrix rows = swMatrix.getWeightMatrix();
+            int[] neighbors = rows == null ? swMatrix.getNeighbors(i) : rows.getColumns();
+            int end = rows == null ? neighbors.length : rows.getRowEnd(i);
+            for (int k = rows == null ? 0 : rows.getRowStart(i); k < end; k++) {
+                int j = neighbors[k];
+                if (i == j)
                     continue;
 
-                double dCij = destE.weight - dZMean;
+                double dCij = values[j] - dZMean;
 
                 double dWij = 0.0;
                 double dWji = 0.0;
@@ -86,13 +94,13 @@ public class GlobalLeesSOperation extends AbstractStatisticsOperation {
                     // if (destE is neighbor ) dWij = 1.0;
                     dWji = dWij;
                 } else {
-                    dWij = swMatrix.getWeight(curE, destE);
+                    dWij = swMatrix.getWeight(i, j);
                     dWji = dWij;
                 }
 
                 if (getStandardizationType() == StandardizationMethod.ROW) {
-                    dWij = swMatrix.standardizeWeight(curE, dWij);
-                    dWji = swMatrix.standardizeWeight(destE, dWji);
+                    dWij = swMatrix.standardizeWeight(i, dWij);
+                    dWji = swMatrix.standardizeWeight(j, dWji);
                 }
 
                 // Create sums needed to calculate
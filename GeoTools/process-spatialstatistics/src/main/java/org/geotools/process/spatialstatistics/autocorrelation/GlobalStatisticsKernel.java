@@ -0,0 +1,438 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.autocorrelation;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalGStatisticOperation.GeneralG;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalGearysCOperation.GearysC;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalMoranIStatisticOperation.MoransI;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
+import org.geotools.process.spatialstatistics.core.SpatialEventStore;
+import org.geotools.process.spatialstatistics.core.SpatialWeightMatrix;
+import org.geotools.process.spatialstatistics.core.TiledWeightMatrix;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
+
+/**
+ * Accumulates in a single pass over the sparse weights every sum needed by the global Moran's
+ * I, Geary's c and General G statistics: S0, S1, S2, the three cross-products and the moments of
+ * the values.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+class GlobalStatisticsKernel {
+
+    private final AbstractStatisticsOperation settings;
+
+    private final double distanceThreshold;
+
+    private final double n;
+
+    private final double dZSum;
+
+    private final double dZ2Sum;
+
+    private final double dZ3Sum;
+
+    private final double dZ4Sum;
+
+    // sum of the squared and the 4th power deviations from the mean
+    private double dDev2Sum = 0.0;
+
+    private double dDev4Sum = 0.0;
+
+    // S0, S1 and S2
+    private double dSumW = 0.0;
+
+    private double dSumS1 = 0.0;
+
+    private double dSumS2 = 0.0;
+
+    // sum of wij * (zi - mean) * (zj - mean)
+    private double dMoranWC = 0.0;
+
+    // sum of wij * (zi - zj)^2
+    private double dGearyWC = 0.0;
+
+    // sum of wij * zi * zj
+    private double dNeighborProductSum = 0.0;
+
+    public GlobalStatisticsKernel(SpatialWeightMatrix swMatrix,
+            AbstractStatisticsOperation settings) {
+        this.settings = settings;
+        this.distanceThreshold = swMatrix.distanceBandWidth;
+        this.dZSum = swMatrix.dZSum;
+        this.dZ2Sum = swMatrix.dZ2Sum;
+        this.dZ3Sum = swMatrix.dZ3Sum;
+        this.dZ4Sum = swMatrix.dZ4Sum;
+
+        SpatialEventStore events = swMatrix.getEventStore();
+        final int size = events.size();
+        this.n = size * 1.0;
+
+        SparseWeightMatrix weights;
+        if (settings.getSpatialConceptType() == SpatialConcept.POLYGONCONTIGUITY) {
+            // contiguity weights are not supported here, every weight is zero
+            SparseWeightMatrix.Builder builder = new SparseWeightMatrix.Builder();
+            builder.ensureRowCount(size);
+            weights = builder.build();
+        } else {
+            boolean rowStandardized = settings.getStandardizationType() == StandardizationMethod.ROW;
+            weights = swMatrix.getSparseWeights(rowStandardized);
+        }
+
+        accumulate(events.getWeights(), size, weights);
+    }
+
+    /**
+     * Streams the blocks of out-of-core weights, converting the stored distances to the weights
+     * of the concept of spatial relationships. Besides the values, only the row and column sums
+     * are held in memory; row standardization reads the blocks once more, and weights that are
+     * not symmetric read every pair of linked tiles once to find the transposed links.
+     *
+     * @throws IllegalArgumentException if the concept is not supported by the weights
+     */
+    public GlobalStatisticsKernel(TiledWeightMatrix weights, SpatialEventStore events,
+            AbstractStatisticsOperation settings) throws IOException {
+        this.settings = settings;
+        this.distanceThreshold = weights.getDistanceBand();
+
+        final int size = events.size();
+        final double[] z = events.getWeights();
+        this.n = size * 1.0;
+
+        double sum = 0.0;
+        double sum2 = 0.0;
+        double sum3 = 0.0;
+        double sum4 = 0.0;
+        for (int i = 0; i < size; i++) {
+            sum += z[i];
+            sum2 += Math.pow(z[i], 2.0);
+            sum3 += Math.pow(z[i], 3.0);
+            sum4 += Math.pow(z[i], 4.0);
+        }
+        this.dZSum = sum;
+        this.dZ2Sum = sum2;
+        this.dZ3Sum = sum3;
+        this.dZ4Sum = sum4;
+
+        accumulate(z, size, weights);
+    }
+
+    private void accumulate(double[] z, int size, TiledWeightMatrix weights) throws IOException {
+        final SpatialConcept spatialConcept = settings.getSpatialConceptType();
+        weights.checkSpatialConcept(spatialConcept);
+
+        final boolean rowStandardized = settings.getStandardizationType()
+                == StandardizationMethod.ROW;
+        final double dZMean = dZSum / n;
+
+        for (int i = 0; i < size; i++) {
+            double dZiDeviation = z[i] - dZMean;
+            dDev2Sum += Math.pow(dZiDeviation, 2.0);
+            dDev4Sum += Math.pow(dZiDeviation, 4.0);
+        }
+
+        // row standardization divides the weights of row i by its sum
+        double[] weightSums = null;
+        if (rowStandardized) {
+            weightSums = new double[size];
+            for (int tile = 0; tile < weights.getTileCount(); tile++) {
+                TiledWeightMatrix.Block block = weights.readBlock(tile);
+                final int[] offsets = block.getWeights().getRowOffsets();
+                final double[] values = block.getWeights().getWeights();
+                for (int r = 0; r < block.size(); r++) {
+                    double dRowSum = 0.0;
+                    for (int k = offsets[r]; k < offsets[r + 1]; k++) {
+                        dRowSum += weights.toWeight(spatialConcept, values[k]);
+                    }
+                    weightSums[block.getRow(r)] = dRowSum;
+                }
+            }
+        }
+
+        final boolean symmetric = weights.isSymmetric();
+        double[] rowSums = new double[size];
+        double[] colSums = new double[size];
+        for (int tile = 0; tile < weights.getTileCount(); tile++) {
+            TiledWeightMatrix.Block block = weights.readBlock(tile);
+            final int[] offsets = block.getWeights().getRowOffsets();
+            final int[] columns = block.getWeights().getColumns();
+            final double[] values = block.getWeights().getWeights();
+            for (int r = 0; r < block.size(); r++) {
+                int i = block.getRow(r);
+                double zi = z[i];
+                double dZiDeviation = zi - dZMean;
+
+                double dMoranSum = 0.0;
+                double dGearySum = 0.0;
+                double dProductSum = 0.0;
+                double dRowSum = 0.0;
+                for (int k = offsets[r]; k < offsets[r + 1]; k++) {
+                    int j = columns[k];
+                    double dWij = getWeight(weights, i, values[k], weightSums);
+                    double zj = z[j];
+                    double diff = zi - zj;
+
+                    dMoranSum += dWij * (zj - dZMean);
+                    dGearySum += dWij * diff * diff;
+                    dProductSum += dWij * zj;
+                    dRowSum += dWij;
+                    colSums[j] += dWij;
+                    dSumS1 += dWij * dWij;
+                    if (symmetric) {
+                        // the link (j, i) stores the same value
+                        dSumS1 += dWij * getWeight(weights, j, values[k], weightSums);
+                    }
+                }
+
+                dMoranWC += dZiDeviation * dMoranSum;
+                dGearyWC += dGearySum;
+                dNeighborProductSum += zi * dProductSum;
+                dSumW += dRowSum;
+                rowSums[i] = dRowSum;
+            }
+        }
+
+        if (!symmetric) {
+            dSumS1 += sumTransposedProducts(weights, weightSums);
+        }
+
+        for (int i = 0; i < size; i++) {
+            dSumS2 += Math.pow(rowSums[i] + colSums[i], 2.0);
+        }
+    }
+
+    // weight of a stored value of row i
+    private double getWeight(TiledWeightMatrix weights, int i, double value, double[] weightSums) {
+        double dWeight = weights.toWeight(settings.getSpatialConceptType(), value);
+        return weightSums == null ? dWeight : dWeight / weightSums[i];
+    }
+
+    /**
+     * Returns the sum of wij * wji over the links whose transposed link exists. The links of a
+     * tile are matched with the links of the same and of every later tile they reach, each of
+     * these blocks being read once, so the blocks are never looked up at random.
+     */
+    private double sumTransposedProducts(TiledWeightMatrix weights, double[] weightSums)
+            throws IOException {
+        final int tileCount = weights.getTileCount();
+        final boolean[] reached = new boolean[tileCount];
+
+        double sum = 0.0;
+        for (int tile = 0; tile < tileCount; tile++) {
+            TiledWeightMatrix.Block block = weights.readBlock(tile);
+            final int[] offsets = block.getWeights().getRowOffsets();
+            final int[] columns = block.getWeights().getColumns();
+            final double[] values = block.getWeights().getWeights();
+
+            Arrays.fill(reached, false);
+            for (int k = 0; k < offsets[block.size()]; k++) {
+                int other = weights.getTile(columns[k]);
+                if (other >= tile) {
+                    reached[other] = true;
+                }
+            }
+
+            for (int other = tile; other < tileCount; other++) {
+                if (!reached[other]) {
+                    continue;
+                }
+
+                TiledWeightMatrix.Block transposed = other == tile ? block : weights
+                        .readBlock(other);
+                SparseWeightMatrix local = transposed.getWeights();
+                for (int r = 0; r < block.size(); r++) {
+                    int i = block.getRow(r);
+                    for (int k = offsets[r]; k < offsets[r + 1]; k++) {
+                        int j = columns[k];
+                        if (weights.getTile(j) != other) {
+                            continue;
+                        }
+
+                        int t = transposed.indexOf(j);
+                        if (!local.isNeighbor(t, i)) {
+                            continue;
+                        }
+
+                        double product = getWeight(weights, i, values[k], weightSums)
+                                * getWeight(weights, j, local.getWeight(t, i), weightSums);
+
+                        // a pair of two tiles is only visited from the first one
+                        sum += other == tile ? product : 2.0 * product;
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+    private void accumulate(double[] z, int size, SparseWeightMatrix weights) {
+        final int[] offsets = weights.getRowOffsets();
+        final int[] columns = weights.getColumns();
+        final double[] values = weights.getWeights();
+        final double dZMean = dZSum / n;
+
+        // S2 needs the column sums, wji is looked up in row j
+        double[] rowSums = new double[size];
+        double[] colSums = new double[size];
+        for (int i = 0; i < size; i++) {
+            double zi = z[i];
+            double dZiDeviation = zi - dZMean;
+            dDev2Sum += Math.pow(dZiDeviation, 2.0);
+            dDev4Sum += Math.pow(dZiDeviation, 4.0);
+
+            double dMoranSum = 0.0;
+            double dGearySum = 0.0;
+            double dProductSum = 0.0;
+            double dRowSum = 0.0;
+            for (int k = offsets[i], end = offsets[i + 1]; k < end; k++) {
+                int j = columns[k];
+                double dWij = values[k];
+                double zj = z[j];
+                double diff = zi - zj;
+
+                dMoranSum += dWij * (zj - dZMean);
+                dGearySum += dWij * diff * diff;
+                dProductSum += dWij * zj;
+                dRowSum += dWij;
+                colSums[j] += dWij;
+
+                // S1 = sum of wij^2 + sum of wij * wji, one-way links included
+                dSumS1 += dWij * (dWij + weights.getWeight(j, i));
+            }
+
+            dMoranWC += dZiDeviation * dMoranSum;
+            dGearyWC += dGearySum;
+            dNeighborProductSum += zi * dProductSum;
+            dSumW += dRowSum;
+            rowSums[i] = dRowSum;
+        }
+
+        for (int i = 0; i < size; i++) {
+            dSumS2 += Math.pow(rowSums[i] + colSums[i], 2.0);
+        }
+    }
+
+    public MoransI getMoransI() {
+        if (dSumW <= 0.0)
+            return new MoransI();
+
+        MoransI moransI = moransI(n, dDev2Sum, dDev4Sum, dSumW, dSumS1, dSumS2, dMoranWC);
+        moransI.setConceptualization(settings.getSpatialConceptType());
+        moransI.setDistanceMethod(settings.getDistanceType());
+        moransI.setRowStandardization(settings.getStandardizationType());
+        moransI.setDistanceThreshold(distanceThreshold);
+        return moransI;
+    }
+
+    /**
+     * Global Moran's I and its variance under the randomization null hypothesis, from the sums
+     * accumulated over the weights.
+     */
+    static MoransI moransI(double n, double dDev2Sum, double dDev4Sum, double dSumW,
+            double dSumS1, double dSumS2, double dMoranWC) {
+        double dM2 = dDev2Sum / n; // # standard deviation
+        double dM4 = dDev4Sum / n;
+
+        double dB2 = dM4 / (dM2 * dM2); // # sample kurtosis
+        double dExpected = -1.0 / (n - 1.0); // # Expected Moran's I
+
+        // This Z Score is based on the calculated RANDOMIZATION null hypothesis.
+        double dMoranI = dMoranWC / (dM2 * dSumW);
+
+        double dDiv = ((n - 1.0) * (n - 2.0) * (n - 3.0) * (Math.pow(dSumW, 2.0)));
+        double dTmp1 = n
+                * ((Math.pow(n, 2.0) - (3.0 * n) + 3.0) * dSumS1 - (n * dSumS2) + 3.0 * (Math.pow(
+                        dSumW, 2.0)));
+        double dTmp2 = dB2
+                * ((Math.pow(n, 2.0) - n) * dSumS1 - (2.0 * n * dSumS2) + 6.0 * (Math.pow(dSumW,
+                        2.0)));
+
+        double rVariance = (dTmp1 / dDiv) - (dTmp2 / dDiv) - (Math.pow(dExpected, 2.0));
+
+        return new MoransI(dMoranI, dExpected, rVariance);
+    }
+
+    public GearysC getGearysC() {
+        double dM2 = dDev2Sum / (n - 1.0);
+        double dM4 = dDev4Sum / (n - 1.0);
+
+        double b2 = dM4 / (dM2 * dM2);
+        double dExpected = 1.0;
+
+        if (dSumW <= 0.0)
+            return new GearysC();
+
+        double dGearysC = dGearyWC / (2.0 * dM2 * dSumW);
+
+        // variance of c
+        double W2 = Math.pow(dSumW, 2.0);
+        double n2 = Math.pow(n, 2.0);
+        double div = n * (n - 2.0) * (n - 3.0);
+        double A = ((n - 1) * dSumS1 * (n2 - (3.0 * n) + 3.0 - ((n - 1) * b2))) / (div * W2);
+        double B = ((n - 1) * dSumS2 * (n2 + (3.0 * n) - 6.0 - ((n2 - n + 2) * b2)))
+                / (4.0 * div * W2);
+        double C = (n2 - 3.0 - (Math.pow(n - 1, 2.0) * b2)) / div;
+
+        double rVariance = A - B + C;
+
+        GearysC gearysC = new GearysC(dGearysC, dExpected, rVariance);
+        gearysC.setConceptualization(settings.getSpatialConceptType());
+        gearysC.setDistanceMethod(settings.getDistanceType());
+        gearysC.setRowStandardization(settings.getStandardizationType());
+        gearysC.setDistanceThreshold(distanceThreshold);
+        return gearysC;
+    }
+
+    public GeneralG getGeneralG() {
+        // sum of zi * zj over all i != j, neighbors or not
+        double dTotalProductSum = Math.pow(dZSum, 2.0) - dZ2Sum;
+
+        // # Calculate B and S working variables needed to calculate variance.
+        double dS1 = dSumS1;
+        double dS2 = dSumS2;
+        double dWijSum = dSumW;
+        double B0 = ((Math.pow(n, 2.0) + (-3.0 * n) + 3.0) * dS1) - (n * dS2)
+                + (3.0 * Math.pow(dWijSum, 2.0));
+        double B1 = -1.0
+                * (((Math.pow(n, 2.0) - n) * dS1) - (2.0 * n * dS2) + (6.0 * Math.pow(dWijSum, 2.0)));
+        double B2 = -1.0 * ((2.0 * n * dS1) - ((n + 3.0) * dS2) + (6.0 * Math.pow(dWijSum, 2.0)));
+        double B3 = (4.0 * (n - 1.0) * dS1) - (2.0 * (n + 1.0) * dS2)
+                + (8.0 * Math.pow(dWijSum, 2.0));
+        double B4 = dS1 - dS2 + Math.pow(dWijSum, 2.0);
+
+        // # Calculate Observed G, Expected G and Z Score.
+        double dGObs = dNeighborProductSum / dTotalProductSum;
+        double dGExp = dWijSum / (n * (n - 1.0));
+        double dZVar = ((((B0 * Math.pow(dZ2Sum, 2.0)) + (B1 * dZ4Sum)
+                + (B2 * Math.pow(dZSum, 2.0) * dZ2Sum) + (B3 * dZSum * dZ3Sum) + (B4 * Math.pow(
+                dZSum, 4.0))) / (Math.pow((Math.pow(dZSum, 2.0) - dZ2Sum), 2.0) * (n * (n - 1.0)
+                * (n - 2.0) * (n - 3.0)))) - Math.pow(dGExp, 2.0));
+
+        GeneralG generalG = new GeneralG(dGObs, dGExp, dZVar);
+        generalG.setConceptualization(settings.getSpatialConceptType());
+        generalG.setDistanceMethod(settings.getDistanceType());
+        generalG.setRowStandardization(settings.getStandardizationType());
+        generalG.setDistanceThreshold(distanceThreshold);
+        return generalG;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.autocorrelation;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalGStatisticOperation.GeneralG;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalGearysCOperation.GearysC;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalMoranIStatisticOperation.MoransI;
+import org.geotools.process.spatialstatistics.core.SpatialEventStore;
+import org.geotools.process.spatialstatistics.core.SpatialWeightMatrix;
+import org.geotools.process.spatialstatistics.core.TiledWeightMatrix;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Calculates the global Moran's I, Geary's c and General G statistics of a field with a single
+ * set of spatial weights and a single pass over them.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class GlobalStatisticsOperation extends AbstractStatisticsOperation {
+    protected static final Logger LOGGER = Logging.getLogger(GlobalStatisticsOperation.class);
+
+    SpatialWeightMatrix swMatrix = null;
+
+    public GlobalStatisticsOperation() {
+        // Default Setting
+        this.setDistanceType(DistanceMethod.Euclidean);
+        this.setSpatialConceptType(SpatialConcept.INVERSEDISTANCE);
+        this.setStandardizationType(StandardizationMethod.NONE);
+    }
+
+    public SpatialWeightMatrix getSpatialWeightMatrix() {
+        return swMatrix;
+    }
+
+    public GlobalStatistics execute(SimpleFeatureCollection inputFeatures, String inputField) {
+        swMatrix = new SpatialWeightMatrix(getSpatialConceptType(), getStandardizationType());
+        swMatrix.setSpatialWeights(loadSpatialWeights());
+        swMatrix.setWeightsCache(getWeightsCache());
+        swMatrix.distanceBandWidth = this.getDistanceBand();
+        swMatrix.buildWeightMatrix(inputFeatures, inputField, this.getDistanceType());
+
+        GlobalStatisticsKernel kernel = new GlobalStatisticsKernel(swMatrix, this);
+        return new GlobalStatistics(kernel.getMoransI(), kernel.getGearysC(),
+                kernel.getGeneralG());
+    }
+
+    /**
+     * Calculates the statistics over out-of-core weights built from the same features, streaming
+     * one block of weights at a time. The stored distances are converted to the weights of the
+     * concept of spatial relationships.
+     *
+     * @throws IllegalArgumentException if the concept is not supported by the weights
+     */
+    public GlobalStatistics execute(SimpleFeatureCollection inputFeatures, String inputField,
+            TiledWeightMatrix weights) throws IOException {
+        SpatialEventStore events = SpatialEventStore.load(inputFeatures, inputField);
+        if (events.size() != weights.getRowCount()) {
+            throw new IllegalArgumentException("The spatial weights have " + weights.getRowCount()
+                    + " rows but there are " + events.size() + " features");
+        }
+
+        swMatrix = null;
+        GlobalStatisticsKernel kernel = new GlobalStatisticsKernel(weights, events, this);
+        return new GlobalStatistics(kernel.getMoransI(), kernel.getGearysC(),
+                kernel.getGeneralG());
+    }
+
+    public static final class GlobalStatistics {
+
+        MoransI moransI;
+
+        GearysC gearysC;
+
+        GeneralG generalG;
+
+        public GlobalStatistics(MoransI moransI, GearysC gearysC, GeneralG generalG) {
+            this.moransI = moransI;
+            this.gearysC = gearysC;
+            this.generalG = generalG;
+        }
+
+        public MoransI getMoransI() {
+            return moransI;
+        }
+
+        public GearysC getGearysC() {
+            return gearysC;
+        }
+
+        public GeneralG getGeneralG() {
+            return generalG;
+        }
+    }
+}
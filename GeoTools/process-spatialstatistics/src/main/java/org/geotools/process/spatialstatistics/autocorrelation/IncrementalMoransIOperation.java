@@ -0,0 +1,357 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.autocorrelation;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalMoranIStatisticOperation.MoransI;
+import org.geotools.process.spatialstatistics.core.PointKdTree;
+import org.geotools.process.spatialstatistics.core.SpatialEventStore;
+import org.geotools.process.spatialstatistics.core.SpatialWeightMatrix;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Measures global Moran's I over a series of increasing distance bands. <br>
+ * The pairs of features within the largest band are collected once and grouped by the first band
+ * that contains them; the bands are then swept in order, every pair updating S0, S1, S2 and the
+ * cross-product in constant time. The z-score peaks indicate the distances at which spatial
+ * processes promoting clustering are most pronounced. <br>
+ * Weights are symmetric and not standardized; only the fixed distance band and the inverse
+ * distance concepts are supported.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class IncrementalMoransIOperation extends AbstractStatisticsOperation {
+    protected static final Logger LOGGER = Logging.getLogger(IncrementalMoransIOperation.class);
+
+    static final int DEFAULT_NUMBER_OF_BANDS = 10;
+
+    private int numberOfBands = DEFAULT_NUMBER_OF_BANDS;
+
+    private double beginDistance = 0.0;
+
+    private double distanceIncrement = 0.0;
+
+    public IncrementalMoransIOperation() {
+        // Default Setting
+        this.setDistanceType(DistanceMethod.Euclidean);
+        this.setSpatialConceptType(SpatialConcept.FIXEDDISTANCEBAND);
+        this.setStandardizationType(StandardizationMethod.NONE);
+    }
+
+    public int getNumberOfBands() {
+        return numberOfBands;
+    }
+
+    public void setNumberOfBands(int numberOfBands) {
+        this.numberOfBands = numberOfBands;
+    }
+
+    public double getBeginDistance() {
+        return beginDistance;
+    }
+
+    /**
+     * Sets the first distance band, 0 (the default) uses the maximum nearest neighbor distance so
+     * that every feature has at least one neighbor.
+     */
+    public void setBeginDistance(double beginDistance) {
+        this.beginDistance = beginDistance;
+    }
+
+    public double getDistanceIncrement() {
+        return distanceIncrement;
+    }
+
+    /**
+     * Sets the distance between two bands, 0 (the default) uses the average nearest neighbor
+     * distance.
+     */
+    public void setDistanceIncrement(double distanceIncrement) {
+        this.distanceIncrement = distanceIncrement;
+    }
+
+    public IncrementalMoransI execute(SimpleFeatureCollection inputFeatures, String inputField) {
+        SpatialConcept spatialConcept = getSpatialConceptType();
+        if (spatialConcept != SpatialConcept.FIXEDDISTANCEBAND
+                && spatialConcept != SpatialConcept.INVERSEDISTANCE
+                && spatialConcept != SpatialConcept.INVERSEDISTANCESQUARED) {
+            throw new IllegalArgumentException(spatialConcept
+                    + " is not supported by the incremental spatial autocorrelation");
+        }
+
+        if (getStandardizationType() == StandardizationMethod.ROW) {
+            throw new IllegalArgumentException(
+                    "Row standardization is not supported by the incremental spatial autocorrelation");
+        }
+
+        SpatialEventStore events = SpatialEventStore.load(inputFeatures, inputField);
+        PointKdTree spatialIndex = events.buildSpatialIndex();
+        double[] bands = buildDistanceBands(spatialIndex);
+
+        return execute(events, spatialIndex, bands);
+    }
+
+    private double[] buildDistanceBands(PointKdTree spatialIndex) {
+        factory.DistanceType = getDistanceType();
+        double[] nnDistances = spatialIndex.nearestNeighborDistances(getDistanceType());
+
+        double begin = beginDistance;
+        if (begin <= 0 || Double.isNaN(begin)) {
+            begin = factory.getThresholDistance(spatialIndex);
+        }
+
+        double increment = distanceIncrement;
+        if (increment <= 0 || Double.isNaN(increment)) {
+            double sum = 0.0;
+            int count = 0;
+            for (double nnDist : nnDistances) {
+                if (!Double.isInfinite(nnDist)) {
+                    sum += nnDist;
+                    count++;
+                }
+            }
+            increment = count == 0 ? 0.0 : sum / count;
+            if (increment <= 0) {
+                increment = begin;
+            }
+        }
+
+        double[] bands = new double[Math.max(1, numberOfBands)];
+        for (int b = 0; b < bands.length; b++) {
+            bands[b] = begin + (b * increment);
+        }
+        return bands;
+    }
+
+    private IncrementalMoransI execute(SpatialEventStore events, PointKdTree spatialIndex,
+            final double[] bands) {
+        final int size = events.size();
+        final double n = size * 1.0;
+        final double[] z = events.getWeights();
+
+        // deviations from the mean
+        double dZSum = 0.0;
+        for (int i = 0; i < size; i++) {
+            dZSum += z[i];
+        }
+        double dZMean = dZSum / n;
+
+        final double[] dev = new double[size];
+        double dDev2Sum = 0.0;
+        double dDev4Sum = 0.0;
+        for (int i = 0; i < size; i++) {
+            dev[i] = z[i] - dZMean;
+            dDev2Sum += Math.pow(dev[i], 2.0);
+            dDev4Sum += Math.pow(dev[i], 4.0);
+        }
+
+        // every unordered pair within the largest band, with the first band containing it
+        PairCollector pairs = new PairCollector(bands, getSpatialConceptType());
+        double maxBand = bands[bands.length - 1];
+        double[] xs = events.getXs();
+        double[] ys = events.getYs();
+        for (int i = 0; i < size; i++) {
+            pairs.origin = i;
+            spatialIndex.query(xs[i], ys[i], maxBand, getDistanceType(), pairs);
+        }
+
+        // counting sort of the pairs by band
+        int[] offsets = new int[bands.length + 1];
+        for (int k = 0; k < pairs.count; k++) {
+            offsets[pairs.band[k] + 1]++;
+        }
+        for (int b = 0; b < bands.length; b++) {
+            offsets[b + 1] += offsets[b];
+        }
+        int[] order = new int[pairs.count];
+        int[] cursor = Arrays.copyOf(offsets, bands.length);
+        for (int k = 0; k < pairs.count; k++) {
+            order[cursor[pairs.band[k]]++] = k;
+        }
+
+        // sweep the bands, weights are symmetric: wij = wji = w
+        double[] rowSums = new double[size];
+        double dRowSum2 = 0.0; // sum of the squared row sums
+        double dSumW = 0.0;
+        double dSumS1 = 0.0;
+        double dMoranWC = 0.0;
+
+        MoransI[] results = new MoransI[bands.length];
+        for (int b = 0; b < bands.length; b++) {
+            for (int k = offsets[b], end = offsets[b + 1]; k < end; k++) {
+                int pair = order[k];
+                int i = pairs.orig[pair];
+                int j = pairs.dest[pair];
+                double w = pairs.weight[pair];
+
+                dSumW += 2.0 * w;
+                dSumS1 += 4.0 * w * w;
+                dMoranWC += 2.0 * w * dev[i] * dev[j];
+
+                dRowSum2 += w * ((2.0 * rowSums[i]) + w);
+                rowSums[i] += w;
+                dRowSum2 += w * ((2.0 * rowSums[j]) + w);
+                rowSums[j] += w;
+            }
+
+            MoransI moransI;
+            if (dSumW <= 0.0) {
+                moransI = new MoransI();
+            } else {
+                // row and column sums are equal, S2 = sum of (2 * ri)^2
+                double dSumS2 = 4.0 * dRowSum2;
+                moransI = GlobalStatisticsKernel.moransI(n, dDev2Sum, dDev4Sum, dSumW, dSumS1,
+                        dSumS2, dMoranWC);
+            }
+            moransI.setConceptualization(getSpatialConceptType());
+            moransI.setDistanceMethod(getDistanceType());
+            moransI.setRowStandardization(getStandardizationType());
+            moransI.setDistanceThreshold(bands[b]);
+            results[b] = moransI;
+        }
+
+        return new IncrementalMoransI(bands, results);
+    }
+
+    static final class PairCollector implements PointKdTree.Visitor {
+        private final double[] bands;
+
+        private final SpatialConcept spatialConcept;
+
+        int origin;
+
+        int count = 0;
+
+        int[] orig = new int[1024];
+
+        int[] dest = new int[1024];
+
+        int[] band = new int[1024];
+
+        double[] weight = new double[1024];
+
+        PairCollector(double[] bands, SpatialConcept spatialConcept) {
+            this.bands = bands;
+            this.spatialConcept = spatialConcept;
+        }
+
+        @Override
+        public void visit(int index, double distance) {
+            if (index <= origin) {
+                return; // each pair once, never the feature itself
+            }
+
+            if (count == orig.length) {
+                int capacity = count + (count >> 1) + 1;
+                orig = Arrays.copyOf(orig, capacity);
+                dest = Arrays.copyOf(dest, capacity);
+                band = Arrays.copyOf(band, capacity);
+                weight = Arrays.copyOf(weight, capacity);
+            }
+
+            int pos = Arrays.binarySearch(bands, distance);
+            if (pos < 0) {
+                pos = -pos - 1;
+            } else {
+                // first of equal bands
+                while (pos > 0 && bands[pos - 1] == distance) {
+                    pos--;
+                }
+            }
+
+            orig[count] = origin;
+            dest[count] = index;
+            band[count] = pos;
+            weight[count] = SpatialWeightMatrix.toWeight(spatialConcept, distance);
+            count++;
+        }
+    }
+
+    public static final class IncrementalMoransI {
+
+        double[] distances;
+
+        MoransI[] results;
+
+        int firstPeak = -1;
+
+        int maxPeak = -1;
+
+        public IncrementalMoransI(double[] distances, MoransI[] results) {
+            this.distances = distances;
+            this.results = results;
+
+            // a peak is a band whose z-score is larger than the z-scores of both adjacent bands
+            double maxZScore = Double.NEGATIVE_INFINITY;
+            for (int b = 1; b < results.length - 1; b++) {
+                double zScore = results[b].getZScore();
+                if (zScore > results[b - 1].getZScore() && zScore >= results[b + 1].getZScore()) {
+                    if (firstPeak == -1) {
+                        firstPeak = b;
+                    }
+                    if (zScore > maxZScore) {
+                        maxZScore = zScore;
+                        maxPeak = b;
+                    }
+                }
+            }
+        }
+
+        public int getBandCount() {
+            return distances.length;
+        }
+
+        public double getDistance(int band) {
+            return distances[band];
+        }
+
+        public MoransI getMoransI(int band) {
+            return results[band];
+        }
+
+        /**
+         * Returns the index of the first z-score peak, or -1 if the z-scores have no peak.
+         */
+        public int getFirstPeak() {
+            return firstPeak;
+        }
+
+        /**
+         * Returns the index of the peak with the largest z-score, or -1 if the z-scores have no
+         * peak.
+         */
+        public int getMaxPeak() {
+            return maxPeak;
+        }
+
+        public double getFirstPeakDistance() {
+            return firstPeak == -1 ? Double.NaN : distances[firstPeak];
+        }
+
+        public double getMaxPeakDistance() {
+            return maxPeak == -1 ? Double.NaN : distances[maxPeak];
+        }
+    }
+}
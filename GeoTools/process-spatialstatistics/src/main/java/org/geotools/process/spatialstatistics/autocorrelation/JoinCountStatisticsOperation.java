@@ -17,21 +17,31 @@
 package org.geotools.process.spatialstatistics.autocorrelation;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.core.ConditionalPermutation;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.PolygonContiguity;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
 import org.geotools.process.spatialstatistics.enumeration.ContiguityType;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.Filter;
 
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.MultiPoint;
-import com.vividsolutions.jts.geom.Point;
 
 /**
- * Spatial autocorrelation for binary attributes.
+ * Spatial autocorrelation for binary attributes. <br>
+ * The black expression is evaluated once per feature into a bit set and the joins are counted by
+ * walking a first order contiguity adjacency, built once or supplied by the caller. An optional
+ * permutation test shuffles the black features over the same adjacency. <br>
+ * Every join between two neighbors is counted once, so the observed BB, BW and WW counts are half
+ * of those of the former per-feature visits, which counted each join from both ends.
  * 
  * @reference http://www.gis.ttu.edu/gist4302/documents/lectures/Spring%202014/lecture6.pdf
  * 
@@ -42,78 +52,166 @@ import com.vividsolutions.jts.geom.Point;
 public class JoinCountStatisticsOperation extends AbstractStatisticsOperation {
     protected static final Logger LOGGER = Logging.getLogger(JoinCountStatisticsOperation.class);
 
+    static final int MIN_GRAIN = 4;
+
     public JoinCountStatisticsOperation() {
     }
 
     public JoinCount execute(SimpleFeatureCollection features, Filter blackExpression,
             ContiguityType contiguityType) throws IOException {
         String typeName = features.getSchema().getTypeName();
-        String the_geom = features.getSchema().getGeometryDescriptor().getLocalName();
-
-        int blackCount = 0;
-        int whiteCount = 0;
-        int m = 0;
 
-        JoinCount joinCounts = new JoinCount(typeName, contiguityType);
+        List<Geometry> geometries = new ArrayList<Geometry>();
+        BitSet black = new BitSet();
         SimpleFeatureIterator featureIter = features.features();
         try {
             while (featureIter.hasNext()) {
-                SimpleFeature pFeature = featureIter.next();
-                Geometry pGeometry = (Geometry) pFeature.getDefaultGeometry();
-                boolean primary = blackExpression.evaluate(pFeature);
-                if (primary) {
-                    blackCount++;
-                } else {
-                    whiteCount++;
+                SimpleFeature feature = featureIter.next();
+                if (blackExpression.evaluate(feature)) {
+                    black.set(geometries.size());
                 }
-
-                Filter filter = ff.intersects(ff.property(the_geom), ff.literal(pGeometry));
-                SimpleFeatureIterator subIter = features.subCollection(filter).features();
-                int neighborCount = 0;
-                try {
-                    while (subIter.hasNext()) {
-                        SimpleFeature sFeature = subIter.next();
-                        if (pFeature.getID().equals(sFeature.getID())) {
-                            continue;
-                        }
-
-                        Geometry sGeometry = (Geometry) sFeature.getDefaultGeometry();
-                        Geometry intersects = pGeometry.intersection(sGeometry);
-                        if (contiguityType != ContiguityType.Queen) {
-                            if (intersects instanceof Point || intersects instanceof MultiPoint) {
-                                if (contiguityType == ContiguityType.Rook) {
-                                    continue;
-                                }
-                            } else {
-                                if (contiguityType == ContiguityType.Bishops) {
-                                    continue;
-                                }
-                            }
-                        }
-
-                        // evaluate
-                        boolean secondary = blackExpression.evaluate(sFeature);
-                        joinCounts.visit(primary, secondary);
-                        neighborCount++;
-                    }
-                } finally {
-                    subIter.close();
-                }
-
-                m += neighborCount * (neighborCount - 1);
+                geometries.add((Geometry) feature.getDefaultGeometry());
             }
         } finally {
             featureIter.close();
         }
 
-        // post process
-        joinCounts.setFeatureCount(blackCount + whiteCount);
+        SparseWeightMatrix adjacency = new PolygonContiguity(geometries).build(contiguityType);
+        return execute(typeName, black, adjacency, contiguityType);
+    }
+
+    /**
+     * Calculates the join counts over a symmetric first order adjacency whose row i is the
+     * feature i, black being the set of black features.
+     */
+    public JoinCount execute(String typeName, BitSet black, SparseWeightMatrix adjacency,
+            ContiguityType contiguityType) {
+        final int size = adjacency.getRowCount();
+        final int[] offsets = adjacency.getRowOffsets();
+        final int[] columns = adjacency.getColumns();
+
+        int blackCount = black.cardinality();
+        double m = 0;
+        for (int i = 0; i < size; i++) {
+            double neighborCount = offsets[i + 1] - offsets[i];
+            m += neighborCount * (neighborCount - 1);
+        }
+
+        // BW = joins of the black features - 2 * BB, WW = the rest
+        int numberOfJoins = adjacency.getNonZeroCount() / 2;
+        long[] counts = countJoins(black, offsets, columns);
+        int observedBB = (int) counts[0];
+        int observedBW = (int) (counts[1] - (2 * counts[0]));
+
+        JoinCount joinCounts = new JoinCount(typeName, contiguityType);
+        joinCounts.setFeatureCount(size);
         joinCounts.setBlackCount(blackCount);
-        joinCounts.setWhiteCount(whiteCount);
+        joinCounts.setWhiteCount(size - blackCount);
+        joinCounts.setObservedBB(observedBB);
+        joinCounts.setObservedBW(observedBW);
+        joinCounts.setObservedWW(numberOfJoins - observedBB - observedBW);
         joinCounts.postProcess(m / 2.0);
+
+        if (getPermutations() > 0 && blackCount > 0 && blackCount < size) {
+            permutationTest(joinCounts, size, offsets, columns);
+        }
         return joinCounts;
     }
 
+    // returns the BB joins and the number of join ends at black features
+    static long[] countJoins(BitSet black, int[] offsets, int[] columns) {
+        long twiceBB = 0;
+        long blackEnds = 0;
+        for (int i = black.nextSetBit(0); i >= 0; i = black.nextSetBit(i + 1)) {
+            int start = offsets[i];
+            int end = offsets[i + 1];
+            blackEnds += end - start;
+            for (int k = start; k < end; k++) {
+                if (black.get(columns[k])) {
+                    twiceBB++;
+                }
+            }
+        }
+        return new long[] { twiceBB / 2, blackEnds };
+    }
+
+    private void permutationTest(final JoinCount joinCounts, final int size, final int[] offsets,
+            final int[] columns) {
+        final int permutations = getPermutations();
+        final long seed = getPermutationSeed();
+        final int blackCount = joinCounts.getBlackCount();
+        final int numberOfJoins = joinCounts.getNumberOfJoins();
+        final int[] permutedBB = new int[permutations];
+        final int[] permutedBW = new int[permutations];
+
+        int threads = getParallelism() <= 0 ? ParallelRange.getDefaultParallelism()
+                : getParallelism();
+        ParallelRange.execute(threads, permutations, MIN_GRAIN, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                // the pool stays the identity between permutations, swaps are undone
+                int[] pool = new int[size];
+                for (int k = 0; k < size; k++) {
+                    pool[k] = k;
+                }
+                int[] swaps = new int[blackCount];
+                BitSet sample = new BitSet(size);
+                ConditionalPermutation.SplitMix random = new ConditionalPermutation.SplitMix();
+
+                for (int p = start; p < end; p++) {
+                    random.setSeed(seed, p);
+                    for (int t = 0; t < blackCount; t++) {
+                        int r = t + random.nextInt(size - t);
+                        swaps[t] = r;
+                        int tmp = pool[t];
+                        pool[t] = pool[r];
+                        pool[r] = tmp;
+                        sample.set(pool[t]);
+                    }
+
+                    long[] counts = countJoins(sample, offsets, columns);
+                    permutedBB[p] = (int) counts[0];
+                    permutedBW[p] = (int) (counts[1] - (2 * counts[0]));
+
+                    sample.clear();
+                    for (int t = blackCount - 1; t >= 0; t--) {
+                        int r = swaps[t];
+                        int tmp = pool[t];
+                        pool[t] = pool[r];
+                        pool[r] = tmp;
+                    }
+                }
+            }
+        });
+
+        int largerBB = 0;
+        int largerWW = 0;
+        int largerBW = 0;
+        for (int p = 0; p < permutations; p++) {
+            if (permutedBB[p] >= joinCounts.getObservedBB()) {
+                largerBB++;
+            }
+            if (numberOfJoins - permutedBB[p] - permutedBW[p] >= joinCounts.getObservedWW()) {
+                largerWW++;
+            }
+            if (permutedBW[p] >= joinCounts.getObservedBW()) {
+                largerBW++;
+            }
+        }
+
+        joinCounts.setPermutations(permutations);
+        joinCounts.setpValueBB(foldedPValue(largerBB, permutations));
+        joinCounts.setpValueWW(foldedPValue(largerWW, permutations));
+        joinCounts.setpValueBW(foldedPValue(largerBW, permutations));
+    }
+
+    private static double foldedPValue(int larger, int permutations) {
+        if (permutations - larger < larger) {
+            larger = permutations - larger;
+        }
+        return (larger + 1.0) / (permutations + 1.0);
+    }
+
     public static class JoinCount {
 
         private String typeName;
@@ -150,21 +248,19 @@ public class JoinCountStatisticsOperation extends AbstractStatisticsOperation {
 
         private double zScoreBW = 0;
 
+        private int permutations = 0;
+
+        private double pValueBB = Double.NaN;
+
+        private double pValueWW = Double.NaN;
+
+        private double pValueBW = Double.NaN;
+
         public JoinCount(String typeName, ContiguityType contiguityType) {
             this.typeName = typeName;
             this.contiguityType = contiguityType;
         }
 
-        public void visit(boolean primary, boolean secondary) {
-            if (primary && secondary) {
-                observedBB++;
-            } else if (!primary && !secondary) {
-                observedWW++;
-            } else {
-                observedBW++;
-            }
-        }
-
         public void postProcess(double m) {
             // Expected
             final double pB = (double) blackCount / featureCount;
@@ -230,15 +326,27 @@ public class JoinCountStatisticsOperation extends AbstractStatisticsOperation {
         }
 
         public int getObservedBB() {
-            return observedBB / 2;
+            return observedBB;
+        }
+
+        public void setObservedBB(int observedBB) {
+            this.observedBB = observedBB;
         }
 
         public int getObservedWW() {
-            return observedWW / 2;
+            return observedWW;
+        }
+
+        public void setObservedWW(int observedWW) {
+            this.observedWW = observedWW;
         }
 
         public int getObservedBW() {
-            return observedBW / 2;
+            return observedBW;
+        }
+
+        public void setObservedBW(int observedBW) {
+            this.observedBW = observedBW;
         }
 
         public double getExpectedBB() {
@@ -276,5 +384,41 @@ public class JoinCountStatisticsOperation extends AbstractStatisticsOperation {
         public double getzScoreBW() {
             return zScoreBW;
         }
+
+        /**
+         * Returns the number of permutations of the pseudo p-values, 0 if no permutation test was
+         * performed.
+         */
+        public int getPermutations() {
+            return permutations;
+        }
+
+        public void setPermutations(int permutations) {
+            this.permutations = permutations;
+        }
+
+        public double getpValueBB() {
+            return pValueBB;
+        }
+
+        public void setpValueBB(double pValueBB) {
+            this.pValueBB = pValueBB;
+        }
+
+        public double getpValueWW() {
+            return pValueWW;
+        }
+
+        public void setpValueWW(double pValueWW) {
+            this.pValueWW = pValueWW;
+        }
+
+        public double getpValueBW() {
+            return pValueBW;
+        }
+
+        public void setpValueBW(double pValueBW) {
+            this.pValueBW = pValueBW;
+        }
     }
 }
@@ -17,15 +17,21 @@
 package org.geotools.process.spatialstatistics.autocorrelation;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.core.ConditionalPermutation;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.FormatUtils;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
 import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.core.SSUtils.StatEnum;
-import org.geotools.process.spatialstatistics.core.SpatialEvent;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
 import org.geotools.process.spatialstatistics.core.SpatialWeightMatrix;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
@@ -36,7 +42,9 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
 /**
- * Given a set of weighted features, identifies statistically significant hot spots and cold spots using the Getis-Ord Gi* statistic.
+ * Given a set of weighted features, identifies statistically significant hot spots and cold spots using the Getis-Ord Gi* statistic. <br>
+ * After an execution, {@link #update(SimpleFeatureCollection, Collection)} applies edited values
+ * without rebuilding the weights and rewrites the affected output features in place.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -45,6 +53,10 @@ import org.opengis.feature.simple.SimpleFeatureType;
 public class LocalGStatisticOperation extends AbstractStatisticsOperation {
     protected static final Logger LOGGER = Logging.getLogger(LocalGStatisticOperation.class);
 
+    static final String PSEUDO_P_FIELD = "GiPseudoP";
+
+    static final String[] FIELDS = { "GiZScore", "GiMean", "GiVar", "GiPValue" };
+
     public DistanceMethod DistanceType = DistanceMethod.Euclidean;
 
     SpatialWeightMatrix swMatrix = null;
@@ -55,6 +67,19 @@ public class LocalGStatisticOperation extends AbstractStatisticsOperation {
 
     double[] dcVarValue;
 
+    double[] dcPseudoP;
+
+    // state kept for update()
+    String inputField;
+
+    String outputTypeName;
+
+    String[] inputIds;
+
+    String[] outputIds;
+
+    LocalStatisticsCache cache;
+
     public LocalGStatisticOperation() {
         // Gi* Default Setting
         this.setSpatialConceptType(SpatialConcept.FIXEDDISTANCEBAND);
@@ -65,10 +90,15 @@ public class LocalGStatisticOperation extends AbstractStatisticsOperation {
 
     public SimpleFeatureCollection execute(SimpleFeatureCollection inputFeatures, String inputField)
             throws IOException {
+        this.inputField = inputField;
+        this.cache = null;
+
         swMatrix = new SpatialWeightMatrix(getSpatialConceptType(), getStandardizationType());
+        swMatrix.setSpatialWeights(loadSpatialWeights());
+        swMatrix.setWeightsCache(getWeightsCache());
         swMatrix.distanceBandWidth = this.getDistanceBand();
         swMatrix.buildWeightMatrix(inputFeatures, inputField, this.getDistanceType());
-        int featureCount = swMatrix.Events.size();
+        int featureCount = swMatrix.getEventCount();
         if (featureCount < 3) {
             LOGGER.warning("inputFeatures's feature count < " + featureCount);
             return null;
@@ -77,66 +107,183 @@ public class LocalGStatisticOperation extends AbstractStatisticsOperation {
         }
 
         // # Calculate the mean and standard deviation for this data set.
-        double rN = featureCount * 1.0;
-        double dZMean = swMatrix.dZSum / rN;
-        double dZVar = Math.pow((swMatrix.dZ2Sum / rN) - Math.pow(dZMean, 2.0), 0.5);
+        final double rN = featureCount * 1.0;
+        final double dZMean = swMatrix.dZSum / rN;
+        final double dZVar = Math.pow((swMatrix.dZ2Sum / rN) - Math.pow(dZMean, 2.0), 0.5);
         if (Math.abs(dZVar) <= 0.0) {
             LOGGER.warning("ERROR Zero variance:  all of the values for your input field are likely the same.");
         }
 
         // """Calculate a Gi* Z Score for each feature in the data set."""
+        final double[] values = swMatrix.getEventStore().getWeights();
         dcGiValue = new double[featureCount];
         dcMeanValue = new double[featureCount];
         dcVarValue = new double[featureCount];
 
         // # Calculate Gi* for each feature i.
-        for (int i = 0; i < featureCount; i++) {
-            SpatialEvent curE = swMatrix.Events.get(i);
-
-            // # Initialize working variables.
-            double dLocalZSum = 0.0;
-            double dWijSum = 0.0;
-            double dWij2Sum = 0.0;
-
-            // # Look for i's local neighbors
-            for (int j = 0; j < featureCount; j++) {
-                SpatialEvent destE = swMatrix.Events.get(j);
-
-                // # Calculate the weight (dWij)
-                double dWeight = 0.0;
-                if (this.getSpatialConceptType() == SpatialConcept.POLYGONCONTIGUITY) {
-                    dWeight = 0.0;
-                    // if (destE is neighbor ) dWeight = 1.0;
-                } else {
-                    // # calculate distance between i and j
-                    dWeight = swMatrix.getWeight(curE, destE);
+        computeFeatures(featureCount, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    computeLocalGi(i, values, rN, dZMean, dZVar);
                 }
+            }
+        });
+
+        // # Gi* is an increasing function of the local sum, which includes i itself
+        dcPseudoP = null;
+        if (getPermutations() > 0
+                && getSpatialConceptType() != SpatialConcept.POLYGONCONTIGUITY) {
+            final double[] dcValue = values;
+            final double[] dcSelf = new double[featureCount];
+            for (int i = 0; i < featureCount; i++) {
+                dcSelf[i] = swMatrix.getWeight(i, i);
+            }
 
-                // #### Self Potential Adjustment ####
-                // if (i == j && sSelfPotential) dWeight = dcSelf[iKey]
+            dcPseudoP = computePseudoPValues(swMatrix.getSparseWeights(false),
+                    new ConditionalPermutation.Statistic() {
+                        @Override
+                        public double compute(int i, int[] neighbors, double[] weights, int count) {
+                            double dLocalZSum = dcSelf[i] * dcValue[i];
+                            for (int k = 0; k < count; k++) {
+                                dLocalZSum += weights[k] * dcValue[neighbors[k]];
+                            }
+                            return dLocalZSum;
+                        }
+                    });
+        }
 
-                if (dWeight != 0) {
-                    final double dWij = dWeight;
-                    dLocalZSum += dWij * destE.weight;
-                    dWijSum += dWij;
-                    dWij2Sum += Math.pow(dWij, 2.0);
-                }
+        return buildFeatureCollection(inputFeatures);
+    }
+
+    private void computeLocalGi(int i, double[] values, double rN, double dZMean, double dZVar) {
+        // # Initialize working variables.
+        double dLocalZSum = 0.0;
+        double dWijSum = 0.0;
+        double dWij2Sum = 0.0;
+
+        // # Look for i's local neighbors
+        SparseWeightMatrix rows = swMatrix.getWeightMatrix();
+        int[] neighbors = rows == null ? swMatrix.getNeighbors(i) : rows.getColumns();
+        int end = rows == null ? neighbors.length : rows.getRowEnd(i);
+        for (int k = rows == null ? 0 : rows.getRowStart(i); k < end; k++) {
+            int j = neighbors[k];
+            // # Calculate the weight (dWij)
+            double dWeight = 0.0;
+            if (this.getSpatialConceptType() == SpatialConcept.POLYGONCONTIGUITY) {
+                dWeight = 0.0;
+                // if (destE is neighbor ) dWeight = 1.0;
+            } else {
+                // # calculate distance between i and j
+                dWeight = swMatrix.getWeight(i, j);
+            }
+
+            // #### Self Potential Adjustment ####
+            // if (i == j && sSelfPotential) dWeight = dcSelf[iKey]
+
+            if (dWeight != 0) {
+                final double dWij = dWeight;
+                dLocalZSum += dWij * values[j];
+                dWijSum += dWij;
+                dWij2Sum += Math.pow(dWij, 2.0);
             }
+        }
+
+        setLocalGi(i, rN, dZMean, dZVar, dLocalZSum, dWijSum, dWij2Sum);
+    }
 
-            dcMeanValue[i] = dWijSum / (rN * (rN - 1.0));
-            dcVarValue[i] = Math.pow((dWij2Sum / rN) - Math.pow(dcMeanValue[i], 2), 0.5);
+    private void setLocalGi(int i, double rN, double dZMean, double dZVar, double dLocalZSum,
+            double dWijSum, double dWij2Sum) {
+        dcMeanValue[i] = dWijSum / (rN * (rN - 1.0));
+        dcVarValue[i] = Math.pow((dWij2Sum / rN) - Math.pow(dcMeanValue[i], 2), 0.5);
 
-            // # Calculate Gi*
+        // # Calculate Gi*
+        dcGiValue[i] = Double.NaN;
+        try {
+            dcGiValue[i] = ((dLocalZSum - (dWijSum * dZMean)) / (dZVar * Math.pow(
+                    (((rN * dWij2Sum) - Math.pow(dWijSum, 2.0)) / (rN - 1.0)), 0.5)));
+        } catch (Exception e) {
             dcGiValue[i] = Double.NaN;
-            try {
-                dcGiValue[i] = ((dLocalZSum - (dWijSum * dZMean)) / (dZVar * Math.pow(
-                        (((rN * dWij2Sum) - Math.pow(dWijSum, 2.0)) / (rN - 1.0)), 0.5)));
-            } catch (Exception e) {
-                dcGiValue[i] = Double.NaN;
+        }
+    }
+
+    /**
+     * Recomputes the statistics after the values of the given input features were edited and
+     * rewrites the output features whose results changed in place. <br>
+     * Moved, added or removed features need new weights: like contiguity weights and permutation
+     * tests, they fall back to a full execution.
+     */
+    public SimpleFeatureCollection update(SimpleFeatureCollection inputFeatures,
+            Collection<String> featureIds) throws IOException {
+        if (swMatrix == null || inputIds == null) {
+            throw new IllegalStateException("update requires a previous execution");
+        }
+
+        if (getPermutations() > 0 || outputIds == null
+                || getSpatialConceptType() == SpatialConcept.POLYGONCONTIGUITY) {
+            return execute(inputFeatures, inputField);
+        }
+
+        if (cache == null) {
+            // Gi* includes the feature itself
+            double[] dcSelf = new double[inputIds.length];
+            for (int i = 0; i < dcSelf.length; i++) {
+                dcSelf[i] = swMatrix.getWeight(i, i);
             }
+            cache = new LocalStatisticsCache(swMatrix.getSparseWeights(false), dcSelf, swMatrix
+                    .getEventStore().getWeights(), inputIds, outputIds);
         }
 
-        return buildFeatureCollection(inputFeatures);
+        Map<Integer, Double> changes = cache.loadChanges(inputFeatures, inputField, featureIds,
+                swMatrix.getEventStore());
+        if (changes == null) {
+            return execute(inputFeatures, inputField);
+        }
+
+        for (Map.Entry<Integer, Double> entry : changes.entrySet()) {
+            int i = entry.getKey().intValue();
+            cache.update(i, entry.getValue().doubleValue());
+            swMatrix.getEventStore().setWeight(i, entry.getValue().doubleValue());
+        }
+
+        // every z-score depends on the moments, but only on cached sums
+        final int featureCount = cache.size();
+        final double rN = featureCount * 1.0;
+        final double dZMean = cache.getMean();
+        final double dZVar = Math.pow((cache.getZ2Sum() / rN) - Math.pow(dZMean, 2.0), 0.5);
+
+        // only the features whose rounded results change are rewritten
+        final Object[][] oldValues = new Object[featureCount][];
+        for (int i = 0; i < featureCount; i++) {
+            oldValues[i] = getOutputValues(i);
+        }
+
+        computeFeatures(featureCount, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    setLocalGi(i, rN, dZMean, dZVar, cache.getLag(i), cache.getWeightSum(i),
+                            cache.getWeight2Sum(i));
+                }
+            }
+        });
+
+        BitSet changed = new BitSet(featureCount);
+        for (int i = 0; i < featureCount; i++) {
+            if (!Arrays.equals(oldValues[i], getOutputValues(i))) {
+                changed.set(i);
+            }
+        }
+
+        cache.patch(getOutputDataStore(), outputTypeName, changed,
+                new LocalStatisticsCache.FeaturePatch() {
+                    @Override
+                    public void apply(int i, SimpleFeature feature) {
+                        setOutputAttributes(i, feature);
+                    }
+                });
+
+        return getOutputDataStore().getFeatureSource(outputTypeName).getFeatures();
     }
 
     private SimpleFeatureCollection buildFeatureCollection(SimpleFeatureCollection inputFeatures)
@@ -145,15 +292,20 @@ public class LocalGStatisticOperation extends AbstractStatisticsOperation {
         String typeName = inputFeatures.getSchema().getTypeName();
         SimpleFeatureType featureType = FeatureTypes.build(inputFeatures.getSchema(), typeName);
 
-        String[] fieldList = new String[] { "GiZScore", "GiMean", "GiVar", "GiPValue" };
+        String[] fieldList = FIELDS;
         for (int k = 0; k < fieldList.length; k++) {
             featureType = FeatureTypes.add(featureType, fieldList[k], Double.class);
         }
+        if (dcPseudoP != null) {
+            featureType = FeatureTypes.add(featureType, PSEUDO_P_FIELD, Double.class);
+        }
 
         // prepare transactional feature store
         IFeatureInserter featureWriter = getFeatureWriter(featureType);
         
         // insert features
+        outputTypeName = typeName;
+        inputIds = new String[dcGiValue.length];
         int idx = 0;
         SimpleFeatureIterator featureIter = null;
         try {
@@ -165,21 +317,8 @@ public class LocalGStatisticOperation extends AbstractStatisticsOperation {
                 SimpleFeature newFeature = featureWriter.buildFeature(null);
                 featureWriter.copyAttributes(feature, newFeature, true);
 
-                // "GiZScore", "GiMean", "GiVar", "GiPValue"
-                double zScore = this.dcGiValue[idx];
-                double pValue = 0.0;
-
-                if (Double.isNaN(zScore) || Double.isInfinite(zScore)) {
-                    zScore = 0.0;
-                    pValue = 1.0;
-                } else {
-                    pValue = SSUtils.zProb(zScore, StatEnum.BOTH);
-                }
-
-                newFeature.setAttribute(fieldList[0], FormatUtils.round(zScore));
-                newFeature.setAttribute(fieldList[1], FormatUtils.round(dcMeanValue[idx]));
-                newFeature.setAttribute(fieldList[2], FormatUtils.round(dcVarValue[idx]));
-                newFeature.setAttribute(fieldList[3], FormatUtils.round(pValue));
+                setOutputAttributes(idx, newFeature);
+                inputIds[idx] = feature.getID();
 
                 idx++;
                 featureWriter.write(newFeature);
@@ -190,7 +329,36 @@ public class LocalGStatisticOperation extends AbstractStatisticsOperation {
             featureWriter.close(featureIter);
         }
 
-        return featureWriter.getFeatureCollection();
+        SimpleFeatureCollection outputFeatures = featureWriter.getFeatureCollection();
+        outputIds = swMatrix == null || outputFeatures == null ? null : LocalStatisticsCache
+                .mapOutputIds(outputFeatures, swMatrix.getEventStore());
+        return outputFeatures;
     }
 
+    private void setOutputAttributes(int idx, SimpleFeature newFeature) {
+        Object[] values = getOutputValues(idx);
+        for (int k = 0; k < FIELDS.length; k++) {
+            newFeature.setAttribute(FIELDS[k], values[k]);
+        }
+        if (dcPseudoP != null) {
+            double pseudoP = Double.isNaN(dcPseudoP[idx]) ? 1.0 : dcPseudoP[idx];
+            newFeature.setAttribute(PSEUDO_P_FIELD, FormatUtils.round(pseudoP));
+        }
+    }
+
+    private Object[] getOutputValues(int idx) {
+        // "GiZScore", "GiMean", "GiVar", "GiPValue"
+        double zScore = this.dcGiValue[idx];
+        double pValue = 0.0;
+
+        if (Double.isNaN(zScore) || Double.isInfinite(zScore)) {
+            zScore = 0.0;
+            pValue = 1.0;
+        } else {
+            pValue = SSUtils.zProb(zScore, StatEnum.BOTH);
+        }
+
+        return new Object[] { FormatUtils.round(zScore), FormatUtils.round(dcMeanValue[idx]),
+                FormatUtils.round(dcVarValue[idx]), FormatUtils.round(pValue) };
+    }
 }
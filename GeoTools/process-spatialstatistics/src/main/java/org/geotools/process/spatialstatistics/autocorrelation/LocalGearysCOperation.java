@@ -22,11 +22,13 @@ import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.core.ConditionalPermutation;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.FormatUtils;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
 import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.core.SSUtils.StatEnum;
-import org.geotools.process.spatialstatistics.core.SpatialEvent;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
 import org.geotools.process.spatialstatistics.core.SpatialWeightMatrix;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
@@ -48,6 +50,8 @@ import org.opengis.feature.simple.SimpleFeatureType;
 public class LocalGearysCOperation extends AbstractStatisticsOperation {
     protected static final Logger LOGGER = Logging.getLogger(LocalGearysCOperation.class);
 
+    static final String PSEUDO_P_FIELD = "LGcPseudoP";
+
     public DistanceMethod DistanceType = DistanceMethod.Euclidean;
 
     SpatialWeightMatrix swMatrix = null;
@@ -56,6 +60,8 @@ public class LocalGearysCOperation extends AbstractStatisticsOperation {
 
     double[] dcZScore;
 
+    double[] dcPseudoP;
+
     public LocalGearysCOperation() {
         // Default Setting
         this.setDistanceType(DistanceMethod.Euclidean);
@@ -74,81 +80,113 @@ public class LocalGearysCOperation extends AbstractStatisticsOperation {
     public SimpleFeatureCollection execute(SimpleFeatureCollection inputFeatures, String inputField)
             throws IOException {
         swMatrix = new SpatialWeightMatrix(getSpatialConceptType(), getStandardizationType());
+        swMatrix.setSpatialWeights(loadSpatialWeights());
+        swMatrix.setWeightsCache(getWeightsCache());
         swMatrix.distanceBandWidth = this.getDistanceBand();
         swMatrix.buildWeightMatrix(inputFeatures, inputField, this.getDistanceType());
 
         // calculate the mean and standard deviation for this data set.
-        int featureCount = swMatrix.Events.size();
-        double n = swMatrix.Events.size() * 1.0;
+        int featureCount = swMatrix.getEventCount();
+        final double n = featureCount * 1.0;
         double dZMean = swMatrix.dZSum / n;
+        final double[] dcValue = swMatrix.getEventStore().getWeights();
 
-        double dM2 = 0.0;
-        double dM4 = 0.0;
+        double dM2Sum = 0.0;
+        double dM4Sum = 0.0;
 
         // calculate deviation from the mean sums.
-        for (SpatialEvent curE : swMatrix.Events) {
-            dM2 += Math.pow(curE.weight - dZMean, 2.0);
-            dM4 += Math.pow(curE.weight - dZMean, 4.0);
+        for (int i = 0; i < featureCount; i++) {
+            dM2Sum += Math.pow(dcValue[i] - dZMean, 2.0);
+            dM4Sum += Math.pow(dcValue[i] - dZMean, 4.0);
         }
 
-        dM2 = dM2 / (n - 1.0);
-        dM4 = dM4 / (n - 1.0);
-        double dB2 = dM4 / Math.pow(dM2, 2.0);
+        final double dM2 = dM2Sum / (n - 1.0);
+        final double dM4 = dM4Sum / (n - 1.0);
+        final double dB2 = dM4 / Math.pow(dM2, 2.0);
 
         // calculate local index for each feature i.
         dcIndex = new double[featureCount];
         dcZScore = new double[featureCount];
-        for (int i = 0; i < featureCount; i++) {
-            SpatialEvent curE = swMatrix.Events.get(i);
-            double dLocalZDevSum = 0.0;
-            double dWijSum = 0.0;
-            double dWij2Sum = 0.0;
-
-            // look for i's local neighbors
-            for (int j = 0; j < featureCount; j++) {
-                SpatialEvent destE = swMatrix.Events.get(j);
-                if (curE.oid == destE.oid)
-                    continue;
-
-                // calculate the weight (dWij)
-                double dWij = 0.0;
-                if (this.getSpatialConceptType() == SpatialConcept.POLYGONCONTIGUITY) {
-                    dWij = 0.0;
-                    // if (destE is neighbor ) dWeight = 1.0;
-                } else {
-                    dWij = swMatrix.getWeight(curE, destE);
+        computeFeatures(featureCount, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    computeLocalIndex(i, dcValue, n, dM2, dB2);
                 }
+            }
+        });
+
+        dcPseudoP = null;
+        if (getPermutations() > 0
+                && getSpatialConceptType() != SpatialConcept.POLYGONCONTIGUITY) {
+            boolean rowStandardized = getStandardizationType() == StandardizationMethod.ROW;
+            dcPseudoP = computePseudoPValues(swMatrix.getSparseWeights(rowStandardized),
+                    new ConditionalPermutation.Statistic() {
+                        @Override
+                        public double compute(int i, int[] neighbors, double[] weights, int count) {
+                            double dLocalZDevSum = 0.0;
+                            for (int k = 0; k < count; k++) {
+                                double diff = dcValue[i] - dcValue[neighbors[k]];
+                                dLocalZDevSum += weights[k] * diff * diff;
+                            }
+                            return dLocalZDevSum / dM2;
+                        }
+                    });
+        }
 
-                if (getStandardizationType() == StandardizationMethod.ROW) {
-                    dWij = swMatrix.standardizeWeight(curE, dWij);
-                }
+        return buildFeatureCollection(inputFeatures);
+    }
 
-                // geary's c
-                dLocalZDevSum += dWij * Math.pow((curE.weight - destE.weight), 2.0);
-                dWijSum += dWij;
-                dWij2Sum += Math.pow(dWij, 2.0);
+    private void computeLocalIndex(int i, double[] values, double n, double dM2, double dB2) {
+        double dLocalZDevSum = 0.0;
+        double dWijSum = 0.0;
+        double dWij2Sum = 0.0;
+
+        // look for i's local neighbors
+        SparseWeightMatrix rows = swMatrix.getWeightMatrix();
+        int[] neighbors = rows == null ? swMatrix.getNeighbors(i) : rows.getColumns();
+        int end = rows == null ? neighbors.length : rows.getRowEnd(i);
+        for (int k = rows == null ? 0 : rows.getRowStart(i); k < end; k++) {
+            int j = neighbors[k];
+            if (i == j)
+                continue;
+
+            // calculate the weight (dWij)
+            double dWij = 0.0;
+            if (this.getSpatialConceptType() == SpatialConcept.POLYGONCONTIGUITY) {
+                dWij = 0.0;
+                // if (destE is neighbor ) dWeight = 1.0;
+            } else {
+                dWij = swMatrix.getWeight(i, j);
             }
 
-            // calculate local index
-            dcIndex[i] = Double.NaN;
-            dcZScore[i] = Double.NaN;
-            try {
-                dcIndex[i] = dLocalZDevSum / dM2;
-
-                // http://www.passagesoftware.net/webhelp/Introduction.htm#Local_Geary_s_c.htm
-                double dExpected = (2.0 * n * dWijSum) / (n - 1.0);
-                double v1 = n / (n - 1.0);
-                double v2 = Math.pow(dWijSum, 2.0) + dWij2Sum;
-                double v3 = 3.0 + dB2;
-                double v4 = Math.pow((2.0 * n * dWijSum) / (n - 1.0), 2.0);
-                double dVariance = (v1 * v2 * v3) - v4;
-                dcZScore[i] = (dcIndex[i] - dExpected) / Math.pow(dVariance, 0.5);
-            } catch (Exception e) {
-                LOGGER.log(Level.FINE, e.getMessage(), e);
+            if (getStandardizationType() == StandardizationMethod.ROW) {
+                dWij = swMatrix.standardizeWeight(i, dWij);
             }
+
+            // geary's c
+            dLocalZDevSum += dWij * Math.pow((values[i] - values[j]), 2.0);
+            dWijSum += dWij;
+            dWij2Sum += Math.pow(dWij, 2.0);
         }
 
-        return buildFeatureCollection(inputFeatures);
+        // calculate local index
+        dcIndex[i] = Double.NaN;
+        dcZScore[i] = Double.NaN;
+        try {
+            dcIndex[i] = dLocalZDevSum / dM2;
+
+            // http://www.passagesoftware.net/webhelp/Introduction.htm#Local_Geary_s_c.htm
+            double dExpected = (2.0 * n * dWijSum) / (n - 1.0);
+            double v1 = n / (n - 1.0);
+            double v2 = Math.pow(dWijSum, 2.0) + dWij2Sum;
+            double v3 = 3.0 + dB2;
+            double v4 = Math.pow((2.0 * n * dWijSum) / (n - 1.0), 2.0);
+            double dVariance = (v1 * v2 * v3) - v4;
+            dcZScore[i] = (dcIndex[i] - dExpected) / Math.pow(dVariance, 0.5);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+        }
     }
 
     private SimpleFeatureCollection buildFeatureCollection(SimpleFeatureCollection inputFeatures)
@@ -162,6 +200,9 @@ public class LocalGearysCOperation extends AbstractStatisticsOperation {
         for (int k = 0; k < fieldList.length; k++) {
             featureType = FeatureTypes.add(featureType, fieldList[k], Double.class);
         }
+        if (dcPseudoP != null) {
+            featureType = FeatureTypes.add(featureType, PSEUDO_P_FIELD, Double.class);
+        }
 
         // prepare transactional feature store
         IFeatureInserter featureWriter = getFeatureWriter(featureType);
@@ -192,6 +233,10 @@ public class LocalGearysCOperation extends AbstractStatisticsOperation {
                 newFeature.setAttribute(fieldList[0], FormatUtils.round(localIndex));
                 newFeature.setAttribute(fieldList[1], FormatUtils.round(zScore));
                 newFeature.setAttribute(fieldList[2], FormatUtils.round(pValue));
+                if (dcPseudoP != null) {
+                    double pseudoP = Double.isNaN(dcPseudoP[idx]) ? 1.0 : dcPseudoP[idx];
+                    newFeature.setAttribute(PSEUDO_P_FIELD, FormatUtils.round(pseudoP));
+                }
 
                 idx++;
                 featureWriter.write(newFeature);
@@ -24,9 +24,10 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.FormatUtils;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
 import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.core.SSUtils.StatEnum;
-import org.geotools.process.spatialstatistics.core.SpatialEvent;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
 import org.geotools.process.spatialstatistics.core.SpatialWeightMatrix;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
@@ -72,84 +73,99 @@ public class LocalLeesSOperation extends AbstractStatisticsOperation {
     public SimpleFeatureCollection execute(SimpleFeatureCollection inputFeatures, String inputField)
             throws IOException {
         swMatrix = new SpatialWeightMatrix(getSpatialConceptType(), getStandardizationType());
+        swMatrix.setSpatialWeights(loadSpatialWeights());
+        swMatrix.setWeightsCache(getWeightsCache());
         swMatrix.distanceBandWidth = this.getDistanceBand();
         swMatrix.buildWeightMatrix(inputFeatures, inputField, this.getDistanceType());
 
         // calculate the mean and standard deviation for this data set.
-        int featureCount = swMatrix.Events.size();
-        double n = swMatrix.Events.size() * 1.0;
-        double dZMean = swMatrix.dZSum / n;
+        int featureCount = swMatrix.getEventCount();
+        final double n = featureCount * 1.0;
+        final double dZMean = swMatrix.dZSum / n;
+        final double[] values = swMatrix.getEventStore().getWeights();
 
-        double dM2 = 0.0;
-        double dM4 = 0.0;
+        double dM2Sum = 0.0;
+        double dM4Sum = 0.0;
 
         // calculate deviation from the mean sums.
-        for (SpatialEvent curE : swMatrix.Events) {
-            dM2 += Math.pow(curE.weight - dZMean, 2.0);
-            dM4 += Math.pow(curE.weight - dZMean, 4.0);
+        for (int i = 0; i < featureCount; i++) {
+            dM2Sum += Math.pow(values[i] - dZMean, 2.0);
+            dM4Sum += Math.pow(values[i] - dZMean, 4.0);
         }
 
-        dM2 = dM2 / (n - 1.0);
-        dM4 = dM4 / (n - 1.0);
-        double dB2 = dM4 / Math.pow(dM2, 2.0);
+        final double dM2 = dM2Sum / (n - 1.0);
+        final double dM4 = dM4Sum / (n - 1.0);
+        final double dB2 = dM4 / Math.pow(dM2, 2.0);
 
         // calculate local index for each feature i.
         dcIndex = new double[featureCount];
         dcZScore = new double[featureCount];
-        for (int i = 0; i < featureCount; i++) {
-            SpatialEvent curE = swMatrix.Events.get(i);
-            double dLocalZDevSum = 0.0;
-            double dWijSum = 0.0;
-            double dWij2Sum = 0.0;
-            double dWijWihSum = 0.0;
-
-            // look for i's local neighbors
-            for (int j = 0; j < featureCount; j++) {
-                SpatialEvent destE = swMatrix.Events.get(j);
-                if (curE.oid == destE.oid)
-                    continue;
-
-                // calculate the weight (dWij)
-                double dWij = 0.0;
-                if (this.getSpatialConceptType() == SpatialConcept.POLYGONCONTIGUITY) {
-                    dWij = 0.0;
-                    // if (destE is neighbor ) dWeight = 1.0;
-                } else {
-                    dWij = swMatrix.getWeight(curE, destE);
+        computeFeatures(featureCount, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    computeLocalIndex(i, values, n, dZMean, dM2, dB2);
                 }
+            }
+        });
 
-                if (getStandardizationType() == StandardizationMethod.ROW) {
-                    dWij = swMatrix.standardizeWeight(curE, dWij);
-                }
+        return buildFeatureCollection(inputFeatures);
+    }
 
-                // lee's s
-                dLocalZDevSum += dWij * (destE.weight - dZMean);
-                dWijSum += dWij;
-                dWij2Sum += Math.pow(dWij, 2.0);
+    private void computeLocalIndex(int i, double[] values, double n, double dZMean, double dM2,
+            double dB2) {
+        double dLocalZDevSum = 0.0;
+        double dWijSum = 0.0;
+        double dWij2Sum = 0.0;
+        double dWijWihSum = 0.0;
+
+        // look for i's local neighbors
+        SparseWeightMatrix rows = swMatrix.getWeightMatrix();
+        int[] neighbors = rows == null ? swMatrix.getNeighbors(i) : rows.getColumns();
+        int end = rows == null ? neighbors.length : rows.getRowEnd(i);
+        for (int k = rows == null ? 0 : rows.getRowStart(i); k < end; k++) {
+            int j = neighbors[k];
+            if (i == j)
+                continue;
+
+            // calculate the weight (dWij)
+            double dWij = 0.0;
+            if (this.getSpatialConceptType() == SpatialConcept.POLYGONCONTIGUITY) {
+                dWij = 0.0;
+                // if (destE is neighbor ) dWeight = 1.0;
+            } else {
+                dWij = swMatrix.getWeight(i, j);
             }
 
-            dWijWihSum = Math.pow(dWijSum, 2.0) - dWij2Sum;
-
-            // calculate local index
-            dcIndex[i] = Double.NaN;
-            dcZScore[i] = Double.NaN;
-            try {
-                // TODO correct 
-                dcIndex[i] = Math.pow(dLocalZDevSum, 2.0) / dM2;
-
-                double dExpected = -1.0 * (dWijSum / (n - 1.0));
-                double v1 = (dWij2Sum * (n - dB2)) / (n - 1.0);
-                double v2 = Math.pow(dWijSum, 2.0) / Math.pow((n - 1.0), 2.0);
-                double v3 = dWijWihSum * ((2.0 * dB2) - n);
-                double v4 = (n - 1.0) * (n - 2.0);
-                double dVariance = v1 + v3 / v4 - v2;
-                dcZScore[i] = (dcIndex[i] - dExpected) / Math.pow(dVariance, 0.5);
-            } catch (Exception e) {
-                LOGGER.log(Level.FINE, e.getMessage(), e);
+            if (getStandardizationType() == StandardizationMethod.ROW) {
+                dWij = swMatrix.standardizeWeight(i, dWij);
             }
+
+            // lee's s
+            dLocalZDevSum += dWij * (values[j] - dZMean);
+            dWijSum += dWij;
+            dWij2Sum += Math.pow(dWij, 2.0);
         }
 
-        return buildFeatureCollection(inputFeatures);
+        dWijWihSum = Math.pow(dWijSum, 2.0) - dWij2Sum;
+
+        // calculate local index
+        dcIndex[i] = Double.NaN;
+        dcZScore[i] = Double.NaN;
+        try {
+            // TODO correct 
+            dcIndex[i] = Math.pow(dLocalZDevSum, 2.0) / dM2;
+
+            double dExpected = -1.0 * (dWijSum / (n - 1.0));
+            double v1 = (dWij2Sum * (n - dB2)) / (n - 1.0);
+            double v2 = Math.pow(dWijSum, 2.0) / Math.pow((n - 1.0), 2.0);
+            double v3 = dWijWihSum * ((2.0 * dB2) - n);
+            double v4 = (n - 1.0) * (n - 2.0);
+            double dVariance = v1 + v3 / v4 - v2;
+            dcZScore[i] = (dcIndex[i] - dExpected) / Math.pow(dVariance, 0.5);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+        }
     }
 
     private SimpleFeatureCollection buildFeatureCollection(SimpleFeatureCollection inputFeatures)
@@ -17,17 +17,25 @@
 package org.geotools.process.spatialstatistics.autocorrelation;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.core.ConditionalPermutation;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.FormatUtils;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
 import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.core.SSUtils.StatEnum;
-import org.geotools.process.spatialstatistics.core.SpatialEvent;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
+import org.geotools.process.spatialstatistics.core.SpatialEventStore;
 import org.geotools.process.spatialstatistics.core.SpatialWeightMatrix;
+import org.geotools.process.spatialstatistics.core.TiledWeightMatrix;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
 import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
@@ -38,7 +46,9 @@ import org.opengis.feature.simple.SimpleFeatureType;
 
 /**
  * Given a set of weighted features, identifies statistically significant hot spots, cold spots, and spatial outliers using the Anselin Local Moran's
- * I statistic.
+ * I statistic. <br>
+ * After an execution, {@link #update(SimpleFeatureCollection, Collection)} applies edited values
+ * without rebuilding the weights and rewrites the affected output features in place.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -47,6 +57,11 @@ import org.opengis.feature.simple.SimpleFeatureType;
 public class LocalMoranIStatisticOperation extends AbstractStatisticsOperation {
     protected static final Logger LOGGER = Logging.getLogger(LocalMoranIStatisticOperation.class);
 
+    static final String PSEUDO_P_FIELD = "LMiPseudoP";
+
+    static final String[] FIELDS = { "LMiIndex", "LMiZScore", "LMiPValue", "LMizValue",
+            "LMiwzValue", "COType" };
+
     public DistanceMethod DistanceType = DistanceMethod.Euclidean;
 
     SpatialWeightMatrix swMatrix = null;
@@ -61,6 +76,19 @@ public class LocalMoranIStatisticOperation extends AbstractStatisticsOperation {
 
     double[] dcwzValue;
 
+    double[] dcPseudoP;
+
+    // state kept for update()
+    String inputField;
+
+    String outputTypeName;
+
+    String[] inputIds;
+
+    String[] outputIds;
+
+    LocalStatisticsCache cache;
+
     public LocalMoranIStatisticOperation() {
         // Default Setting
         this.setDistanceType(DistanceMethod.Euclidean);
@@ -78,27 +106,33 @@ public class LocalMoranIStatisticOperation extends AbstractStatisticsOperation {
 
     public SimpleFeatureCollection execute(SimpleFeatureCollection inputFeatures, String inputField)
             throws IOException {
+        this.inputField = inputField;
+        this.cache = null;
+
         swMatrix = new SpatialWeightMatrix(getSpatialConceptType(), getStandardizationType());
+        swMatrix.setSpatialWeights(loadSpatialWeights());
+        swMatrix.setWeightsCache(getWeightsCache());
         swMatrix.distanceBandWidth = this.getDistanceBand();
         swMatrix.buildWeightMatrix(inputFeatures, inputField, this.getDistanceType());
 
         // # Calculate the mean and standard deviation for this data set.
-        int featureCount = swMatrix.Events.size();
-        double n = featureCount * 1.0;
-        double dZMean = swMatrix.dZSum / n;
+        int featureCount = swMatrix.getEventCount();
+        final double n = featureCount * 1.0;
+        final double dZMean = swMatrix.dZSum / n;
+        final double[] values = swMatrix.getEventStore().getWeights();
 
-        double dM2 = 0.0;
-        double dM4 = 0.0;
+        double dM2Sum = 0.0;
+        double dM4Sum = 0.0;
 
         // calculate deviation from the mean sums.
-        for (SpatialEvent curE : swMatrix.Events) {
-            dM2 += Math.pow(curE.weight - dZMean, 2.0);
-            dM4 += Math.pow(curE.weight - dZMean, 4.0);
+        for (int i = 0; i < featureCount; i++) {
+            dM2Sum += Math.pow(values[i] - dZMean, 2.0);
+            dM4Sum += Math.pow(values[i] - dZMean, 4.0);
         }
 
-        dM2 = dM2 / (n - 1.0);
-        dM4 = dM4 / (n - 1.0);
-        double dB2 = dM4 / Math.pow(dM2, 2.0);
+        final double dM2 = dM2Sum / (n - 1.0);
+        final double dM4 = dM4Sum / (n - 1.0);
+        final double dB2 = dM4 / Math.pow(dM2, 2.0);
 
         // calculate Local Index for each feature i.
         dcIndex = new double[featureCount];
@@ -106,76 +140,303 @@ public class LocalMoranIStatisticOperation extends AbstractStatisticsOperation {
         moranBins = new String[featureCount];
         dczValue = new double[featureCount];
         dcwzValue = new double[featureCount];
-        for (int i = 0; i < featureCount; i++) {
-            SpatialEvent curE = swMatrix.Events.get(i);
-            double dLocalZDevSum = 0.0;
-            double dWijSum = 0.0;
-            double dWij2Sum = 0.0;
-            double dWijWihSum = 0.0;
-            double localBinTotal = 0.0;
-            int numNeighs = 0;
-
-            // # Look for i's local neighbors
-            for (int j = 0; j < featureCount; j++) {
-                SpatialEvent destE = swMatrix.Events.get(j);
-                if (curE.oid == destE.oid)
-                    continue;
-
-                // # Calculate the weight (dWij)
-                double dWij = 0.0;
-                if (this.getSpatialConceptType() == SpatialConcept.POLYGONCONTIGUITY) {
-                    dWij = 0.0;
-                    // if (destE is neighbor ) dWeight = 1.0;
-                } else {
-                    dWij = swMatrix.getWeight(curE, destE);
+        computeFeatures(featureCount, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    computeLocalIndex(i, values, n, dZMean, dM2, dB2);
                 }
+            }
+        });
+
+        dcPseudoP = null;
+        if (getPermutations() > 0
+                && getSpatialConceptType() != SpatialConcept.POLYGONCONTIGUITY) {
+            final double[] dcDev = new double[featureCount];
+            for (int i = 0; i < featureCount; i++) {
+                dcDev[i] = values[i] - dZMean;
+            }
 
-                if (getStandardizationType() == StandardizationMethod.ROW) {
-                    dWij = swMatrix.standardizeWeight(curE, dWij);
-                }
+            boolean rowStandardized = getStandardizationType() == StandardizationMethod.ROW;
+            dcPseudoP = computePseudoPValues(swMatrix.getSparseWeights(rowStandardized),
+                    new ConditionalPermutation.Statistic() {
+                        @Override
+                        public double compute(int i, int[] neighbors, double[] weights, int count) {
+                            double dLocalZDevSum = 0.0;
+                            for (int k = 0; k < count; k++) {
+                                dLocalZDevSum += weights[k] * dcDev[neighbors[k]];
+                            }
+                            return (dcDev[i] / dM2) * dLocalZDevSum;
+                        }
+                    });
+        }
+
+        return buildFeatureCollection(inputFeatures);
+    }
+
+    /**
+     * Calculates the local indices over out-of-core weights built from the same features,
+     * streaming one block of weights at a time. The stored distances are converted to the weights
+     * of the concept of spatial relationships. <br>
+     * Permutation tests and {@link #update(SimpleFeatureCollection, Collection)} are not
+     * available for these weights.
+     *
+     * @throws IllegalArgumentException if the concept is not supported by the weights
+     */
+    public SimpleFeatureCollection execute(SimpleFeatureCollection inputFeatures,
+            String inputField, final TiledWeightMatrix weights) throws IOException {
+        this.inputField = inputField;
+        this.cache = null;
+        this.swMatrix = null;
+
+        weights.checkSpatialConcept(getSpatialConceptType());
+
+        SpatialEventStore events = SpatialEventStore.load(inputFeatures, inputField);
+        if (events.size() != weights.getRowCount()) {
+            throw new IllegalArgumentException("The spatial weights have " + weights.getRowCount()
+                    + " rows but there are " + events.size() + " features");
+        }
+
+        // # Calculate the mean and standard deviation for this data set.
+        final int featureCount = events.size();
+        final double[] z = events.getWeights();
+        final double n = featureCount * 1.0;
+
+        double dZSum = 0.0;
+        for (int i = 0; i < featureCount; i++) {
+            dZSum += z[i];
+        }
+        final double dZMean = dZSum / n;
+
+        double dM2Sum = 0.0;
+        double dM4Sum = 0.0;
+        for (int i = 0; i < featureCount; i++) {
+            dM2Sum += Math.pow(z[i] - dZMean, 2.0);
+            dM4Sum += Math.pow(z[i] - dZMean, 4.0);
+        }
+
+        final double dM2 = dM2Sum / (n - 1.0);
+        final double dM4 = dM4Sum / (n - 1.0);
+        final double dB2 = dM4 / Math.pow(dM2, 2.0);
+
+        dcIndex = new double[featureCount];
+        dcZScore = new double[featureCount];
+        moranBins = new String[featureCount];
+        dczValue = new double[featureCount];
+        dcwzValue = new double[featureCount];
+        dcPseudoP = null;
 
-                // moran's i
-                dLocalZDevSum += dWij * (destE.weight - dZMean);
-                if (dWij > 0) {
-                    localBinTotal += dWij * destE.weight;
-                    numNeighs++;
+        // features missing from the weights have no neighbors
+        for (int i = 0; i < featureCount; i++) {
+            if (weights.getTile(i) < 0) {
+                setLocalIndex(i, z[i], n, dZMean, dM2, dB2, 0.0, 0.0, 0.0, 0.0, 0);
+            }
+        }
+
+        final SpatialConcept spatialConcept = getSpatialConceptType();
+        final boolean rowStandardized = getStandardizationType() == StandardizationMethod.ROW;
+        for (int tile = 0; tile < weights.getTileCount(); tile++) {
+            final TiledWeightMatrix.Block block = weights.readBlock(tile);
+            computeFeatures(block.size(), new ParallelRange.Task() {
+                @Override
+                public void compute(int start, int end) {
+                    SparseWeightMatrix local = block.getWeights();
+                    int[] columns = local.getColumns();
+                    double[] values = local.getWeights();
+                    for (int r = start; r < end; r++) {
+                        int i = block.getRow(r);
+                        int numNeighs = local.getNeighborCount(r);
+
+                        double dRowSum = 0.0;
+                        if (rowStandardized) {
+                            for (int k = local.getRowStart(r); k < local.getRowEnd(r); k++) {
+                                dRowSum += weights.toWeight(spatialConcept, values[k]);
+                            }
+                        }
+
+                        double dLocalZDevSum = 0.0;
+                        double dWijSum = 0.0;
+                        double dWij2Sum = 0.0;
+                        double localBinTotal = 0.0;
+                        for (int k = local.getRowStart(r); k < local.getRowEnd(r); k++) {
+                            double dWij = weights.toWeight(spatialConcept, values[k]);
+                            if (rowStandardized) {
+                                dWij = dWij / dRowSum;
+                            }
+
+                            double zj = z[columns[k]];
+                            dLocalZDevSum += dWij * (zj - dZMean);
+                            localBinTotal += dWij * zj;
+                            dWijSum += dWij;
+                            dWij2Sum += dWij * dWij;
+                        }
+
+                        setLocalIndex(i, z[i], n, dZMean, dM2, dB2, dLocalZDevSum, dWijSum,
+                                dWij2Sum, localBinTotal, numNeighs);
+                    }
                 }
+            });
+        }
+
+        return buildFeatureCollection(inputFeatures);
+    }
+
+    private void computeLocalIndex(int i, double[] values, double n, double dZMean, double dM2,
+            double dB2) {
+        double dLocalZDevSum = 0.0;
+        double dWijSum = 0.0;
+        double dWij2Sum = 0.0;
+        double localBinTotal = 0.0;
+        int numNeighs = 0;
+
+        // # Look for i's local neighbors
+        SparseWeightMatrix rows = swMatrix.getWeightMatrix();
+        int[] neighbors = rows == null ? swMatrix.getNeighbors(i) : rows.getColumns();
+        int end = rows == null ? neighbors.length : rows.getRowEnd(i);
+        for (int k = rows == null ? 0 : rows.getRowStart(i); k < end; k++) {
+            int j = neighbors[k];
+            if (i == j)
+                continue;
+
+            // # Calculate the weight (dWij)
+            double dWij = 0.0;
+            if (this.getSpatialConceptType() == SpatialConcept.POLYGONCONTIGUITY) {
+                dWij = 0.0;
+                // if (destE is neighbor ) dWeight = 1.0;
+            } else {
+                dWij = swMatrix.getWeight(i, j);
+            }
+
+            if (getStandardizationType() == StandardizationMethod.ROW) {
+                dWij = swMatrix.standardizeWeight(i, dWij);
+            }
+
+            // moran's i
+            dLocalZDevSum += dWij * (values[j] - dZMean);
+            if (dWij > 0) {
+                localBinTotal += dWij * values[j];
+                numNeighs++;
+            }
+
+            dWijSum += dWij;
+            dWij2Sum += Math.pow(dWij, 2.0);
+        } // next j
+
+        setLocalIndex(i, values[i], n, dZMean, dM2, dB2, dLocalZDevSum, dWijSum, dWij2Sum,
+                localBinTotal, numNeighs);
+    }
+
+    private void setLocalIndex(int i, double value, double n, double dZMean, double dM2,
+            double dB2, double dLocalZDevSum, double dWijSum, double dWij2Sum,
+            double localBinTotal, int numNeighs) {
+        double dWijWihSum = Math.pow(dWijSum, 2.0) - dWij2Sum;
+
+        // # Calculate Local I
+        dcIndex[i] = Double.NaN;
+        dcZScore[i] = Double.NaN;
+        moranBins[i] = "";
+        try {
+            dcIndex[i] = ((value - dZMean) / dM2) * dLocalZDevSum;
+
+            // gaiyong
+            dczValue[i] = ((value - dZMean) / dM2);
+            dcwzValue[i] = dLocalZDevSum;
+            // end
+
+            double dExpected = -1.0 * (dWijSum / (n - 1.0));
+            double v1 = (dWij2Sum * (n - dB2)) / (n - 1.0);
+            double v2 = Math.pow(dWijSum, 2.0) / Math.pow((n - 1.0), 2.0);
+            double v3 = dWijWihSum * ((2.0 * dB2) - n);
+            double v4 = (n - 1.0) * (n - 2.0);
+            double dVariance = v1 + v3 / v4 - v2;
+            dcZScore[i] = (dcIndex[i] - dExpected) / Math.pow(dVariance, 0.5);
+            if (numNeighs > 0) {
+                double localMean = localBinTotal / (dWijSum * 1.0);
+                moranBins[i] = this.returnMoranBin(dcZScore[i], value, dZMean, localMean);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Recomputes the statistics after the values of the given input features were edited and
+     * rewrites the output features whose results changed in place. <br>
+     * Moved, added or removed features need new weights: like contiguity weights and permutation
+     * tests, they fall back to a full execution.
+     */
+    public SimpleFeatureCollection update(SimpleFeatureCollection inputFeatures,
+            Collection<String> featureIds) throws IOException {
+        if (swMatrix == null || inputIds == null) {
+            throw new IllegalStateException("update requires a previous execution");
+        }
+
+        if (getPermutations() > 0 || outputIds == null
+                || getSpatialConceptType() == SpatialConcept.POLYGONCONTIGUITY) {
+            return execute(inputFeatures, inputField);
+        }
+
+        if (cache == null) {
+            boolean rowStandardized = getStandardizationType() == StandardizationMethod.ROW;
+            cache = new LocalStatisticsCache(swMatrix.getSparseWeights(rowStandardized), null,
+                    swMatrix.getEventStore().getWeights(), inputIds, outputIds);
+        }
+
+        Map<Integer, Double> changes = cache.loadChanges(inputFeatures, inputField, featureIds,
+                swMatrix.getEventStore());
+        if (changes == null) {
+            return execute(inputFeatures, inputField);
+        }
+
+        for (Map.Entry<Integer, Double> entry : changes.entrySet()) {
+            int i = entry.getKey().intValue();
+            cache.update(i, entry.getValue().doubleValue());
+            swMatrix.getEventStore().setWeight(i, entry.getValue().doubleValue());
+        }
+
+        // every index depends on the moments, but only on cached sums
+        final int featureCount = cache.size();
+        final double n = featureCount * 1.0;
+        final double dZMean = cache.getMean();
+        final double dM2 = cache.getDev2Sum() / (n - 1.0);
+        final double dM4 = cache.getDev4Sum() / (n - 1.0);
+        final double dB2 = dM4 / Math.pow(dM2, 2.0);
 
-                dWijSum += dWij;
-                dWij2Sum += Math.pow(dWij, 2.0);
-            } // next j
-
-            dWijWihSum = Math.pow(dWijSum, 2.0) - dWij2Sum;
-
-            // # Calculate Local I
-            dcIndex[i] = Double.NaN;
-            dcZScore[i] = Double.NaN;
-            moranBins[i] = "";
-            try {
-                dcIndex[i] = ((curE.weight - dZMean) / dM2) * dLocalZDevSum;
-
-                // gaiyong
-                dczValue[i] = ((curE.weight - dZMean) / dM2);
-                dcwzValue[i] = dLocalZDevSum;
-                // end
-
-                double dExpected = -1.0 * (dWijSum / (n - 1.0));
-                double v1 = (dWij2Sum * (n - dB2)) / (n - 1.0);
-                double v2 = Math.pow(dWijSum, 2.0) / Math.pow((n - 1.0), 2.0);
-                double v3 = dWijWihSum * ((2.0 * dB2) - n);
-                double v4 = (n - 1.0) * (n - 2.0);
-                double dVariance = v1 + v3 / v4 - v2;
-                dcZScore[i] = (dcIndex[i] - dExpected) / Math.pow(dVariance, 0.5);
-                if (numNeighs > 0) {
-                    double localMean = localBinTotal / (dWijSum * 1.0);
-                    moranBins[i] = this.returnMoranBin(dcZScore[i], curE.weight, dZMean, localMean);
+        // only the features whose rounded results change are rewritten
+        final Object[][] oldValues = new Object[featureCount][];
+        for (int i = 0; i < featureCount; i++) {
+            oldValues[i] = getOutputValues(i);
+        }
+
+        computeFeatures(featureCount, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    double lag = cache.getLag(i);
+                    double dWijSum = cache.getWeightSum(i);
+                    setLocalIndex(i, cache.getValue(i), n, dZMean, dM2, dB2, lag
+                            - (dWijSum * dZMean), dWijSum, cache.getWeight2Sum(i), lag,
+                            cache.getNeighborCount(i));
                 }
-            } catch (Exception e) {
-                LOGGER.log(Level.FINE, e.getMessage(), e);
             }
-        } // next i
+        });
 
-        return buildFeatureCollection(inputFeatures);
+        BitSet changed = new BitSet(featureCount);
+        for (int i = 0; i < featureCount; i++) {
+            if (!Arrays.equals(oldValues[i], getOutputValues(i))) {
+                changed.set(i);
+            }
+        }
+
+        cache.patch(getOutputDataStore(), outputTypeName, changed,
+                new LocalStatisticsCache.FeaturePatch() {
+                    @Override
+                    public void apply(int i, SimpleFeature feature) {
+                        setOutputAttributes(i, feature);
+                    }
+                });
+
+        return getOutputDataStore().getFeatureSource(outputTypeName).getFeatures();
     }
 
     private SimpleFeatureCollection buildFeatureCollection(SimpleFeatureCollection inputFeatures)
@@ -185,17 +446,21 @@ public class LocalMoranIStatisticOperation extends AbstractStatisticsOperation {
         SimpleFeatureType featureType = FeatureTypes.build(inputFeatures.getSchema(), typeName);
 
         // # Build results field name.
-        String[] fieldList = { "LMiIndex", "LMiZScore", "LMiPValue", "LMizValue", "LMiwzValue",
-                "COType" };
+        String[] fieldList = FIELDS;
         for (int k = 0; k < fieldList.length - 1; k++) {
             featureType = FeatureTypes.add(featureType, fieldList[k], Double.class);
         }
         featureType = FeatureTypes.add(featureType, fieldList[5], String.class, 10);
+        if (dcPseudoP != null) {
+            featureType = FeatureTypes.add(featureType, PSEUDO_P_FIELD, Double.class);
+        }
 
         // prepare transactional feature store
         IFeatureInserter featureWriter = getFeatureWriter(featureType);
 
         // insert features
+        outputTypeName = typeName;
+        inputIds = new String[dcIndex.length];
         int idx = 0;
         SimpleFeatureIterator featureIter = null;
         try {
@@ -207,30 +472,8 @@ public class LocalMoranIStatisticOperation extends AbstractStatisticsOperation {
                 SimpleFeature newFeature = featureWriter.buildFeature(null);
                 featureWriter.copyAttributes(feature, newFeature, true);
 
-                // "LMiIndex", "LMiZScore", "LMiPValue", "COType"
-                double localI = this.dcIndex[idx];
-                double zScore = this.dcZScore[idx];
-                double pValue = 0.0;
-                String coType = this.moranBins[idx];
-
-                double dczv = this.dczValue[idx];
-                double dcwv = this.dcwzValue[idx];
-
-                if (Double.isNaN(zScore) || Double.isInfinite(zScore)) {
-                    localI = 0.0;
-                    zScore = 0.0;
-                    pValue = 1.0;
-                    coType = "";
-                } else {
-                    pValue = SSUtils.zProb(zScore, StatEnum.BOTH);
-                }
-
-                newFeature.setAttribute(fieldList[0], FormatUtils.round(localI));
-                newFeature.setAttribute(fieldList[1], FormatUtils.round(zScore));
-                newFeature.setAttribute(fieldList[2], FormatUtils.round(pValue));
-                newFeature.setAttribute(fieldList[3], FormatUtils.round(dczv));
-                newFeature.setAttribute(fieldList[4], FormatUtils.round(dcwv));
-                newFeature.setAttribute(fieldList[5], coType);
+                setOutputAttributes(idx, newFeature);
+                inputIds[idx] = feature.getID();
 
                 idx++;
                 featureWriter.write(newFeature);
@@ -241,7 +484,45 @@ public class LocalMoranIStatisticOperation extends AbstractStatisticsOperation {
             featureWriter.close(featureIter);
         }
 
-        return featureWriter.getFeatureCollection();
+        SimpleFeatureCollection outputFeatures = featureWriter.getFeatureCollection();
+        outputIds = swMatrix == null || outputFeatures == null ? null : LocalStatisticsCache
+                .mapOutputIds(outputFeatures, swMatrix.getEventStore());
+        return outputFeatures;
+    }
+
+    private void setOutputAttributes(int idx, SimpleFeature newFeature) {
+        Object[] values = getOutputValues(idx);
+        for (int k = 0; k < FIELDS.length; k++) {
+            newFeature.setAttribute(FIELDS[k], values[k]);
+        }
+        if (dcPseudoP != null) {
+            double pseudoP = Double.isNaN(dcPseudoP[idx]) ? 1.0 : dcPseudoP[idx];
+            newFeature.setAttribute(PSEUDO_P_FIELD, FormatUtils.round(pseudoP));
+        }
+    }
+
+    private Object[] getOutputValues(int idx) {
+        // "LMiIndex", "LMiZScore", "LMiPValue", "COType"
+        double localI = this.dcIndex[idx];
+        double zScore = this.dcZScore[idx];
+        double pValue = 0.0;
+        String coType = this.moranBins[idx];
+
+        double dczv = this.dczValue[idx];
+        double dcwv = this.dcwzValue[idx];
+
+        if (Double.isNaN(zScore) || Double.isInfinite(zScore)) {
+            localI = 0.0;
+            zScore = 0.0;
+            pValue = 1.0;
+            coType = "";
+        } else {
+            pValue = SSUtils.zProb(zScore, StatEnum.BOTH);
+        }
+
+        return new Object[] { FormatUtils.round(localI), FormatUtils.round(zScore),
+                FormatUtils.round(pValue), FormatUtils.round(dczv), FormatUtils.round(dcwv),
+                coType };
     }
 
     private String returnMoranBin(double zScore, double featureVal, double globalMean,
@@ -0,0 +1,391 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.autocorrelation;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
+import org.geotools.process.spatialstatistics.core.SpatialEventStore;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.identity.FeatureId;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Keeps the spatial lags and the value moments of a local statistic so that edited values are
+ * applied without revisiting the weights of unaffected features. <br>
+ * A value change updates the moments in constant time and the lags of the features having the
+ * edited feature as a neighbor; the statistic of every feature can then be recomputed in constant
+ * time from the cached sums. Moments are kept around the mean of the initial values to limit
+ * cancellation.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+class LocalStatisticsCache {
+
+    /**
+     * Writes the current statistics of feature i into an output feature.
+     */
+    interface FeaturePatch {
+        void apply(int i, SimpleFeature feature);
+    }
+
+    private final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    private final int size;
+
+    private final SparseWeightMatrix transposed;
+
+    private final double[] selfWeights;
+
+    private final double[] values;
+
+    private final double[] lags;
+
+    private final double[] weightSums;
+
+    private final double[] weight2Sums;
+
+    private final int[] neighborCounts;
+
+    private final double shift;
+
+    // sums of (value - shift)^k
+    private double s1 = 0.0;
+
+    private double s2 = 0.0;
+
+    private double s3 = 0.0;
+
+    private double s4 = 0.0;
+
+    private final Map<String, Integer> inputIndex;
+
+    private final String[] outputIds;
+
+    // edited input features of the last loadChanges, by event index
+    private final Map<Integer, SimpleFeature> editedFeatures = new HashMap<Integer, SimpleFeature>();
+
+    /**
+     * @param weights the weights of every feature, without the feature itself
+     * @param selfWeights the weight of every feature to itself, or null for none
+     * @param values the values of the features
+     * @param inputIds the ids of the input features, in event order
+     * @param outputIds the ids of the output features, in event order
+     */
+    public LocalStatisticsCache(SparseWeightMatrix weights, double[] selfWeights,
+            double[] values, String[] inputIds, String[] outputIds) {
+        this.size = inputIds.length;
+        this.selfWeights = selfWeights;
+        this.outputIds = outputIds;
+        this.values = new double[size];
+        System.arraycopy(values, 0, this.values, 0, size);
+
+        this.inputIndex = new HashMap<String, Integer>(size * 2);
+        for (int i = 0; i < size; i++) {
+            inputIndex.put(inputIds[i], Integer.valueOf(i));
+        }
+
+        final int[] offsets = weights.getRowOffsets();
+        final int[] columns = weights.getColumns();
+        final double[] wij = weights.getWeights();
+
+        // lags and row sums, and the transposed weights to find the rows holding a feature
+        this.lags = new double[size];
+        this.weightSums = new double[size];
+        this.weight2Sums = new double[size];
+        this.neighborCounts = new int[size];
+        SparseWeightMatrix.Builder builder = new SparseWeightMatrix.Builder(
+                weights.getNonZeroCount());
+        builder.ensureRowCount(size);
+        for (int i = 0; i < size; i++) {
+            double self = selfWeights == null ? 0.0 : selfWeights[i];
+            double lag = self * this.values[i];
+            double weightSum = self;
+            double weight2Sum = self * self;
+            int neighborCount = 0;
+            for (int k = offsets[i], end = offsets[i + 1]; k < end; k++) {
+                int j = columns[k];
+                lag += wij[k] * this.values[j];
+                weightSum += wij[k];
+                weight2Sum += wij[k] * wij[k];
+                if (wij[k] > 0) {
+                    neighborCount++;
+                }
+                builder.add(j, i, wij[k]);
+            }
+            lags[i] = lag;
+            weightSums[i] = weightSum;
+            weight2Sums[i] = weight2Sum;
+            neighborCounts[i] = neighborCount;
+        }
+        this.transposed = builder.build();
+
+        double sum = 0.0;
+        for (int i = 0; i < size; i++) {
+            sum += this.values[i];
+        }
+        this.shift = size == 0 ? 0.0 : sum / size;
+        for (int i = 0; i < size; i++) {
+            addMoments(this.values[i], 1.0);
+        }
+    }
+
+    private void addMoments(double value, double sign) {
+        double d = value - shift;
+        double d2 = d * d;
+        s1 += sign * d;
+        s2 += sign * d2;
+        s3 += sign * d2 * d;
+        s4 += sign * d2 * d2;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getValue(int i) {
+        return values[i];
+    }
+
+    /**
+     * Returns the weighted sum of the values of the neighbors of i, including i itself if it has
+     * a self weight.
+     */
+    public double getLag(int i) {
+        return lags[i];
+    }
+
+    public double getWeightSum(int i) {
+        return weightSums[i];
+    }
+
+    public double getWeight2Sum(int i) {
+        return weight2Sums[i];
+    }
+
+    public int getNeighborCount(int i) {
+        return neighborCounts[i];
+    }
+
+    public double getMean() {
+        return shift + (s1 / size);
+    }
+
+    /**
+     * Returns the sum of the squared deviations from the mean.
+     */
+    public double getDev2Sum() {
+        double m = s1 / size;
+        return s2 - (s1 * m);
+    }
+
+    /**
+     * Returns the sum of the 4th power deviations from the mean.
+     */
+    public double getDev4Sum() {
+        double m = s1 / size;
+        double m2 = m * m;
+        return s4 - (4.0 * m * s3) + (6.0 * m2 * s2) - (4.0 * m2 * m * s1) + (size * m2 * m2);
+    }
+
+    /**
+     * Returns the sum of the squared values.
+     */
+    public double getZ2Sum() {
+        return s2 + (2.0 * shift * s1) + (size * shift * shift);
+    }
+
+    /**
+     * Applies a new value to a feature and updates the lags of the rows holding it.
+     */
+    public void update(int i, double value) {
+        double delta = value - values[i];
+        if (delta == 0.0) {
+            return;
+        }
+
+        addMoments(values[i], -1.0);
+        addMoments(value, 1.0);
+        values[i] = value;
+
+        if (selfWeights != null) {
+            lags[i] += selfWeights[i] * delta;
+        }
+
+        int[] offsets = transposed.getRowOffsets();
+        int[] columns = transposed.getColumns();
+        double[] wji = transposed.getWeights();
+        for (int k = offsets[i], end = offsets[i + 1]; k < end; k++) {
+            lags[columns[k]] += wji[k] * delta;
+        }
+    }
+
+    /**
+     * Reads the edited features and returns their new values by event index, or null if a
+     * feature is unknown or was moved, which requires new weights.
+     */
+    public Map<Integer, Double> loadChanges(SimpleFeatureCollection features, String inputField,
+            Collection<String> featureIds, SpatialEventStore events) {
+        Map<Integer, Double> changes = new HashMap<Integer, Double>();
+        editedFeatures.clear();
+        if (featureIds.isEmpty()) {
+            return changes;
+        }
+
+        Set<FeatureId> ids = new HashSet<FeatureId>();
+        for (String featureId : featureIds) {
+            if (!inputIndex.containsKey(featureId)) {
+                return null; // added feature
+            }
+            ids.add(ff.featureId(featureId));
+        }
+
+        int idxField = features.getSchema().indexOf(inputField);
+        SimpleFeatureIterator featureIter = features.subCollection(ff.id(ids)).features();
+        try {
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                int i = inputIndex.get(feature.getID()).intValue();
+
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                Coordinate centroid = geometry.getCentroid().getCoordinate();
+                if (centroid.x != events.getX(i) || centroid.y != events.getY(i)) {
+                    return null; // moved feature
+                }
+
+                double value = 1.0;
+                Object attribute = feature.getAttribute(idxField);
+                try {
+                    value = attribute == null ? 1.0 : Double.parseDouble(attribute.toString());
+                } catch (NumberFormatException e) {
+                    value = 1.0;
+                }
+                changes.put(Integer.valueOf(i), Double.valueOf(value));
+                editedFeatures.put(Integer.valueOf(i), feature);
+            }
+        } finally {
+            featureIter.close();
+        }
+
+        // a feature that can no longer be read was removed
+        return changes.size() == ids.size() ? changes : null;
+    }
+
+    /**
+     * Maps the output features to the events they were built from: output feature i must lie on
+     * event i. Returns the output ids in event order, or null if the output store lists its
+     * features in another order or dropped some of them.
+     */
+    public static String[] mapOutputIds(SimpleFeatureCollection outputFeatures,
+            SpatialEventStore events) {
+        String[] outputIds = new String[events.size()];
+        int idx = 0;
+        SimpleFeatureIterator featureIter = outputFeatures.features();
+        try {
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                if (idx == outputIds.length) {
+                    return null;
+                }
+
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                Coordinate centroid = geometry.getCentroid().getCoordinate();
+                if (centroid.x != events.getX(idx) || centroid.y != events.getY(idx)) {
+                    return null;
+                }
+                outputIds[idx++] = feature.getID();
+            }
+        } finally {
+            featureIter.close();
+        }
+        return idx == outputIds.length ? outputIds : null;
+    }
+
+    /**
+     * Rewrites the given features of the output type in place. The output features of the last
+     * edited input features also receive their new attribute values. <br>
+     * An edit shifts the mean and the variance, so the rounded results of most features usually
+     * change with it: when more than half of the features changed, the output is rewritten in a
+     * single pass instead of through a filter listing every id.
+     */
+    public void patch(DataStore dataStore, String typeName, BitSet changed, FeaturePatch patch)
+            throws IOException {
+        for (Integer i : editedFeatures.keySet()) {
+            changed.set(i.intValue());
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        Map<String, Integer> outputIndex = new HashMap<String, Integer>();
+        Set<FeatureId> ids = new HashSet<FeatureId>();
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+            outputIndex.put(outputIds[i], Integer.valueOf(i));
+            ids.add(ff.featureId(outputIds[i]));
+        }
+
+        Filter filter = ids.size() * 2 > size ? Filter.INCLUDE : ff.id(ids);
+        FeatureWriter<SimpleFeatureType, SimpleFeature> writer = dataStore.getFeatureWriter(
+                typeName, filter, Transaction.AUTO_COMMIT);
+        try {
+            while (writer.hasNext()) {
+                SimpleFeature feature = writer.next();
+                Integer i = outputIndex.get(feature.getID());
+                if (i != null) {
+                    SimpleFeature edited = editedFeatures.get(i);
+                    if (edited != null) {
+                        copyAttributes(edited, feature);
+                    }
+                    patch.apply(i.intValue(), feature);
+                    writer.write();
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void copyAttributes(SimpleFeature source, SimpleFeature target) {
+        SimpleFeatureType targetType = target.getFeatureType();
+        for (AttributeDescriptor descriptor : source.getFeatureType().getAttributeDescriptors()) {
+            String name = descriptor.getLocalName();
+            if (targetType.getDescriptor(name) != null) {
+                target.setAttribute(name, source.getAttribute(name));
+            }
+        }
+    }
+}
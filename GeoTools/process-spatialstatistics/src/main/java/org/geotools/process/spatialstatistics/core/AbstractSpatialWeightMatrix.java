@@ -16,6 +16,8 @@
  */
 package org.geotools.process.spatialstatistics.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -37,9 +39,35 @@ public abstract class AbstractSpatialWeightMatrix {
         Distance, Contiguity
     }
 
+    public static final int DEFAULT_FEATURES_PER_TILE = 65536;
+
     protected final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
 
+    private int featuresPerTile = DEFAULT_FEATURES_PER_TILE;
+
+    public int getFeaturesPerTile() {
+        return featuresPerTile;
+    }
+
+    /**
+     * Sets the average number of features of a tile written by
+     * {@link #executeTiled(SimpleFeatureCollection, String, File)}, which bounds the number of
+     * links held in memory at once.
+     */
+    public void setFeaturesPerTile(int featuresPerTile) {
+        this.featuresPerTile = featuresPerTile;
+    }
+
     public abstract SpatialWeightMatrixResult execute(SimpleFeatureCollection features,
             String uniqueField);
 
+    /**
+     * Builds the same links as {@link #execute(SimpleFeatureCollection, String)} tile by tile
+     * into a memory mapped file instead of the heap. Every tile is computed from its own features
+     * and a halo of the surrounding features, then written and released. <br>
+     * There is one row per unique field value, in order of first appearance.
+     */
+    public abstract TiledWeightMatrix executeTiled(SimpleFeatureCollection features,
+            String uniqueField, File outputFile) throws IOException;
+
 }
@@ -0,0 +1,440 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Finds the central feature: the event with the smallest weighted sum of distances to every other
+ * event, plus its own potential times its own weight. <br>
+ * The events are grouped into blocks of a regular grid, each with its weight, weighted mean
+ * center and extent. The distance sum to a block is at least the block weight times the larger of
+ * the distance to the block mean center and the distance to the block extent, and at most that
+ * distance to the mean center plus the spread of the block, which bounds the cost of every event
+ * without visiting the other events. Events whose lower bound exceeds the best upper bound are
+ * pruned; the others are evaluated in parallel, in ascending order of their lower bound, one
+ * contiguous block at a time from the nearest blocks outward, and abandoned as soon as their
+ * partial sum plus the bounds of the remaining blocks exceeds the best cost found. <br>
+ * Bounds require non-negative weights; with a negative weight every event is evaluated exactly.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class CentralFeatureKernel {
+
+    // average number of events of a block, and the maximum number of blocks per side
+    static final int BLOCK_SIZE = 256;
+
+    static final int MAX_BLOCKS_PER_SIDE = 16;
+
+    // relative slack of the bound comparisons for rounding errors
+    static final double TOLERANCE = 1e-9;
+
+    private final int size;
+
+    private final double[] x;
+
+    private final double[] y;
+
+    private final double[] selfCosts;
+
+    private final boolean bounded;
+
+    private DistanceMethod distanceMethod = DistanceMethod.Euclidean;
+
+    private int parallelism = 1;
+
+    // events reordered by block: block b holds bx[blockOffsets[b]] ... bx[blockOffsets[b + 1] - 1]
+    private int columns;
+
+    private int rows;
+
+    private int[] blockOffsets;
+
+    private int[] blockOfEvent;
+
+    private double[] bx;
+
+    private double[] by;
+
+    private double[] bw;
+
+    private double[] blockWeights;
+
+    private double[] blockCenterX;
+
+    private double[] blockCenterY;
+
+    private double[] blockSpreads;
+
+    private Envelope[] blockExtents;
+
+    private double minimumCost = Double.NaN;
+
+    private int evaluatedCount = 0;
+
+    /**
+     * @param x the x coordinates of the events
+     * @param y the y coordinates of the events
+     * @param weights the weights of the events, or null for 1
+     * @param potentials the distance of every event to itself, or null for 0
+     * @param size the number of events
+     */
+    public CentralFeatureKernel(double[] x, double[] y, double[] weights, double[] potentials,
+            int size) {
+        this.size = size;
+        this.x = x;
+        this.y = y;
+
+        boolean positive = true;
+        this.bw = new double[size];
+        this.selfCosts = new double[size];
+        for (int i = 0; i < size; i++) {
+            double weight = weights == null ? 1.0 : weights[i];
+            positive &= weight >= 0;
+            selfCosts[i] = potentials == null ? 0.0 : potentials[i] * weight;
+        }
+        this.bounded = positive;
+
+        buildBlocks(weights);
+    }
+
+    public DistanceMethod getDistanceMethod() {
+        return distanceMethod;
+    }
+
+    public void setDistanceMethod(DistanceMethod distanceMethod) {
+        this.distanceMethod = distanceMethod;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads evaluating the candidates.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the cost of the central feature found by the last search.
+     */
+    public double getMinimumCost() {
+        return minimumCost;
+    }
+
+    /**
+     * Returns the number of candidates evaluated by the last search, completely or not.
+     */
+    public int getEvaluatedCount() {
+        return evaluatedCount;
+    }
+
+    private void buildBlocks(double[] weights) {
+        int pointsPerBlock = Math.max(BLOCK_SIZE, (int) Math.ceil(size
+                / (double) (MAX_BLOCKS_PER_SIDE * MAX_BLOCKS_PER_SIDE)));
+        TileGrid grid = new TileGrid(x, y, size, pointsPerBlock);
+        this.columns = grid.getColumnCount();
+        this.rows = grid.getRowCount();
+
+        final int blockCount = grid.getTileCount();
+        this.blockOffsets = new int[blockCount + 1];
+        this.blockOfEvent = new int[size];
+        this.bx = new double[size];
+        this.by = new double[size];
+        this.blockWeights = new double[blockCount];
+        this.blockCenterX = new double[blockCount];
+        this.blockCenterY = new double[blockCount];
+        this.blockSpreads = new double[blockCount];
+        this.blockExtents = new Envelope[blockCount];
+
+        int pos = 0;
+        for (int b = 0; b < blockCount; b++) {
+            blockOffsets[b] = pos;
+            Envelope extent = new Envelope();
+            double sumW = 0.0;
+            double sumX = 0.0;
+            double sumY = 0.0;
+            for (int i : grid.getMembers(b)) {
+                double weight = weights == null ? 1.0 : weights[i];
+                blockOfEvent[i] = b;
+                bx[pos] = x[i];
+                by[pos] = y[i];
+                bw[pos] = weight;
+                extent.expandToInclude(x[i], y[i]);
+                sumW += weight;
+                sumX += weight * x[i];
+                sumY += weight * y[i];
+                pos++;
+            }
+            blockWeights[b] = sumW;
+            blockExtents[b] = extent;
+            if (sumW > 0) {
+                blockCenterX[b] = sumX / sumW;
+                blockCenterY[b] = sumY / sumW;
+            } else if (!extent.isNull()) {
+                blockCenterX[b] = extent.centre().x;
+                blockCenterY[b] = extent.centre().y;
+            }
+        }
+        blockOffsets[blockCount] = pos;
+    }
+
+    /**
+     * Returns the index of the central feature, the lowest index among equal costs, or -1 if
+     * there are no events.
+     */
+    public int findCentralFeature() {
+        evaluatedCount = 0;
+        minimumCost = Double.NaN;
+        if (size == 0) {
+            return -1;
+        }
+
+        final int blockCount = blockWeights.length;
+        final boolean euclidean = distanceMethod != DistanceMethod.Manhattan;
+        int threads = parallelism <= 0 ? ParallelRange.getDefaultParallelism() : parallelism;
+
+        // spread of every block around its mean center
+        for (int b = 0; b < blockCount; b++) {
+            blockSpreads[b] = sum(blockCenterX[b], blockCenterY[b], blockOffsets[b],
+                    blockOffsets[b + 1], euclidean);
+        }
+
+        // 1. bounds of every event, and the best upper bound
+        final double[] lowerBounds = new double[size];
+        final AtomicLong best = new AtomicLong(Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+        if (bounded) {
+            ParallelRange.execute(threads, size, new ParallelRange.Task() {
+                @Override
+                public void compute(int start, int end) {
+                    double localBest = Double.POSITIVE_INFINITY;
+                    for (int i = start; i < end; i++) {
+                        double lower = selfCosts[i];
+                        double upper = selfCosts[i];
+                        for (int b = 0; b < blockCount; b++) {
+                            if (blockOffsets[b] == blockOffsets[b + 1]) {
+                                continue;
+                            }
+                            double center = distance(x[i], y[i], blockCenterX[b],
+                                    blockCenterY[b], euclidean);
+                            lower += lowerBound(i, b, center, euclidean);
+                            upper += (blockWeights[b] * center) + blockSpreads[b];
+                        }
+                        lowerBounds[i] = lower;
+                        localBest = Math.min(localBest, upper);
+                    }
+                    offerBest(best, localBest);
+                }
+            });
+        }
+
+        // 2. candidates that may beat the best upper bound, in ascending order of lower bound
+        double pruning = Double.longBitsToDouble(best.get());
+        pruning += tolerance(pruning);
+        Integer[] order = new Integer[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (!bounded || lowerBounds[i] <= pruning) {
+                order[count++] = Integer.valueOf(i);
+            }
+        }
+        Arrays.sort(order, 0, count, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int cmp = Double.compare(lowerBounds[o1.intValue()], lowerBounds[o2.intValue()]);
+                return cmp != 0 ? cmp : o1.compareTo(o2);
+            }
+        });
+
+        final int[] candidates = new int[count];
+        for (int k = 0; k < count; k++) {
+            candidates[k] = order[k].intValue();
+        }
+
+        // 3. exact costs with early termination, candidates of equal cost keep the lowest index
+        final double[] result = { Double.POSITIVE_INFINITY, -1, 0 };
+        ParallelRange.execute(threads, count, 1, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                double localCost = Double.POSITIVE_INFINITY;
+                int localIndex = -1;
+                int evaluated = 0;
+                for (int k = start; k < end; k++) {
+                    int i = candidates[k];
+                    double threshold = Double.longBitsToDouble(best.get());
+                    if (bounded && lowerBounds[i] > threshold + tolerance(threshold)) {
+                        break; // the remaining candidates have larger lower bounds
+                    }
+
+                    evaluated++;
+                    double cost = evaluate(i, lowerBounds[i], best, euclidean);
+                    if (cost < localCost || (cost == localCost && i < localIndex)) {
+                        localCost = cost;
+                        localIndex = i;
+                    }
+                    if (!Double.isNaN(cost)) {
+                        offerBest(best, cost);
+                    }
+                }
+
+                synchronized (result) {
+                    result[2] += evaluated;
+                    if (localIndex != -1 && (localCost < result[0] || (localCost == result[0]
+                            && localIndex < result[1]))) {
+                        result[0] = localCost;
+                        result[1] = localIndex;
+                    }
+                }
+            }
+        });
+
+        evaluatedCount = (int) result[2];
+        if (result[1] < 0) {
+            // every cost is NaN, keep the first event as the sequential loop does
+            return 0;
+        }
+        minimumCost = result[0];
+        return (int) result[1];
+    }
+
+    // exact cost of event i, or positive infinity once it can no longer beat the best cost
+    private double evaluate(int i, double lowerBound, AtomicLong best, boolean euclidean) {
+        final double qx = x[i];
+        final double qy = y[i];
+        final int home = blockOfEvent[i];
+        final int homeColumn = home % columns;
+        final int homeRow = home / columns;
+        final int rings = Math.max(columns, rows);
+
+        double cost = selfCosts[i];
+        double running = lowerBound;
+        for (int ring = 0; ring < rings; ring++) {
+            for (int row = homeRow - ring; row <= homeRow + ring; row++) {
+                if (row < 0 || row >= rows) {
+                    continue;
+                }
+
+                boolean edge = row == homeRow - ring || row == homeRow + ring;
+                int step = edge || ring == 0 ? 1 : 2 * ring;
+                for (int col = homeColumn - ring; col <= homeColumn + ring; col += step) {
+                    if (col < 0 || col >= columns) {
+                        continue;
+                    }
+
+                    int b = (row * columns) + col;
+                    if (blockOffsets[b] == blockOffsets[b + 1]) {
+                        continue;
+                    }
+
+                    double part = sum(qx, qy, blockOffsets[b], blockOffsets[b + 1], euclidean);
+                    cost += part;
+                    if (bounded) {
+                        double center = distance(qx, qy, blockCenterX[b], blockCenterY[b],
+                                euclidean);
+                        running += part - lowerBound(i, b, center, euclidean);
+                        double threshold = Double.longBitsToDouble(best.get());
+                        if (running > threshold + tolerance(threshold)) {
+                            return Double.POSITIVE_INFINITY;
+                        }
+                    }
+                }
+            }
+        }
+        return cost;
+    }
+
+    // weighted distance sum from (qx, qy) to the events [start, end), four independent sums
+    private double sum(double qx, double qy, int start, int end, boolean euclidean) {
+        double s0 = 0.0;
+        double s1 = 0.0;
+        double s2 = 0.0;
+        double s3 = 0.0;
+        int k = start;
+        if (euclidean) {
+            for (; k + 3 < end; k += 4) {
+                double dx0 = bx[k] - qx;
+                double dy0 = by[k] - qy;
+                double dx1 = bx[k + 1] - qx;
+                double dy1 = by[k + 1] - qy;
+                double dx2 = bx[k + 2] - qx;
+                double dy2 = by[k + 2] - qy;
+                double dx3 = bx[k + 3] - qx;
+                double dy3 = by[k + 3] - qy;
+                s0 += bw[k] * Math.sqrt((dx0 * dx0) + (dy0 * dy0));
+                s1 += bw[k + 1] * Math.sqrt((dx1 * dx1) + (dy1 * dy1));
+                s2 += bw[k + 2] * Math.sqrt((dx2 * dx2) + (dy2 * dy2));
+                s3 += bw[k + 3] * Math.sqrt((dx3 * dx3) + (dy3 * dy3));
+            }
+            for (; k < end; k++) {
+                double dx = bx[k] - qx;
+                double dy = by[k] - qy;
+                s0 += bw[k] * Math.sqrt((dx * dx) + (dy * dy));
+            }
+        } else {
+            for (; k + 3 < end; k += 4) {
+                s0 += bw[k] * (Math.abs(bx[k] - qx) + Math.abs(by[k] - qy));
+                s1 += bw[k + 1] * (Math.abs(bx[k + 1] - qx) + Math.abs(by[k + 1] - qy));
+                s2 += bw[k + 2] * (Math.abs(bx[k + 2] - qx) + Math.abs(by[k + 2] - qy));
+                s3 += bw[k + 3] * (Math.abs(bx[k + 3] - qx) + Math.abs(by[k + 3] - qy));
+            }
+            for (; k < end; k++) {
+                s0 += bw[k] * (Math.abs(bx[k] - qx) + Math.abs(by[k] - qy));
+            }
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    // lower bound of the distance sum from event i to block b
+    private double lowerBound(int i, int b, double center, boolean euclidean) {
+        Envelope extent = blockExtents[b];
+        double dx = Math.max(0.0, Math.max(extent.getMinX() - x[i], x[i] - extent.getMaxX()));
+        double dy = Math.max(0.0, Math.max(extent.getMinY() - y[i], y[i] - extent.getMaxY()));
+        double outside = euclidean ? Math.sqrt((dx * dx) + (dy * dy)) : dx + dy;
+        return blockWeights[b] * Math.max(center, outside);
+    }
+
+    private static double distance(double x1, double y1, double x2, double y2,
+            boolean euclidean) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return euclidean ? Math.sqrt((dx * dx) + (dy * dy)) : Math.abs(dx) + Math.abs(dy);
+    }
+
+    private static double tolerance(double value) {
+        return Double.isInfinite(value) ? 0.0 : (Math.abs(value) * TOLERANCE) + Double.MIN_NORMAL;
+    }
+
+    private static void offerBest(AtomicLong best, double cost) {
+        while (true) {
+            long current = best.get();
+            if (!(cost < Double.longBitsToDouble(current))
+                    || best.compareAndSet(current, Double.doubleToLongBits(cost))) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+/**
+ * Conditional permutation test for local statistics. <br>
+ * For every feature i the value of i is held fixed while its neighbors receive the values of
+ * randomly drawn other features. The pseudo p-value is the folded (one-sided) share of permuted
+ * statistics at least as extreme as the observed one, (min(larger, permutations - larger) + 1) /
+ * (permutations + 1). <br>
+ * The random stream of a feature only depends on the seed and the feature index, so the results
+ * do not depend on the parallelism. Buffers are allocated once per worker, never per permutation.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class ConditionalPermutation {
+
+    public static final int DEFAULT_PERMUTATIONS = 999;
+
+    public static final long DEFAULT_SEED = 0L;
+
+    static final int MIN_GRAIN = 16;
+
+    /**
+     * Computes the statistic of feature i when its neighbors carry the values of the given
+     * features.
+     */
+    public interface Statistic {
+        double compute(int i, int[] neighbors, double[] weights, int count);
+    }
+
+    private int permutations = DEFAULT_PERMUTATIONS;
+
+    private long seed = DEFAULT_SEED;
+
+    private int parallelism = 1;
+
+    public ConditionalPermutation() {
+    }
+
+    public ConditionalPermutation(int permutations, long seed) {
+        this.permutations = permutations;
+        this.seed = seed;
+    }
+
+    public int getPermutations() {
+        return permutations;
+    }
+
+    public void setPermutations(int permutations) {
+        this.permutations = permutations;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of worker threads.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the pseudo p-value of every row of weights, or NaN for rows without neighbors or
+     * with an undefined statistic. Rows must not contain the feature itself.
+     */
+    public double[] execute(SparseWeightMatrix weights, final Statistic statistic) {
+        final int size = weights.getRowCount();
+        final int[] offsets = weights.getRowOffsets();
+        final int[] columns = weights.getColumns();
+        final double[] values = weights.getWeights();
+        final int maxCount = weights.getMaxNeighborCount();
+        final double[] pValues = new double[size];
+
+        int threads = parallelism <= 0 ? ParallelRange.getDefaultParallelism() : parallelism;
+        ParallelRange.execute(threads, size, MIN_GRAIN, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                // the pool stays the identity between permutations, swaps are undone
+                int[] pool = new int[Math.max(0, size - 1)];
+                for (int k = 0; k < pool.length; k++) {
+                    pool[k] = k;
+                }
+                int[] swaps = new int[maxCount];
+                int[] sample = new int[maxCount];
+                double[] rowWeights = new double[maxCount];
+                SplitMix random = new SplitMix();
+
+                for (int i = start; i < end; i++) {
+                    int count = offsets[i + 1] - offsets[i];
+                    if (count == 0 || count > pool.length || permutations <= 0) {
+                        pValues[i] = Double.NaN;
+                        continue;
+                    }
+
+                    System.arraycopy(columns, offsets[i], sample, 0, count);
+                    System.arraycopy(values, offsets[i], rowWeights, 0, count);
+                    double observed = statistic.compute(i, sample, rowWeights, count);
+                    if (Double.isNaN(observed)) {
+                        pValues[i] = Double.NaN;
+                        continue;
+                    }
+
+                    random.setSeed(seed, i);
+                    int larger = 0;
+                    for (int p = 0; p < permutations; p++) {
+                        // partial Fisher-Yates over every feature except i
+                        for (int t = 0; t < count; t++) {
+                            int r = t + random.nextInt(pool.length - t);
+                            swaps[t] = r;
+                            int tmp = pool[t];
+                            pool[t] = pool[r];
+                            pool[r] = tmp;
+                            sample[t] = pool[t] >= i ? pool[t] + 1 : pool[t];
+                        }
+                        for (int t = count - 1; t >= 0; t--) {
+                            int r = swaps[t];
+                            int tmp = pool[t];
+                            pool[t] = pool[r];
+                            pool[r] = tmp;
+                        }
+
+                        if (statistic.compute(i, sample, rowWeights, count) >= observed) {
+                            larger++;
+                        }
+                    }
+
+                    if (permutations - larger < larger) {
+                        larger = permutations - larger;
+                    }
+                    pValues[i] = (larger + 1.0) / (permutations + 1.0);
+                }
+            }
+        });
+
+        return pValues;
+    }
+
+    /**
+     * SplitMix64 generator, reseeded for every feature or permutation.
+     */
+    public static final class SplitMix {
+        private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+        private long state;
+
+        public void setSeed(long seed, int stream) {
+            state = mix(seed + GOLDEN_GAMMA * (stream + 1L));
+        }
+
+        public long nextLong() {
+            return mix(state += GOLDEN_GAMMA);
+        }
+
+        // uniform in [0, 1) with 53 random bits
+        public double nextDouble() {
+            return (nextLong() >>> 11) * 0x1.0p-53;
+        }
+
+        // uniform in [0, bound), rejecting the biased tail like java.util.Random
+        public int nextInt(int bound) {
+            int bits;
+            int value;
+            do {
+                bits = (int) (nextLong() >>> 33);
+                value = bits % bound;
+            } while (bits - value + (bound - 1) < 0);
+            return value;
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
@@ -66,24 +66,43 @@ public class DistanceFactory {
     }
 
     public double getThresholDistance(List<SpatialEvent> spatialEventSet) {
-        double threshold = Double.MIN_VALUE;
-        for (SpatialEvent curEvent : spatialEventSet) {
-            double nnDist = getMinimumDistance(spatialEventSet, curEvent);
-            threshold = Math.max(nnDist, threshold);
-        }
-        return threshold * 1.0001;
+        return getThresholDistance(buildSpatialIndex(spatialEventSet));
     }
 
     public double getThresholDistance(SimpleFeatureCollection features) {
-        List<SpatialEvent> spatialEventSet = DistanceFactory.loadEvents(features, null);
+        return getThresholDistance(SpatialEventStore.load(features, null).buildSpatialIndex());
+    }
+
+    /**
+     * Returns the maximum nearest neighbor distance of the indexed points, increased for rounding
+     * error.
+     */
+    public double getThresholDistance(PointKdTree spatialIndex) {
         double threshold = Double.MIN_VALUE;
-        for (SpatialEvent curEvent : spatialEventSet) {
-            double nnDist = getMinimumDistance(spatialEventSet, curEvent);
+        for (double nnDist : spatialIndex.nearestNeighborDistances(DistanceType)) {
             threshold = Math.max(nnDist, threshold);
         }
         return threshold * 1.0001;
     }
 
+    /**
+     * Returns the nearest neighbor distance of each event, in list order.
+     */
+    public double[] getNearestNeighborDistances(List<SpatialEvent> spatialEventSet) {
+        return buildSpatialIndex(spatialEventSet).nearestNeighborDistances(DistanceType);
+    }
+
+    /**
+     * Returns the nearest neighbor distance of each event, in store order.
+     */
+    public double[] getNearestNeighborDistances(SpatialEventStore events) {
+        return events.buildSpatialIndex().nearestNeighborDistances(DistanceType);
+    }
+
+    public static PointKdTree buildSpatialIndex(List<SpatialEvent> spatialEventSet) {
+        return SpatialEventStore.fromEvents(spatialEventSet).buildSpatialIndex();
+    }
+
     public double getMinimumDistance(List<SpatialEvent> srcEvents, SpatialEvent curEvent) {
         double minDistance = Double.MAX_VALUE;
         for (SpatialEvent destEvent : srcEvents) {
@@ -124,6 +143,10 @@ public class DistanceFactory {
         return new SpatialEvent(0, new Coordinate(centerX, centerY), 0);
     }
 
+    /**
+     * Returns the event with the smallest sum of distances to the other events, see
+     * {@link CentralFeatureKernel}. Sets of one or two events are returned as is.
+     */
     public List<SpatialEvent> getCentralFeature(List<SpatialEvent> spatialEventSet,
             boolean useWeight) {
         List<SpatialEvent> centralEvents = new ArrayList<SpatialEvent>();
@@ -131,29 +154,22 @@ public class DistanceFactory {
         if (spatialEventSet.size() <= 2) {
             return spatialEventSet;
         } else {
-            double minDistance = Double.MAX_VALUE;
-            SpatialEvent centralEvent = new SpatialEvent(0);
-
-            for (SpatialEvent curEvent : spatialEventSet) {
-                double curDistance = 0;
-
-                for (SpatialEvent destEvent : spatialEventSet) {
-                    if (curEvent.oid != destEvent.oid) {
-                        if (useWeight) {
-                            curDistance += getDistance(curEvent, destEvent, DistanceType)
-                                    * destEvent.weight;
-                        } else {
-                            curDistance += getDistance(curEvent, destEvent, DistanceType);
-                        }
-                    }
-                }
-
-                if (minDistance > curDistance) {
-                    minDistance = curDistance;
-                    centralEvent = curEvent;
+            final int size = spatialEventSet.size();
+            double[] x = new double[size];
+            double[] y = new double[size];
+            double[] weights = useWeight ? new double[size] : null;
+            for (int i = 0; i < size; i++) {
+                SpatialEvent curEvent = spatialEventSet.get(i);
+                x[i] = curEvent.x;
+                y[i] = curEvent.y;
+                if (useWeight) {
+                    weights[i] = curEvent.weight;
                 }
             }
-            centralEvents.add(centralEvent);
+
+            CentralFeatureKernel kernel = new CentralFeatureKernel(x, y, weights, null, size);
+            kernel.setDistanceMethod(DistanceType);
+            centralEvents.add(spatialEventSet.get(kernel.findCentralFeature()));
         }
 
         return centralEvents;
@@ -250,10 +266,12 @@ public class DistanceFactory {
 
                 SpatialEvent sEvent = new SpatialEvent(FeatureTypes.getFID(feature), coordinate);
                 if (idxField != -1) {
+                    Object attribute = feature.getAttribute(idxField);
                     try {
-                        sEvent.weight = Double.valueOf(feature.getAttribute(idxField).toString());
+                        sEvent.weight = attribute == null ? 1.0 : Double.parseDouble(attribute
+                                .toString());
                     } catch (NumberFormatException e) {
-                        sEvent.weight = 1;
+                        sEvent.weight = 1.0;
                     }
                 }
                 events.add(sEvent);
@@ -0,0 +1,197 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.expression.Expression;
+
+/**
+ * Totals and co-moments of a pair of field values, accumulated in one pass. <br>
+ * The totals are kept with Neumaier's compensated summation and the sums of squared deviations
+ * with Welford's update, so neither suffers from the cancellation of the textbook formulas. Two
+ * accumulators of disjoint sets of features are combined with the pairwise update of Chan et al.
+ * 
+ * @author Minpa Lee, MangoSystem
+ * 
+ * @source $URL$
+ */
+public final class FieldMoments {
+    private int count = 0;
+
+    private double sumX = 0.0;
+
+    private double sumY = 0.0;
+
+    // running compensations of the totals
+    private double errorX = 0.0;
+
+    private double errorY = 0.0;
+
+    private double meanX = 0.0;
+
+    private double meanY = 0.0;
+
+    // sums of the squared deviations from the mean and of their cross products
+    private double m2X = 0.0;
+
+    private double m2Y = 0.0;
+
+    private double cXY = 0.0;
+
+    /**
+     * Reads the values of two expressions from every feature, skipping the features where either
+     * value is null or not a number.
+     */
+    public static FieldMoments scan(SimpleFeatureCollection features, Expression xExpression,
+            Expression yExpression) {
+        FieldMoments moments = new FieldMoments();
+        SimpleFeatureIterator featureIter = features.features();
+        try {
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                Double xVal = xExpression.evaluate(feature, Double.class);
+                Double yVal = yExpression.evaluate(feature, Double.class);
+                if (xVal == null || yVal == null) {
+                    continue;
+                }
+                moments.add(xVal.doubleValue(), yVal.doubleValue());
+            }
+        } finally {
+            featureIter.close();
+        }
+        return moments;
+    }
+
+    public void add(double x, double y) {
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            return;
+        }
+
+        count++;
+        addX(x);
+        addY(y);
+
+        final double devX = x - meanX;
+        final double devY = y - meanY;
+        meanX += devX / count;
+        meanY += devY / count;
+
+        final double newDevY = y - meanY;
+        m2X += devX * (x - meanX);
+        m2Y += devY * newDevY;
+        cXY += devX * newDevY;
+    }
+
+    private void addX(double value) {
+        double sum = sumX + value;
+        if (Math.abs(sumX) >= Math.abs(value)) {
+            errorX += (sumX - sum) + value;
+        } else {
+            errorX += (value - sum) + sumX;
+        }
+        sumX = sum;
+    }
+
+    private void addY(double value) {
+        double sum = sumY + value;
+        if (Math.abs(sumY) >= Math.abs(value)) {
+            errorY += (sumY - sum) + value;
+        } else {
+            errorY += (value - sum) + sumY;
+        }
+        sumY = sum;
+    }
+
+    public void merge(FieldMoments other) {
+        if (other.count == 0) {
+            return;
+        }
+
+        addX(other.sumX);
+        errorX += other.errorX;
+        addY(other.sumY);
+        errorY += other.errorY;
+
+        if (count == 0) {
+            count = other.count;
+            meanX = other.meanX;
+            meanY = other.meanY;
+            m2X = other.m2X;
+            m2Y = other.m2Y;
+            cXY = other.cXY;
+            return;
+        }
+
+        final int newCount = count + other.count;
+        final double ratio = other.count / (double) newCount;
+        final double factor = count * ratio;
+
+        final double devX = other.meanX - meanX;
+        final double devY = other.meanY - meanY;
+        m2X += other.m2X + (devX * devX * factor);
+        m2Y += other.m2Y + (devY * devY * factor);
+        cXY += other.cXY + (devX * devY * factor);
+
+        meanX += devX * ratio;
+        meanY += devY * ratio;
+
+        count = newCount;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getSumX() {
+        return sumX + errorX;
+    }
+
+    public double getSumY() {
+        return sumY + errorY;
+    }
+
+    public double getMeanX() {
+        return count == 0 ? Double.NaN : meanX;
+    }
+
+    public double getMeanY() {
+        return count == 0 ? Double.NaN : meanY;
+    }
+
+    /**
+     * Returns the sum of the squared x deviations from the mean.
+     */
+    public double getSigmaX() {
+        return m2X;
+    }
+
+    /**
+     * Returns the sum of the squared y deviations from the mean.
+     */
+    public double getSigmaY() {
+        return m2Y;
+    }
+
+    /**
+     * Returns the sum of the products of the x and y deviations from the mean.
+     */
+    public double getSigmaXY() {
+        return cXY;
+    }
+}
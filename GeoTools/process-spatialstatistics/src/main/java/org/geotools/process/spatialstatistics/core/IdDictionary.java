@@ -0,0 +1,84 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps unique field values to dense, zero based indices in insertion order.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class IdDictionary {
+
+    private final Map<Object, Integer> indexMap;
+
+    private final List<Object> ids;
+
+    public IdDictionary() {
+        this(16);
+    }
+
+    public IdDictionary(int initialCapacity) {
+        int capacity = Math.max(16, (int) (initialCapacity / 0.75f) + 1);
+        this.indexMap = new HashMap<Object, Integer>(capacity);
+        this.ids = new ArrayList<Object>(initialCapacity);
+    }
+
+    /**
+     * Returns the index of the id, registering it if it has not been seen before.
+     */
+    public int add(Object id) {
+        Integer index = indexMap.get(id);
+        if (index == null) {
+            index = Integer.valueOf(ids.size());
+            indexMap.put(id, index);
+            ids.add(id);
+        }
+        return index.intValue();
+    }
+
+    /**
+     * Returns the index of the id, or -1 if the id is unknown.
+     */
+    public int indexOf(Object id) {
+        Integer index = indexMap.get(id);
+        return index == null ? -1 : index.intValue();
+    }
+
+    public Object getId(int index) {
+        return ids.get(index);
+    }
+
+    public boolean contains(Object id) {
+        return indexMap.containsKey(id);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public void clear() {
+        indexMap.clear();
+        ids.clear();
+    }
+}
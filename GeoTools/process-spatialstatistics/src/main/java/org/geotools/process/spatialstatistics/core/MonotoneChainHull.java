@@ -0,0 +1,174 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.Arrays;
+
+/**
+ * Convex hull of points held in primitive arrays, built with Andrew's monotone chain: the points
+ * are sorted by x then y, and the lower and upper chains are grown one point at a time, dropping
+ * the last vertex while it does not make a left turn. <br>
+ * The vertices are kept counterclockwise, without collinear points and without repeating the
+ * first vertex. No geometry is built.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public final class MonotoneChainHull {
+
+    private double[] hx = new double[64];
+
+    private double[] hy = new double[64];
+
+    private final int count;
+
+    public MonotoneChainHull(double[] x, double[] y) {
+        this(x, y, x.length);
+    }
+
+    public MonotoneChainHull(double[] x, double[] y, int size) {
+        int[] order = sort(x, y, size);
+
+        int k = 0;
+
+        // lower chain
+        for (int n = 0; n < size; n++) {
+            int i = order[n];
+            while (k >= 2 && cross(k, x[i], y[i]) <= 0) {
+                k--;
+            }
+            push(k++, x[i], y[i]);
+        }
+
+        // upper chain
+        int lower = k + 1;
+        for (int n = size - 2; n >= 0; n--) {
+            int i = order[n];
+            while (k >= lower && cross(k, x[i], y[i]) <= 0) {
+                k--;
+            }
+            push(k++, x[i], y[i]);
+        }
+
+        // the last vertex repeats the first one
+        count = k > 1 ? k - 1 : k;
+    }
+
+    private void push(int k, double px, double py) {
+        if (k == hx.length) {
+            hx = Arrays.copyOf(hx, k << 1);
+            hy = Arrays.copyOf(hy, k << 1);
+        }
+        hx[k] = px;
+        hy[k] = py;
+    }
+
+    // z of the cross product of (hull[k-2], hull[k-1]) and (hull[k-2], p)
+    private double cross(int k, double px, double py) {
+        double ox = hx[k - 2];
+        double oy = hy[k - 2];
+        return ((hx[k - 1] - ox) * (py - oy)) - ((hy[k - 1] - oy) * (px - ox));
+    }
+
+    /**
+     * Returns the indices of the points sorted by x then y, with a bottom-up merge sort.
+     */
+    private static int[] sort(double[] x, double[] y, int size) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        int[] buffer = new int[size];
+        for (int width = 1; width < size; width <<= 1) {
+            for (int lo = 0; lo < size - width; lo += width << 1) {
+                int mid = lo + width;
+                int hi = Math.min(lo + (width << 1), size);
+                int a = lo;
+                int b = mid;
+                int t = lo;
+                while (a < mid && b < hi) {
+                    int ia = order[a];
+                    int ib = order[b];
+                    if (x[ib] < x[ia] || (x[ib] == x[ia] && y[ib] < y[ia])) {
+                        buffer[t++] = ib;
+                        b++;
+                    } else {
+                        buffer[t++] = ia;
+                        a++;
+                    }
+                }
+                while (a < mid) {
+                    buffer[t++] = order[a++];
+                }
+                while (b < hi) {
+                    buffer[t++] = order[b++];
+                }
+                System.arraycopy(buffer, lo, order, lo, hi - lo);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Returns the number of vertices.
+     */
+    public int size() {
+        return count;
+    }
+
+    public double getX(int k) {
+        return hx[k];
+    }
+
+    public double getY(int k) {
+        return hy[k];
+    }
+
+    /**
+     * Returns the area of the hull, 0 for fewer than 3 vertices.
+     */
+    public double getArea() {
+        if (count < 3) {
+            return 0.0;
+        }
+
+        double area = 0.0;
+        for (int k = 0, p = count - 1; k < count; p = k++) {
+            area += (hx[p] * hy[k]) - (hx[k] * hy[p]);
+        }
+        return area / 2.0;
+    }
+
+    /**
+     * Returns the length of the boundary, twice the segment length for 2 vertices.
+     */
+    public double getPerimeter() {
+        if (count < 2) {
+            return 0.0;
+        }
+
+        double length = 0.0;
+        for (int k = 0, p = count - 1; k < count; p = k++) {
+            double dx = hx[k] - hx[p];
+            double dy = hy[k] - hy[p];
+            length += Math.sqrt((dx * dx) + (dy * dy));
+        }
+        return length;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits an index range [0, count) across a fork/join pool. <br>
+ * Every index is handled exactly once by {@link Task#compute(int, int)}, so tasks that only write
+ * to slots of their own range give the same result as the sequential loop. <br>
+ * Pools are created on first use and shared by every caller asking for the same parallelism, so
+ * operations that run many parallel passes do not start new threads for each pass. <br>
+ * Operations built on this class take a parallelism that defaults to 1, so they run on the
+ * calling thread unless a caller asks for more threads; 0 or less uses every available
+ * processor. Their results do not depend on it.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public final class ParallelRange {
+
+    static final int MIN_GRAIN = 64;
+
+    // one pool per requested parallelism, workers are daemon threads
+    private static final ConcurrentMap<Integer, ForkJoinPool> POOLS =
+            new ConcurrentHashMap<Integer, ForkJoinPool>();
+
+    /**
+     * Computes a contiguous sub range [start, end).
+     */
+    public interface Task {
+        void compute(int start, int end);
+    }
+
+    private ParallelRange() {
+    }
+
+    public static int getDefaultParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public static void execute(int parallelism, int count, Task task) {
+        execute(parallelism, count, MIN_GRAIN, task);
+    }
+
+    public static void execute(int parallelism, int count, int minGrain, Task task) {
+        if (parallelism <= 1 || count <= minGrain) {
+            task.compute(0, count);
+            return;
+        }
+
+        // a few chunks per worker keeps the pool balanced when rows differ in cost
+        int grain = Math.max(minGrain, count / (parallelism * 8));
+        RangeAction action = new RangeAction(task, 0, count, grain);
+        if (ForkJoinTask.inForkJoinPool()) {
+            // nested call from a worker, split inside the current pool
+            action.invoke();
+        } else {
+            getPool(parallelism).invoke(action);
+        }
+    }
+
+    static ForkJoinPool getPool(int parallelism) {
+        Integer key = Integer.valueOf(parallelism);
+        ForkJoinPool pool = POOLS.get(key);
+        if (pool == null) {
+            ForkJoinPool created = new ForkJoinPool(parallelism);
+            pool = POOLS.putIfAbsent(key, created);
+            if (pool == null) {
+                pool = created;
+            } else {
+                created.shutdown();
+            }
+        }
+        return pool;
+    }
+
+    static final class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 4305235727364574816L;
+
+        private final Task task;
+
+        private final int start;
+
+        private final int end;
+
+        private final int grain;
+
+        RangeAction(Task task, int start, int end, int grain) {
+            this.task = task;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= grain) {
+                task.compute(start, end);
+                return;
+            }
+
+            int mid = (start + end) >>> 1;
+            invokeAll(new RangeAction(task, start, mid, grain), new RangeAction(task, mid, end,
+                    grain));
+        }
+    }
+}
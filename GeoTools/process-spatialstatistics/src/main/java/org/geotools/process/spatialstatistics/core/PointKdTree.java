@@ -0,0 +1,427 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.Arrays;
+
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+
+/**
+ * Static, balanced 2D KD-tree over primitive coordinate arrays. <br>
+ * Points are referenced by their position in the source arrays, the tree itself only stores a
+ * permutation of those positions.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class PointKdTree {
+
+    static final int LEAF_SIZE = 8;
+
+    private final double[] x;
+
+    private final double[] y;
+
+    private final int[] index;
+
+    private final int size;
+
+    /**
+     * Receives the points found by a range query.
+     */
+    public interface Visitor {
+        void visit(int index, double distance);
+    }
+
+    public PointKdTree(double[] x, double[] y) {
+        this(x, y, x.length);
+    }
+
+    public PointKdTree(double[] x, double[] y, int size) {
+        this.x = x;
+        this.y = y;
+        this.size = size;
+        this.index = new int[size];
+        for (int i = 0; i < size; i++) {
+            index[i] = i;
+        }
+        build(0, size, 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getX(int i) {
+        return x[i];
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+
+    public static double distance(double x1, double y1, double x2, double y2,
+            DistanceMethod distanceMethod) {
+        if (distanceMethod == DistanceMethod.Manhattan) {
+            return Math.abs(x1 - x2) + Math.abs(y1 - y2);
+        }
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return Math.sqrt((dx * dx) + (dy * dy));
+    }
+
+    private void build(int lo, int hi, int depth) {
+        while (hi - lo > LEAF_SIZE) {
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi - 1, mid, (depth & 1) == 0 ? x : y);
+            build(lo, mid, depth + 1);
+            lo = mid + 1;
+            depth++;
+        }
+    }
+
+    // partial sort so that index[k] holds the k-th smallest coordinate of [lo, hi]
+    private void select(int lo, int hi, int k, double[] c) {
+        while (hi > lo) {
+            double pivot = c[index[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (c[index[i]] < pivot) {
+                    i++;
+                }
+                while (c[index[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = index[i];
+                    index[i] = index[j];
+                    index[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Visits every point whose distance to (qx, qy) is less than or equal to radius.
+     */
+    public void query(double qx, double qy, double radius, DistanceMethod distanceMethod,
+            Visitor visitor) {
+        query(0, size, 0, qx, qy, radius, distanceMethod, visitor);
+    }
+
+    private void query(int lo, int hi, int depth, double qx, double qy, double radius,
+            DistanceMethod distanceMethod, Visitor visitor) {
+        while (hi > lo) {
+            if (hi - lo <= LEAF_SIZE) {
+                for (int k = lo; k < hi; k++) {
+                    int p = index[k];
+                    double dist = distance(qx, qy, x[p], y[p], distanceMethod);
+                    if (dist <= radius) {
+                        visitor.visit(p, dist);
+                    }
+                }
+                return;
+            }
+
+            int mid = (lo + hi) >>> 1;
+            int p = index[mid];
+            double dist = distance(qx, qy, x[p], y[p], distanceMethod);
+            if (dist <= radius) {
+                visitor.visit(p, dist);
+            }
+
+            // both metrics are bounded below by the axis difference
+            double diff = (depth & 1) == 0 ? qx - x[p] : qy - y[p];
+            if (diff <= 0) {
+                if (-diff <= radius) {
+                    query(mid + 1, hi, depth + 1, qx, qy, radius, distanceMethod, visitor);
+                }
+                hi = mid;
+            } else {
+                if (diff <= radius) {
+                    query(lo, mid, depth + 1, qx, qy, radius, distanceMethod, visitor);
+                }
+                lo = mid + 1;
+            }
+            depth++;
+        }
+    }
+
+    /**
+     * Returns the indices of all points within radius of (qx, qy), sorted ascending.
+     */
+    public int[] query(double qx, double qy, double radius, DistanceMethod distanceMethod) {
+        IndexCollector collector = new IndexCollector();
+        query(qx, qy, radius, distanceMethod, collector);
+        return collector.toSortedArray();
+    }
+
+    /**
+     * Returns the index of the point nearest to (qx, qy), ignoring the point at position exclude
+     * (use -1 to consider every point), or -1 if there is no candidate.
+     */
+    public int nearest(double qx, double qy, int exclude, DistanceMethod distanceMethod) {
+        Nearest best = new Nearest();
+        nearest(0, size, 0, qx, qy, exclude, distanceMethod, best);
+        return best.index;
+    }
+
+    /**
+     * Returns, for every point, the distance to its nearest other point. Coincident points have a
+     * nearest neighbor distance of 0, a single point has positive infinity.
+     */
+    public double[] nearestNeighborDistances(DistanceMethod distanceMethod) {
+        double[] distances = new double[size];
+        Nearest best = new Nearest();
+        for (int i = 0; i < size; i++) {
+            best.index = -1;
+            best.distance = Double.POSITIVE_INFINITY;
+            nearest(0, size, 0, x[i], y[i], i, distanceMethod, best);
+            distances[i] = best.distance;
+        }
+        return distances;
+    }
+
+    private void nearest(int lo, int hi, int depth, double qx, double qy, int exclude,
+            DistanceMethod distanceMethod, Nearest best) {
+        while (hi > lo && best.distance > 0) {
+            if (hi - lo <= LEAF_SIZE) {
+                for (int k = lo; k < hi; k++) {
+                    best.offer(index[k], exclude, distance(qx, qy, x[index[k]], y[index[k]],
+                            distanceMethod));
+                }
+                return;
+            }
+
+            int mid = (lo + hi) >>> 1;
+            int p = index[mid];
+            best.offer(p, exclude, distance(qx, qy, x[p], y[p], distanceMethod));
+
+            // search the half containing the query first, the other one only if it can be closer
+            double diff = (depth & 1) == 0 ? qx - x[p] : qy - y[p];
+            if (diff <= 0) {
+                nearest(lo, mid, depth + 1, qx, qy, exclude, distanceMethod, best);
+                if (-diff >= best.distance) {
+                    return;
+                }
+                lo = mid + 1;
+            } else {
+                nearest(mid + 1, hi, depth + 1, qx, qy, exclude, distanceMethod, best);
+                if (diff >= best.distance) {
+                    return;
+                }
+                hi = mid;
+            }
+            depth++;
+        }
+    }
+
+    /**
+     * Collects the k points nearest to (qx, qy) into heap, ignoring the point at position exclude.
+     * The heap keeps the points with the smallest (distance, index), so ties are resolved in
+     * favor of the lower index.
+     */
+    public void nearest(double qx, double qy, int exclude, DistanceMethod distanceMethod,
+            NeighborHeap heap) {
+        heap.clear();
+        if (heap.capacity > 0) {
+            nearest(0, size, 0, qx, qy, exclude, distanceMethod, heap);
+        }
+    }
+
+    private void nearest(int lo, int hi, int depth, double qx, double qy, int exclude,
+            DistanceMethod distanceMethod, NeighborHeap heap) {
+        while (hi > lo) {
+            if (hi - lo <= LEAF_SIZE) {
+                for (int k = lo; k < hi; k++) {
+                    int p = index[k];
+                    if (p != exclude) {
+                        heap.offer(p, distance(qx, qy, x[p], y[p], distanceMethod));
+                    }
+                }
+                return;
+            }
+
+            int mid = (lo + hi) >>> 1;
+            int p = index[mid];
+            if (p != exclude) {
+                heap.offer(p, distance(qx, qy, x[p], y[p], distanceMethod));
+            }
+
+            // the far half may still hold an equidistant point with a lower index
+            double diff = (depth & 1) == 0 ? qx - x[p] : qy - y[p];
+            if (diff <= 0) {
+                nearest(lo, mid, depth + 1, qx, qy, exclude, distanceMethod, heap);
+                if (-diff > heap.bound()) {
+                    return;
+                }
+                lo = mid + 1;
+            } else {
+                nearest(mid + 1, hi, depth + 1, qx, qy, exclude, distanceMethod, heap);
+                if (diff > heap.bound()) {
+                    return;
+                }
+                hi = mid;
+            }
+            depth++;
+        }
+    }
+
+    /**
+     * Bounded max-heap of (distance, index) pairs used by k nearest neighbor queries. <br>
+     * An instance is not thread safe; use one heap per thread.
+     */
+    public static final class NeighborHeap {
+        private final int capacity;
+
+        private final int[] indices;
+
+        private final double[] distances;
+
+        private int count = 0;
+
+        public NeighborHeap(int capacity) {
+            this.capacity = Math.max(0, capacity);
+            this.indices = new int[this.capacity];
+            this.distances = new double[this.capacity];
+        }
+
+        public void clear() {
+            count = 0;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public int getIndex(int k) {
+            return indices[k];
+        }
+
+        public double getDistance(int k) {
+            return distances[k];
+        }
+
+        // largest distance that can still enter the heap
+        double bound() {
+            return count < capacity ? Double.POSITIVE_INFINITY : distances[0];
+        }
+
+        void offer(int index, double distance) {
+            if (count < capacity) {
+                // sift up
+                int k = count++;
+                while (k > 0) {
+                    int parent = (k - 1) >>> 1;
+                    if (!greater(distance, index, distances[parent], indices[parent])) {
+                        break;
+                    }
+                    indices[k] = indices[parent];
+                    distances[k] = distances[parent];
+                    k = parent;
+                }
+                indices[k] = index;
+                distances[k] = distance;
+            } else if (greater(distances[0], indices[0], distance, index)) {
+                siftDown(0, index, distance, count);
+            }
+        }
+
+        private void siftDown(int k, int index, double distance, int end) {
+            int half = end >>> 1;
+            while (k < half) {
+                int child = (k << 1) + 1;
+                int right = child + 1;
+                if (right < end
+                        && greater(distances[right], indices[right], distances[child],
+                                indices[child])) {
+                    child = right;
+                }
+                if (!greater(distances[child], indices[child], distance, index)) {
+                    break;
+                }
+                indices[k] = indices[child];
+                distances[k] = distances[child];
+                k = child;
+            }
+            indices[k] = index;
+            distances[k] = distance;
+        }
+
+        /**
+         * Orders the collected neighbors by ascending distance, then index.
+         */
+        public void sort() {
+            for (int end = count - 1; end > 0; end--) {
+                int index = indices[end];
+                double distance = distances[end];
+                indices[end] = indices[0];
+                distances[end] = distances[0];
+                siftDown(0, index, distance, end);
+            }
+        }
+
+        private static boolean greater(double d1, int i1, double d2, int i2) {
+            return d1 > d2 || (d1 == d2 && i1 > i2);
+        }
+    }
+
+    static final class Nearest {
+        int index = -1;
+
+        double distance = Double.POSITIVE_INFINITY;
+
+        void offer(int candidate, int exclude, double dist) {
+            if (candidate != exclude && dist < distance) {
+                index = candidate;
+                distance = dist;
+            }
+        }
+    }
+
+    static final class IndexCollector implements Visitor {
+        int[] items = new int[16];
+
+        int count = 0;
+
+        @Override
+        public void visit(int index, double distance) {
+            if (count == items.length) {
+                items = Arrays.copyOf(items, count << 1);
+            }
+            items[count++] = index;
+        }
+
+        int[] toSortedArray() {
+            int[] result = Arrays.copyOf(items, count);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
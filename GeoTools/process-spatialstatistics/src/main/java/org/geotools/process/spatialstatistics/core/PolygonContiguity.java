@@ -0,0 +1,354 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geotools.process.spatialstatistics.enumeration.ContiguityType;
+
+import com.vividsolutions.jts.algorithm.LineIntersector;
+import com.vividsolutions.jts.algorithm.RobustLineIntersector;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.geom.util.LinearComponentExtracter;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * Builds first and higher order polygon contiguity as a {@link SparseWeightMatrix}. <br>
+ * Candidates come from a single STRtree and are confirmed with a prepared geometry. Shared
+ * vertices and shared edge segments are hashed so that coverages with matching vertices are
+ * classified without any segment test; the remaining pairs are classified with a segment
+ * intersector, never with an overlay operation.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class PolygonContiguity {
+
+    static final int EDGE = 1;
+
+    static final int CORNER = 2;
+
+    private final List<Geometry> geometries;
+
+    private final List<List<Coordinate[]>> lines;
+
+    public PolygonContiguity(List<Geometry> geometries) {
+        this.geometries = geometries;
+        this.lines = new ArrayList<List<Coordinate[]>>(geometries.size());
+        for (Geometry geometry : geometries) {
+            List<Coordinate[]> parts = new ArrayList<Coordinate[]>();
+            if (geometry != null && !geometry.isEmpty()) {
+                for (Object line : LinearComponentExtracter.getLines(geometry)) {
+                    parts.add(((LineString) line).getCoordinates());
+                }
+            }
+            lines.add(parts);
+        }
+    }
+
+    public int size() {
+        return geometries.size();
+    }
+
+    /**
+     * Returns the first order adjacency of the geometries, every link having a weight of 1.
+     */
+    public SparseWeightMatrix build(ContiguityType contiguityType) {
+        final int size = geometries.size();
+
+        // 1. hash shared vertices and shared edge segments
+        Set<Long> vertexPairs = new HashSet<Long>();
+        Set<Long> edgePairs = new HashSet<Long>();
+        Map<PointKey, int[]> vertexOwners = new HashMap<PointKey, int[]>();
+        Map<EdgeKey, int[]> edgeOwners = new HashMap<EdgeKey, int[]>();
+        for (int i = 0; i < size; i++) {
+            for (Coordinate[] line : lines.get(i)) {
+                for (int k = 0; k < line.length; k++) {
+                    if (k > 0 && line[k].equals2D(line[k - 1])) {
+                        continue;
+                    }
+                    addOwner(vertexOwners, new PointKey(line[k]), i, vertexPairs);
+                    if (k > 0) {
+                        addOwner(edgeOwners, new EdgeKey(line[k - 1], line[k]), i, edgePairs);
+                    }
+                }
+            }
+        }
+        vertexOwners = null;
+        edgeOwners = null;
+
+        // 2. test the candidates of an STRtree
+        STRtree spatialIndex = new STRtree();
+        for (int i = 0; i < size; i++) {
+            Geometry geometry = geometries.get(i);
+            if (geometry != null && !geometry.isEmpty()) {
+                spatialIndex.insert(geometry.getEnvelopeInternal(), Integer.valueOf(i));
+            }
+        }
+        spatialIndex.build();
+
+        SparseWeightMatrix.Builder builder = new SparseWeightMatrix.Builder(size * 8);
+        builder.ensureRowCount(size);
+        for (int i = 0; i < size; i++) {
+            Geometry primaryGeometry = geometries.get(i);
+            if (primaryGeometry == null || primaryGeometry.isEmpty()) {
+                continue;
+            }
+
+            PreparedGeometry prepared = null;
+            for (Object item : spatialIndex.query(primaryGeometry.getEnvelopeInternal())) {
+                int j = ((Integer) item).intValue();
+                if (j <= i) {
+                    continue;
+                }
+
+                long pair = pairKey(i, j);
+                int relation;
+                if (edgePairs.contains(pair)) {
+                    relation = EDGE;
+                } else if (vertexPairs.contains(pair)) {
+                    relation = classify(i, j);
+                } else {
+                    if (prepared == null) {
+                        prepared = PreparedGeometryFactory.prepare(primaryGeometry);
+                    }
+                    if (!prepared.intersects(geometries.get(j))) {
+                        continue;
+                    }
+                    relation = classify(i, j);
+                }
+
+                if (accept(contiguityType, relation)) {
+                    builder.add(i, j, 1d);
+                    builder.add(j, i, 1d);
+                }
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Expands a first order adjacency to every feature reachable within the given number of
+     * steps. Features keep all lower order neighbors, the feature itself is never a neighbor.
+     */
+    public static SparseWeightMatrix expand(SparseWeightMatrix adjacency, int order) {
+        if (order <= 1) {
+            return adjacency;
+        }
+
+        final int size = adjacency.getRowCount();
+        final int[] offsets = adjacency.getRowOffsets();
+        final int[] columns = adjacency.getColumns();
+
+        int[] mark = new int[size];
+        Arrays.fill(mark, -1);
+        int[] queue = new int[size];
+
+        SparseWeightMatrix.Builder builder = new SparseWeightMatrix.Builder(
+                adjacency.getNonZeroCount() * order);
+        builder.ensureRowCount(size);
+        for (int row = 0; row < size; row++) {
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = row;
+            mark[row] = row;
+
+            // breadth first, one level per order
+            for (int level = 1; level <= order && head < tail; level++) {
+                int levelEnd = tail;
+                while (head < levelEnd) {
+                    int current = queue[head++];
+                    for (int k = offsets[current], end = offsets[current + 1]; k < end; k++) {
+                        int neighbor = columns[k];
+                        if (mark[neighbor] != row) {
+                            mark[neighbor] = row;
+                            queue[tail++] = neighbor;
+                            builder.add(row, neighbor, 1d);
+                        }
+                    }
+                }
+            }
+        }
+
+        return builder.build();
+    }
+
+    private boolean accept(ContiguityType contiguityType, int relation) {
+        switch (contiguityType) {
+        case Rook:
+            return relation == EDGE;
+        case Bishops:
+            return relation == CORNER;
+        default:
+            return true;
+        }
+    }
+
+    // EDGE if the boundaries share a segment or the interiors overlap, CORNER if they only touch
+    private int classify(int i, int j) {
+        Envelope common = geometries.get(i).getEnvelopeInternal()
+                .intersection(geometries.get(j).getEnvelopeInternal());
+        Coordinate minCorner = new Coordinate(common.getMinX(), common.getMinY());
+        Coordinate maxCorner = new Coordinate(common.getMaxX(), common.getMaxY());
+
+        LineIntersector intersector = new RobustLineIntersector();
+        boolean touched = false;
+        for (Coordinate[] primary : lines.get(i)) {
+            for (int k = 1; k < primary.length; k++) {
+                Coordinate p0 = primary[k - 1];
+                Coordinate p1 = primary[k];
+                if (!Envelope.intersects(p0, p1, minCorner, maxCorner)) {
+                    continue;
+                }
+
+                for (Coordinate[] secondary : lines.get(j)) {
+                    for (int m = 1; m < secondary.length; m++) {
+                        Coordinate q0 = secondary[m - 1];
+                        Coordinate q1 = secondary[m];
+                        if (!Envelope.intersects(p0, p1, q0, q1)) {
+                            continue;
+                        }
+
+                        intersector.computeIntersection(p0, p1, q0, q1);
+                        if (!intersector.hasIntersection()) {
+                            continue;
+                        }
+
+                        int intersection = intersector.getIntersectionNum();
+                        if (intersector.isProper()
+                                || intersection == LineIntersector.COLLINEAR_INTERSECTION) {
+                            return EDGE;
+                        }
+                        touched = true;
+                    }
+                }
+            }
+        }
+
+        // intersecting geometries without boundary contact: one contains the other
+        return touched ? CORNER : EDGE;
+    }
+
+    private static <K> void addOwner(Map<K, int[]> owners, K key, int owner, Set<Long> pairs) {
+        int[] current = owners.get(key);
+        if (current == null) {
+            owners.put(key, new int[] { owner });
+            return;
+        }
+
+        for (int other : current) {
+            if (other == owner) {
+                return;
+            }
+        }
+
+        for (int other : current) {
+            pairs.add(pairKey(other, owner));
+        }
+
+        int[] extended = Arrays.copyOf(current, current.length + 1);
+        extended[current.length] = owner;
+        owners.put(key, extended);
+    }
+
+    static long pairKey(int i, int j) {
+        return i < j ? ((long) i << 32) | j : ((long) j << 32) | i;
+    }
+
+    static final class PointKey {
+        final double x;
+
+        final double y;
+
+        PointKey(Coordinate coordinate) {
+            // +0.0 and -0.0 are the same vertex
+            this.x = coordinate.x + 0.0;
+            this.y = coordinate.y + 0.0;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PointKey)) {
+                return false;
+            }
+            PointKey other = (PointKey) obj;
+            return x == other.x && y == other.y;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(x) * 31 + Double.doubleToLongBits(y);
+            return (int) (bits ^ (bits >>> 32));
+        }
+    }
+
+    static final class EdgeKey {
+        final double x0;
+
+        final double y0;
+
+        final double x1;
+
+        final double y1;
+
+        EdgeKey(Coordinate start, Coordinate end) {
+            // the same segment walked in either direction gives the same key
+            if (start.x < end.x || (start.x == end.x && start.y < end.y)) {
+                x0 = start.x + 0.0;
+                y0 = start.y + 0.0;
+                x1 = end.x + 0.0;
+                y1 = end.y + 0.0;
+            } else {
+                x0 = end.x + 0.0;
+                y0 = end.y + 0.0;
+                x1 = start.x + 0.0;
+                y1 = start.y + 0.0;
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof EdgeKey)) {
+                return false;
+            }
+            EdgeKey other = (EdgeKey) obj;
+            return x0 == other.x0 && y0 == other.y0 && x1 == other.x1 && y1 == other.y1;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(x0);
+            bits = bits * 31 + Double.doubleToLongBits(y0);
+            bits = bits * 31 + Double.doubleToLongBits(x1);
+            bits = bits * 31 + Double.doubleToLongBits(y1);
+            return (int) (bits ^ (bits >>> 32));
+        }
+    }
+}
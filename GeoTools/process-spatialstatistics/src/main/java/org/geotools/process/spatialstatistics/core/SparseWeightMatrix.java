@@ -0,0 +1,239 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.Arrays;
+
+/**
+ * Sparse spatial weights stored in compressed sparse row (CSR) form. <br>
+ * The neighbors of row i are columns[rowOffsets[i]] ... columns[rowOffsets[i + 1] - 1], sorted
+ * ascending, with the matching values in weights.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class SparseWeightMatrix {
+
+    private final int rowCount;
+
+    private final int[] rowOffsets;
+
+    private final int[] columns;
+
+    private final double[] weights;
+
+    public SparseWeightMatrix(int rowCount, int[] rowOffsets, int[] columns, double[] weights) {
+        if (rowOffsets.length != rowCount + 1) {
+            throw new IllegalArgumentException("rowOffsets length must be rowCount + 1");
+        }
+        if (columns.length != weights.length || columns.length < rowOffsets[rowCount]) {
+            throw new IllegalArgumentException("columns and weights length mismatch");
+        }
+        this.rowCount = rowCount;
+        this.rowOffsets = rowOffsets;
+        this.columns = columns;
+        this.weights = weights;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getNonZeroCount() {
+        return rowOffsets[rowCount];
+    }
+
+    public int[] getRowOffsets() {
+        return rowOffsets;
+    }
+
+    public int[] getColumns() {
+        return columns;
+    }
+
+    public double[] getWeights() {
+        return weights;
+    }
+
+    public int getRowStart(int row) {
+        return rowOffsets[row];
+    }
+
+    public int getRowEnd(int row) {
+        return rowOffsets[row + 1];
+    }
+
+    public int getNeighborCount(int row) {
+        return rowOffsets[row + 1] - rowOffsets[row];
+    }
+
+    /**
+     * Returns the weight of (row, column), or 0 if column is not a neighbor of row.
+     */
+    public double getWeight(int row, int column) {
+        int pos = Arrays.binarySearch(columns, rowOffsets[row], rowOffsets[row + 1], column);
+        return pos < 0 ? 0d : weights[pos];
+    }
+
+    public boolean isNeighbor(int row, int column) {
+        return Arrays.binarySearch(columns, rowOffsets[row], rowOffsets[row + 1], column) >= 0;
+    }
+
+    public double getRowSum(int row) {
+        double sum = 0d;
+        for (int k = rowOffsets[row], end = rowOffsets[row + 1]; k < end; k++) {
+            sum += weights[k];
+        }
+        return sum;
+    }
+
+    public int getMaxNeighborCount() {
+        int max = 0;
+        for (int row = 0; row < rowCount; row++) {
+            max = Math.max(max, rowOffsets[row + 1] - rowOffsets[row]);
+        }
+        return max;
+    }
+
+    /**
+     * Incrementally collects (row, column, weight) triplets in any order and compacts them into a
+     * {@link SparseWeightMatrix}. A repeated (row, column) pair overwrites the previous weight.
+     */
+    public static class Builder {
+
+        private int rowCount = 0;
+
+        private int size = 0;
+
+        private int[] rows;
+
+        private int[] cols;
+
+        private double[] vals;
+
+        public Builder() {
+            this(64);
+        }
+
+        public Builder(int initialCapacity) {
+            initialCapacity = Math.max(initialCapacity, 16);
+            rows = new int[initialCapacity];
+            cols = new int[initialCapacity];
+            vals = new double[initialCapacity];
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Ensures that the matrix has at least the given number of rows, including rows without
+         * neighbors.
+         */
+        public void ensureRowCount(int count) {
+            rowCount = Math.max(rowCount, count);
+        }
+
+        public void add(int row, int column, double weight) {
+            if (size == rows.length) {
+                int capacity = size + (size >> 1) + 1;
+                rows = Arrays.copyOf(rows, capacity);
+                cols = Arrays.copyOf(cols, capacity);
+                vals = Arrays.copyOf(vals, capacity);
+            }
+            rows[size] = row;
+            cols[size] = column;
+            vals[size] = weight;
+            size++;
+            rowCount = Math.max(rowCount, Math.max(row, column) + 1);
+        }
+
+        public void clear() {
+            size = 0;
+            rowCount = 0;
+        }
+
+        public SparseWeightMatrix build() {
+            // 1. stable counting sort by row
+            int[] offsets = new int[rowCount + 1];
+            for (int k = 0; k < size; k++) {
+                offsets[rows[k] + 1]++;
+            }
+            for (int row = 0; row < rowCount; row++) {
+                offsets[row + 1] += offsets[row];
+            }
+
+            int[] next = Arrays.copyOf(offsets, rowCount);
+            int[] sortedCols = new int[size];
+            double[] sortedVals = new double[size];
+            for (int k = 0; k < size; k++) {
+                int pos = next[rows[k]]++;
+                sortedCols[pos] = cols[k];
+                sortedVals[pos] = vals[k];
+            }
+
+            // 2. sort columns within each row, the last duplicate wins
+            int maxRow = 0;
+            for (int row = 0; row < rowCount; row++) {
+                maxRow = Math.max(maxRow, offsets[row + 1] - offsets[row]);
+            }
+
+            long[] keys = new long[maxRow];
+            double[] buffer = new double[maxRow];
+            int[] compactOffsets = new int[rowCount + 1];
+            int write = 0;
+            for (int row = 0; row < rowCount; row++) {
+                int start = offsets[row];
+                int count = offsets[row + 1] - start;
+                compactOffsets[row] = write;
+                if (count == 0) {
+                    continue;
+                }
+
+                for (int k = 0; k < count; k++) {
+                    keys[k] = ((long) sortedCols[start + k] << 32) | k;
+                    buffer[k] = sortedVals[start + k];
+                }
+                Arrays.sort(keys, 0, count);
+
+                for (int k = 0; k < count; k++) {
+                    int column = (int) (keys[k] >>> 32);
+                    double value = buffer[(int) keys[k]];
+                    if (k + 1 < count && (int) (keys[k + 1] >>> 32) == column) {
+                        continue; // a later visit of the same pair replaces this one
+                    }
+                    sortedCols[write] = column;
+                    sortedVals[write] = value;
+                    write++;
+                }
+            }
+            compactOffsets[rowCount] = write;
+
+            if (write < size) {
+                sortedCols = Arrays.copyOf(sortedCols, write);
+                sortedVals = Arrays.copyOf(sortedVals, write);
+            }
+
+            return new SparseWeightMatrix(rowCount, compactOffsets, sortedCols, sortedVals);
+        }
+    }
+}
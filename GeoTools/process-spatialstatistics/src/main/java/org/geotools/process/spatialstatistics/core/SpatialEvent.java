@@ -68,7 +68,9 @@ public class SpatialEvent {
     }
 
     public double getDistance(Coordinate other) {
-        return other.distance(new Coordinate(this.x, this.y));
+        double dx = this.x - other.x;
+        double dy = this.y - other.y;
+        return Math.sqrt((dx * dx) + (dy * dy));
     }
 
     public Coordinate getCoordinate() {
@@ -0,0 +1,290 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.expression.Expression;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Column oriented store of spatial events: one primitive array per attribute instead of one
+ * {@link SpatialEvent} object per feature. <br>
+ * Events are addressed by their position; the oid column keeps the identifier of the source
+ * feature. The arrays returned by the bulk accessors may be longer than {@link #size()}.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class SpatialEventStore {
+
+    private int size = 0;
+
+    private int[] oid;
+
+    private double[] x;
+
+    private double[] y;
+
+    private double[] weight;
+
+    private double[] population;
+
+    public SpatialEventStore() {
+        this(64);
+    }
+
+    public SpatialEventStore(int initialCapacity) {
+        initialCapacity = Math.max(initialCapacity, 16);
+        oid = new int[initialCapacity];
+        x = new double[initialCapacity];
+        y = new double[initialCapacity];
+        weight = new double[initialCapacity];
+        population = new double[initialCapacity];
+    }
+
+    /**
+     * Loads the centroid of every feature with the weight field, or 1 if the field is empty or
+     * not numeric. The oid of an event is the numeric part of the feature id.
+     */
+    public static SpatialEventStore load(SimpleFeatureCollection features, String weightField) {
+        int idxField = -1;
+        if (!StringHelper.isNullOrEmpty(weightField)) {
+            String propertyName = FeatureTypes.validateProperty(features.getSchema(), weightField);
+            idxField = features.getSchema().indexOf(propertyName);
+        }
+
+        SpatialEventStore store = new SpatialEventStore();
+        SimpleFeatureIterator featureIter = features.features();
+        try {
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                Geometry origGeom = (Geometry) feature.getDefaultGeometry();
+                Coordinate coordinate = origGeom.getCentroid().getCoordinate();
+
+                double value = 1.0;
+                if (idxField != -1) {
+                    Object attribute = feature.getAttribute(idxField);
+                    try {
+                        value = attribute == null ? 1.0 : Double.parseDouble(attribute.toString());
+                    } catch (NumberFormatException e) {
+                        value = 1.0;
+                    }
+                }
+                store.add(FeatureTypes.getFID(feature), coordinate.x, coordinate.y, value, 1.0);
+            }
+        } finally {
+            featureIter.close();
+        }
+        return store;
+    }
+
+    /**
+     * Loads the centroid of every feature with the values of the given expressions, or 1 if an
+     * expression is null or evaluates to null. The oid of an event is its position.
+     */
+    public static SpatialEventStore load(SimpleFeatureCollection features,
+            Expression weightExpression, Expression populationExpression) {
+        SpatialEventStore store = new SpatialEventStore();
+        SimpleFeatureIterator featureIter = features.features();
+        try {
+            while (featureIter.hasNext()) {
+                store.add(featureIter.next(), weightExpression, populationExpression);
+            }
+        } finally {
+            featureIter.close();
+        }
+        return store;
+    }
+
+    public static SpatialEventStore fromEvents(List<SpatialEvent> events) {
+        SpatialEventStore store = new SpatialEventStore(events.size());
+        for (SpatialEvent event : events) {
+            store.add(event.oid, event.x, event.y, event.weight, event.population);
+        }
+        return store;
+    }
+
+    /**
+     * Adds the centroid of feature as the next event, its oid being its position.
+     */
+    public int add(SimpleFeature feature, Expression weightExpression,
+            Expression populationExpression) {
+        Geometry geometry = (Geometry) feature.getDefaultGeometry();
+        Coordinate coordinate = geometry.getCentroid().getCoordinate();
+        return add(size, coordinate.x, coordinate.y, evaluate(feature, weightExpression),
+                evaluate(feature, populationExpression));
+    }
+
+    /**
+     * Adds an event and returns its position.
+     */
+    public int add(int eventId, double eventX, double eventY, double eventWeight,
+            double eventPopulation) {
+        if (size == x.length) {
+            int capacity = size + (size >> 1) + 1;
+            oid = Arrays.copyOf(oid, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            weight = Arrays.copyOf(weight, capacity);
+            population = Arrays.copyOf(population, capacity);
+        }
+        oid[size] = eventId;
+        x[size] = eventX;
+        y[size] = eventY;
+        weight[size] = eventWeight;
+        population[size] = eventPopulation;
+        return size++;
+    }
+
+    private static double evaluate(SimpleFeature feature, Expression expression) {
+        if (expression == null) {
+            return 1.0;
+        }
+        Double value = expression.evaluate(feature, Double.class);
+        return value == null ? 1.0 : value.doubleValue();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getOid(int i) {
+        return oid[i];
+    }
+
+    public double getX(int i) {
+        return x[i];
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+
+    public double getWeight(int i) {
+        return weight[i];
+    }
+
+    public void setWeight(int i, double value) {
+        weight[i] = value;
+    }
+
+    public double getPopulation(int i) {
+        return population[i];
+    }
+
+    public int[] getOids() {
+        return oid;
+    }
+
+    public double[] getXs() {
+        return x;
+    }
+
+    public double[] getYs() {
+        return y;
+    }
+
+    public double[] getWeights() {
+        return weight;
+    }
+
+    public double[] getPopulations() {
+        return population;
+    }
+
+    /**
+     * Releases the unused capacity of the arrays.
+     */
+    public void trimToSize() {
+        if (size < x.length) {
+            oid = Arrays.copyOf(oid, size);
+            x = Arrays.copyOf(x, size);
+            y = Arrays.copyOf(y, size);
+            weight = Arrays.copyOf(weight, size);
+            population = Arrays.copyOf(population, size);
+        }
+    }
+
+    public double distance(int i, int j, DistanceMethod distanceMethod) {
+        return PointKdTree.distance(x[i], y[i], x[j], y[j], distanceMethod);
+    }
+
+    /**
+     * Writes the distance from (qx, qy) to every event into distances.
+     */
+    public void distances(double qx, double qy, DistanceMethod distanceMethod,
+            double[] distances) {
+        // one branch free loop per metric
+        if (distanceMethod == DistanceMethod.Manhattan) {
+            for (int i = 0; i < size; i++) {
+                distances[i] = Math.abs(qx - x[i]) + Math.abs(qy - y[i]);
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                double dx = qx - x[i];
+                double dy = qy - y[i];
+                distances[i] = Math.sqrt((dx * dx) + (dy * dy));
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the distances from (qx, qy) to every event, each multiplied by the
+     * event weight if useWeight is true.
+     */
+    public double sumDistances(double qx, double qy, DistanceMethod distanceMethod,
+            boolean useWeight) {
+        double sum = 0.0;
+        for (int i = 0; i < size; i++) {
+            double dist = PointKdTree.distance(qx, qy, x[i], y[i], distanceMethod);
+            sum += useWeight ? dist * weight[i] : dist;
+        }
+        return sum;
+    }
+
+    public double getWeightSum() {
+        double sum = 0.0;
+        for (int i = 0; i < size; i++) {
+            sum += weight[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Builds a KD-tree over the event coordinates without copying them.
+     */
+    public PointKdTree buildSpatialIndex() {
+        return new PointKdTree(x, y, size);
+    }
+
+    public Coordinate[] toCoordinates() {
+        Coordinate[] coordinates = new Coordinate[size];
+        for (int i = 0; i < size; i++) {
+            coordinates[i] = new Coordinate(x[i], y[i]);
+        }
+        return coordinates;
+    }
+}
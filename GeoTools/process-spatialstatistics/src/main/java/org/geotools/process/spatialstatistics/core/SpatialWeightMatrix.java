@@ -17,6 +17,7 @@
 package org.geotools.process.spatialstatistics.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -25,6 +26,7 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.GeoTools;
+import org.geotools.process.spatialstatistics.core.AbstractSpatialWeightMatrix.SpatialWeightMatrixType;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
 import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
@@ -33,9 +35,6 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.expression.Expression;
 
-import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Geometry;
-
 /**
  * SpatialWeightMatrix
  * 
@@ -46,14 +45,27 @@ import com.vividsolutions.jts.geom.Geometry;
 public class SpatialWeightMatrix {
     protected static final Logger LOGGER = Logging.getLogger(SpatialWeightMatrix.class);
 
-    public List<SpatialEvent> Events;
-
     protected double beta = 1.0;
 
     protected double[] rowSum;
 
     public double distanceBandWidth = 0;
 
+    // optional neighbor search cutoff for concepts without a distance band
+    protected double neighborCutoff = 0;
+
+    protected PointKdTree spatialIndex = null;
+
+    // one event per input feature, event i being the i-th feature
+    protected SpatialEventStore eventStore = null;
+
+    // weights from a file or a preloaded matrix, aligned with the events
+    protected SpatialWeightMatrixResult spatialWeights = null;
+
+    protected SparseWeightMatrix weightMatrix = null;
+
+    protected SpatialWeightsCache weightsCache = null;
+
     public double dZSum = 0;
 
     public double dZ2Sum = 0;
@@ -89,34 +101,204 @@ public class SpatialWeightMatrix {
             DistanceMethod distanceMethod) {
         this.distanceMethod = distanceMethod;
 
-        Events = loadEvents(inputFeatures, obsField);
+        loadEvents(inputFeatures, obsField);
+
+        SpatialWeightsCache.Key cacheKey = null;
+        if (weightsCache != null && weightMatrix == null && isCacheable()) {
+            cacheKey = new SpatialWeightsCache.Key(inputFeatures.getSchema().getTypeName(),
+                    eventStore, spatialConcept, distanceMethod, distanceBandWidth, neighborCutoff);
+            SpatialWeightsCache.Entry entry = weightsCache.get(cacheKey);
+            if (entry != null) {
+                weightMatrix = entry.getWeights();
+                distanceBandWidth = entry.getDistanceBand();
+            }
+        }
 
-        // Find Maximum Nearest Neighbor Distance
+        if (weightMatrix == null) {
+            buildSpatialIndex();
 
-        if (distanceBandWidth == 0) {
-            factory.DistanceType = distanceMethod;
-            double threshold = Double.MIN_VALUE;
-            for (SpatialEvent curEvent : Events) {
-                double nnDist = factory.getMinimumDistance(Events, curEvent);
-                threshold = Math.max(nnDist, threshold);
+            // Find Maximum Nearest Neighbor Distance
+            if (distanceBandWidth == 0) {
+                factory.DistanceType = distanceMethod;
+
+                // #### Increase For Rounding Error #### 2369.39576291193
+                distanceBandWidth = factory.getThresholDistance(spatialIndex);
+                LOGGER.log(Level.WARNING, "The default neighborhood search threshold was "
+                        + distanceBandWidth);
             }
 
-            // #### Increase For Rounding Error #### 2369.39576291193
-            distanceBandWidth = threshold * 1.0001;
-            LOGGER.log(Level.WARNING, "The default neighborhood search threshold was "
-                    + distanceBandWidth);
+            // dense weights are cheaper to recompute than to keep
+            if (cacheKey != null && !Double.isInfinite(getSearchRadius())) {
+                weightMatrix = buildSparseWeights();
+                weightsCache.put(cacheKey, new SpatialWeightsCache.Entry(weightMatrix,
+                        distanceBandWidth));
+            }
         }
 
+        computeRowSums();
+    }
+
+    protected void computeRowSums() {
+        this.rowSum = null;
         if (standardizationMethod == StandardizationMethod.ROW) {
-            this.rowSum = new double[Events.size()];
-            for (SpatialEvent curE : Events) {
-                this.rowSum[curE.oid] = getRowSum(curE);
+            double[] sums = new double[getEventCount()];
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] = getRowSum(i);
             }
+            this.rowSum = sums;
         }
     }
 
-    public double getWeight(SpatialEvent origEvent, SpatialEvent destEvent) {
-        double dDist = factory.getDistance(origEvent, destEvent, distanceMethod);
+    /**
+     * Returns the loaded events as primitive columns, event i being the i-th input feature.
+     */
+    public SpatialEventStore getEventStore() {
+        return eventStore;
+    }
+
+    public int getEventCount() {
+        return eventStore == null ? 0 : eventStore.size();
+    }
+
+    /**
+     * Returns the KD-tree over the event store, or null if the weights came from a cache or a
+     * weights file.
+     */
+    public PointKdTree getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    public SpatialWeightMatrixResult getSpatialWeights() {
+        return spatialWeights;
+    }
+
+    /**
+     * Uses the neighbors of a loaded or previously built weights matrix instead of distances. The
+     * features are matched on the unique field of the matrix; the stored values are converted to
+     * weights by {@link #toWeight(SpatialConcept, SpatialWeightMatrixType, double)}.
+     */
+    public void setSpatialWeights(SpatialWeightMatrixResult spatialWeights) {
+        this.spatialWeights = spatialWeights;
+    }
+
+    /**
+     * Returns the weights aligned with the events, or null if the weights are derived from
+     * distances.
+     */
+    public SparseWeightMatrix getWeightMatrix() {
+        return weightMatrix;
+    }
+
+    public SpatialWeightsCache getWeightsCache() {
+        return weightsCache;
+    }
+
+    /**
+     * Shares the distance based weights with other matrices built on the same features and
+     * weights parameters. Null (the default) always rebuilds the weights.
+     */
+    public void setWeightsCache(SpatialWeightsCache weightsCache) {
+        this.weightsCache = weightsCache;
+    }
+
+    public double getNeighborCutoff() {
+        return neighborCutoff;
+    }
+
+    /**
+     * Sets the neighbor search cutoff used by the ZONEOFINDIFFERENCE concept, whose weights never
+     * reach zero. 0 means no cutoff: every feature is a neighbor.
+     */
+    public void setNeighborCutoff(double neighborCutoff) {
+        this.neighborCutoff = neighborCutoff;
+    }
+
+    protected void buildSpatialIndex() {
+        spatialIndex = eventStore.buildSpatialIndex();
+    }
+
+    private boolean isCacheable() {
+        return spatialConcept != SpatialConcept.POLYGONCONTIGUITY
+                && spatialConcept != SpatialConcept.SPATIALWEIGHTSFROMFILE;
+    }
+
+    // the non-zero distance weights of every event, including the event itself
+    private SparseWeightMatrix buildSparseWeights() {
+        return buildSparseWeights(true, false);
+    }
+
+    /**
+     * Returns the non-zero weights between distinct events as a sparse matrix over event
+     * indices, standardized if requested.
+     */
+    public SparseWeightMatrix getSparseWeights(boolean standardize) {
+        return buildSparseWeights(false, standardize);
+    }
+
+    private SparseWeightMatrix buildSparseWeights(boolean includeSelf, boolean standardize) {
+        int size = getEventCount();
+        SparseWeightMatrix.Builder builder = new SparseWeightMatrix.Builder(size * 8);
+        builder.ensureRowCount(size);
+        for (int i = 0; i < size; i++) {
+            for (int j : getNeighbors(i)) {
+                if (!includeSelf && i == j) {
+                    continue;
+                }
+                double dWeight = getWeight(i, j);
+                if (standardize) {
+                    dWeight = standardizeWeight(i, dWeight);
+                }
+                if (dWeight != 0) {
+                    builder.add(i, j, dWeight);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the distance beyond which {@link #getWeight(int, int)} is always
+     * zero, or positive infinity if every pair has a weight.
+     */
+    public double getSearchRadius() {
+        if (spatialConcept == SpatialConcept.ZONEOFINDIFFERENCE) {
+            return neighborCutoff > 0 ? neighborCutoff : Double.POSITIVE_INFINITY;
+        }
+        return distanceBandWidth > 0 ? distanceBandWidth : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the indices of the events that may have a non-zero weight with event i, in
+     * ascending order. The result may include i itself. <br>
+     * Built or loaded weights copy the row; loops over every event should read the rows of
+     * {@link #getWeightMatrix()} in place when it is not null.
+     */
+    public int[] getNeighbors(int i) {
+        if (weightMatrix != null) {
+            return Arrays.copyOfRange(weightMatrix.getColumns(), weightMatrix.getRowStart(i),
+                    weightMatrix.getRowEnd(i));
+        }
+
+        double radius = getSearchRadius();
+        if (spatialIndex == null || Double.isInfinite(radius)) {
+            int[] neighbors = new int[getEventCount()];
+            for (int j = 0; j < neighbors.length; j++) {
+                neighbors[j] = j;
+            }
+            return neighbors;
+        }
+        return spatialIndex.query(eventStore.getX(i), eventStore.getY(i), radius, distanceMethod);
+    }
+
+    /**
+     * Returns the weight of event j as a neighbor of event i.
+     */
+    public double getWeight(int i, int j) {
+        if (weightMatrix != null) {
+            return weightMatrix.getWeight(i, j);
+        }
+
+        double dDist = eventStore.distance(i, j, distanceMethod);
 
         double dWeight = dDist; // default
 
@@ -125,7 +307,8 @@ public class SpatialWeightMatrix {
         // HelperFunctions.py - 272 line
         switch (spatialConcept) {
         case INVERSEDISTANCE:
-            dWeight = dDist <= 1.0 ? 1.0 : 1.0 / (Math.pow(dDist, beta));
+        case INVERSEDISTANCESQUARED:
+            dWeight = toWeight(spatialConcept, dDist);
             break;
         case FIXEDDISTANCEBAND:
             dWeight = dDist <= distanceBandWidth ? 1.0 : 0.0;
@@ -133,7 +316,6 @@ public class SpatialWeightMatrix {
         case ZONEOFINDIFFERENCE:
             dWeight = dDist > distanceBandWidth ? 1.0 / ((dDist - distanceBandWidth) + 1) : 1.0;
             break;
-        case INVERSEDISTANCESQUARED:
         case POLYGONCONTIGUITY:
         case SPATIALWEIGHTSFROMFILE:
             // default distance
@@ -146,26 +328,80 @@ public class SpatialWeightMatrix {
             }
         }
 
+        if (spatialConcept == SpatialConcept.ZONEOFINDIFFERENCE) {
+            if (neighborCutoff > 0 && dDist > neighborCutoff) {
+                dWeight = 0.0;
+            }
+        }
+
         return dWeight;
     }
 
-    public double standardizeWeight(SpatialEvent origEvent, double dWeight) {
+    /**
+     * Converts a distance to a weight for the concepts that do not depend on the distance band:
+     * the inverse distance (squared for INVERSEDISTANCESQUARED), 1 within a unit distance. The
+     * distances stored in a weights file are weighted by their inverse too; the other concepts
+     * give 1 to every neighbor.
+     */
+    public static double toWeight(SpatialConcept spatialConcept, double distance) {
+        switch (spatialConcept) {
+        case INVERSEDISTANCE:
+        case SPATIALWEIGHTSFROMFILE:
+            return distance <= 1.0 ? 1.0 : 1.0 / distance;
+        case INVERSEDISTANCESQUARED:
+            return distance <= 1.0 ? 1.0 : 1.0 / (distance * distance);
+        default:
+            return 1.0;
+        }
+    }
+
+    /**
+     * Converts the value stored for a link of a weights matrix: contiguity links weigh 1, the
+     * distances of distance links are converted by {@link #toWeight(SpatialConcept, double)}.
+     */
+    public static double toWeight(SpatialConcept spatialConcept,
+            SpatialWeightMatrixType spatialWeightMatrixType, double value) {
+        if (spatialWeightMatrixType == SpatialWeightMatrixType.Contiguity) {
+            return 1.0;
+        }
+        return toWeight(spatialConcept, value);
+    }
+
+    /**
+     * Standardizes a weight of event i with the standardization method of this matrix.
+     */
+    public double standardizeWeight(int i, double dWeight) {
         switch (standardizationMethod) {
         case NONE:
             return dWeight;
         case ROW:
-            return dWeight / getRowSum(origEvent);
+            if (rowSum != null) {
+                return dWeight / rowSum[i];
+            }
+            return dWeight / getRowSum(i);
         case GLOBAL:
             return dWeight / this.dZSum;
         }
         return dWeight;
     }
 
-    protected double getRowSum(SpatialEvent origEvent) {
+    protected double getRowSum(int i) {
         double returnSum = 0.0;
-        for (SpatialEvent curE : Events) {
-            if (origEvent.oid != curE.oid) {
-                returnSum += getWeight(origEvent, curE);
+        if (weightMatrix != null) {
+            // the row in place, without copying it
+            int[] columns = weightMatrix.getColumns();
+            double[] weights = weightMatrix.getWeights();
+            for (int k = weightMatrix.getRowStart(i); k < weightMatrix.getRowEnd(i); k++) {
+                if (i != columns[k]) {
+                    returnSum += weights[k];
+                }
+            }
+            return returnSum;
+        }
+
+        for (int j : getNeighbors(i)) {
+            if (i != j) {
+                returnSum += getWeight(i, j);
             }
         }
         return returnSum;
@@ -179,36 +415,48 @@ public class SpatialWeightMatrix {
         return Double.valueOf(1.0);
     }
 
-    private List<SpatialEvent> loadEvents(SimpleFeatureCollection features, String obsField) {
-        List<SpatialEvent> srcEvents = new ArrayList<SpatialEvent>();
-
+    private void loadEvents(SimpleFeatureCollection features, String obsField) {
         this.dZSum = this.dZ2Sum = this.dZ3Sum = this.dZ4Sum = 0.0;
 
         obsField = FeatureTypes.validateProperty(features.getSchema(), obsField);
         FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(GeoTools.getDefaultHints());
         Expression obsExpression = ff.property(obsField);
 
-        int oid = 0;
+        Expression idExpression = null;
+        List<Object> featureIds = null;
+        if (spatialWeights != null) {
+            featureIds = new ArrayList<Object>();
+            String uniqueField = spatialWeights.getUniqueField();
+            if (uniqueField != null) {
+                uniqueField = FeatureTypes.validateProperty(features.getSchema(), uniqueField);
+                idExpression = ff.property(uniqueField);
+            }
+        }
+
+        eventStore = new SpatialEventStore();
         SimpleFeatureIterator featureIter = features.features();
         try {
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                Coordinate coordinate = geometry.getCentroid().getCoordinate();
+                double value = eventStore.getWeight(eventStore.add(feature, obsExpression, null));
 
-                SpatialEvent sEvent = new SpatialEvent(oid++, coordinate);
-                sEvent.weight = getValue(feature, obsExpression);
+                dZSum += value;
+                dZ2Sum += Math.pow(value, 2.0);
+                dZ3Sum += Math.pow(value, 3.0);
+                dZ4Sum += Math.pow(value, 4.0);
 
-                dZSum += sEvent.weight;
-                dZ2Sum += Math.pow(sEvent.weight, 2.0);
-                dZ3Sum += Math.pow(sEvent.weight, 3.0);
-                dZ4Sum += Math.pow(sEvent.weight, 4.0);
-                srcEvents.add(sEvent);
+                if (featureIds != null) {
+                    featureIds.add(idExpression == null ? feature.getID() : idExpression
+                            .evaluate(feature));
+                }
             }
         } finally {
             featureIter.close();
         }
 
-        return srcEvents;
+        weightMatrix = null;
+        if (featureIds != null) {
+            weightMatrix = spatialWeights.alignWeightMatrix(featureIds, spatialConcept);
+        }
     }
 }
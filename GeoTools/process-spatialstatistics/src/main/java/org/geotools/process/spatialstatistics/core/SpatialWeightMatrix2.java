@@ -16,26 +16,19 @@
  */
 package org.geotools.process.spatialstatistics.core;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.GeoTools;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
 import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
 import org.geotools.util.logging.Logging;
-import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.expression.Expression;
 
-import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Geometry;
-
 /**
  * SpatialWeightMatrix 2
  * 
@@ -73,35 +66,25 @@ public class SpatialWeightMatrix2 extends SpatialWeightMatrix {
             String popField, DistanceMethod distanceMethod) {
         this.distanceMethod = distanceMethod;
 
-        Events = loadEvents(inputFeatures, obsField, popField);
+        loadEvents(inputFeatures, obsField, popField);
+
+        buildSpatialIndex();
 
         // Find Maximum Nearest Neighbor Distance
         if (distanceBandWidth == 0) {
             factory.DistanceType = distanceMethod;
-            double threshold = Double.MIN_VALUE;
-            for (SpatialEvent curEvent : Events) {
-                double nnDist = factory.getMinimumDistance(Events, curEvent);
-                threshold = Math.max(nnDist, threshold);
-            }
 
             // #### Increase For Rounding Error #### 2369.39576291193
-            distanceBandWidth = threshold * 1.0001;
+            distanceBandWidth = factory.getThresholDistance(spatialIndex);
             LOGGER.log(Level.WARNING, "The default neighborhood search threshold was "
                     + distanceBandWidth);
         }
 
-        if (standardizationMethod == StandardizationMethod.ROW) {
-            this.rowSum = new double[Events.size()];
-            for (SpatialEvent curE : Events) {
-                this.rowSum[curE.oid] = getRowSum(curE);
-            }
-        }
+        computeRowSums();
     }
 
-    private List<SpatialEvent> loadEvents(SimpleFeatureCollection features, String obsField,
+    private void loadEvents(SimpleFeatureCollection features, String obsField,
             String popField) {
-        List<SpatialEvent> eventList = new ArrayList<SpatialEvent>();
-
         this.dZSum = this.dZ2Sum = this.dZ3Sum = this.dZ4Sum = 0.0;
         this.dPopSum = this.dPop2Sum = this.dPop3Sum = this.dPop4Sum = 0.0;
 
@@ -112,36 +95,19 @@ public class SpatialWeightMatrix2 extends SpatialWeightMatrix {
         Expression obsExpression = ff.property(obsField);
         Expression popExpression = ff.property(popField);
 
-        int oid = 0;
-
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                Coordinate coordinate = geometry.getCentroid().getCoordinate();
-
-                SpatialEvent sEvent = new SpatialEvent(oid++, coordinate);
-                sEvent.weight = getValue(feature, obsExpression);
-
-                dZSum += sEvent.weight;
-                dZ2Sum += Math.pow(sEvent.weight, 2.0);
-                dZ3Sum += Math.pow(sEvent.weight, 3.0);
-                dZ4Sum += Math.pow(sEvent.weight, 4.0);
-
-                sEvent.population = getValue(feature, popExpression);
-
-                dPopSum += sEvent.population;
-                dPop2Sum += Math.pow(sEvent.population, 2.0);
-                dPop3Sum += Math.pow(sEvent.population, 3.0);
-                dPop4Sum += Math.pow(sEvent.population, 4.0);
-
-                eventList.add(sEvent);
-            }
-        } finally {
-            featureIter.close();
+        eventStore = SpatialEventStore.load(features, obsExpression, popExpression);
+        for (int i = 0; i < eventStore.size(); i++) {
+            double value = eventStore.getWeight(i);
+            dZSum += value;
+            dZ2Sum += Math.pow(value, 2.0);
+            dZ3Sum += Math.pow(value, 3.0);
+            dZ4Sum += Math.pow(value, 4.0);
+
+            double population = eventStore.getPopulation(i);
+            dPopSum += population;
+            dPop2Sum += Math.pow(population, 2.0);
+            dPop3Sum += Math.pow(population, 3.0);
+            dPop4Sum += Math.pow(population, 4.0);
         }
-
-        return eventList;
     }
 }
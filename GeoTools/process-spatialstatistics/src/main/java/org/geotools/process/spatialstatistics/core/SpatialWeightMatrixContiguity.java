@@ -16,18 +16,26 @@
  */
 package org.geotools.process.spatialstatistics.core;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.process.spatialstatistics.enumeration.ContiguityType;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
 
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.MultiPoint;
-import com.vividsolutions.jts.geom.Point;
 
 /**
  * SpatialWeightMatrix - Contiguity based weights
@@ -40,7 +48,7 @@ public class SpatialWeightMatrixContiguity extends AbstractSpatialWeightMatrix {
     protected static final Logger LOGGER = Logging
             .getLogger(SpatialWeightMatrixKNearestNeighbors.class);
 
-    private int orderOfContiguity = 1; // Queen's default order
+    private int orderOfContiguity = 1; // first order, higher orders include the lower ones
 
     private ContiguityType contiguityType = ContiguityType.Queen;
 
@@ -66,146 +74,189 @@ public class SpatialWeightMatrixContiguity extends AbstractSpatialWeightMatrix {
 
     @Override
     public SpatialWeightMatrixResult execute(SimpleFeatureCollection features, String uniqueField) {
-        switch (contiguityType) {
-        case Queen:
-            return queen(features, uniqueField);
-        case Rook:
-            return rook(features, uniqueField);
-        case Bishops:
-            return bishops(features, uniqueField);
-        default:
-            return queen(features, uniqueField);
-        }
-    }
-
-    // Polygon Contiguity (Edges and Corners)—A queen weights matrix defines a location's
-    // neighbors as those with either a shared border or vertex
-    private SpatialWeightMatrixResult queen(SimpleFeatureCollection features, String uniqueField) {
         SpatialWeightMatrixResult swm = new SpatialWeightMatrixResult(
                 SpatialWeightMatrixType.Contiguity);
         swm.setupVariables(features.getSchema().getTypeName(), uniqueField);
 
         uniqueField = FeatureTypes.validateProperty(features.getSchema(), uniqueField);
-        final String the_geom = features.getSchema().getGeometryDescriptor().getLocalName();
 
+        // read the features once, rows follow the feature order
+        List<Object> idList = new ArrayList<Object>();
+        List<Geometry> geometries = new ArrayList<Geometry>();
         SimpleFeatureIterator featureIter = features.features();
         try {
             while (featureIter.hasNext()) {
-                SimpleFeature primaryFeature = featureIter.next();
-                Geometry primaryGeometry = (Geometry) primaryFeature.getDefaultGeometry();
-                Object primaryID = primaryFeature.getAttribute(uniqueField);
-
-                // spatial query
-                // TODO orderOfContiguity
-                Filter filter = ff.intersects(ff.property(the_geom), ff.literal(primaryGeometry));
-                SimpleFeatureIterator subIter = features.subCollection(filter).features();
-                try {
-                    while (subIter.hasNext()) {
-                        SimpleFeature secondaryFeature = subIter.next();
-                        Object secondaryID = secondaryFeature.getAttribute(uniqueField);
-                        if (primaryID.equals(secondaryID)) {
-                            continue;
-                        }
-
-                        swm.visit(primaryID, secondaryID);
-                    }
-                } finally {
-                    subIter.close();
-                }
+                SimpleFeature feature = featureIter.next();
+                Object primaryID = feature.getAttribute(uniqueField);
+                geometries.add((Geometry) feature.getDefaultGeometry());
+                idList.add(primaryID);
+                swm.addFeature(primaryID);
             }
         } finally {
             featureIter.close();
         }
+
+        // Queen: Polygon Contiguity (Edges and Corners)
+        // Rook: Polygon Contiguity (Edges Only)
+        // Bishops: Polygon Contiguity (Corners Only)
+        PolygonContiguity contiguity = new PolygonContiguity(geometries);
+        SparseWeightMatrix adjacency = contiguity.build(contiguityType);
+        adjacency = PolygonContiguity.expand(adjacency, orderOfContiguity);
+
+        final int[] offsets = adjacency.getRowOffsets();
+        final int[] columns = adjacency.getColumns();
+        for (int i = 0; i < idList.size(); i++) {
+            Object primaryID = idList.get(i);
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                Object secondaryID = idList.get(columns[k]);
+                if (primaryID.equals(secondaryID)) {
+                    continue;
+                }
+
+                swm.visit(primaryID, secondaryID);
+            }
+        }
+
         return swm;
     }
 
-    // Polygon Contiguity (Edges Only)—A rook weights matrix defines a location's neighbors as
-    // those areas with shared borders
-    private SpatialWeightMatrixResult rook(SimpleFeatureCollection features, String uniqueField) {
-        SpatialWeightMatrixResult swm = new SpatialWeightMatrixResult(
-                SpatialWeightMatrixType.Contiguity);
-        swm.setupVariables(features.getSchema().getTypeName(), uniqueField);
-
-        uniqueField = FeatureTypes.validateProperty(features.getSchema(), uniqueField);
-        final String the_geom = features.getSchema().getGeometryDescriptor().getLocalName();
+    /**
+     * {@inheritDoc} <br>
+     * Features are assigned to tiles by centroid. The geometries of a tile are read again with a
+     * bounding box filter, extended once per order of contiguity by the envelopes of the features
+     * found, so that every neighbor of the features of the tile is read with its own neighbors.
+     */
+    @Override
+    public TiledWeightMatrix executeTiled(SimpleFeatureCollection features, String uniqueField,
+            File outputFile) throws IOException {
+        SimpleFeatureType schema = features.getSchema();
+        String propertyName = FeatureTypes.validateProperty(schema, uniqueField);
+        String geomName = schema.getGeometryDescriptor().getLocalName();
 
+        // 1. extract centroids and envelopes, one row per unique value
+        IdDictionary ids = new IdDictionary();
+        double[] x = new double[64];
+        double[] y = new double[64];
+        Envelope[] envelopes = new Envelope[64];
         SimpleFeatureIterator featureIter = features.features();
         try {
             while (featureIter.hasNext()) {
-                SimpleFeature primaryFeature = featureIter.next();
-                Geometry primaryGeometry = (Geometry) primaryFeature.getDefaultGeometry();
-                Object primaryID = primaryFeature.getAttribute(uniqueField);
-
-                // spatial query
-                Filter filter = ff.intersects(ff.property(the_geom), ff.literal(primaryGeometry));
-                SimpleFeatureIterator subIter = features.subCollection(filter).features();
-                try {
-                    while (subIter.hasNext()) {
-                        SimpleFeature secondaryFeature = subIter.next();
-                        Object secondaryID = secondaryFeature.getAttribute(uniqueField);
-                        if (primaryID.equals(secondaryID)) {
-                            continue;
-                        }
-
-                        Geometry secondaryGeom = (Geometry) secondaryFeature.getDefaultGeometry();
-                        Geometry intersects = primaryGeometry.intersection(secondaryGeom);
-                        if (intersects instanceof Point || intersects instanceof MultiPoint) {
-                            continue;
-                        }
+                SimpleFeature feature = featureIter.next();
+                int size = ids.size();
+                if (ids.add(feature.getAttribute(propertyName)) < size) {
+                    continue; // duplicated unique value
+                }
 
-                        swm.visit(primaryID, secondaryID);
-                    }
-                } finally {
-                    subIter.close();
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                Coordinate coordinate = geometry.getCentroid().getCoordinate();
+                if (size == x.length) {
+                    x = Arrays.copyOf(x, size << 1);
+                    y = Arrays.copyOf(y, size << 1);
+                    envelopes = Arrays.copyOf(envelopes, size << 1);
                 }
+                x[size] = coordinate.x;
+                y[size] = coordinate.y;
+                envelopes[size] = geometry.getEnvelopeInternal();
             }
         } finally {
             featureIter.close();
         }
-        return swm;
-    }
 
-    // Polygon Contiguity (Corners Only)—A rook weights matrix defines a location's neighbors as
-    // those areas with shared vertex
-    private SpatialWeightMatrixResult bishops(SimpleFeatureCollection features, String uniqueField) {
-        SpatialWeightMatrixResult swm = new SpatialWeightMatrixResult(
-                SpatialWeightMatrixType.Contiguity);
-        swm.setupVariables(features.getSchema().getTypeName(), uniqueField);
+        final int featureCount = ids.size();
+        TileGrid grid = new TileGrid(x, y, featureCount, getFeaturesPerTile());
 
-        uniqueField = FeatureTypes.validateProperty(features.getSchema(), uniqueField);
-        final String the_geom = features.getSchema().getGeometryDescriptor().getLocalName();
+        // global row -> position in the current tile, reset after every tile
+        int[] localIndex = new int[featureCount];
+        BitSet loaded = new BitSet(featureCount);
 
-        SimpleFeatureIterator featureIter = features.features();
+        TiledWeightMatrix.Writer writer = new TiledWeightMatrix.Writer(outputFile,
+                SpatialWeightMatrixType.Contiguity, true, featureCount, schema.getTypeName(),
+                uniqueField, 0d);
         try {
-            while (featureIter.hasNext()) {
-                SimpleFeature primaryFeature = featureIter.next();
-                Geometry primaryGeometry = (Geometry) primaryFeature.getDefaultGeometry();
-                Object primaryID = primaryFeature.getAttribute(uniqueField);
-
-                // spatial query
-                Filter filter = ff.intersects(ff.property(the_geom), ff.literal(primaryGeometry));
-                SimpleFeatureIterator subIter = features.subCollection(filter).features();
-                try {
-                    while (subIter.hasNext()) {
-                        SimpleFeature secondaryFeature = subIter.next();
-                        Object secondaryID = secondaryFeature.getAttribute(uniqueField);
-                        if (primaryID.equals(secondaryID)) {
-                            continue;
+            for (int tile = 0; tile < grid.getTileCount(); tile++) {
+                int[] rows = grid.getMembers(tile);
+                if (rows.length == 0) {
+                    continue;
+                }
+
+                // 2. read the features of the tile and orderOfContiguity rings of neighbors
+                List<Geometry> geometries = new ArrayList<Geometry>();
+                int[] localRows = new int[rows.length * 2];
+                Envelope bounds = new Envelope();
+                for (int row : rows) {
+                    bounds.expandToInclude(envelopes[row]);
+                }
+
+                int order = Math.max(1, orderOfContiguity);
+                for (int ring = 0; ring < order; ring++) {
+                    Filter filter = ff.bbox(ff.property(geomName), new ReferencedEnvelope(bounds,
+                            schema.getCoordinateReferenceSystem()));
+                    Envelope next = new Envelope(bounds);
+                    int before = geometries.size();
+                    featureIter = features.subCollection(filter).features();
+                    try {
+                        while (featureIter.hasNext()) {
+                            SimpleFeature feature = featureIter.next();
+                            int row = ids.indexOf(feature.getAttribute(propertyName));
+                            if (row < 0 || loaded.get(row)) {
+                                continue;
+                            }
+
+                            loaded.set(row);
+                            int local = geometries.size();
+                            if (local == localRows.length) {
+                                localRows = Arrays.copyOf(localRows, local << 1);
+                            }
+                            localRows[local] = row;
+                            localIndex[row] = local;
+                            geometries.add((Geometry) feature.getDefaultGeometry());
+                            next.expandToInclude(envelopes[row]);
                         }
+                    } finally {
+                        featureIter.close();
+                    }
+
+                    if (geometries.size() == before) {
+                        break; // no new neighbors
+                    }
+                    bounds = next;
+                }
+
+                // Queen: Polygon Contiguity (Edges and Corners)
+                // Rook: Polygon Contiguity (Edges Only)
+                // Bishops: Polygon Contiguity (Corners Only)
+                PolygonContiguity contiguity = new PolygonContiguity(geometries);
+                SparseWeightMatrix adjacency = contiguity.build(contiguityType);
+                adjacency = PolygonContiguity.expand(adjacency, orderOfContiguity);
+
+                // 3. keep the rows of the tile, without the feature itself
+                final int[] offsets = adjacency.getRowOffsets();
+                final int[] columns = adjacency.getColumns();
+                SparseWeightMatrix.Builder builder = new SparseWeightMatrix.Builder(
+                        rows.length * 8);
+                builder.ensureRowCount(rows.length);
+                for (int r = 0; r < rows.length; r++) {
+                    if (!loaded.get(rows[r])) {
+                        continue; // no geometry matched the bounding box
+                    }
 
-                        Geometry secondaryGeom = (Geometry) secondaryFeature.getDefaultGeometry();
-                        Geometry intersects = primaryGeometry.intersection(secondaryGeom);
-                        if (intersects instanceof Point || intersects instanceof MultiPoint) {
-                            swm.visit(primaryID, secondaryID);
+                    int local = localIndex[rows[r]];
+                    for (int k = offsets[local]; k < offsets[local + 1]; k++) {
+                        if (columns[k] != local) {
+                            builder.add(r, columns[k], 0d);
                         }
                     }
-                } finally {
-                    subIter.close();
+                }
+
+                writer.writeTile(rows, localRows, builder.build());
+
+                for (int local = 0; local < geometries.size(); local++) {
+                    loaded.clear(localRows[local]);
                 }
             }
+            return writer.finish();
         } finally {
-            featureIter.close();
+            writer.close();
         }
-        return swm;
     }
 }
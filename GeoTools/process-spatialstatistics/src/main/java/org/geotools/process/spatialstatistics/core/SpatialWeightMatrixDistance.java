@@ -16,7 +16,10 @@
  */
 package org.geotools.process.spatialstatistics.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -29,9 +32,6 @@ import org.opengis.feature.simple.SimpleFeature;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.Point;
-import com.vividsolutions.jts.index.kdtree.KdNode;
-import com.vividsolutions.jts.index.kdtree.KdTree;
 
 /**
  * SpatialWeightMatrix - Distance based weights
@@ -106,14 +106,10 @@ public class SpatialWeightMatrixDistance extends AbstractSpatialWeightMatrix {
 
         uniqueField = FeatureTypes.validateProperty(features.getSchema(), uniqueField);
 
-        if (thresholdDistance == 0) {
-            DistanceFactory factory = DistanceFactory.newInstance();
-            factory.DistanceType = distanceMethod;
-            thresholdDistance = factory.getThresholDistance(features);
-        }
-
         // 1. extract centroid and build spatial index
-        KdTree spatialIndex = new KdTree(0.0d);
+        List<Object> idList = new ArrayList<Object>();
+        double[] x = new double[64];
+        double[] y = new double[64];
         SimpleFeatureIterator featureIter = features.features();
         try {
             while (featureIter.hasNext()) {
@@ -122,40 +118,124 @@ public class SpatialWeightMatrixDistance extends AbstractSpatialWeightMatrix {
                 Coordinate coordinate = geometry.getCentroid().getCoordinate();
                 Object primaryID = feature.getAttribute(uniqueField);
 
-                spatialIndex.insert(coordinate, primaryID);
+                int size = idList.size();
+                if (size == x.length) {
+                    x = Arrays.copyOf(x, size << 1);
+                    y = Arrays.copyOf(y, size << 1);
+                }
+                x[size] = coordinate.x;
+                y[size] = coordinate.y;
+                idList.add(primaryID);
+                swm.addFeature(primaryID);
             }
         } finally {
             featureIter.close();
         }
 
-        List<KdNode> result = new ArrayList<KdNode>();
-        featureIter = features.features();
+        PointKdTree spatialIndex = new PointKdTree(x, y, idList.size());
+        if (thresholdDistance == 0) {
+            DistanceFactory factory = DistanceFactory.newInstance();
+            factory.DistanceType = distanceMethod;
+            thresholdDistance = factory.getThresholDistance(spatialIndex);
+        }
+
+        // 2. link every centroid within the threshold distance
+        for (int i = 0; i < idList.size(); i++) {
+            Object primaryID = idList.get(i);
+            for (int j : spatialIndex.query(x[i], y[i], thresholdDistance,
+                    DistanceMethod.Euclidean)) {
+                Object secondaryID = idList.get(j);
+                if (primaryID.equals(secondaryID)) {
+                    continue;
+                }
+
+                double distance = PointKdTree.distance(x[i], y[i], x[j], y[j],
+                        DistanceMethod.Euclidean);
+                swm.visit(primaryID, secondaryID, distance);
+            }
+        }
+
+        return swm;
+    }
+
+    @Override
+    public TiledWeightMatrix executeTiled(SimpleFeatureCollection features, String uniqueField,
+            File outputFile) throws IOException {
+        String typeName = features.getSchema().getTypeName();
+        String propertyName = FeatureTypes.validateProperty(features.getSchema(), uniqueField);
+
+        // 1. extract centroids, one row per unique value
+        IdDictionary ids = new IdDictionary();
+        double[] x = new double[64];
+        double[] y = new double[64];
+        SimpleFeatureIterator featureIter = features.features();
         try {
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                Point centroid = geometry.getCentroid();
-                Coordinate coordinate = centroid.getCoordinate();
-                Object primaryID = feature.getAttribute(uniqueField);
-
-                Envelope env = centroid.buffer(thresholdDistance).getEnvelopeInternal();
-                result.clear();
-                spatialIndex.query(env, result);
-                for (KdNode node : result) {
-                    Object secondaryID = node.getData();
-                    double distance = coordinate.distance(node.getCoordinate());
-                    if (primaryID.equals(secondaryID) || distance > thresholdDistance) {
-                        continue;
-                    }
+                int size = ids.size();
+                if (ids.add(feature.getAttribute(propertyName)) < size) {
+                    continue; // duplicated unique value
+                }
 
-                    swm.visit(primaryID, secondaryID, distance);
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                Coordinate coordinate = geometry.getCentroid().getCoordinate();
+                if (size == x.length) {
+                    x = Arrays.copyOf(x, size << 1);
+                    y = Arrays.copyOf(y, size << 1);
                 }
+                x[size] = coordinate.x;
+                y[size] = coordinate.y;
             }
         } finally {
             featureIter.close();
         }
 
-        return swm;
-    }
+        final int featureCount = ids.size();
+        if (thresholdDistance == 0) {
+            DistanceFactory factory = DistanceFactory.newInstance();
+            factory.DistanceType = distanceMethod;
+            thresholdDistance = factory.getThresholDistance(new PointKdTree(x, y, featureCount));
+        }
 
+        // 2. link the centroids of every tile with the centroids of the tile and its halo
+        TileGrid grid = new TileGrid(x, y, featureCount, getFeaturesPerTile());
+        TiledWeightMatrix.Writer writer = new TiledWeightMatrix.Writer(outputFile,
+                SpatialWeightMatrixType.Distance, true, featureCount, typeName, uniqueField,
+                thresholdDistance);
+        try {
+            for (int tile = 0; tile < grid.getTileCount(); tile++) {
+                int[] rows = grid.getMembers(tile);
+                if (rows.length == 0) {
+                    continue;
+                }
+
+                Envelope halo = grid.getBounds(tile);
+                halo.expandBy(thresholdDistance);
+                int[] candidates = grid.collect(halo);
+                PointKdTree spatialIndex = grid.buildIndex(candidates);
+
+                SparseWeightMatrix.Builder builder = new SparseWeightMatrix.Builder(
+                        rows.length * 8);
+                builder.ensureRowCount(rows.length);
+                for (int r = 0; r < rows.length; r++) {
+                    int i = rows[r];
+                    for (int c : spatialIndex.query(x[i], y[i], thresholdDistance,
+                            DistanceMethod.Euclidean)) {
+                        int j = candidates[c];
+                        if (i == j) {
+                            continue;
+                        }
+
+                        double distance = PointKdTree.distance(x[i], y[i], x[j], y[j],
+                                DistanceMethod.Euclidean);
+                        builder.add(r, c, distance);
+                    }
+                }
+                writer.writeTile(rows, candidates, builder.build());
+            }
+            return writer.finish();
+        } finally {
+            writer.close();
+        }
+    }
 }
@@ -16,22 +16,22 @@
  */
 package org.geotools.process.spatialstatistics.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.TreeMap;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.simple.SimpleFeature;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.index.kdtree.KdNode;
-import com.vividsolutions.jts.index.kdtree.KdTree;
 
 /**
  * SpatialWeightMatrix - Distance based weights - k-Nearest Neighbors. <br>
@@ -49,6 +49,8 @@ public class SpatialWeightMatrixKNearestNeighbors extends AbstractSpatialWeightM
 
     private int numberOfNeighbors = 4; // default value
 
+    private int parallelism = 1;
+
     public int getNumberOfNeighbors() {
         return numberOfNeighbors;
     }
@@ -57,6 +59,17 @@ public class SpatialWeightMatrixKNearestNeighbors extends AbstractSpatialWeightM
         this.numberOfNeighbors = numberOfNeighbors;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used for the neighbor queries.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     public SpatialWeightMatrixKNearestNeighbors() {
 
     }
@@ -69,11 +82,11 @@ public class SpatialWeightMatrixKNearestNeighbors extends AbstractSpatialWeightM
 
         uniqueField = FeatureTypes.validateProperty(features.getSchema(), uniqueField);
 
-        int featureCount = 0;
-        Envelope env = new Envelope();
-
         // 1. extract centroid and build spatial index
-        KdTree spatialIndex = new KdTree(0.0d);
+        List<Object> idList = new ArrayList<Object>();
+        int[] rows = new int[64];
+        double[] x = new double[64];
+        double[] y = new double[64];
         SimpleFeatureIterator featureIter = features.features();
         try {
             while (featureIter.hasNext()) {
@@ -82,104 +95,195 @@ public class SpatialWeightMatrixKNearestNeighbors extends AbstractSpatialWeightM
                 Coordinate coordinate = geometry.getCentroid().getCoordinate();
                 Object primaryID = feature.getAttribute(uniqueField);
 
-                spatialIndex.insert(coordinate, primaryID);
-                featureCount++;
-                env.expandToInclude(coordinate);
+                int size = idList.size();
+                if (size == x.length) {
+                    rows = Arrays.copyOf(rows, size << 1);
+                    x = Arrays.copyOf(x, size << 1);
+                    y = Arrays.copyOf(y, size << 1);
+                }
+                rows[size] = swm.addFeature(primaryID);
+                x[size] = coordinate.x;
+                y[size] = coordinate.y;
+                idList.add(primaryID);
             }
         } finally {
             featureIter.close();
         }
 
-        if (numberOfNeighbors >= featureCount) {
-            featureIter = features.features();
-            try {
-                while (featureIter.hasNext()) {
-                    SimpleFeature feature = featureIter.next();
-                    Object primaryID = feature.getAttribute(uniqueField);
-                    Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                    Coordinate coordinate = geometry.getCentroid().getCoordinate();
-
-                    SimpleFeatureIterator subIter = features.features();
-                    try {
-                        while (subIter.hasNext()) {
-                            SimpleFeature secondaryFeature = subIter.next();
-                            Object secondaryID = secondaryFeature.getAttribute(uniqueField);
-                            if (primaryID.equals(secondaryID)) {
-                                continue;
-                            }
+        final int featureCount = idList.size();
+        final int k = Math.max(0, Math.min(numberOfNeighbors, featureCount - 1));
+        final PointKdTree spatialIndex = new PointKdTree(x, y, featureCount);
 
-                            Geometry secGeom = (Geometry) secondaryFeature.getDefaultGeometry();
-                            Coordinate secCoord = secGeom.getCentroid().getCoordinate();
-                            swm.visit(primaryID, secondaryID, coordinate.distance(secCoord));
-                        }
-                    } finally {
-                        subIter.close();
+        // 2. query the k nearest neighbors of every feature, one heap per task
+        final int[] neighbors = new int[featureCount * k];
+        final double[] distances = new double[featureCount * k];
+        final double[] qx = x;
+        final double[] qy = y;
+        int threads = parallelism <= 0 ? ParallelRange.getDefaultParallelism() : parallelism;
+        ParallelRange.execute(threads, featureCount, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                PointKdTree.NeighborHeap heap = new PointKdTree.NeighborHeap(k);
+                for (int i = start; i < end; i++) {
+                    spatialIndex.nearest(qx[i], qy[i], i, DistanceMethod.Euclidean, heap);
+                    heap.sort();
+                    for (int n = 0; n < heap.size(); n++) {
+                        neighbors[i * k + n] = heap.getIndex(n);
+                        distances[i * k + n] = heap.getDistance(n);
                     }
                 }
-            } finally {
-                featureIter.close();
             }
-        } else {
-            // 2. evaluate envelope
-            double maxWidth = env.getWidth() > env.getHeight() ? env.getWidth() : env.getHeight();
-            final double initDistance = maxWidth / Math.sqrt(featureCount);
-
-            // 3.create spatial weight matrix
-            List<KdNode> result = new ArrayList<KdNode>();
-            TreeMap<Double, Object> sortedMap = new TreeMap<Double, Object>();
-            int count = 0;
-
-            featureIter = features.features();
-            try {
-                while (featureIter.hasNext()) {
-                    SimpleFeature feature = featureIter.next();
-                    Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                    Coordinate coordinate = geometry.getCentroid().getCoordinate();
-                    Object primaryID = feature.getAttribute(uniqueField);
-
-                    // init
-                    env.init(coordinate);
-                    sortedMap.clear();
-
-                    // query
-                    count = 0;
-                    while (numberOfNeighbors > sortedMap.size()) {
-                        double expandDistance = initDistance * ++count;
-                        env.expandBy(expandDistance);
-
-                        result.clear();
-                        spatialIndex.query(env, result);
-                        for (KdNode node : result) {
-                            double distance = coordinate.distance(node.getCoordinate());
-                            if (distance > expandDistance) {
-                                continue;
-                            }
+        });
+
+        // 3. create spatial weight matrix
+        for (int i = 0; i < featureCount; i++) {
+            Object primaryID = idList.get(i);
+            for (int n = i * k; n < (i + 1) * k; n++) {
+                int j = neighbors[n];
+                if (primaryID.equals(idList.get(j))) {
+                    continue;
+                }
+                swm.visitRow(rows[i], rows[j], distances[n]);
+            }
+        }
+
+        return swm;
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * The halo of a tile starts at the size of a tile and doubles until the k-th neighbor of
+     * every feature is closer than the border of the halo, so the neighbors are exact.
+     */
+    @Override
+    public TiledWeightMatrix executeTiled(SimpleFeatureCollection features, String uniqueField,
+            File outputFile) throws IOException {
+        String typeName = features.getSchema().getTypeName();
+        String propertyName = FeatureTypes.validateProperty(features.getSchema(), uniqueField);
+
+        // 1. extract centroids, one row per unique value
+        IdDictionary ids = new IdDictionary();
+        double[] x = new double[64];
+        double[] y = new double[64];
+        SimpleFeatureIterator featureIter = features.features();
+        try {
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                int size = ids.size();
+                if (ids.add(feature.getAttribute(propertyName)) < size) {
+                    continue; // duplicated unique value
+                }
+
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                Coordinate coordinate = geometry.getCentroid().getCoordinate();
+                if (size == x.length) {
+                    x = Arrays.copyOf(x, size << 1);
+                    y = Arrays.copyOf(y, size << 1);
+                }
+                x[size] = coordinate.x;
+                y[size] = coordinate.y;
+            }
+        } finally {
+            featureIter.close();
+        }
+
+        final int featureCount = ids.size();
+        final int k = Math.max(0, Math.min(numberOfNeighbors, featureCount - 1));
+        final double[] qx = x;
+        final double[] qy = y;
+        final TileGrid grid = new TileGrid(x, y, featureCount, getFeaturesPerTile());
+        final Envelope extent = grid.getExtent();
+        int threads = parallelism <= 0 ? ParallelRange.getDefaultParallelism() : parallelism;
+
+        // 2. query the k nearest neighbors of the features of every tile within a growing halo
+        TiledWeightMatrix.Writer writer = new TiledWeightMatrix.Writer(outputFile,
+                SpatialWeightMatrixType.Distance, false, featureCount, typeName, uniqueField, 0d);
+        try {
+            for (int tile = 0; tile < grid.getTileCount(); tile++) {
+                final int[] rows = grid.getMembers(tile);
+                if (rows.length == 0) {
+                    continue;
+                }
+
+                final int[] neighbors = new int[rows.length * k];
+                final double[] distances = new double[rows.length * k];
+                final boolean[] exact = new boolean[rows.length];
+                int[] pending = new int[rows.length];
+                for (int r = 0; r < rows.length; r++) {
+                    pending[r] = r;
+                }
 
-                            Object secondaryID = node.getData();
-                            if (primaryID.equals(secondaryID)
-                                    || sortedMap.containsValue(secondaryID)) {
-                                continue;
+                int pendingCount = k == 0 ? 0 : rows.length;
+                double halo = grid.getCellSize();
+                if (!(halo > 0)) {
+                    halo = Math.max(extent.getWidth(), extent.getHeight());
+                }
+                while (pendingCount > 0) {
+                    final Envelope bounds = grid.getBounds(tile);
+                    bounds.expandBy(halo);
+                    final boolean complete = bounds.contains(extent);
+                    final int[] candidates = grid.collect(bounds);
+                    final PointKdTree spatialIndex = grid.buildIndex(candidates);
+                    final int[] queries = pending;
+                    ParallelRange.execute(threads, pendingCount, new ParallelRange.Task() {
+                        @Override
+                        public void compute(int start, int end) {
+                            PointKdTree.NeighborHeap heap = new PointKdTree.NeighborHeap(k);
+                            for (int p = start; p < end; p++) {
+                                int r = queries[p];
+                                int i = rows[r];
+                                int self = Arrays.binarySearch(candidates, i);
+                                spatialIndex.nearest(qx[i], qy[i], self,
+                                        DistanceMethod.Euclidean, heap);
+                                heap.sort();
+
+                                // no feature outside the halo can be closer than its border
+                                double border = Math.min(Math.min(qx[i] - bounds.getMinX(),
+                                        bounds.getMaxX() - qx[i]), Math.min(qy[i]
+                                        - bounds.getMinY(), bounds.getMaxY() - qy[i]));
+                                exact[r] = complete
+                                        || (heap.size() == k && heap.getDistance(k - 1) <= border);
+                                if (exact[r]) {
+                                    for (int n = 0; n < heap.size(); n++) {
+                                        neighbors[r * k + n] = candidates[heap.getIndex(n)];
+                                        distances[r * k + n] = heap.getDistance(n);
+                                    }
+                                }
                             }
+                        }
+                    });
 
-                            sortedMap.put(Double.valueOf(distance), secondaryID);
+                    int next = 0;
+                    for (int p = 0; p < pendingCount; p++) {
+                        if (!exact[pending[p]]) {
+                            pending[next++] = pending[p];
                         }
                     }
+                    pendingCount = next;
+                    halo *= 2.0;
+                }
 
-                    // build weight matrix
-                    count = 0;
-                    for (Entry<Double, Object> entry : sortedMap.entrySet()) {
-                        swm.visit(primaryID, entry.getValue(), entry.getKey());
-                        count++;
-                        if (count == numberOfNeighbors) {
-                            break;
-                        }
+                // 3. sort the neighbors of every row by row index
+                int[] offsets = new int[rows.length + 1];
+                int[] columns = new int[rows.length * k];
+                double[] weights = new double[rows.length * k];
+                long[] keys = new long[k];
+                for (int r = 0; r < rows.length; r++) {
+                    for (int n = 0; n < k; n++) {
+                        keys[n] = ((long) neighbors[r * k + n] << 32) | n;
+                    }
+                    Arrays.sort(keys);
+                    for (int n = 0; n < k; n++) {
+                        columns[r * k + n] = (int) (keys[n] >>> 32);
+                        weights[r * k + n] = distances[r * k + (int) keys[n]];
                     }
+                    offsets[r + 1] = offsets[r] + k;
                 }
-            } finally {
-                featureIter.close();
+                writer.writeTile(rows, offsets, columns, weights);
             }
+            return writer.finish();
+        } finally {
+            writer.close();
         }
-
-        return swm;
     }
 }
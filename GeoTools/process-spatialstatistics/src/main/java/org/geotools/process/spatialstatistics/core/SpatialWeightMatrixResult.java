@@ -16,20 +16,34 @@
  */
 package org.geotools.process.spatialstatistics.core;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.util.Hashtable;
-import java.util.Map.Entry;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.process.spatialstatistics.core.AbstractSpatialWeightMatrix.SpatialWeightMatrixType;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
 import org.geotools.util.logging.Logging;
 
 /**
@@ -42,6 +56,12 @@ import org.geotools.util.logging.Logging;
 public class SpatialWeightMatrixResult {
     protected static final Logger LOGGER = Logging.getLogger(SpatialWeightMatrixResult.class);
 
+    private static final int BINARY_MAGIC = 0x53574D42; // SWMB
+
+    private static final int BINARY_VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     private final String newLine = System.getProperty("line.separator");
 
     private final String space = " ";
@@ -52,11 +72,16 @@ public class SpatialWeightMatrixResult {
 
     private SpatialWeightMatrixType spatialWeightMatrixType = SpatialWeightMatrixType.Distance;
 
-    // primaryID, <secondaryID, distance>
-    private Hashtable<Object, Hashtable<Object, Double>> items;
+    // unique field value <-> row index
+    private IdDictionary ids;
+
+    // primary row, secondary column, distance
+    private SparseWeightMatrix.Builder builder;
+
+    private SparseWeightMatrix weightMatrix;
 
     public int getFeatureCount() {
-        return this.items.size();
+        return this.ids.size();
     }
 
     public String getUniqueField() {
@@ -83,17 +108,25 @@ public class SpatialWeightMatrixResult {
         this.spatialWeightMatrixType = spatialWeightMatrixType;
     }
 
-    public Hashtable<Object, Hashtable<Object, Double>> getItems() {
-        return items;
+    public IdDictionary getIdDictionary() {
+        return ids;
     }
 
-    public void setItems(Hashtable<Object, Hashtable<Object, Double>> items) {
-        this.items = items;
+    /**
+     * Returns the compacted CSR weights, building them from the visited pairs when required.
+     */
+    public SparseWeightMatrix getWeightMatrix() {
+        if (weightMatrix == null) {
+            builder.ensureRowCount(ids.size());
+            weightMatrix = builder.build();
+        }
+        return weightMatrix;
     }
 
     public SpatialWeightMatrixResult(SpatialWeightMatrixType spatialWeightMatrixType) {
         this.setSpatialWeightMatrixType(spatialWeightMatrixType);
-        this.setItems(new Hashtable<Object, Hashtable<Object, Double>>());
+        this.ids = new IdDictionary();
+        this.builder = new SparseWeightMatrix.Builder();
     }
 
     public void setupVariables(String typeName, String uniqueField) {
@@ -106,10 +139,46 @@ public class SpatialWeightMatrixResult {
     }
 
     public void visit(Object primaryID, Object secondaryID, Double distance) {
-        if (!items.containsKey(primaryID)) {
-            items.put(primaryID, new Hashtable<Object, Double>());
+        this.visit(primaryID, secondaryID, distance.doubleValue());
+    }
+
+    public void visit(Object primaryID, Object secondaryID, double distance) {
+        int row = ids.add(primaryID);
+        int column = ids.add(secondaryID);
+        invalidate();
+        builder.add(row, column, distance);
+    }
+
+    /**
+     * Adds a link between two rows returned by {@link #addFeature(Object)}, skipping the id
+     * lookup of {@link #visit(Object, Object, double)}.
+     */
+    public void visitRow(int primaryRow, int secondaryRow, double distance) {
+        invalidate();
+        builder.add(primaryRow, secondaryRow, distance);
+    }
+
+    // a loaded matrix has no pending pairs, move its links back before editing
+    private void invalidate() {
+        if (weightMatrix != null && builder.size() == 0) {
+            int[] columns = weightMatrix.getColumns();
+            double[] weights = weightMatrix.getWeights();
+            for (int row = 0; row < weightMatrix.getRowCount(); row++) {
+                for (int k = weightMatrix.getRowStart(row); k < weightMatrix.getRowEnd(row); k++) {
+                    builder.add(row, columns[k], weights[k]);
+                }
+            }
         }
-        items.get(primaryID).put(secondaryID, distance);
+        weightMatrix = null;
+    }
+
+    /**
+     * Registers a feature so that it keeps its row even if it has no neighbors.
+     * 
+     * @return row index of the feature
+     */
+    public int addFeature(Object primaryID) {
+        return ids.add(primaryID);
     }
 
     public void save(File outputFile, Charset charset) throws IOException {
@@ -120,12 +189,268 @@ public class SpatialWeightMatrixResult {
         }
     }
 
+    /**
+     * Loads a weights file written by {@link #save(File, Charset)} (GAL/GWT style text) or by
+     * {@link #saveBinary(File)}. The binary format is detected from its header.
+     * 
+     * @return true if the file was loaded
+     */
     public boolean load(File swmFile, Charset charset) {
-        // TODO code here
+        ids.clear();
+        builder.clear();
+        weightMatrix = null;
+
+        try {
+            if (isBinaryFile(swmFile)) {
+                readBinary(swmFile);
+            } else {
+                readText(swmFile, charset);
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+        }
 
+        ids.clear();
+        builder.clear();
+        weightMatrix = null;
         return false;
     }
 
+    /**
+     * Writes the CSR arrays in a binary format that {@link #load(File, Charset)} reads through a
+     * memory mapped buffer. <br>
+     * Layout (big endian): magic, version, type, row count, link count, type name, unique field,
+     * one id per row, row offsets, columns and weights. Strings are stored as UTF-8 bytes after
+     * their length, -1 for null.
+     */
+    public void saveBinary(File outputFile) throws IOException {
+        SparseWeightMatrix matrix = getWeightMatrix();
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)));
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(BINARY_VERSION);
+            out.writeInt(spatialWeightMatrixType == SpatialWeightMatrixType.Contiguity ? 1 : 0);
+            out.writeInt(matrix.getRowCount());
+            out.writeInt(matrix.getNonZeroCount());
+            writeString(out, typeName);
+            writeString(out, uniqueField);
+            for (int row = 0; row < matrix.getRowCount(); row++) {
+                writeString(out, ids.getId(row).toString());
+            }
+
+            int[] offsets = matrix.getRowOffsets();
+            for (int row = 0; row <= matrix.getRowCount(); row++) {
+                out.writeInt(offsets[row]);
+            }
+
+            int[] columns = matrix.getColumns();
+            double[] weights = matrix.getWeights();
+            for (int k = 0; k < matrix.getNonZeroCount(); k++) {
+                out.writeInt(columns[k]);
+            }
+            for (int k = 0; k < matrix.getNonZeroCount(); k++) {
+                out.writeDouble(weights[k]);
+            }
+            out.flush();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    public static boolean isBinaryFile(File swmFile) throws IOException {
+        if (swmFile.length() < 4) {
+            return false;
+        }
+
+        DataInputStream in = new DataInputStream(new FileInputStream(swmFile));
+        try {
+            return in.readInt() == BINARY_MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the weights of this matrix between the given features, in feature order. Features
+     * are matched on the string form of their unique field value. The stored distances (the third
+     * column of a GWT file) are converted to weights of the concept of spatial relationships,
+     * contiguity links get a weight of 1.
+     * 
+     * @see SpatialWeightMatrix#toWeight(SpatialConcept, SpatialWeightMatrixType, double)
+     */
+    public SparseWeightMatrix alignWeightMatrix(List<?> featureIds, SpatialConcept spatialConcept) {
+        SparseWeightMatrix matrix = getWeightMatrix();
+
+        Map<String, Integer> rowMap = new HashMap<String, Integer>();
+        for (int row = 0; row < ids.size(); row++) {
+            rowMap.put(ids.getId(row).toString(), Integer.valueOf(row));
+        }
+
+        int[] featureOfRow = new int[matrix.getRowCount()];
+        Arrays.fill(featureOfRow, -1);
+        for (int i = 0; i < featureIds.size(); i++) {
+            Integer row = rowMap.get(String.valueOf(featureIds.get(i)));
+            if (row != null && featureOfRow[row.intValue()] == -1) {
+                featureOfRow[row.intValue()] = i;
+            }
+        }
+
+        int[] columns = matrix.getColumns();
+        double[] weights = matrix.getWeights();
+        SparseWeightMatrix.Builder aligned = new SparseWeightMatrix.Builder(
+                matrix.getNonZeroCount());
+        aligned.ensureRowCount(featureIds.size());
+        for (int row = 0; row < matrix.getRowCount(); row++) {
+            int primary = featureOfRow[row];
+            if (primary == -1) {
+                continue;
+            }
+
+            for (int k = matrix.getRowStart(row); k < matrix.getRowEnd(row); k++) {
+                int secondary = featureOfRow[columns[k]];
+                if (secondary != -1 && secondary != primary) {
+                    aligned.add(primary, secondary, SpatialWeightMatrix.toWeight(spatialConcept,
+                            spatialWeightMatrixType, weights[k]));
+                }
+            }
+        }
+        return aligned.build();
+    }
+
+    private void readText(File swmFile, Charset charset) throws IOException {
+        BufferedReader reader = null;
+        try {
+            FileInputStream fis = new FileInputStream(swmFile);
+            reader = new BufferedReader(new InputStreamReader(fis, charset));
+
+            // header : 0 25 seoul_series sgg_cd
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Empty spatial weights file: " + swmFile.getName());
+            }
+
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens.length >= 4) {
+                this.typeName = tokens[2];
+                this.uniqueField = tokens[3];
+            }
+
+            Boolean contiguity = null;
+            if (swmFile.getName().toLowerCase().endsWith(".gal")) {
+                contiguity = Boolean.TRUE;
+            } else if (swmFile.getName().toLowerCase().endsWith(".gwt")) {
+                contiguity = Boolean.FALSE;
+            }
+
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0) {
+                    continue;
+                }
+
+                tokens = line.split("\\s+");
+                if (contiguity == null) {
+                    contiguity = Boolean.valueOf(tokens.length == 2);
+                }
+
+                int row = ids.add(tokens[0]);
+                if (contiguity.booleanValue()) {
+                    // 11170 7
+                    // 11440 11590 11140 11200 11650 11560 11680
+                    int count = Integer.parseInt(tokens[1]);
+                    while (count > 0 && (line = reader.readLine()) != null) {
+                        for (String secondaryID : line.trim().split("\\s+")) {
+                            if (secondaryID.length() > 0 && count > 0) {
+                                builder.add(row, ids.add(secondaryID), 0d);
+                                count--;
+                            }
+                        }
+                    }
+                } else {
+                    // 11545 11620 4029.25183
+                    builder.add(row, ids.add(tokens[1]), Double.parseDouble(tokens[2]));
+                }
+            }
+
+            if (contiguity != null && contiguity.booleanValue()) {
+                this.spatialWeightMatrixType = SpatialWeightMatrixType.Contiguity;
+            } else if (contiguity != null) {
+                this.spatialWeightMatrixType = SpatialWeightMatrixType.Distance;
+            }
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private void readBinary(File swmFile) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(swmFile, "r");
+        FileChannel channel = raf.getChannel();
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            if (buffer.getInt() != BINARY_MAGIC || buffer.getInt() != BINARY_VERSION) {
+                throw new IOException("Unsupported spatial weights file: " + swmFile.getName());
+            }
+
+            if (buffer.getInt() == 1) {
+                this.spatialWeightMatrixType = SpatialWeightMatrixType.Contiguity;
+            } else {
+                this.spatialWeightMatrixType = SpatialWeightMatrixType.Distance;
+            }
+            int rowCount = buffer.getInt();
+            int nonZeroCount = buffer.getInt();
+            this.typeName = readString(buffer);
+            this.uniqueField = readString(buffer);
+            for (int row = 0; row < rowCount; row++) {
+                ids.add(readString(buffer));
+            }
+
+            // bulk transfers from the mapped file, no parsing
+            int[] offsets = new int[rowCount + 1];
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + offsets.length * 4);
+
+            int[] columns = new int[nonZeroCount];
+            buffer.asIntBuffer().get(columns);
+            buffer.position(buffer.position() + columns.length * 4);
+
+            double[] weights = new double[nonZeroCount];
+            buffer.asDoubleBuffer().get(weights);
+
+            this.weightMatrix = new SparseWeightMatrix(rowCount, offsets, columns, weights);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated spatial weights file: " + swmFile.getName(), e);
+        } finally {
+            closeQuietly(channel);
+            closeQuietly(raf);
+        }
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
     private void writeContiguity(File outputFile, Charset charset) throws IOException {
         BufferedWriter writer = null;
         try {
@@ -140,22 +465,24 @@ public class SpatialWeightMatrixResult {
             writer.write(sb.append(newLine).toString());
 
             // matrix
-            for (Entry<Object, Hashtable<Object, Double>> entry : items.entrySet()) {
-                Object primaryID = entry.getKey();
-                int count = entry.getValue().size();
+            SparseWeightMatrix matrix = getWeightMatrix();
+            int[] columns = matrix.getColumns();
+            for (int row = 0; row < matrix.getRowCount(); row++) {
+                int start = matrix.getRowStart(row);
+                int end = matrix.getRowEnd(row);
 
                 // 11170 7
                 sb.setLength(0);
-                sb.append(primaryID.toString()).append(space).append(count);
+                sb.append(ids.getId(row).toString()).append(space).append(end - start);
                 writer.write(sb.append(newLine).toString());
 
                 // 11440 11590 11140 11200 11650 11560 11680
                 sb.setLength(0);
-                for (Entry<Object, Double> second : entry.getValue().entrySet()) {
-                    if (sb.length() > 0) {
+                for (int k = start; k < end; k++) {
+                    if (k > start) {
                         sb.append(space);
                     }
-                    sb.append(second.getKey().toString());
+                    sb.append(ids.getId(columns[k]).toString());
                 }
                 writer.write(sb.append(newLine).toString());
             }
@@ -181,14 +508,17 @@ public class SpatialWeightMatrixResult {
             writer.write(sb.append(newLine).toString());
 
             // matrix
-            for (Entry<Object, Hashtable<Object, Double>> entry : items.entrySet()) {
-                Object primaryID = entry.getKey();
-                for (Entry<Object, Double> second : entry.getValue().entrySet()) {
+            SparseWeightMatrix matrix = getWeightMatrix();
+            int[] columns = matrix.getColumns();
+            double[] weights = matrix.getWeights();
+            for (int row = 0; row < matrix.getRowCount(); row++) {
+                String primaryID = ids.getId(row).toString();
+                for (int k = matrix.getRowStart(row); k < matrix.getRowEnd(row); k++) {
                     // 11545 11620 4029.25183
                     sb.setLength(0);
-                    sb.append(primaryID.toString()).append(space);
-                    sb.append(second.getKey().toString()).append("         ");
-                    sb.append(second.getValue());
+                    sb.append(primaryID).append(space);
+                    sb.append(ids.getId(columns[k]).toString()).append("         ");
+                    sb.append(weights[k]);
                     writer.write(sb.append(newLine).toString());
                 }
             }
@@ -0,0 +1,272 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+
+/**
+ * Bounded, least recently used cache of distance based spatial weights. <br>
+ * Weights are keyed by layer name, a fingerprint of the feature locations and the weights
+ * parameters, so repeated statistics on the same layer with different value fields share one
+ * neighbor structure. Edited layers get a new fingerprint and therefore never hit stale weights;
+ * {@link #invalidate(String)} only releases their memory early.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class SpatialWeightsCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 32;
+
+    static final long DEFAULT_MAX_LINKS = 20000000L;
+
+    private static final SpatialWeightsCache DEFAULT = new SpatialWeightsCache(
+            DEFAULT_MAX_ENTRIES, DEFAULT_MAX_LINKS);
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f,
+            true);
+
+    private int maxEntries;
+
+    private long maxLinks;
+
+    private long linkCount = 0;
+
+    private long hitCount = 0;
+
+    private long missCount = 0;
+
+    private long evictionCount = 0;
+
+    /**
+     * Returns the cache shared by the spatial statistics processes.
+     */
+    public static SpatialWeightsCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param maxEntries the maximum number of weights matrices
+     * @param maxLinks the maximum number of neighbor links over all matrices
+     */
+    public SpatialWeightsCache(int maxEntries, long maxLinks) {
+        this.maxEntries = maxEntries;
+        this.maxLinks = maxLinks;
+    }
+
+    public synchronized Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * Adds the weights of key, evicting the least recently used matrices when the cache is full.
+     * A matrix larger than the cache itself is not stored.
+     */
+    public synchronized void put(Key key, Entry entry) {
+        remove(key);
+        if (maxEntries <= 0 || entry.getLinkCount() > maxLinks) {
+            return;
+        }
+
+        entries.put(key, entry);
+        linkCount += entry.getLinkCount();
+        evict();
+    }
+
+    /**
+     * Removes every matrix built from the given layer.
+     */
+    public synchronized void invalidate(String typeName) {
+        Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Key, Entry> item = iter.next();
+            if (item.getKey().typeName.equals(typeName)) {
+                linkCount -= item.getValue().getLinkCount();
+                iter.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        linkCount = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getLinkCount() {
+        return linkCount;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        evict();
+    }
+
+    public synchronized long getMaxLinks() {
+        return maxLinks;
+    }
+
+    public synchronized void setMaxLinks(long maxLinks) {
+        this.maxLinks = maxLinks;
+        evict();
+    }
+
+    private void remove(Key key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            linkCount -= previous.getLinkCount();
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> iter = entries.values().iterator();
+        while (iter.hasNext() && (entries.size() > maxEntries || linkCount > maxLinks)) {
+            linkCount -= iter.next().getLinkCount();
+            iter.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Cached weights: the matrix over event indices and the distance band it was built with.
+     */
+    public static final class Entry {
+        private final SparseWeightMatrix weights;
+
+        private final double distanceBand;
+
+        public Entry(SparseWeightMatrix weights, double distanceBand) {
+            this.weights = weights;
+            this.distanceBand = distanceBand;
+        }
+
+        public SparseWeightMatrix getWeights() {
+            return weights;
+        }
+
+        public double getDistanceBand() {
+            return distanceBand;
+        }
+
+        public long getLinkCount() {
+            return weights.getNonZeroCount();
+        }
+    }
+
+    /**
+     * Identifies a weights matrix by layer, feature locations and weights parameters.
+     */
+    public static final class Key {
+        private final String typeName;
+
+        private final int size;
+
+        private final long fingerprint;
+
+        private final SpatialConcept spatialConcept;
+
+        private final DistanceMethod distanceMethod;
+
+        private final double distanceBand;
+
+        private final double neighborCutoff;
+
+        public Key(String typeName, SpatialEventStore events, SpatialConcept spatialConcept,
+                DistanceMethod distanceMethod, double distanceBand, double neighborCutoff) {
+            this.typeName = typeName == null ? "" : typeName;
+            this.size = events.size();
+            this.fingerprint = fingerprint(events);
+            this.spatialConcept = spatialConcept;
+            this.distanceMethod = distanceMethod;
+            this.distanceBand = distanceBand;
+            this.neighborCutoff = neighborCutoff;
+        }
+
+        public String getTypeName() {
+            return typeName;
+        }
+
+        // 64 bit FNV-1a over the event coordinates, in feature order
+        static long fingerprint(SpatialEventStore events) {
+            double[] x = events.getXs();
+            double[] y = events.getYs();
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < events.size(); i++) {
+                hash = (hash ^ Double.doubleToLongBits(x[i] + 0.0)) * 0x100000001b3L;
+                hash = (hash ^ Double.doubleToLongBits(y[i] + 0.0)) * 0x100000001b3L;
+            }
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return size == other.size && fingerprint == other.fingerprint
+                    && spatialConcept == other.spatialConcept
+                    && distanceMethod == other.distanceMethod
+                    && Double.compare(distanceBand, other.distanceBand) == 0
+                    && Double.compare(neighborCutoff, other.neighborCutoff) == 0
+                    && typeName.equals(other.typeName);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = typeName.hashCode();
+            hash = hash * 31 + (int) (fingerprint ^ (fingerprint >>> 32));
+            hash = hash * 31 + size;
+            hash = hash * 31 + (spatialConcept == null ? 0 : spatialConcept.hashCode());
+            hash = hash * 31 + (distanceMethod == null ? 0 : distanceMethod.hashCode());
+            long bits = Double.doubleToLongBits(distanceBand) * 31
+                    + Double.doubleToLongBits(neighborCutoff);
+            return hash * 31 + (int) (bits ^ (bits >>> 32));
+        }
+    }
+}
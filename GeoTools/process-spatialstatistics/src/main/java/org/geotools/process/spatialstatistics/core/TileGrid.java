@@ -0,0 +1,191 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Regular grid partitioning points into tiles of about the same number of points on average. The
+ * points of a tile are kept sorted ascending, so a tile and its halo can be gathered without
+ * visiting the other tiles.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+class TileGrid {
+
+    private final double[] x;
+
+    private final double[] y;
+
+    private final Envelope extent = new Envelope();
+
+    private final int columns;
+
+    private final int rows;
+
+    private final double cellWidth;
+
+    private final double cellHeight;
+
+    // points of tile t are members[tileOffsets[t]] ... members[tileOffsets[t + 1] - 1]
+    private final int[] tileOffsets;
+
+    private final int[] members;
+
+    public TileGrid(double[] x, double[] y, int size, int pointsPerTile) {
+        this.x = x;
+        this.y = y;
+        for (int i = 0; i < size; i++) {
+            extent.expandToInclude(x[i], y[i]);
+        }
+
+        int tileCount = Math.max(1, (int) Math.ceil(size / (double) Math.max(1, pointsPerTile)));
+        int side = Math.max(1, (int) Math.ceil(Math.sqrt(tileCount)));
+        this.columns = side;
+        this.rows = side;
+        this.cellWidth = size == 0 ? 0d : extent.getWidth() / columns;
+        this.cellHeight = size == 0 ? 0d : extent.getHeight() / rows;
+
+        // counting sort of the points by tile, ascending within a tile
+        int[] tiles = new int[size];
+        this.tileOffsets = new int[(columns * rows) + 1];
+        for (int i = 0; i < size; i++) {
+            tiles[i] = (row(y[i]) * columns) + column(x[i]);
+            tileOffsets[tiles[i] + 1]++;
+        }
+        for (int t = 0; t < columns * rows; t++) {
+            tileOffsets[t + 1] += tileOffsets[t];
+        }
+
+        this.members = new int[size];
+        int[] next = Arrays.copyOf(tileOffsets, columns * rows);
+        for (int i = 0; i < size; i++) {
+            members[next[tiles[i]]++] = i;
+        }
+    }
+
+    private int column(double px) {
+        if (cellWidth <= 0) {
+            return 0;
+        }
+        return Math.max(0, Math.min(columns - 1, (int) ((px - extent.getMinX()) / cellWidth)));
+    }
+
+    private int row(double py) {
+        if (cellHeight <= 0) {
+            return 0;
+        }
+        return Math.max(0, Math.min(rows - 1, (int) ((py - extent.getMinY()) / cellHeight)));
+    }
+
+    public int getTileCount() {
+        return columns * rows;
+    }
+
+    public int getColumnCount() {
+        return columns;
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    public Envelope getExtent() {
+        return new Envelope(extent);
+    }
+
+    /**
+     * Returns the larger side of a tile.
+     */
+    public double getCellSize() {
+        return Math.max(cellWidth, cellHeight);
+    }
+
+    /**
+     * Returns the points of a tile, sorted ascending.
+     */
+    public int[] getMembers(int tile) {
+        return Arrays.copyOfRange(members, tileOffsets[tile], tileOffsets[tile + 1]);
+    }
+
+    public Envelope getBounds(int tile) {
+        if (extent.isNull()) {
+            return new Envelope();
+        }
+
+        int col = tile % columns;
+        int row = tile / columns;
+        double minX = extent.getMinX() + (col * cellWidth);
+        double minY = extent.getMinY() + (row * cellHeight);
+        double maxX = col == columns - 1 ? extent.getMaxX() : minX + cellWidth;
+        double maxY = row == rows - 1 ? extent.getMaxY() : minY + cellHeight;
+        return new Envelope(minX, maxX, minY, maxY);
+    }
+
+    /**
+     * Returns the points within an envelope, sorted ascending.
+     */
+    public int[] collect(Envelope envelope) {
+        if (extent.isNull() || !envelope.intersects(extent)) {
+            return new int[0];
+        }
+
+        int minCol = column(envelope.getMinX());
+        int maxCol = column(envelope.getMaxX());
+        int minRow = row(envelope.getMinY());
+        int maxRow = row(envelope.getMaxY());
+
+        int capacity = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            capacity += tileOffsets[(row * columns) + maxCol + 1]
+                    - tileOffsets[(row * columns) + minCol];
+        }
+
+        int[] items = new int[capacity];
+        int count = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int k = tileOffsets[(row * columns) + minCol], end = tileOffsets[(row * columns)
+                    + maxCol + 1]; k < end; k++) {
+                int i = members[k];
+                if (envelope.contains(x[i], y[i])) {
+                    items[count++] = i;
+                }
+            }
+        }
+
+        items = Arrays.copyOf(items, count);
+        Arrays.sort(items);
+        return items;
+    }
+
+    /**
+     * Builds a KD-tree over the given points, index k of the tree being the point items[k].
+     */
+    public PointKdTree buildIndex(int[] items) {
+        double[] px = new double[items.length];
+        double[] py = new double[items.length];
+        for (int k = 0; k < items.length; k++) {
+            px[k] = x[items[k]];
+            py[k] = y[items[k]];
+        }
+        return new PointKdTree(px, py, items.length);
+    }
+}
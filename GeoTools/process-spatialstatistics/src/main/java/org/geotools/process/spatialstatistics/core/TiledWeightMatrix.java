@@ -0,0 +1,540 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.core;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.geotools.process.spatialstatistics.core.AbstractSpatialWeightMatrix.SpatialWeightMatrixType;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+
+/**
+ * Spatial weights stored on disk as a series of CSR blocks, one per tile, and read through
+ * memory mapped buffers. <br>
+ * Only the per row directory (tile and neighbor count) is kept on the heap, so statistics can
+ * stream over the blocks of datasets whose links do not fit in memory. Rows follow the order of
+ * the features the weights were built from; the rows of a block are sorted ascending and the
+ * columns of a row are sorted ascending global rows. The stored values are distances (0 for
+ * contiguity), converted to weights by {@link #toWeight(SpatialConcept, double)}. <br>
+ * Layout (big endian): magic, version, type, symmetric flag, row count, tile count, directory
+ * offset, the blocks (rows, row offsets, columns and weights of a tile), then the directory: type
+ * name, unique field, distance band, the offset, row count and link count of every tile, the tile
+ * and the neighbor count of every row.
+ *
+ * @author Minpa Lee, MangoSystem
+ *
+ * @source $URL$
+ */
+public class TiledWeightMatrix implements Closeable {
+
+    static final int MAGIC = 0x53574D54; // SWMT
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    private SpatialWeightMatrixType spatialWeightMatrixType;
+
+    private boolean symmetric;
+
+    private int rowCount;
+
+    private String typeName;
+
+    private String uniqueField;
+
+    private double distanceBand;
+
+    private long[] tileOffsets;
+
+    private int[] tileRowCounts;
+
+    private int[] tileLinkCounts;
+
+    private int[] rowTiles;
+
+    private int[] neighborCounts;
+
+    /**
+     * Opens a weights file written by {@link Writer}.
+     */
+    public static TiledWeightMatrix open(File file) throws IOException {
+        return new TiledWeightMatrix(file);
+    }
+
+    private TiledWeightMatrix(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+        try {
+            readDirectory();
+        } catch (BufferUnderflowException e) {
+            close();
+            throw new IOException("Truncated spatial weights file: " + file.getName(), e);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void readDirectory() throws IOException {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Unsupported spatial weights file: " + file.getName());
+        }
+
+        if (header.getInt() == 1) {
+            this.spatialWeightMatrixType = SpatialWeightMatrixType.Contiguity;
+        } else {
+            this.spatialWeightMatrixType = SpatialWeightMatrixType.Distance;
+        }
+        this.symmetric = header.getInt() == 1;
+        this.rowCount = header.getInt();
+        int tileCount = header.getInt();
+        long directoryOffset = header.getLong();
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset,
+                channel.size() - directoryOffset);
+        this.typeName = readString(buffer);
+        this.uniqueField = readString(buffer);
+        this.distanceBand = buffer.getDouble();
+
+        this.tileOffsets = new long[tileCount];
+        this.tileRowCounts = new int[tileCount];
+        this.tileLinkCounts = new int[tileCount];
+        for (int tile = 0; tile < tileCount; tile++) {
+            tileOffsets[tile] = buffer.getLong();
+            tileRowCounts[tile] = buffer.getInt();
+            tileLinkCounts[tile] = buffer.getInt();
+        }
+
+        this.rowTiles = new int[rowCount];
+        buffer.asIntBuffer().get(rowTiles);
+        buffer.position(buffer.position() + rowCount * 4);
+
+        this.neighborCounts = new int[rowCount];
+        buffer.asIntBuffer().get(neighborCounts);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public SpatialWeightMatrixType getSpatialWeightMatrixType() {
+        return spatialWeightMatrixType;
+    }
+
+    /**
+     * Returns true if every link (i, j) has a matching link (j, i).
+     */
+    public boolean isSymmetric() {
+        return symmetric;
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public String getUniqueField() {
+        return uniqueField;
+    }
+
+    /**
+     * Returns the threshold distance of distance band weights, 0 otherwise.
+     */
+    public double getDistanceBand() {
+        return distanceBand;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getTileCount() {
+        return tileOffsets.length;
+    }
+
+    public long getLinkCount() {
+        long count = 0;
+        for (int linkCount : tileLinkCounts) {
+            count += linkCount;
+        }
+        return count;
+    }
+
+    /**
+     * Checks that the stored values can give the weights of a concept of spatial relationships.
+     * Inverse distance concepts need distance weights; the zone of indifference is not supported
+     * because the links stop at the distance band.
+     *
+     * @throws IllegalArgumentException if the concept is not supported by these weights
+     */
+    public void checkSpatialConcept(SpatialConcept spatialConcept) {
+        switch (spatialConcept) {
+        case INVERSEDISTANCE:
+        case INVERSEDISTANCESQUARED:
+            if (spatialWeightMatrixType == SpatialWeightMatrixType.Contiguity) {
+                throw new IllegalArgumentException(spatialConcept
+                        + " is not supported by contiguity weights");
+            }
+            break;
+        case ZONEOFINDIFFERENCE:
+            throw new IllegalArgumentException(spatialConcept
+                    + " is not supported by tiled weights");
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Converts a stored value to the weight of a link, the same way as the weights built in
+     * memory.
+     * 
+     * @see SpatialWeightMatrix#toWeight(SpatialConcept, SpatialWeightMatrixType, double)
+     */
+    public double toWeight(SpatialConcept spatialConcept, double value) {
+        return SpatialWeightMatrix.toWeight(spatialConcept, spatialWeightMatrixType, value);
+    }
+
+    public int getNeighborCount(int row) {
+        return neighborCounts[row];
+    }
+
+    /**
+     * Returns the tile holding a row, or -1 if the row was never written.
+     */
+    public int getTile(int row) {
+        return rowTiles[row];
+    }
+
+    /**
+     * Reads the links of a tile. Blocks are independent: different threads may read different
+     * tiles at the same time.
+     */
+    public Block readBlock(int tile) throws IOException {
+        int size = tileRowCounts[tile];
+        int links = tileLinkCounts[tile];
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, tileOffsets[tile],
+                blockSize(size, links));
+        try {
+            int[] rows = new int[size];
+            buffer.asIntBuffer().get(rows);
+            buffer.position(buffer.position() + rows.length * 4);
+
+            int[] offsets = new int[size + 1];
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + offsets.length * 4);
+
+            int[] columns = new int[links];
+            buffer.asIntBuffer().get(columns);
+            buffer.position(buffer.position() + columns.length * 4);
+
+            double[] weights = new double[links];
+            buffer.asDoubleBuffer().get(weights);
+
+            return new Block(tile, rows, new SparseWeightMatrix(size, offsets, columns, weights));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated spatial weights file: " + file.getName(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            raf.close();
+        }
+    }
+
+    static long blockSize(int rows, int links) throws IOException {
+        long size = (rows * 4L) + ((rows + 1) * 4L) + (links * 12L);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Spatial weights tile is too large to be mapped: " + size
+                    + " bytes, use fewer features per tile");
+        }
+        return size;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * The links of one tile: row r of the block is the global row getRow(r).
+     */
+    public static final class Block {
+
+        private final int tile;
+
+        private final int[] rows;
+
+        private final SparseWeightMatrix weights;
+
+        Block(int tile, int[] rows, SparseWeightMatrix weights) {
+            this.tile = tile;
+            this.rows = rows;
+            this.weights = weights;
+        }
+
+        public int getTile() {
+            return tile;
+        }
+
+        public int size() {
+            return rows.length;
+        }
+
+        public int getRow(int r) {
+            return rows[r];
+        }
+
+        public int[] getRows() {
+            return rows;
+        }
+
+        /**
+         * Returns the local weights, rows are block positions and columns are global rows.
+         */
+        public SparseWeightMatrix getWeights() {
+            return weights;
+        }
+
+        /**
+         * Returns the block position of a global row, or a negative value if the row is not in
+         * this block.
+         */
+        public int indexOf(int row) {
+            return Arrays.binarySearch(rows, row);
+        }
+    }
+
+    /**
+     * Writes the tiles of a weights file one after another, so that only the links of the current
+     * tile are held in memory.
+     */
+    public static class Writer implements Closeable {
+
+        private final File file;
+
+        private final DataOutputStream out;
+
+        private final SpatialWeightMatrixType spatialWeightMatrixType;
+
+        private final boolean symmetric;
+
+        private final int rowCount;
+
+        private final String typeName;
+
+        private final String uniqueField;
+
+        private final double distanceBand;
+
+        private final int[] rowTiles;
+
+        private final int[] neighborCounts;
+
+        private long position = HEADER_SIZE;
+
+        private long[] tileOffsets = new long[16];
+
+        private int[] tileRowCounts = new int[16];
+
+        private int[] tileLinkCounts = new int[16];
+
+        private int tileCount = 0;
+
+        private boolean closed = false;
+
+        public Writer(File file, SpatialWeightMatrixType spatialWeightMatrixType,
+                boolean symmetric, int rowCount, String typeName, String uniqueField,
+                double distanceBand) throws IOException {
+            this.file = file;
+            this.spatialWeightMatrixType = spatialWeightMatrixType;
+            this.symmetric = symmetric;
+            this.rowCount = rowCount;
+            this.typeName = typeName;
+            this.uniqueField = uniqueField;
+            this.distanceBand = distanceBand;
+            this.rowTiles = new int[rowCount];
+            this.neighborCounts = new int[rowCount];
+            Arrays.fill(rowTiles, -1);
+
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                    1 << 16));
+            // the directory offset is patched by finish()
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(spatialWeightMatrixType == SpatialWeightMatrixType.Contiguity ? 1 : 0);
+            out.writeInt(symmetric ? 1 : 0);
+            out.writeInt(rowCount);
+            out.writeInt(0);
+            out.writeLong(0L);
+        }
+
+        /**
+         * Writes a tile from local weights: row r of the tile is the global row rows[r] and the
+         * local column c is the global row columnRows[c]. Rows must be sorted ascending, rows of
+         * local beyond rows.length must be empty.
+         */
+        public void writeTile(int[] rows, int[] columnRows, SparseWeightMatrix local)
+                throws IOException {
+            final int[] localOffsets = local.getRowOffsets();
+            final int[] localColumns = local.getColumns();
+            final double[] localWeights = local.getWeights();
+            final int links = localOffsets[rows.length];
+
+            int[] offsets = new int[rows.length + 1];
+            int[] columns = new int[links];
+            double[] weights = new double[links];
+            long[] keys = new long[local.getMaxNeighborCount()];
+            for (int r = 0; r < rows.length; r++) {
+                int start = localOffsets[r];
+                int count = localOffsets[r + 1] - start;
+                offsets[r + 1] = offsets[r] + count;
+
+                // the columns of a row are sorted by global row
+                for (int k = 0; k < count; k++) {
+                    keys[k] = ((long) columnRows[localColumns[start + k]] << 32) | k;
+                }
+                Arrays.sort(keys, 0, count);
+                for (int k = 0; k < count; k++) {
+                    columns[start + k] = (int) (keys[k] >>> 32);
+                    weights[start + k] = localWeights[start + (int) keys[k]];
+                }
+            }
+
+            writeTile(rows, offsets, columns, weights);
+        }
+
+        /**
+         * Writes a tile in CSR form with global columns, sorted ascending within every row.
+         */
+        public void writeTile(int[] rows, int[] offsets, int[] columns, double[] weights)
+                throws IOException {
+            if (rows.length == 0) {
+                return;
+            }
+
+            final int links = offsets[rows.length];
+            if (tileCount == tileOffsets.length) {
+                int capacity = tileCount << 1;
+                tileOffsets = Arrays.copyOf(tileOffsets, capacity);
+                tileRowCounts = Arrays.copyOf(tileRowCounts, capacity);
+                tileLinkCounts = Arrays.copyOf(tileLinkCounts, capacity);
+            }
+            tileOffsets[tileCount] = position;
+            tileRowCounts[tileCount] = rows.length;
+            tileLinkCounts[tileCount] = links;
+
+            for (int r = 0; r < rows.length; r++) {
+                rowTiles[rows[r]] = tileCount;
+                neighborCounts[rows[r]] = offsets[r + 1] - offsets[r];
+                out.writeInt(rows[r]);
+            }
+            for (int r = 0; r <= rows.length; r++) {
+                out.writeInt(offsets[r]);
+            }
+            for (int k = 0; k < links; k++) {
+                out.writeInt(columns[k]);
+            }
+            for (int k = 0; k < links; k++) {
+                out.writeDouble(weights[k]);
+            }
+
+            position += blockSize(rows.length, links);
+            tileCount++;
+        }
+
+        /**
+         * Writes the directory and opens the completed file.
+         */
+        public TiledWeightMatrix finish() throws IOException {
+            final long directoryOffset = position;
+            writeString(typeName);
+            writeString(uniqueField);
+            out.writeDouble(distanceBand);
+            for (int tile = 0; tile < tileCount; tile++) {
+                out.writeLong(tileOffsets[tile]);
+                out.writeInt(tileRowCounts[tile]);
+                out.writeInt(tileLinkCounts[tile]);
+            }
+            for (int row = 0; row < rowCount; row++) {
+                out.writeInt(rowTiles[row]);
+            }
+            for (int row = 0; row < rowCount; row++) {
+                out.writeInt(neighborCounts[row]);
+            }
+            close();
+
+            RandomAccessFile header = new RandomAccessFile(file, "rw");
+            try {
+                header.seek(20);
+                header.writeInt(tileCount);
+                header.writeLong(directoryOffset);
+            } finally {
+                header.close();
+            }
+
+            return TiledWeightMatrix.open(file);
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = value.getBytes(UTF8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                out.close();
+            }
+        }
+    }
+}
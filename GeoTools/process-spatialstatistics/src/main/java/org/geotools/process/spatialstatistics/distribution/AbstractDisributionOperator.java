@@ -16,6 +16,12 @@
  */
 package org.geotools.process.spatialstatistics.distribution;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
 import org.geotools.process.spatialstatistics.operations.GeneralOperation;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.expression.Expression;
@@ -41,6 +47,121 @@ public abstract class AbstractDisributionOperator extends GeneralOperation {
 
     protected final String ALL = "ALL";
 
+    // number of features visited by one task of a scan
+    static final int BATCH_SIZE = 8192;
+
+    private int parallelism = 1;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads visiting the features.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Visits the features with non-empty geometries into a visitor.
+     */
+    public abstract static class FeatureScan<V extends MergeableDistributionVisitor> {
+        private V visitor;
+
+        protected abstract V createVisitor();
+
+        protected abstract void visit(SimpleFeature feature, Geometry geometry, V visitor);
+
+        /**
+         * Returns the visitor of every feature of the last scan.
+         */
+        public V getVisitor() {
+            return visitor;
+        }
+
+        void reset() {
+            visitor = createVisitor();
+        }
+
+        V visit(List<SimpleFeature> batch) {
+            V part = createVisitor();
+            for (SimpleFeature feature : batch) {
+                visit(feature, (Geometry) feature.getDefaultGeometry(), part);
+            }
+            return part;
+        }
+
+        void merge(MergeableDistributionVisitor part) {
+            visitor.merge(part);
+        }
+    }
+
+    /**
+     * Reads the features once and feeds them to every scan. The features are split into batches
+     * of a fixed size visited in parallel, each into visitors of its own, which are merged in the
+     * order of the batches.
+     */
+    public void scan(SimpleFeatureCollection features, final FeatureScan<?>... scans) {
+        final int threads = parallelism <= 0 ? ParallelRange.getDefaultParallelism()
+                : parallelism;
+        for (FeatureScan<?> scan : scans) {
+            scan.reset();
+        }
+
+        List<List<SimpleFeature>> batches = new ArrayList<List<SimpleFeature>>();
+        List<SimpleFeature> batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+        SimpleFeatureIterator featureIter = features.features();
+        try {
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry == null || geometry.isEmpty()) {
+                    continue;
+                }
+
+                batch.add(feature);
+                if (batch.size() == BATCH_SIZE) {
+                    batches.add(batch);
+                    batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+                    if (batches.size() == threads) {
+                        visit(batches, scans, threads);
+                        batches.clear();
+                    }
+                }
+            }
+        } finally {
+            featureIter.close();
+        }
+
+        if (batch.size() > 0) {
+            batches.add(batch);
+        }
+        visit(batches, scans, threads);
+    }
+
+    private void visit(final List<List<SimpleFeature>> batches, final FeatureScan<?>[] scans,
+            int threads) {
+        final MergeableDistributionVisitor[][] parts = new MergeableDistributionVisitor[batches
+                .size()][scans.length];
+        ParallelRange.execute(threads, batches.size(), 1, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                for (int b = start; b < end; b++) {
+                    for (int s = 0; s < scans.length; s++) {
+                        parts[b][s] = scans[s].visit(batches.get(b));
+                    }
+                }
+            }
+        });
+
+        for (int b = 0; b < batches.size(); b++) {
+            for (int s = 0; s < scans.length; s++) {
+                scans[s].merge(parts[b][s]);
+            }
+        }
+    }
+
     protected double getValue(SimpleFeature feature, Expression expression, double defaultValue) {
         Double dblVal = expression.evaluate(feature, Double.class);
         if (dblVal == null || dblVal.isNaN() || dblVal.isInfinite()) {
@@ -16,12 +16,11 @@
  */
 package org.geotools.process.spatialstatistics.distribution;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import org.geotools.factory.GeoTools;
 import org.geotools.geometry.jts.JTSFactoryFinder;
-import org.geotools.process.spatialstatistics.core.SSUtils;
+import org.geotools.process.spatialstatistics.core.CentralFeatureKernel;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 
 import com.vividsolutions.jts.geom.Coordinate;
@@ -29,7 +28,9 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 
 /**
- * CentralFeature
+ * CentralFeature <br>
+ * Events are kept in primitive arrays; the search prunes and evaluates them with
+ * {@link CentralFeatureKernel}.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -37,39 +38,34 @@ import com.vividsolutions.jts.geom.Point;
  */
 public class CentralFeature {
 
-    class Event {
-        int oid;
-
-        public double x;
-
-        public double y;
-
-        public double weight = 1.0;
+    private DistanceMethod distanceMethod = DistanceMethod.Euclidean;
 
-        public double potential = 0.0;
+    private int parallelism = 1;
 
-        public Event() {
-        }
+    private int numFeatures = 0;
 
-        public Event(int oid, double x, double y, double weight, double potential) {
-            this.oid = oid;
-            this.x = x;
-            this.y = y;
-            this.weight = weight;
-            this.potential = potential;
-        }
-    }
+    private double[] xs = new double[64];
 
-    private DistanceMethod distanceMethod = DistanceMethod.Euclidean;
+    private double[] ys = new double[64];
 
-    private int numFeatures = 0;
+    private double[] weights = new double[64];
 
-    private List<Event> events = new ArrayList<Event>();
+    private double[] potentials = new double[64];
 
     private GeometryFactory gf = JTSFactoryFinder.getGeometryFactory(GeoTools.getDefaultHints());
 
     public void addValue(Coordinate coordinate, double weight, double potential) {
-        events.add(new Event(numFeatures, coordinate.x, coordinate.y, weight, potential));
+        if (numFeatures == xs.length) {
+            int capacity = numFeatures << 1;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            potentials = Arrays.copyOf(potentials, capacity);
+        }
+        xs[numFeatures] = coordinate.x;
+        ys[numFeatures] = coordinate.y;
+        weights[numFeatures] = weight;
+        potentials[numFeatures] = potential;
         numFeatures++;
     }
 
@@ -78,35 +74,16 @@ public class CentralFeature {
     }
 
     public Point getCentralEvent() {
-        double minDistance = Double.MAX_VALUE;
-        Event centralEvent = new Event();
-
-        for (Event ce : events) {
-            double curDistance = 0d;
-            for (Event de : events) {
-                double dij = 0d;
-                if (ce.oid == de.oid) {
-                    dij = ce.potential;
-                } else {
-                    switch (distanceMethod) {
-                    case Euclidean:
-                        dij = SSUtils.getEuclideanDistance(ce.x, ce.y, de.x, de.y);
-                        break;
-                    case Manhattan:
-                        dij = SSUtils.getManhattanDistance(ce.x, ce.y, de.x, de.y);
-                        break;
-                    }
-                }
-                curDistance += (dij * de.weight);
-            }
-
-            if (minDistance > curDistance) {
-                minDistance = curDistance;
-                centralEvent = ce;
-            }
+        CentralFeatureKernel kernel = new CentralFeatureKernel(xs, ys, weights, potentials,
+                numFeatures);
+        kernel.setDistanceMethod(distanceMethod);
+        kernel.setParallelism(parallelism);
+
+        int central = kernel.findCentralFeature();
+        if (central == -1) {
+            return gf.createPoint(new Coordinate(0, 0));
         }
-
-        return gf.createPoint(new Coordinate(centralEvent.x, centralEvent.y));
+        return gf.createPoint(new Coordinate(xs[central], ys[central]));
     }
 
     public DistanceMethod getDistanceMethod() {
@@ -116,4 +93,15 @@ public class CentralFeature {
     public void setDistanceMethod(DistanceMethod distanceMethod) {
         this.distanceMethod = distanceMethod;
     }
-}
\ No newline at end of file
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads evaluating the candidates.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+}
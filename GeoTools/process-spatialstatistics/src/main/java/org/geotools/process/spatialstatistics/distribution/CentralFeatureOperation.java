@@ -48,6 +48,8 @@ public class CentralFeatureOperation extends AbstractDisributionOperator {
 
     private DistanceMethod distanceMethod = DistanceMethod.Euclidean;
 
+    private int parallelism = 1;
+
     public DistanceMethod getDistanceMethod() {
         return distanceMethod;
     }
@@ -56,6 +58,17 @@ public class CentralFeatureOperation extends AbstractDisributionOperator {
         this.distanceMethod = distanceMethod;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads searching the central feature of a case.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     public SimpleFeatureCollection execute(SimpleFeatureCollection features, String weightField,
             String potentialField, String caseField) throws IOException {
         SimpleFeatureType schema = features.getSchema();
@@ -71,6 +84,7 @@ public class CentralFeatureOperation extends AbstractDisributionOperator {
 
         CentralFeatureVisitor visitor = new CentralFeatureVisitor();
         visitor.setDistanceMethod(distanceMethod);
+        visitor.setParallelism(parallelism);
 
         SimpleFeatureIterator featureIter = features.features();
         try {
@@ -31,6 +31,8 @@ public class CentralFeatureVisitor extends AbstractDistributionVisitor {
 
     private DistanceMethod distanceMethod = DistanceMethod.Euclidean;
 
+    private int parallelism = 1;
+
     public DistanceMethod getDistanceMethod() {
         return distanceMethod;
     }
@@ -39,6 +41,17 @@ public class CentralFeatureVisitor extends AbstractDistributionVisitor {
         this.distanceMethod = distanceMethod;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads searching the central feature of a case.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     @SuppressWarnings("unchecked")
     public void visit(Coordinate coordinate, Object caseVal, double weightVal, double pottentialVal) {
         caseVal = caseVal == null ? CASE_ALL : caseVal;
@@ -47,6 +60,7 @@ public class CentralFeatureVisitor extends AbstractDistributionVisitor {
         if (centeralFeature == null) {
             centeralFeature = new CentralFeature();
             centeralFeature.setDistanceMethod(distanceMethod);
+            centeralFeature.setParallelism(parallelism);
             resuleMap.put(caseVal, centeralFeature);
         }
 
@@ -28,7 +28,8 @@ import com.vividsolutions.jts.geom.MultiLineString;
 import com.vividsolutions.jts.geom.Point;
 
 /**
- * LinearDirectionalMean
+ * LinearDirectionalMean <br>
+ * Two directional means of disjoint sets of lines can be merged.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -36,11 +37,7 @@ import com.vividsolutions.jts.geom.Point;
  */
 public class LinearDirectionalMean {
 
-    private double sumX = 0.0;
-
-    private double sumY = 0.0;
-
-    private double sumZ = 0.0;
+    private WeightedMoments centroids = new WeightedMoments();
 
     private double sumSin = 0.0;
 
@@ -68,9 +65,7 @@ public class LinearDirectionalMean {
 
     private void insert(LineString lineString) {
         Coordinate centroid = lineString.getCentroid().getCoordinate();
-        sumX += centroid.x * 1.0;
-        sumY += centroid.y * 1.0;
-        sumZ += centroid.z * 1.0;
+        centroids.add(centroid.x, centroid.y, centroid.z, 1.0);
 
         // Get Angle
         Point firstPoint = lineString.getStartPoint();
@@ -92,6 +87,17 @@ public class LinearDirectionalMean {
         numFeatures++;
     }
 
+    /**
+     * Adds the lines of another directional mean with the same orientation setting.
+     */
+    public void merge(LinearDirectionalMean other) {
+        centroids.merge(other.centroids);
+        sumSin += other.sumSin;
+        sumCos += other.sumCos;
+        sumLen += other.sumLen;
+        numFeatures += other.numFeatures;
+    }
+
     public LineString getDirectionalLine() {
         // Get Start and End Points
         double halfMeanLen = getMeanLength() / 2.0;
@@ -156,14 +162,14 @@ public class LinearDirectionalMean {
     }
 
     public double getMeanX() {
-        return sumX / numFeatures;
+        return centroids.getMeanX();
     }
 
     public double getMeanY() {
-        return sumY / numFeatures;
+        return centroids.getMeanY();
     }
 
     public double getMeanZ() {
-        return sumZ / numFeatures;
+        return centroids.getMeanZ();
     }
 }
\ No newline at end of file
@@ -23,7 +23,6 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.core.FeatureTypes.SimpleShapeType;
 import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
@@ -55,28 +54,47 @@ public class LinearDirectionalMeanOperation extends AbstractDisributionOperator
             return null;
         }
 
-        caseField = FeatureTypes.validateProperty(schema, caseField);
-        int idxCase = caseField == null ? -1 : schema.indexOf(caseField);
+        FeatureScan<LinearDirectionalMeanVisitor> scan = createScan(schema, orientationOnly,
+                caseField);
+        scan(features, scan);
 
-        LinearDirectionalMeanVisitor visitor = new LinearDirectionalMeanVisitor();
-        visitor.setOrientationOnly(orientationOnly);
+        return execute(schema, orientationOnly, caseField, scan.getVisitor());
+    }
 
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                if (geometry == null || geometry.isEmpty())
-                    continue;
+    /**
+     * Creates the scan of the features, to be run alone or with the scans of other statistics.
+     */
+    public FeatureScan<LinearDirectionalMeanVisitor> createScan(SimpleFeatureType schema,
+            final boolean orientationOnly, String caseField) {
+        caseField = FeatureTypes.validateProperty(schema, caseField);
+        final int idxCase = caseField == null ? -1 : schema.indexOf(caseField);
+
+        return new FeatureScan<LinearDirectionalMeanVisitor>() {
+            @Override
+            protected LinearDirectionalMeanVisitor createVisitor() {
+                LinearDirectionalMeanVisitor visitor = new LinearDirectionalMeanVisitor();
+                visitor.setOrientationOnly(orientationOnly);
+                return visitor;
+            }
 
+            @Override
+            protected void visit(SimpleFeature feature, Geometry geometry,
+                    LinearDirectionalMeanVisitor visitor) {
                 // Case Field
                 Object caseVal = idxCase == -1 ? ALL : feature.getAttribute(idxCase);
 
                 visitor.visit(geometry, caseVal);
             }
-        } finally {
-            featureIter.close();
-        }
+        };
+    }
+
+    /**
+     * Builds the directional mean of every case of a scanned visitor.
+     */
+    public SimpleFeatureCollection execute(SimpleFeatureType schema, boolean orientationOnly,
+            String caseField, LinearDirectionalMeanVisitor visitor) throws IOException {
+        caseField = FeatureTypes.validateProperty(schema, caseField);
+        int idxCase = caseField == null ? -1 : schema.indexOf(caseField);
 
         // build feature collection
         CoordinateReferenceSystem crs = schema.getCoordinateReferenceSystem();
@@ -25,7 +25,7 @@ import com.vividsolutions.jts.geom.Geometry;
  * 
  * @source $URL$
  */
-public class LinearDirectionalMeanVisitor extends AbstractDistributionVisitor {
+public class LinearDirectionalMeanVisitor extends MergeableDistributionVisitor {
 
     private boolean orientationOnly = false;
 
@@ -46,4 +46,9 @@ public class LinearDirectionalMeanVisitor extends AbstractDistributionVisitor {
 
         directionalMean.addValue(lineString);
     }
+
+    @Override
+    protected void merge(Object value, Object other) {
+        ((LinearDirectionalMean) value).merge((LinearDirectionalMean) other);
+    }
 }
@@ -24,20 +24,16 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 
 /**
- * MeanCenter
+ * MeanCenter <br>
+ * The weighted mean is updated incrementally, and two mean centers of disjoint sets of features
+ * can be merged.
  * 
  * @author Minpa Lee, MangoSystem
  * 
  * @source $URL$
  */
 public class MeanCenter {
-    double sumX = 0.0;
-
-    double sumY = 0.0;
-
-    double sumZ = 0.0;
-
-    double weightSum = 0.0;
+    WeightedMoments moments = new WeightedMoments();
 
     double dimensionSum = 0.0;
 
@@ -46,10 +42,7 @@ public class MeanCenter {
     GeometryFactory gf = JTSFactoryFinder.getGeometryFactory(GeoTools.getDefaultHints());
 
     public void addValue(Coordinate coordinate, double weight, double dimVal) {
-        weightSum += weight;
-        sumX += coordinate.x * weight;
-        sumY += coordinate.y * weight;
-        sumZ += coordinate.z * weight;
+        moments.add(coordinate.x, coordinate.y, coordinate.z, weight);
 
         if (!Double.isNaN(dimVal) && !Double.isInfinite(dimVal)) {
             dimensionSum += dimVal;
@@ -58,10 +51,19 @@ public class MeanCenter {
         numFeatures++;
     }
 
+    /**
+     * Adds the features of another mean center.
+     */
+    public void merge(MeanCenter other) {
+        moments.merge(other.moments);
+        dimensionSum += other.dimensionSum;
+        numFeatures += other.numFeatures;
+    }
+
     public Point getMeanCenter() {
-        double meanX = sumX / weightSum;
-        double meanY = sumY / weightSum;
-        double meanZ = sumZ / weightSum;
+        double meanX = moments.getMeanX();
+        double meanY = moments.getMeanY();
+        double meanZ = moments.getMeanZ();
 
         return gf.createPoint(new Coordinate(meanX, meanY, meanZ));
     }
@@ -23,7 +23,6 @@ import java.util.logging.Logger;
 
 import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.util.logging.Logging;
@@ -53,44 +52,66 @@ public class MeanCenterOperation extends AbstractDisributionOperator {
     public SimpleFeatureCollection execute(SimpleFeatureCollection features, String weightField,
             String caseField, String dimensionField) throws IOException {
         SimpleFeatureType schema = features.getSchema();
+
+        FeatureScan<MeanCenterVisitor> scan = createScan(schema, weightField, caseField,
+                dimensionField);
+        scan(features, scan);
+
+        return execute(schema, caseField, dimensionField, scan.getVisitor());
+    }
+
+    /**
+     * Creates the scan of the features, to be run alone or with the scans of other statistics.
+     */
+    public FeatureScan<MeanCenterVisitor> createScan(SimpleFeatureType schema,
+            String weightField, String caseField, String dimensionField) {
         weightField = FeatureTypes.validateProperty(schema, weightField);
         caseField = FeatureTypes.validateProperty(schema, caseField);
         dimensionField = FeatureTypes.validateProperty(schema, dimensionField);
 
-        int idxWeight = weightField == null ? -1 : schema.indexOf(weightField);
-        int idxCase = caseField == null ? -1 : schema.indexOf(caseField);
-        int idxDim = dimensionField == null ? -1 : schema.indexOf(dimensionField);
-        Expression weightExpr = ff.property(weightField);
-        Expression dimensionExpr = ff.property(dimensionField);
-
-        MeanCenterVisitor visitor = new MeanCenterVisitor();
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                if (geometry == null || geometry.isEmpty()) {
-                    continue;
-                }
+        final int idxWeight = weightField == null ? -1 : schema.indexOf(weightField);
+        final int idxCase = caseField == null ? -1 : schema.indexOf(caseField);
+        final int idxDim = dimensionField == null ? -1 : schema.indexOf(dimensionField);
+        final Expression weightExpr = ff.property(weightField);
+        final Expression dimensionExpr = ff.property(dimensionField);
+
+        return new FeatureScan<MeanCenterVisitor>() {
+            @Override
+            protected MeanCenterVisitor createVisitor() {
+                return new MeanCenterVisitor();
+            }
 
+            @Override
+            protected void visit(SimpleFeature feature, Geometry geometry,
+                    MeanCenterVisitor visitor) {
                 Coordinate coordinate = getTrueCentroid(geometry);
                 Object caseVal = idxCase == -1 ? ALL : feature.getAttribute(idxCase);
 
                 double weightVal = 1.0;
                 if (idxWeight != -1) {
-                    weightVal = this.getValue(feature, weightExpr, weightVal);
+                    weightVal = getValue(feature, weightExpr, weightVal);
                 }
 
                 double dimVal = Double.NaN;
                 if (idxDim != -1) {
-                    dimVal = this.getValue(feature, dimensionExpr, dimVal);
+                    dimVal = getValue(feature, dimensionExpr, dimVal);
                 }
 
                 visitor.visit(coordinate, caseVal, weightVal, dimVal);
             }
-        } finally {
-            featureIter.close();
-        }
+        };
+    }
+
+    /**
+     * Builds the mean center of every case of a scanned visitor.
+     */
+    public SimpleFeatureCollection execute(SimpleFeatureType schema, String caseField,
+            String dimensionField, MeanCenterVisitor visitor) {
+        caseField = FeatureTypes.validateProperty(schema, caseField);
+        dimensionField = FeatureTypes.validateProperty(schema, dimensionField);
+
+        int idxCase = caseField == null ? -1 : schema.indexOf(caseField);
+        int idxDim = dimensionField == null ? -1 : schema.indexOf(dimensionField);
 
         // build feature collection
         CoordinateReferenceSystem crs = schema.getCoordinateReferenceSystem();
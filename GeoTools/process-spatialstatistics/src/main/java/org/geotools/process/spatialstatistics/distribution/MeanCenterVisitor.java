@@ -25,7 +25,7 @@ import com.vividsolutions.jts.geom.Coordinate;
  * 
  * @source $URL$
  */
-public class MeanCenterVisitor extends AbstractDistributionVisitor {
+public class MeanCenterVisitor extends MergeableDistributionVisitor {
 
     @SuppressWarnings("unchecked")
     public void visit(Coordinate coordinate, Object caseVal, double weightVal, double dimVal) {
@@ -39,4 +39,9 @@ public class MeanCenterVisitor extends AbstractDistributionVisitor {
 
         meanCenter.addValue(coordinate, weightVal, dimVal);
     }
+
+    @Override
+    protected void merge(Object value, Object other) {
+        ((MeanCenter) value).merge((MeanCenter) other);
+    }
 }
@@ -16,11 +16,11 @@
  */
 package org.geotools.process.spatialstatistics.distribution;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import org.geotools.factory.GeoTools;
 import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
 import org.geotools.process.spatialstatistics.core.SSUtils;
 
 import com.vividsolutions.jts.geom.Coordinate;
@@ -28,72 +28,95 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 
 /**
- * Median Center
+ * Median Center <br>
+ * The weighted median center is found with the Weiszfeld iteration, modified after Vardi and
+ * Zhang so that an estimate falling on an event moves away from it only if that event is not the
+ * median itself. Steps are over-relaxed to converge in fewer passes; a step that does not lower
+ * the sum of weighted distances is retaken as a plain Weiszfeld step. <br>
+ * Each pass is a reduction over primitive arrays, split into fixed chunks summed in chunk order so
+ * that the result does not depend on the number of threads. Attribute medians are selected from
+ * the values streamed by {@link #addValue(Coordinate, double, Number[])}.
  * 
  * @author Minpa Lee, MangoSystem
  * 
  * @source $URL$
  */
 public class MedianCenter {
-    private double sumX = 0.0;
-
-    private double sumY = 0.0;
+    // number of events of a reduction chunk
+    static final int CHUNK_SIZE = 4096;
 
-    private double minX = Double.MAX_VALUE;
+    static final int MAX_ITERATIONS = 100;
 
-    private double minY = Double.MAX_VALUE;
+    static final double TOLERANCE = 0.000001;
 
-    private double maxX = Double.MIN_VALUE;
+    // step factor of the over-relaxed iteration, descent is checked at every pass
+    static final double OVER_RELAXATION = 1.8;
 
-    private double maxY = Double.MIN_VALUE;
+    private int numFeatures = 0;
 
-    private double weightSum = 0.0;
+    private double[] xs = new double[64];
 
-    private Point medianCenter = null;
+    private double[] ys = new double[64];
 
-    private List<Event> events = new ArrayList<Event>();
+    private double[] weights = new double[64];
 
-    private final GeometryFactory gf = JTSFactoryFinder.getGeometryFactory(GeoTools
-            .getDefaultHints());
+    private double sumX = 0.0;
 
-    class Event {
-        public double x;
+    private double sumY = 0.0;
 
-        public double y;
+    private double weightSum = 0.0;
 
-        public double weight;
+    private MedianVisitor[] attributes = null;
 
-        public Number[] attVals;
+    private int parallelism = 1;
 
-        public Event() {
-        }
+    private Point medianCenter = null;
 
-        public Event(double x, double y, double weight, Number[] attVals) {
-            this.x = x;
-            this.y = y;
-            this.weight = weight;
-            this.attVals = attVals;
-        }
+    private final GeometryFactory gf = JTSFactoryFinder.getGeometryFactory(GeoTools
+            .getDefaultHints());
 
-        public double getEuclideanDistance(Event other) {
-            double dx = this.x - other.x;
-            double dy = this.y - other.y;
-            return Math.sqrt((dx * dx) + (dy * dy));
+    public void addValue(Coordinate coordinate, double weight, Number[] attVals) {
+        if (numFeatures == xs.length) {
+            int capacity = numFeatures << 1;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            weights = Arrays.copyOf(weights, capacity);
         }
-    }
+        xs[numFeatures] = coordinate.x;
+        ys[numFeatures] = coordinate.y;
+        weights[numFeatures] = weight;
+        numFeatures++;
 
-    public void addValue(Coordinate coordinate, double weight, Number[] attVals) {
         weightSum += weight;
         sumX += coordinate.x * weight;
         sumY += coordinate.y * weight;
 
-        minX = Math.min(minX, coordinate.x);
-        minY = Math.min(minY, coordinate.y);
+        if (attVals != null) {
+            if (attributes == null) {
+                attributes = new MedianVisitor[attVals.length];
+                for (int k = 0; k < attributes.length; k++) {
+                    attributes[k] = new MedianVisitor();
+                }
+            }
+            for (int k = 0; k < attributes.length; k++) {
+                attributes[k].visit(attVals[k]);
+            }
+        }
+    }
+
+    public int size() {
+        return numFeatures;
+    }
 
-        maxX = Math.max(maxX, coordinate.x);
-        maxY = Math.max(maxY, coordinate.y);
+    public int getParallelism() {
+        return parallelism;
+    }
 
-        events.add(new Event(coordinate.x, coordinate.y, weight, attVals));
+    /**
+     * Sets the number of threads of each pass.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
     }
 
     public Point getMedianCenter() {
@@ -101,111 +124,170 @@ public class MedianCenter {
             return medianCenter;
         }
 
-        // Calculate Median Center
-        final int maxIters = 100; // maximum number of iterations
-        final double tolerance = 0.000001;
-
         // Set Initial Guess to the Mean Center and Begin
-        Event med = new Event();
-        med.x = sumX / weightSum;
-        med.y = sumY / weightSum;
+        double medX = sumX / weightSum;
+        double medY = sumY / weightSum;
 
         // Calculates the weighted median center
         // (minimizes the Euclidean distance) for a set of xy-coordinates. (1, A)
-        if (events.size() == 1) {
-            return gf.createPoint(new Coordinate(med.x, med.y));
+        if (numFeatures == 1) {
+            return gf.createPoint(new Coordinate(medX, medY));
         }
 
-        // Create Maximum Weight for Coincident Points
-        double width = maxX - minX;
-        double height = maxY - minY;
-
-        double deltaX = maxX - minX;
-        maxX = maxX + (deltaX / 1000.0);
-
-        double deltaY = maxY - minY;
-        minY = minY - (deltaY / 1000.0);
-
-        height = maxY - minY;
-        width = maxX - minX;
-
-        double extentArea = height * width * 1000.0;
+        final int chunks = (numFeatures + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final double[] partials = new double[chunks * Pass.LENGTH];
+        final int threads = parallelism <= 0 ? ParallelRange.getDefaultParallelism()
+                : parallelism;
+
+        double factor = OVER_RELAXATION;
+        double prevX = medX;
+        double prevY = medY;
+        double prevStepX = 0.0;
+        double prevStepY = 0.0;
+        double prevCost = Double.POSITIVE_INFINITY;
+
+        Pass pass = new Pass();
+        for (int iterations = 0; iterations < MAX_ITERATIONS; iterations++) {
+            pass.evaluate(medX, medY, chunks, partials, threads);
+
+            if (pass.cost > prevCost) {
+                // the over-relaxed step went too far, retake the previous one as is
+                factor = 1.0;
+                medX = prevX + prevStepX;
+                medY = prevY + prevStepY;
+                prevCost = Double.POSITIVE_INFINITY;
+                continue;
+            }
 
-        boolean flag = true;
-        int iterations = 0;
-        while (flag) {
+            if (pass.kSum == 0) {
+                break; // every event lies on the estimate
+            }
 
-            if (iterations++ >= maxIters) {
-                // Maximum Number of Iterations Reached
-                flag = false;
-                break;
+            // Weiszfeld step, damped at an event by the weight of that event
+            double stepX = (pass.xTop / pass.kSum) - medX;
+            double stepY = (pass.yTop / pass.kSum) - medY;
+            if (pass.coincidentWeight > 0) {
+                double rx = pass.xTop - (pass.kSum * medX);
+                double ry = pass.yTop - (pass.kSum * medY);
+                double r = Math.sqrt((rx * rx) + (ry * ry));
+                if (r <= pass.coincidentWeight) {
+                    break; // the event is the median
+                }
+                double gamma = 1.0 - (pass.coincidentWeight / r);
+                stepX *= gamma;
+                stepY *= gamma;
             }
 
-            // Re-weight Coordinates and Get New Estimate
-            Event newCenter = evaluateDistance(med, extentArea);
+            double newX = medX + (factor * stepX);
+            double newY = medY + (factor * stepY);
 
             // Decision Criteria
-            boolean diffX = SSUtils.compareDouble(newCenter.x, med.x, tolerance);
-            boolean diffY = SSUtils.compareDouble(newCenter.y, med.y, tolerance);
+            boolean diffX = SSUtils.compareDouble(newX, medX, TOLERANCE);
+            boolean diffY = SSUtils.compareDouble(newY, medY, TOLERANCE);
             if (diffX && diffY) {
-                flag = false;
-            } else {
-                med.x = newCenter.x;
-                med.y = newCenter.y;
+                medX = newX;
+                medY = newY;
+                break;
             }
+
+            prevX = medX;
+            prevY = medY;
+            prevStepX = stepX;
+            prevStepY = stepY;
+            prevCost = pass.cost;
+            medX = newX;
+            medY = newY;
         }
 
-        medianCenter = gf.createPoint(new Coordinate(med.x, med.y));
+        medianCenter = gf.createPoint(new Coordinate(medX, medY));
 
         return medianCenter;
     }
 
     public Number[] getUnivariateMedian() {
-        Event initCe = events.get(0);
-        if (initCe.attVals == null) {
+        if (attributes == null) {
             return null;
         }
 
-        int size = initCe.attVals.length;
-        MedianVisitor[] visitor = new MedianVisitor[size];
-        for (int k = 0; k < visitor.length; k++) {
-            visitor[k] = new MedianVisitor();
-        }
-
-        for (Event ce : events) {
-            for (int k = 0; k < size; k++) {
-                visitor[k].visit(ce.attVals[k]);
-            }
-        }
-
-        Number[] medianValue = new Number[size];
-        for (int k = 0; k < visitor.length; k++) {
-            medianValue[k] = visitor[k].getMedian();
+        Number[] medianValue = new Number[attributes.length];
+        for (int k = 0; k < attributes.length; k++) {
+            medianValue[k] = attributes[k].getMedian();
         }
 
         return medianValue;
     }
 
-    private Event evaluateDistance(Event estimate, double maxK) {
-        double sumK = 0;
-        double newXTop = 0;
-        double newYTop = 0;
-
-        for (Event ce : events) {
-            final double dij = estimate.getEuclideanDistance(ce);
-            double k = 0;
+    /**
+     * Sums of one pass at an estimate.
+     */
+    final class Pass {
+        static final int LENGTH = 5;
+
+        double kSum;
+
+        double xTop;
+
+        double yTop;
+
+        double coincidentWeight;
+
+        double cost;
+
+        void evaluate(final double medX, final double medY, final int chunks,
+                final double[] partials, int threads) {
+            ParallelRange.execute(threads, chunks, 1, new ParallelRange.Task() {
+                @Override
+                public void compute(int start, int end) {
+                    for (int c = start; c < end; c++) {
+                        evaluate(medX, medY, c, partials);
+                    }
+                }
+            });
+
+            kSum = 0.0;
+            xTop = 0.0;
+            yTop = 0.0;
+            coincidentWeight = 0.0;
+            cost = 0.0;
+            for (int c = 0; c < chunks; c++) {
+                int offset = c * LENGTH;
+                kSum += partials[offset];
+                xTop += partials[offset + 1];
+                yTop += partials[offset + 2];
+                coincidentWeight += partials[offset + 3];
+                cost += partials[offset + 4];
+            }
+        }
 
-            if (dij == 0) {
-                k = ce.weight * maxK;
-            } else {
-                k = ce.weight / dij;
+        private void evaluate(double medX, double medY, int chunk, double[] partials) {
+            double chunkKSum = 0.0;
+            double chunkXTop = 0.0;
+            double chunkYTop = 0.0;
+            double chunkCoincident = 0.0;
+            double chunkCost = 0.0;
+
+            int end = Math.min(numFeatures, (chunk + 1) * CHUNK_SIZE);
+            for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                double dx = xs[i] - medX;
+                double dy = ys[i] - medY;
+                double dij = Math.sqrt((dx * dx) + (dy * dy));
+                if (dij == 0) {
+                    chunkCoincident += weights[i];
+                } else {
+                    double k = weights[i] / dij;
+                    chunkKSum += k;
+                    chunkXTop += k * xs[i];
+                    chunkYTop += k * ys[i];
+                    chunkCost += weights[i] * dij;
+                }
             }
 
-            sumK += k;
-            newXTop += k * ce.x;
-            newYTop += k * ce.y;
+            int offset = chunk * LENGTH;
+            partials[offset] = chunkKSum;
+            partials[offset + 1] = chunkXTop;
+            partials[offset + 2] = chunkYTop;
+            partials[offset + 3] = chunkCoincident;
+            partials[offset + 4] = chunkCost;
         }
-
-        return new Event(newXTop / sumK, newYTop / sumK, 1.0, null);
     }
-}
\ No newline at end of file
+}
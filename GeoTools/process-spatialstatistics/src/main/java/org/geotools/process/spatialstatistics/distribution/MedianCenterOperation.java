@@ -17,14 +17,17 @@
 package org.geotools.process.spatialstatistics.distribution;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
 import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.simple.SimpleFeature;
@@ -48,6 +51,22 @@ public class MedianCenterOperation extends AbstractDisributionOperator {
 
     final String[] FIELDS = { "XCoord", "YCoord" };
 
+    // cases of at least this many features are solved one at a time with parallel passes
+    static final int PARALLEL_CASE_SIZE = 4 * MedianCenter.CHUNK_SIZE;
+
+    private int parallelism = 1;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads solving the cases.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     public SimpleFeatureCollection execute(SimpleFeatureCollection features, String weightField,
             String caseField, String[] attFields) throws IOException {
         SimpleFeatureType schema = features.getSchema();
@@ -138,6 +157,8 @@ public class MedianCenterOperation extends AbstractDisributionOperator {
 
         @SuppressWarnings("unchecked")
         HashMap<Object, MedianCenter> resultMap = fVisitor.getResult();
+        solve(resultMap.values());
+
         Iterator<Object> iter = resultMap.keySet().iterator();
         try {
             while (iter.hasNext()) {
@@ -164,7 +185,9 @@ public class MedianCenterOperation extends AbstractDisributionOperator {
                     for (int k = 0; k < attFields.length; k++) {
                         Class<?> bind = featureType.getDescriptor(attFields[k]).getType()
                                 .getBinding();
-                        if (bind.isAssignableFrom(Short.class)) {
+                        if (attVals[k] == null) {
+                            newFeature.setAttribute(attFields[k], null);
+                        } else if (bind.isAssignableFrom(Short.class)) {
                             newFeature.setAttribute(attFields[k], attVals[k].shortValue());
                         } else if (bind.isAssignableFrom(Integer.class)) {
                             newFeature.setAttribute(attFields[k], attVals[k].intValue());
@@ -191,4 +214,28 @@ public class MedianCenterOperation extends AbstractDisributionOperator {
         return featureWriter.getFeatureCollection();
     }
 
+    private void solve(Iterable<MedianCenter> centers) {
+        int threads = parallelism <= 0 ? ParallelRange.getDefaultParallelism() : parallelism;
+
+        // large cases use every thread for their own passes, the others run side by side
+        final List<MedianCenter> smallCases = new ArrayList<MedianCenter>();
+        for (MedianCenter center : centers) {
+            if (center.size() >= PARALLEL_CASE_SIZE) {
+                center.setParallelism(threads);
+                center.getMedianCenter();
+            } else {
+                center.setParallelism(1);
+                smallCases.add(center);
+            }
+        }
+
+        ParallelRange.execute(threads, smallCases.size(), 1, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                for (int k = start; k < end; k++) {
+                    smallCases.get(k).getMedianCenter();
+                }
+            }
+        });
+    }
 }
@@ -16,55 +16,92 @@
  */
 package org.geotools.process.spatialstatistics.distribution;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
 /**
- * Median Visitor
+ * Median Visitor <br>
+ * Values are kept in a primitive array and the median is selected in linear expected time
+ * instead of sorting them. Null and NaN values are ignored.
  * 
  * @author Minpa Lee, MangoSystem
  * 
  * @source $URL$
  */
 public class MedianVisitor {
-    @SuppressWarnings("rawtypes")
-    private List list = new ArrayList();
+    private double[] values = new double[64];
+
+    private int size = 0;
 
-    @SuppressWarnings("unchecked")
     public void visit(Object value) {
-        list.add(value);
+        if (value instanceof Number) {
+            visit(((Number) value).doubleValue());
+        }
+    }
+
+    public void visit(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size << 1);
+        }
+        values[size++] = value;
     }
 
-    @SuppressWarnings("unchecked")
     public Number getMedian() {
-        final int size = list.size();
         if (size < 1) {
             return null;
         } else if (size == 1) {
-            return (Number) list.get(0);
+            return values[0];
         }
 
-        Number median = null;
-        Collections.sort(list);
-
         final int index = size / 2;
+        double median = select(index);
         if ((size % 2) == 0) {
-            Object input1 = list.get(index - 1);
-            Object input2 = list.get(index);
-
-            if ((input1 instanceof Number) && (input2 instanceof Number)) {
-                Number num1 = (Number) input1;
-                Number num2 = (Number) input2;
-                median = (num1.doubleValue() + num2.doubleValue()) / 2.0;
-            } else {
-                // NaN
-                median = (Number) list.get(index);
+            // the lower middle value is the largest of the values before index
+            double lower = values[0];
+            for (int i = 1; i < index; i++) {
+                lower = Math.max(lower, values[i]);
             }
-        } else {
-            median = (Number) list.get(index);
+            median = (lower + median) / 2.0;
         }
 
         return median;
     }
-}
\ No newline at end of file
+
+    // partial sort so that values[k] holds the k-th smallest value
+    private double select(int k) {
+        int lo = 0;
+        int hi = size - 1;
+        while (hi > lo) {
+            double pivot = values[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+}
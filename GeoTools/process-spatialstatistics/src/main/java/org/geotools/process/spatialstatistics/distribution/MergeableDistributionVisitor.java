@@ -0,0 +1,54 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.distribution;
+
+import java.util.Map;
+
+/**
+ * Mergeable Distribution Visitor <br>
+ * Visitors of disjoint parts of a collection can be merged in the order of the parts, which keeps
+ * the cases in the order of their first feature.
+ * 
+ * @author Minpa Lee, MangoSystem
+ * 
+ * @source $URL$
+ */
+public abstract class MergeableDistributionVisitor extends AbstractDistributionVisitor {
+
+    /**
+     * Adds the cases of another visitor of the same type. The other visitor must not be used
+     * afterwards, as its accumulators may be taken over.
+     */
+    @SuppressWarnings("unchecked")
+    public void merge(MergeableDistributionVisitor other) {
+        for (Object entry : other.resuleMap.entrySet()) {
+            Map.Entry<Object, Object> caseEntry = (Map.Entry<Object, Object>) entry;
+            Object value = resuleMap.get(caseEntry.getKey());
+            if (value == null) {
+                resuleMap.put(caseEntry.getKey(), caseEntry.getValue());
+            } else {
+                merge(value, caseEntry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Adds the accumulator of a case of another visitor to the accumulator of the same case.
+     */
+    protected abstract void merge(Object value, Object other);
+
+}
@@ -34,7 +34,9 @@ import com.vividsolutions.jts.geom.LinearRing;
 import com.vividsolutions.jts.geom.Point;
 
 /**
- * StandardDistanceEllipse
+ * StandardDistanceEllipse <br>
+ * The mean center and the co-moments are accumulated in one pass without keeping the features,
+ * and two ellipses of disjoint sets of features can be merged.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -43,43 +45,19 @@ import com.vividsolutions.jts.geom.Point;
 public class StandardDeviationalEllipse {
     protected static final Logger LOGGER = Logging.getLogger(StandardDeviationalEllipse.class);
 
-    private double sumX = 0.0;
-
-    private double sumY = 0.0;
-
-    private double sumZ = 0.0;
-
-    private double weightSum = 0.0;
-
-    private List<Event> events = new ArrayList<Event>();
+    private WeightedMoments moments = new WeightedMoments();
 
     private GeometryFactory gf = JTSFactoryFinder.getGeometryFactory(GeoTools.getDefaultHints());
 
-    class Event {
-        public double x;
-
-        public double y;
-
-        public double weight;
-
-        public Event() {
-        }
-
-        public Event(double x, double y, double weight) {
-            this.x = x;
-            this.y = y;
-            this.weight = weight;
-        }
-    }
-
     public void addValue(Coordinate coordinate, double weight) {
-        weightSum += weight;
-
-        sumX += coordinate.x * weight;
-        sumY += coordinate.y * weight;
-        sumZ += coordinate.z * weight;
+        moments.add(coordinate.x, coordinate.y, coordinate.z, weight);
+    }
 
-        events.add(new Event(coordinate.x, coordinate.y, weight));
+    /**
+     * Adds the features of another ellipse, which must not have been calculated yet.
+     */
+    public void merge(StandardDeviationalEllipse other) {
+        moments.merge(other.moments);
     }
 
     public double seX = 0;
@@ -96,19 +74,14 @@ public class StandardDeviationalEllipse {
         }
 
         // Mean Center
-        double meanX = sumX / weightSum;
-        double meanY = sumY / weightSum;
+        double meanX = moments.getMeanX();
+        double meanY = moments.getMeanY();
+        double weightSum = moments.getWeightSum();
 
         // Standard Ellipse
-        double sigXY = 0, sigX = 0, sigY = 0;
-        for (Event ce : events) {
-            final double devX = ce.x - meanX;
-            final double devY = ce.y - meanY;
-
-            sigX += Math.pow(devX, 2.0) * ce.weight;
-            sigY += Math.pow(devY, 2.0) * ce.weight;
-            sigXY += devX * devY * ce.weight;
-        }
+        double sigX = moments.getSigmaX();
+        double sigY = moments.getSigmaY();
+        double sigXY = moments.getSigmaXY();
 
         double denom = sigXY * 2.0;
         double diffXY = sigX - sigY;
@@ -203,9 +176,9 @@ public class StandardDeviationalEllipse {
     }
 
     public Point getMeanCenter() {
-        double meanX = sumX / weightSum;
-        double meanY = sumY / weightSum;
-        double meanZ = sumZ / weightSum;
+        double meanX = moments.getMeanX();
+        double meanY = moments.getMeanY();
+        double meanZ = moments.getMeanZ();
 
         return gf.createPoint(new Coordinate(meanX, meanY, meanZ));
     }
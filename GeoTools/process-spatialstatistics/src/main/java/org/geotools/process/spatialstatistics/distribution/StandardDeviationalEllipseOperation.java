@@ -22,7 +22,6 @@ import java.util.Iterator;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
 import org.geotools.util.logging.Logging;
@@ -66,23 +65,35 @@ public class StandardDeviationalEllipseOperation extends AbstractDisributionOper
     public SimpleFeatureCollection execute(SimpleFeatureCollection features, String weightField,
             String caseField) throws IOException {
         SimpleFeatureType schema = features.getSchema();
+
+        FeatureScan<StandardDeviationalEllipseVisitor> scan = createScan(schema, weightField,
+                caseField);
+        scan(features, scan);
+
+        return execute(schema, caseField, scan.getVisitor());
+    }
+
+    /**
+     * Creates the scan of the features, to be run alone or with the scans of other statistics.
+     */
+    public FeatureScan<StandardDeviationalEllipseVisitor> createScan(SimpleFeatureType schema,
+            String weightField, String caseField) {
         weightField = FeatureTypes.validateProperty(schema, weightField);
         caseField = FeatureTypes.validateProperty(schema, caseField);
 
-        int idxCase = caseField == null ? -1 : schema.indexOf(caseField);
-        int idxWeight = weightField == null ? -1 : schema.indexOf(weightField);
-        Expression weightExpr = ff.property(weightField);
+        final int idxCase = caseField == null ? -1 : schema.indexOf(caseField);
+        final int idxWeight = weightField == null ? -1 : schema.indexOf(weightField);
+        final Expression weightExpr = ff.property(weightField);
 
-        StandardDeviationalEllipseVisitor visitor = new StandardDeviationalEllipseVisitor();
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                if (geometry == null || geometry.isEmpty()) {
-                    continue;
-                }
+        return new FeatureScan<StandardDeviationalEllipseVisitor>() {
+            @Override
+            protected StandardDeviationalEllipseVisitor createVisitor() {
+                return new StandardDeviationalEllipseVisitor();
+            }
 
+            @Override
+            protected void visit(SimpleFeature feature, Geometry geometry,
+                    StandardDeviationalEllipseVisitor visitor) {
                 // geometry's true centroid
                 Coordinate coordinate = getTrueCentroid(geometry);
 
@@ -92,14 +103,21 @@ public class StandardDeviationalEllipseOperation extends AbstractDisributionOper
                 // Weight Field
                 double weightVal = 1.0;
                 if (idxWeight != -1) {
-                    weightVal = this.getValue(feature, weightExpr, weightVal);
+                    weightVal = getValue(feature, weightExpr, weightVal);
                 }
 
                 visitor.visit(coordinate, caseVal, weightVal);
             }
-        } finally {
-            featureIter.close();
-        }
+        };
+    }
+
+    /**
+     * Builds the ellipse of every case of a scanned visitor.
+     */
+    public SimpleFeatureCollection execute(SimpleFeatureType schema, String caseField,
+            StandardDeviationalEllipseVisitor visitor) throws IOException {
+        caseField = FeatureTypes.validateProperty(schema, caseField);
+        int idxCase = caseField == null ? -1 : schema.indexOf(caseField);
 
         // build feature collection
         CoordinateReferenceSystem crs = schema.getCoordinateReferenceSystem();
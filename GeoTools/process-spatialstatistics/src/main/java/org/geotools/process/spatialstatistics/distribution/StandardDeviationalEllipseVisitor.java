@@ -25,7 +25,7 @@ import com.vividsolutions.jts.geom.Coordinate;
  * 
  * @source $URL$
  */
-public class StandardDeviationalEllipseVisitor extends AbstractDistributionVisitor {
+public class StandardDeviationalEllipseVisitor extends MergeableDistributionVisitor {
 
     @SuppressWarnings("unchecked")
     public void visit(Coordinate coordinate, Object caseVal, double weightVal) {
@@ -39,4 +39,9 @@ public class StandardDeviationalEllipseVisitor extends AbstractDistributionVisit
 
         sde.addValue(coordinate, weightVal);
     }
+
+    @Override
+    protected void merge(Object value, Object other) {
+        ((StandardDeviationalEllipse) value).merge((StandardDeviationalEllipse) other);
+    }
 }
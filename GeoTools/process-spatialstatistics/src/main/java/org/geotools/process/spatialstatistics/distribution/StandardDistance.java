@@ -16,9 +16,6 @@
  */
 package org.geotools.process.spatialstatistics.distribution;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.geotools.factory.GeoTools;
 import org.geotools.geometry.jts.JTSFactoryFinder;
 
@@ -27,82 +24,46 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 
 /**
- * StandardDistance
+ * StandardDistance <br>
+ * The mean center and the squared deviations are accumulated in one pass without keeping the
+ * features, and two standard distances of disjoint sets of features can be merged.
  * 
  * @author Minpa Lee, MangoSystem
  * 
  * @source $URL$
  */
 public class StandardDistance {
-    private double sumX = 0.0;
-
-    private double sumY = 0.0;
-
-    private double sumZ = 0.0;
-
-    private double weightSum = 0.0;
+    private WeightedMoments moments = new WeightedMoments();
 
     private int numFeatures = 0;
 
-    private double sdVal = Double.NaN;
-
-    private List<Event> events = new ArrayList<Event>();
-
     private GeometryFactory gf = JTSFactoryFinder.getGeometryFactory(GeoTools.getDefaultHints());
 
-    class Event {
-        public double x;
-
-        public double y;
-
-        public double weight;
-
-        public Event() {
-        }
-
-        public Event(double x, double y, double weight) {
-            this.x = x;
-            this.y = y;
-            this.weight = weight;
-        }
-    }
-
     public void addValue(Coordinate coordinate, double weight) {
         // #### Calculate Mean Center and Standard Distance ####
-        weightSum += weight;
-
-        sumX += coordinate.x * weight;
-        sumY += coordinate.y * weight;
-        sumZ += coordinate.z * weight;
-
-        events.add(new Event(coordinate.x, coordinate.y, weight));
+        moments.add(coordinate.x, coordinate.y, coordinate.z, weight);
 
         numFeatures++;
     }
 
-    public double getStdDist(double standardDeviation) {
-        if (Double.isNaN(sdVal)) {
-            double meanX = sumX / weightSum;
-            double meanY = sumY / weightSum;
-
-            double sigXYSum = 0;
-            for (Event ce : events) {
-                final double devX = ce.x - meanX;
-                final double devY = ce.y - meanY;
-
-                sigXYSum += (Math.pow(devX, 2.0) * ce.weight) + (Math.pow(devY, 2.0) * ce.weight);
-            }
+    /**
+     * Adds the features of another standard distance.
+     */
+    public void merge(StandardDistance other) {
+        moments.merge(other.moments);
+        numFeatures += other.numFeatures;
+    }
 
-            sdVal = Math.sqrt(sigXYSum / weightSum) * standardDeviation;
-        }
+    public double getStdDist(double standardDeviation) {
+        double sigXYSum = moments.getSigmaX() + moments.getSigmaY();
 
-        return sdVal;
+        return Math.sqrt(sigXYSum / moments.getWeightSum()) * standardDeviation;
     }
 
     public Point getMeanCenter() {
-        double meanX = sumX / weightSum;
-        double meanY = sumY / weightSum;
-        double meanZ = sumZ / weightSum;
+        double meanX = moments.getMeanX();
+        double meanY = moments.getMeanY();
+        double meanZ = moments.getMeanZ();
 
         return gf.createPoint(new Coordinate(meanX, meanY, meanZ));
     }
@@ -22,7 +22,6 @@ import java.util.Iterator;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
 import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
 import org.geotools.util.logging.Logging;
@@ -64,23 +63,34 @@ public class StandardDistanceOperation extends AbstractDisributionOperator {
     public SimpleFeatureCollection execute(SimpleFeatureCollection features, String weightField,
             String caseField) throws IOException {
         SimpleFeatureType schema = features.getSchema();
+
+        FeatureScan<StandardDistanceVisitor> scan = createScan(schema, weightField, caseField);
+        scan(features, scan);
+
+        return execute(schema, caseField, scan.getVisitor());
+    }
+
+    /**
+     * Creates the scan of the features, to be run alone or with the scans of other statistics.
+     */
+    public FeatureScan<StandardDistanceVisitor> createScan(SimpleFeatureType schema,
+            String weightField, String caseField) {
         weightField = FeatureTypes.validateProperty(schema, weightField);
         caseField = FeatureTypes.validateProperty(schema, caseField);
 
-        int idxWeight = weightField == null ? -1 : schema.indexOf(weightField);
-        int idxCase = caseField == null ? -1 : schema.indexOf(caseField);
-        Expression weightExpr = ff.property(weightField);
+        final int idxWeight = weightField == null ? -1 : schema.indexOf(weightField);
+        final int idxCase = caseField == null ? -1 : schema.indexOf(caseField);
+        final Expression weightExpr = ff.property(weightField);
 
-        StandardDistanceVisitor visitor = new StandardDistanceVisitor();
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                if (geometry == null || geometry.isEmpty()) {
-                    continue;
-                }
+        return new FeatureScan<StandardDistanceVisitor>() {
+            @Override
+            protected StandardDistanceVisitor createVisitor() {
+                return new StandardDistanceVisitor();
+            }
 
+            @Override
+            protected void visit(SimpleFeature feature, Geometry geometry,
+                    StandardDistanceVisitor visitor) {
                 // geometry's true centroid
                 Coordinate coordinate = getTrueCentroid(geometry);
 
@@ -90,14 +100,21 @@ public class StandardDistanceOperation extends AbstractDisributionOperator {
                 // #### Weight Field ####
                 double weightVal = 1.0;
                 if (idxWeight != -1) {
-                    weightVal = this.getValue(feature, weightExpr, weightVal);
+                    weightVal = getValue(feature, weightExpr, weightVal);
                 }
 
                 visitor.visit(coordinate, caseVal, weightVal);
             }
-        } finally {
-            featureIter.close();
-        }
+        };
+    }
+
+    /**
+     * Builds the standard distance of every case of a scanned visitor.
+     */
+    public SimpleFeatureCollection execute(SimpleFeatureType schema, String caseField,
+            StandardDistanceVisitor visitor) throws IOException {
+        caseField = FeatureTypes.validateProperty(schema, caseField);
+        int idxCase = caseField == null ? -1 : schema.indexOf(caseField);
 
         // build feature collection
         CoordinateReferenceSystem crs = schema.getCoordinateReferenceSystem();
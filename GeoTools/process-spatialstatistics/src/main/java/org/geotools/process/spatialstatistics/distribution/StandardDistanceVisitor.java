@@ -25,7 +25,7 @@ import com.vividsolutions.jts.geom.Coordinate;
  * 
  * @source $URL$
  */
-public class StandardDistanceVisitor extends AbstractDistributionVisitor {
+public class StandardDistanceVisitor extends MergeableDistributionVisitor {
 
     @SuppressWarnings("unchecked")
     public void visit(Coordinate coordinate, Object caseVal, double weightVal) {
@@ -39,4 +39,9 @@ public class StandardDistanceVisitor extends AbstractDistributionVisitor {
 
         sd.addValue(coordinate, weightVal);
     }
-}
\ No newline at end of file
+
+    @Override
+    protected void merge(Object value, Object other) {
+        ((StandardDistance) value).merge((StandardDistance) other);
+    }
+}
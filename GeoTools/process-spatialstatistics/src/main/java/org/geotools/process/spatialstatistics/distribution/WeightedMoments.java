@@ -0,0 +1,134 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.distribution;
+
+/**
+ * Weighted mean and co-moments of coordinates, accumulated in one pass after West's weighted
+ * update of Welford's algorithm. Two accumulators of disjoint sets of events are combined with
+ * the pairwise update of Chan et al., so a collection can be split, accumulated in parallel and
+ * merged.
+ * 
+ * @author Minpa Lee, MangoSystem
+ * 
+ * @source $URL$
+ */
+final class WeightedMoments {
+    private double weightSum = 0.0;
+
+    private double meanX = 0.0;
+
+    private double meanY = 0.0;
+
+    private double meanZ = 0.0;
+
+    // weighted sums of the squared deviations from the mean and of their cross products
+    private double m2X = 0.0;
+
+    private double m2Y = 0.0;
+
+    private double cXY = 0.0;
+
+    public void add(double x, double y, double z, double weight) {
+        if (weight == 0) {
+            return;
+        }
+
+        final double newWeightSum = weightSum + weight;
+        final double ratio = weight / newWeightSum;
+
+        final double devX = x - meanX;
+        final double devY = y - meanY;
+        meanX += devX * ratio;
+        meanY += devY * ratio;
+        meanZ += (z - meanZ) * ratio;
+
+        final double newDevY = y - meanY;
+        m2X += weight * devX * (x - meanX);
+        m2Y += weight * devY * newDevY;
+        cXY += weight * devX * newDevY;
+
+        weightSum = newWeightSum;
+    }
+
+    public void merge(WeightedMoments other) {
+        if (other.weightSum == 0) {
+            return;
+        } else if (weightSum == 0) {
+            weightSum = other.weightSum;
+            meanX = other.meanX;
+            meanY = other.meanY;
+            meanZ = other.meanZ;
+            m2X = other.m2X;
+            m2Y = other.m2Y;
+            cXY = other.cXY;
+            return;
+        }
+
+        final double newWeightSum = weightSum + other.weightSum;
+        final double ratio = other.weightSum / newWeightSum;
+        final double factor = weightSum * ratio;
+
+        final double devX = other.meanX - meanX;
+        final double devY = other.meanY - meanY;
+        m2X += other.m2X + (devX * devX * factor);
+        m2Y += other.m2Y + (devY * devY * factor);
+        cXY += other.cXY + (devX * devY * factor);
+
+        meanX += devX * ratio;
+        meanY += devY * ratio;
+        meanZ += (other.meanZ - meanZ) * ratio;
+
+        weightSum = newWeightSum;
+    }
+
+    public double getWeightSum() {
+        return weightSum;
+    }
+
+    public double getMeanX() {
+        return weightSum == 0 ? Double.NaN : meanX;
+    }
+
+    public double getMeanY() {
+        return weightSum == 0 ? Double.NaN : meanY;
+    }
+
+    public double getMeanZ() {
+        return weightSum == 0 ? Double.NaN : meanZ;
+    }
+
+    /**
+     * Returns the weighted sum of the squared x deviations from the mean.
+     */
+    public double getSigmaX() {
+        return m2X;
+    }
+
+    /**
+     * Returns the weighted sum of the squared y deviations from the mean.
+     */
+    public double getSigmaY() {
+        return m2Y;
+    }
+
+    /**
+     * Returns the weighted sum of the products of the x and y deviations from the mean.
+     */
+    public double getSigmaXY() {
+        return cXY;
+    }
+}
@@ -17,8 +17,8 @@
 package org.geotools.process.spatialstatistics.operations;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -34,7 +34,10 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 
 /**
- * Collect Event combines coincident points.
+ * Collect Event combines coincident points. <br>
+ * The points are hashed into cells as large as the tolerance, so the points coincident with a
+ * point are found in its 3 x 3 cell neighborhood, and the collected points are tracked in a
+ * bit set. Each point is written as soon as its count is known.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -66,97 +69,173 @@ public class CollectEventsOperation extends GeneralOperation {
         schema = FeatureTypes.add(schema, countField, Integer.class);
         Class<?> outputBinding = schema.getDescriptor(countField).getType().getBinding();
 
-        List<Event> events = buildIndex(points);
-        List<Event> coincidentEvents = new ArrayList<Event>();
-        List<String> processedMap = new ArrayList<String>();
+        // 1. hash the points, in the order of the features
+        // a negative tolerance collects nothing, as no distance is below it
+        final double tol2 = tolerance < 0 ? -1d : tolerance * tolerance;
+        CellHash cells = buildIndex(points, tolerance);
+        double[] x = cells.x;
+        double[] y = cells.y;
+        int[] next = cells.next;
 
+        // 2. count coincident events, the first point of a group absorbing the others
+        BitSet collected = new BitSet(cells.size);
         IFeatureInserter featureWriter = getFeatureWriter(schema);
         SimpleFeatureIterator featureIter = points.features();
         try {
+            int i = 0;
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
-                String featureID = feature.getID();
-                if (processedMap.contains(featureID)) {
+                int current = i++;
+                if (current < cells.size && collected.get(current)) {
                     continue;
                 }
 
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                Coordinate coordinate = geometry.getCoordinate();
-
-                // count coincident events
                 int featureCount = 1;
-                for (Event event : events) {
-                    if (processedMap.contains(event.getFID()) || event.equalsFID(featureID)
-                            || event.distance(coordinate) > tolerance) {
-                        continue;
+                if (current < cells.size) {
+                    collected.set(current);
+
+                    long col = cells.column(x[current]);
+                    long row = cells.row(y[current]);
+                    for (long r = row - 1; r <= row + 1; r++) {
+                        for (long c = col - 1; c <= col + 1; c++) {
+                            for (int j = cells.first(c, r); j >= 0; j = next[j]) {
+                                if (collected.get(j)) {
+                                    continue;
+                                }
+
+                                double dx = x[j] - x[current];
+                                double dy = y[j] - y[current];
+                                if ((dx * dx) + (dy * dy) <= tol2) {
+                                    collected.set(j);
+                                    featureCount++;
+                                }
+                            }
+                        }
                     }
-
-                    featureCount++;
-                    processedMap.add(event.getFID());
-                    coincidentEvents.add(event);
-                }
-
-                // remove coincident events
-                if (coincidentEvents.size() > 0) {
-                    events.removeAll(coincidentEvents);
-                    coincidentEvents.clear();
                 }
 
                 // create & insert feature
-                SimpleFeature newFeature = featureWriter.buildFeature(featureID);
+                SimpleFeature newFeature = featureWriter.buildFeature(feature.getID());
                 featureWriter.copyAttributes(feature, newFeature, true);
                 Object countVal = Converters.convert(featureCount, outputBinding);
                 newFeature.setAttribute(countField, countVal);
 
                 featureWriter.write(newFeature);
-                processedMap.add(featureID);
             }
         } catch (Exception e) {
             featureWriter.rollback(e);
         } finally {
+            featureIter.close();
             featureWriter.close();
         }
 
         return featureWriter.getFeatureCollection();
     }
 
-    private List<Event> buildIndex(SimpleFeatureCollection points) {
-        List<Event> events = new ArrayList<Event>();
+    private CellHash buildIndex(SimpleFeatureCollection points, double tolerance) {
+        CellHash cells = new CellHash(tolerance);
         SimpleFeatureIterator featureIter = points.features();
         try {
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
                 Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                events.add(new Event(feature.getID(), geometry.getCoordinate()));
+                Coordinate coordinate = geometry == null ? null : geometry.getCoordinate();
+                if (coordinate == null) {
+                    cells.add(Double.NaN, Double.NaN);
+                } else {
+                    cells.add(coordinate.x, coordinate.y);
+                }
             }
         } finally {
             featureIter.close();
         }
-        return events;
+        cells.build();
+        return cells;
     }
 
-    final class Event {
+    /**
+     * Points snapped to square cells of the tolerance size, the points of a cell being chained
+     * through next. Points without coordinates are kept but belong to no cell.
+     */
+    static final class CellHash {
+
+        private final double cellSize;
+
+        double[] x = new double[1024];
+
+        double[] y = new double[1024];
+
+        int[] next;
+
+        int size = 0;
+
+        // open addressing table of the first point of each occupied cell
+        private int[] heads;
 
-        private String fid;
+        private int mask;
 
-        private Coordinate coordinate;
+        CellHash(double tolerance) {
+            // any positive size works for exact matches, which always share a cell
+            this.cellSize = tolerance > 0 ? tolerance : 1d;
+        }
 
-        public Event(String fid, Coordinate coordinate) {
-            this.fid = fid;
-            this.coordinate = coordinate;
+        void add(double px, double py) {
+            if (size == x.length) {
+                x = Arrays.copyOf(x, size * 2);
+                y = Arrays.copyOf(y, size * 2);
+            }
+            x[size] = px;
+            y[size] = py;
+            size++;
         }
 
-        public String getFID() {
-            return this.fid;
+        void build() {
+            // at most 3/4 of the slots are occupied, one cell per point at worst
+            int capacity = Integer.highestOneBit(Math.max(2, size + (size / 3) + 1) - 1) << 1;
+            heads = new int[capacity];
+            Arrays.fill(heads, -1);
+            mask = capacity - 1;
+
+            next = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                next[i] = -1;
+                if (Double.isNaN(x[i]) || Double.isNaN(y[i])) {
+                    continue;
+                }
+
+                int slot = find(column(x[i]), row(y[i]));
+                next[i] = heads[slot];
+                heads[slot] = i;
+            }
         }
 
-        public boolean equalsFID(String fid) {
-            return this.fid.equals(fid);
+        long column(double px) {
+            return (long) Math.floor(px / cellSize);
         }
 
-        public double distance(Coordinate coordinate) {
-            return this.coordinate.distance(coordinate);
+        long row(double py) {
+            return (long) Math.floor(py / cellSize);
         }
-    }
 
+        /**
+         * Returns the first point of a cell, -1 if the cell is empty.
+         */
+        int first(long col, long row) {
+            return heads[find(col, row)];
+        }
+
+        // the slot holding the cell, or the empty slot where it would be inserted
+        private int find(long col, long row) {
+            long hash = (col * 0x9E3779B97F4A7C15L) ^ (row * 0xC2B2AE3D27D4EB4FL);
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            while (heads[slot] >= 0) {
+                int head = heads[slot];
+                if (column(x[head]) == col && row(y[head]) == row) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
 }
@@ -19,12 +19,14 @@ package org.geotools.process.spatialstatistics.pattern;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.process.spatialstatistics.core.ConditionalPermutation.SplitMix;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.PointKdTree;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.simple.SimpleFeature;
 
@@ -32,10 +34,20 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.Point;
 
 /**
- * k-means clustering
+ * k-means clustering <br>
+ * Centers are seeded with k-means++. The batch mode runs Lloyd iterations with Hamerly's bounds:
+ * every point keeps an upper bound of the distance to its center and a lower bound of the
+ * distance to the second closest center, and is compared with every center only when the bounds
+ * no longer prove its assignment. The mini-batch mode moves the centers with random samples of
+ * the points and assigns every point once at the end. <br>
+ * Assignment and update steps run in parallel over fixed chunks of points, summed in chunk
+ * order, and every random draw comes from the seed, so a seed always gives the same clusters
+ * whatever the number of threads.
  * 
  * @author Minpa Lee, MangoSystem
  * @reference http://code.google.com/p/hdict/source/browse/src/com/google/io/kmeans/DalvikClusterer.java
+ * @reference Hamerly, G. (2010) Making k-means even faster. SDM 2010.
+ * @reference Sculley, D. (2010) Web-scale k-means clustering. WWW 2010.
  * @source $URL$
  */
 public class KMeansCluster implements Cluster {
@@ -43,11 +55,25 @@ public class KMeansCluster implements Cluster {
 
     static final int MAX_LOOP_COUNT = 100;
 
-    final Random random = new Random(System.currentTimeMillis());
+    // number of points of a parallel chunk
+    static final int CHUNK_SIZE = 65536;
+
+    // the mini-batch mode seeds the centers from this many sampled points per cluster
+    static final int SEED_SAMPLES_PER_CLUSTER = 20;
 
     private PointEvent[] points = null;
 
-    private ReferencedEnvelope extent = null;
+    private double[] xs;
+
+    private double[] ys;
+
+    private long seed = 0;
+
+    private int parallelism = 1;
+
+    private int miniBatchSize = 0;
+
+    private int maxIterations = MAX_LOOP_COUNT;
 
     public PointEvent[] getPoints() {
         return this.points;
@@ -57,119 +83,404 @@ public class KMeansCluster implements Cluster {
         loadPoints(pointFeatures, null);
     }
 
-    private PointEvent getRandomPoint() {
-        PointEvent randomPoint = new PointEvent();
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the seed of the random draws, the same seed gives the same clusters.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
 
-        while (true) {
-            double x = extent.getMinX() + random.nextInt((int) extent.getWidth());
-            double y = extent.getMinY() + random.nextInt((int) extent.getHeight());
-            if (extent.contains(x, y)) {
-                randomPoint.x = x;
-                randomPoint.y = y;
-                break;
-            }
-        }
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads assigning points to centers.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getMiniBatchSize() {
+        return miniBatchSize;
+    }
+
+    /**
+     * Sets the number of points sampled by each iteration of the mini-batch mode, 0 or less
+     * (the default) runs full iterations over every point.
+     */
+    public void setMiniBatchSize(int miniBatchSize) {
+        this.miniBatchSize = miniBatchSize;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
 
-        return randomPoint;
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
     }
 
     @Override
     public PointEvent[] cluster(int numClusters) {
-        boolean converged = false;
-        boolean dirty;
-        double distance;
-        double curMinDistance;
-        int loopCount = 0;
-        PointEvent point;
-
-        // randomly pick some points to be the centroids of the groups, for the first pass
+        final int size = points.length;
+        final int threads = parallelism <= 0 ? ParallelRange.getDefaultParallelism()
+                : parallelism;
+
+        double[] cx = new double[numClusters];
+        double[] cy = new double[numClusters];
+        if (size > 0) {
+            if (miniBatchSize > 0 && miniBatchSize < size) {
+                miniBatch(cx, cy, threads);
+            } else {
+                int[] all = new int[size];
+                for (int i = 0; i < size; i++) {
+                    all[i] = i;
+                }
+                seedCenters(all, cx, cy, threads, new SplitMix());
+                lloyd(cx, cy, threads);
+            }
+        }
+
         PointEvent[] means = new PointEvent[numClusters];
         for (int i = 0; i < numClusters; ++i) {
-            means[i] = getRandomPoint();
+            means[i] = new PointEvent(cx[i], cy[i]);
             means[i].cluster = i;
         }
 
-        // initialize data
-        double[] distances = new double[points.length];
-        Arrays.fill(distances, Double.MAX_VALUE);
-
-        double[] sumX = new double[numClusters];
-        double[] sumY = new double[numClusters];
-        int[] clusterSizes = new int[numClusters];
-
-        // main loop
-        while (!converged) {
-            dirty = false;
-
-            // compute which group each point is closest to
-            for (int i = 0; i < points.length; ++i) {
-                point = points[i];
-                curMinDistance = distances[i];
-                for (PointEvent mean : means) {
-                    distance = computeDistance(point, mean);
-                    if (distance < curMinDistance) {
-                        dirty = true;
-                        distances[i] = distance;
-                        curMinDistance = distance;
-                        point.cluster = mean.cluster;
+        return means;
+    }
+
+    /**
+     * k-means++ seeding over the given points: the first center is drawn uniformly, the next ones
+     * with a probability proportional to the squared distance to the nearest center so far.
+     */
+    private void seedCenters(final int[] candidates, final double[] cx, final double[] cy,
+            int threads, SplitMix random) {
+        final int count = candidates.length;
+        final int numClusters = cx.length;
+        final double[] nearest2 = new double[count];
+        Arrays.fill(nearest2, Double.POSITIVE_INFINITY);
+
+        final int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final double[] chunkSums = new double[chunks];
+
+        random.setSeed(seed, 0);
+        int first = candidates[random.nextInt(count)];
+        cx[0] = xs[first];
+        cy[0] = ys[first];
+
+        for (int c = 1; c < numClusters; c++) {
+            final double px = cx[c - 1];
+            final double py = cy[c - 1];
+            ParallelRange.execute(threads, chunks, 1, new ParallelRange.Task() {
+                @Override
+                public void compute(int start, int end) {
+                    for (int chunk = start; chunk < end; chunk++) {
+                        double sum = 0.0;
+                        int last = Math.min(count, (chunk + 1) * CHUNK_SIZE);
+                        for (int k = chunk * CHUNK_SIZE; k < last; k++) {
+                            double dx = xs[candidates[k]] - px;
+                            double dy = ys[candidates[k]] - py;
+                            nearest2[k] = Math.min(nearest2[k], (dx * dx) + (dy * dy));
+                            sum += nearest2[k];
+                        }
+                        chunkSums[chunk] = sum;
                     }
                 }
+            });
+
+            double total = 0.0;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                total += chunkSums[chunk];
+            }
+
+            int picked;
+            if (total > 0) {
+                // find the chunk holding the draw, then the point within the chunk
+                double target = random.nextDouble() * total;
+                int chunk = 0;
+                while (chunk < chunks - 1 && target >= chunkSums[chunk]) {
+                    target -= chunkSums[chunk++];
+                }
+                int last = Math.min(count, (chunk + 1) * CHUNK_SIZE);
+                picked = last - 1;
+                for (int k = chunk * CHUNK_SIZE; k < last; k++) {
+                    if (target < nearest2[k]) {
+                        picked = k;
+                        break;
+                    }
+                    target -= nearest2[k];
+                }
+            } else {
+                // fewer distinct points than clusters
+                picked = random.nextInt(count);
+            }
+
+            cx[c] = xs[candidates[picked]];
+            cy[c] = ys[candidates[picked]];
+        }
+    }
+
+    private void lloyd(final double[] cx, final double[] cy, int threads) {
+        final int size = points.length;
+        final int numClusters = cx.length;
+        final int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        final int[] assignments = new int[size];
+        final double[] upper = new double[size];
+        final double[] lower = new double[size];
+        Arrays.fill(upper, Double.POSITIVE_INFINITY);
+
+        final double[] halfGaps = new double[numClusters];
+        final double[] moved = new double[numClusters];
+        final int[] chunkChanges = new int[chunks];
+        final double[] sumX = new double[chunks * numClusters];
+        final double[] sumY = new double[chunks * numClusters];
+        final int[] counts = new int[chunks * numClusters];
+
+        for (int loopCount = 0; loopCount < maxIterations; loopCount++) {
+            // half the distance from every center to its closest other center
+            for (int j = 0; j < numClusters; j++) {
+                double gap = Double.POSITIVE_INFINITY;
+                for (int o = 0; o < numClusters; o++) {
+                    if (o != j) {
+                        gap = Math.min(gap, distance(cx[j], cy[j], cx[o], cy[o]));
+                    }
+                }
+                halfGaps[j] = gap / 2.0;
+            }
+
+            // compute which group each point is closest to, where the bounds can not tell
+            ParallelRange.execute(threads, chunks, 1, new ParallelRange.Task() {
+                @Override
+                public void compute(int start, int end) {
+                    for (int chunk = start; chunk < end; chunk++) {
+                        int changes = 0;
+                        int last = Math.min(size, (chunk + 1) * CHUNK_SIZE);
+                        for (int i = chunk * CHUNK_SIZE; i < last; i++) {
+                            if (assign(i, cx, cy, assignments, upper, lower, halfGaps)) {
+                                changes++;
+                            }
+                        }
+                        chunkChanges[chunk] = changes;
+                    }
+                }
+            });
+
+            int changes = 0;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                changes += chunkChanges[chunk];
             }
 
             // if we did no work, break early (greedy algorithm has converged)
-            if (!dirty) {
-                converged = true;
+            if (changes == 0 && loopCount > 0) {
                 break;
             }
 
             // compute the new centroids of the groups, since contents have changed
-            for (int i = 0; i < numClusters; ++i) {
-                sumX[i] = sumY[i] = clusterSizes[i] = 0;
-            }
+            ParallelRange.execute(threads, chunks, 1, new ParallelRange.Task() {
+                @Override
+                public void compute(int start, int end) {
+                    for (int chunk = start; chunk < end; chunk++) {
+                        int offset = chunk * numClusters;
+                        Arrays.fill(sumX, offset, offset + numClusters, 0.0);
+                        Arrays.fill(sumY, offset, offset + numClusters, 0.0);
+                        Arrays.fill(counts, offset, offset + numClusters, 0);
+                        int last = Math.min(size, (chunk + 1) * CHUNK_SIZE);
+                        for (int i = chunk * CHUNK_SIZE; i < last; i++) {
+                            sumX[offset + assignments[i]] += xs[i];
+                            sumY[offset + assignments[i]] += ys[i];
+                            counts[offset + assignments[i]]++;
+                        }
+                    }
+                }
+            });
+
+            boolean[] taken = null;
+            for (int j = 0; j < numClusters; j++) {
+                double x = 0.0;
+                double y = 0.0;
+                long count = 0;
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    x += sumX[(chunk * numClusters) + j];
+                    y += sumY[(chunk * numClusters) + j];
+                    count += counts[(chunk * numClusters) + j];
+                }
 
-            for (int i = 0; i < points.length; ++i) {
-                point = points[i];
-                sumX[point.cluster] += point.x;
-                sumY[point.cluster] += point.y;
-                clusterSizes[point.cluster] += 1;
+                double newX;
+                double newY;
+                if (count > 0) {
+                    newX = x / count;
+                    newY = y / count;
+                } else {
+                    // no points were associated with this cluster, move it to the point
+                    // that is likely the farthest from its center
+                    if (taken == null) {
+                        taken = new boolean[size];
+                    }
+                    int farthest = -1;
+                    for (int i = 0; i < size; i++) {
+                        if (!taken[i] && (farthest == -1 || upper[i] > upper[farthest])) {
+                            farthest = i;
+                        }
+                    }
+                    if (farthest == -1) {
+                        newX = cx[j]; // more clusters than points
+                        newY = cy[j];
+                    } else {
+                        taken[farthest] = true;
+                        newX = xs[farthest];
+                        newY = ys[farthest];
+                    }
+                }
+
+                moved[j] = distance(cx[j], cy[j], newX, newY);
+                cx[j] = newX;
+                cy[j] = newY;
             }
 
-            for (int i = 0; i < numClusters; ++i) {
-                try {
-                    means[i].x = sumX[i] / clusterSizes[i];
-                    means[i].y = sumY[i] / clusterSizes[i];
-                } catch (ArithmeticException e) {
-                    // means a Divide-By-Zero error, b/c no points were associated with this
-                    // cluster.
-                    // rare, so reset the cluster to have a new random center
-                    PointEvent p = getRandomPoint();
-                    means[i].x = p.x;
-                    means[i].y = p.y;
+            // loosen the bounds by the moves of the centers
+            int farthestMove = 0;
+            for (int j = 1; j < numClusters; j++) {
+                if (moved[j] > moved[farthestMove]) {
+                    farthestMove = j;
+                }
+            }
+            double secondMove = 0.0;
+            for (int j = 0; j < numClusters; j++) {
+                if (j != farthestMove) {
+                    secondMove = Math.max(secondMove, moved[j]);
                 }
             }
+            final int maxIndex = farthestMove;
+            final double maxMove = moved[farthestMove];
+            final double otherMove = secondMove;
+            ParallelRange.execute(threads, chunks, 1, new ParallelRange.Task() {
+                @Override
+                public void compute(int start, int end) {
+                    int last = Math.min(size, end * CHUNK_SIZE);
+                    for (int i = start * CHUNK_SIZE; i < last; i++) {
+                        upper[i] += moved[assignments[i]];
+                        lower[i] -= assignments[i] == maxIndex ? otherMove : maxMove;
+                    }
+                }
+            });
+        }
 
-            // bail out after at most MAX_LOOP_COUNT passes
-            loopCount++;
-            converged = converged || (loopCount > MAX_LOOP_COUNT);
+        for (int i = 0; i < size; i++) {
+            points[i].cluster = assignments[i];
         }
+    }
 
-        return means;
+    /**
+     * Updates the assignment of point i and returns true if it changed.
+     */
+    private boolean assign(int i, double[] cx, double[] cy, int[] assignments, double[] upper,
+            double[] lower, double[] halfGaps) {
+        int current = assignments[i];
+        double bound = Math.max(halfGaps[current], lower[i]);
+        if (upper[i] <= bound) {
+            return false;
+        }
+
+        upper[i] = distance(xs[i], ys[i], cx[current], cy[current]);
+        if (upper[i] <= bound) {
+            return false;
+        }
+
+        int closest = 0;
+        double first = Double.POSITIVE_INFINITY;
+        double second = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < cx.length; j++) {
+            double d = distance(xs[i], ys[i], cx[j], cy[j]);
+            if (d < first) {
+                second = first;
+                first = d;
+                closest = j;
+            } else if (d < second) {
+                second = d;
+            }
+        }
+
+        assignments[i] = closest;
+        upper[i] = first;
+        lower[i] = second;
+        return closest != current;
+    }
+
+    private void miniBatch(final double[] cx, final double[] cy, int threads) {
+        final int size = points.length;
+        final int numClusters = cx.length;
+        SplitMix random = new SplitMix();
+
+        // seed from a sample of the points, drawn from a stream of its own
+        int sampleSize = Math.min(size,
+                Math.max(miniBatchSize, SEED_SAMPLES_PER_CLUSTER * numClusters));
+        int[] sample = new int[sampleSize];
+        random.setSeed(seed, maxIterations + 1);
+        for (int k = 0; k < sampleSize; k++) {
+            sample[k] = random.nextInt(size);
+        }
+        seedCenters(sample, cx, cy, threads, random);
+
+        final int[] batch = new int[miniBatchSize];
+        final int[] nearest = new int[miniBatchSize];
+        final long[] counts = new long[numClusters];
+        for (int loopCount = 0; loopCount < maxIterations; loopCount++) {
+            random.setSeed(seed, loopCount + 1);
+            for (int k = 0; k < miniBatchSize; k++) {
+                batch[k] = random.nextInt(size);
+            }
+
+            final PointKdTree centers = new PointKdTree(cx, cy);
+            ParallelRange.execute(threads, miniBatchSize, new ParallelRange.Task() {
+                @Override
+                public void compute(int start, int end) {
+                    for (int k = start; k < end; k++) {
+                        nearest[k] = centers.nearest(xs[batch[k]], ys[batch[k]], -1,
+                                DistanceMethod.Euclidean);
+                    }
+                }
+            });
+
+            // gradient step with a per-center learning rate of 1 / points seen
+            for (int k = 0; k < miniBatchSize; k++) {
+                int c = nearest[k];
+                double eta = 1.0 / ++counts[c];
+                cx[c] += eta * (xs[batch[k]] - cx[c]);
+                cy[c] += eta * (ys[batch[k]] - cy[c]);
+            }
+        }
+
+        final PointKdTree centers = new PointKdTree(cx, cy);
+        ParallelRange.execute(threads, size, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    points[i].cluster = centers.nearest(xs[i], ys[i], -1,
+                            DistanceMethod.Euclidean);
+                }
+            }
+        });
     }
 
     /**
      * Computes the Cartesian distance between two points.
      */
-    private double computeDistance(PointEvent a, PointEvent b) {
-        double dx = a.x - b.x;
-        double dy = a.y - b.y;
+    private double distance(double x1, double y1, double x2, double y2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
         return Math.sqrt((dx * dx) + (dy * dy));
     }
 
     private void loadPoints(SimpleFeatureCollection pointFeatures, String weightField) {
-        this.extent = pointFeatures.getBounds();
-
         List<Cluster.PointEvent> ptList = new ArrayList<Cluster.PointEvent>();
-        SimpleFeatureIterator featureIter = featureIter = pointFeatures.features();
+        SimpleFeatureIterator featureIter = pointFeatures.features();
         try {
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
@@ -187,5 +498,12 @@ public class KMeansCluster implements Cluster {
 
         points = new PointEvent[ptList.size()];
         ptList.toArray(points);
+
+        xs = new double[points.length];
+        ys = new double[points.length];
+        for (int i = 0; i < points.length; i++) {
+            xs[i] = points[i].x;
+            ys[i] = points[i].y;
+        }
     }
 }
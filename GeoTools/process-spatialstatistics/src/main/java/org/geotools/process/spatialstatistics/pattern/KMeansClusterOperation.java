@@ -51,11 +51,58 @@ import com.vividsolutions.jts.geom.Polygon;
 public class KMeansClusterOperation extends GeneralOperation {
     protected static final Logger LOGGER = Logging.getLogger(KMeansClusterOperation.class);
 
-    public SimpleFeatureCollection execute(SimpleFeatureCollection features, String targetField,
-            int numClusters) throws IOException {
+    private long seed = 0;
+
+    private int miniBatchSize = 0;
+
+    private int parallelism = 1;
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the seed of the random draws, the same seed gives the same clusters.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getMiniBatchSize() {
+        return miniBatchSize;
+    }
+
+    /**
+     * Sets the number of points sampled by each iteration, 0 or less (the default) runs full
+     * iterations over every point.
+     */
+    public void setMiniBatchSize(int miniBatchSize) {
+        this.miniBatchSize = miniBatchSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads of the clustering.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    private KMeansCluster cluster(SimpleFeatureCollection features, int numClusters) {
         KMeansCluster cluster = new KMeansCluster(features);
+        cluster.setSeed(seed);
+        cluster.setMiniBatchSize(miniBatchSize);
+        cluster.setParallelism(parallelism);
         cluster.cluster(numClusters);
-        PointEvent[] originPoints = cluster.getPoints();
+        return cluster;
+    }
+
+    public SimpleFeatureCollection execute(SimpleFeatureCollection features, String targetField,
+            int numClusters) throws IOException {
+        PointEvent[] originPoints = cluster(features, numClusters).getPoints();
 
         SimpleFeatureType featureType = FeatureTypes.build(features, this.getOutputTypeName());
         featureType = FeatureTypes.add(featureType, targetField, Integer.class, 10);
@@ -80,9 +127,7 @@ public class KMeansClusterOperation extends GeneralOperation {
 
     public SimpleFeatureCollection executeAsCircle(SimpleFeatureCollection features,
             String targetField, int numClusters) throws IOException {
-        KMeansCluster cluster = new KMeansCluster(features);
-        cluster.cluster(numClusters);
-        PointEvent[] originPoints = cluster.getPoints();
+        PointEvent[] originPoints = cluster(features, numClusters).getPoints();
 
         Hashtable<Integer, List<Geometry>> clusters = new Hashtable<Integer, List<Geometry>>();
         for (PointEvent cp : originPoints) {
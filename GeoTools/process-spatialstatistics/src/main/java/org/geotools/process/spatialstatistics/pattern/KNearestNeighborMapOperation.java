@@ -17,30 +17,38 @@
 package org.geotools.process.spatialstatistics.pattern;
 
 import java.io.IOException;
-import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.process.spatialstatistics.core.DistanceFactory;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
-import org.geotools.process.spatialstatistics.core.SpatialEvent;
+import org.geotools.process.spatialstatistics.core.MonotoneChainHull;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.PointKdTree;
+import org.geotools.process.spatialstatistics.core.PointKdTree.NeighborHeap;
+import org.geotools.process.spatialstatistics.core.SpatialEventStore;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.operations.GeneralOperation;
-import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
+import org.geotools.process.spatialstatistics.transformation.GXTSimpleFeatureCollection;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
-import com.vividsolutions.jts.algorithm.ConvexHull;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 
 /**
- * K-Nearest Neighbor Map - Spatial Clustering.
+ * K-Nearest Neighbor Map - Spatial Clustering. <br>
+ * The neighbors are found with a KD-tree, one batch of events at a time in parallel, and the
+ * lines are built while the result is read instead of being stored.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -51,15 +59,20 @@ public class KNearestNeighborMapOperation extends GeneralOperation {
 
     static String[] FIELDS = { "orig", "dest", "distance", "group" };
 
-    private Geometry getConvexHull(List<SpatialEvent> events) {
-        Coordinate[] coordinates = new Coordinate[events.size()];
-        for (int k = 0; k < events.size(); k++) {
-            SpatialEvent event = events.get(k);
-            coordinates[k] = new Coordinate(event.x, event.y);
-        }
+    // events queried together, bounds the neighbor buffers of an iterator
+    static final int BATCH_SIZE = 4096;
+
+    private int parallelism = 1;
 
-        ConvexHull cvxBuidler = new ConvexHull(coordinates, new GeometryFactory());
-        return cvxBuidler.getConvexHull();
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads searching nearest neighbors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
     }
 
     public SimpleFeatureCollection execute(SimpleFeatureCollection features, int neighbor,
@@ -71,68 +84,256 @@ public class KNearestNeighborMapOperation extends GeneralOperation {
         schema = FeatureTypes.add(schema, FIELDS[2], Double.class, 38);
         schema = FeatureTypes.add(schema, FIELDS[3], String.class, 20);
 
-        // 1. pre calculation
-        List<SpatialEvent> events = DistanceFactory.loadEvents(features, null);
-
-        // 2. build feature
-        int featureID = 1;
-        IFeatureInserter featureWriter = getFeatureWriter(schema);
-        try {
-            // k nearest neighbor = neighbor
-            SortedMap<Double, SpatialEvent> map = new TreeMap<Double, SpatialEvent>();
-            for (SpatialEvent start : events) {
-                map.clear();
-                for (SpatialEvent end : events) {
-                    if (end.oid == start.oid) {
-                        continue;
-                    }
+        SpatialEventStore events = SpatialEventStore.load(features, null);
+        int threads = parallelism <= 0 ? ParallelRange.getDefaultParallelism() : parallelism;
+
+        return new KNearestNeighborFeatureCollection(features, schema, events,
+                Math.max(0, neighbor), convexHull, threads, gf);
+    }
+
+    static class KNearestNeighborFeatureCollection extends GXTSimpleFeatureCollection {
+        protected static final Logger LOGGER = Logging
+                .getLogger(KNearestNeighborFeatureCollection.class);
+
+        private SimpleFeatureType schema;
 
-                    double currentDist = start.getDistance(end);
-                    if (map.size() < neighbor) {
-                        map.put(currentDist, end);
-                    } else {
-                        if (map.lastKey() > currentDist) {
-                            map.put(currentDist, end);
-                            map.remove(map.lastKey());
+        private SpatialEventStore events;
+
+        private PointKdTree tree;
+
+        private int neighbor;
+
+        private boolean convexHull;
+
+        private int threads;
+
+        private GeometryFactory gf;
+
+        private int size = -1;
+
+        public KNearestNeighborFeatureCollection(SimpleFeatureCollection delegate,
+                SimpleFeatureType schema, SpatialEventStore events, int neighbor,
+                boolean convexHull, int threads, GeometryFactory gf) {
+            super(delegate);
+
+            this.schema = schema;
+            this.events = events;
+            this.tree = new PointKdTree(events.getXs(), events.getYs(), events.size());
+            this.neighbor = neighbor;
+            this.convexHull = convexHull;
+            this.threads = threads;
+            this.gf = gf;
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            return new KNearestNeighborFeatureIterator(this);
+        }
+
+        @Override
+        public SimpleFeatureType getSchema() {
+            return schema;
+        }
+
+        @Override
+        public ReferencedEnvelope getBounds() {
+            // every line and the hull lie within the extent of the events
+            ReferencedEnvelope bounds = new ReferencedEnvelope(
+                    schema.getCoordinateReferenceSystem());
+            double[] x = events.getXs();
+            double[] y = events.getYs();
+            for (int i = 0; i < events.size(); i++) {
+                bounds.expandToInclude(x[i], y[i]);
+            }
+            return bounds;
+        }
+
+        @Override
+        public int size() {
+            if (size < 0) {
+                // every event links to min(k, n - 1) neighbors, less the coincident ones
+                final int n = events.size();
+                Map<Coordinate, Integer> duplicates = new HashMap<Coordinate, Integer>();
+                for (int i = 0; i < n; i++) {
+                    Coordinate key = new Coordinate(events.getX(i), events.getY(i));
+                    Integer count = duplicates.get(key);
+                    duplicates.put(key, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+                }
+
+                int found = Math.min(neighbor, Math.max(0, n - 1));
+                int count = 0;
+                for (int i = 0; i < n; i++) {
+                    Coordinate key = new Coordinate(events.getX(i), events.getY(i));
+                    int coincident = duplicates.get(key).intValue() - 1;
+                    count += found - Math.min(found, coincident);
+                }
+                size = count + (createConvexHull() == null ? 0 : 1);
+            }
+            return size;
+        }
+
+        /**
+         * Writes the neighbors of the events [start, end) by ascending distance, neighbor slots
+         * per event, -1 marking an empty slot.
+         */
+        void query(final int start, final int end, final int[] nearest, final double[] distances) {
+            if (neighbor == 0) {
+                return;
+            }
+
+            final double[] x = events.getXs();
+            final double[] y = events.getYs();
+            ParallelRange.execute(threads, end - start, new ParallelRange.Task() {
+                @Override
+                public void compute(int lo, int hi) {
+                    NeighborHeap heap = new NeighborHeap(neighbor);
+                    for (int i = start + lo; i < start + hi; i++) {
+                        tree.nearest(x[i], y[i], i, DistanceMethod.Euclidean, heap);
+                        heap.sort();
+
+                        int offset = (i - start) * neighbor;
+                        for (int k = 0; k < neighbor; k++) {
+                            if (k < heap.size()) {
+                                nearest[offset + k] = heap.getIndex(k);
+                                distances[offset + k] = heap.getDistance(k);
+                            } else {
+                                nearest[offset + k] = -1;
+                                distances[offset + k] = 0;
+                            }
                         }
                     }
                 }
+            });
+        }
 
-                // build line
-                for (SpatialEvent nearest : map.values()) {
-                    Geometry line = gf.createLineString(new Coordinate[] { start.getCoordinate(),
-                            nearest.getCoordinate() });
-                    double distance = line.getLength();
-                    if (distance == 0) {
+        /**
+         * Returns the boundary of the convex hull of the events, or null if not requested or if
+         * the events do not span a line.
+         */
+        Geometry createConvexHull() {
+            if (!convexHull) {
+                return null;
+            }
+
+            MonotoneChainHull hull = new MonotoneChainHull(events.getXs(), events.getYs(),
+                    events.size());
+            int count = hull.size();
+            if (count < 2) {
+                return null;
+            } else if (count == 2) {
+                return gf.createLineString(new Coordinate[] {
+                        new Coordinate(hull.getX(0), hull.getY(0)),
+                        new Coordinate(hull.getX(1), hull.getY(1)) });
+            }
+
+            Coordinate[] coordinates = new Coordinate[count + 1];
+            for (int k = 0; k < count; k++) {
+                coordinates[k] = new Coordinate(hull.getX(k), hull.getY(k));
+            }
+            coordinates[count] = new Coordinate(coordinates[0]);
+            return gf.createLinearRing(coordinates);
+        }
+
+        static class KNearestNeighborFeatureIterator implements SimpleFeatureIterator {
+            private KNearestNeighborFeatureCollection collection;
+
+            private SimpleFeatureBuilder builder;
+
+            private int[] nearest;
+
+            private double[] distances;
+
+            // first event of the current batch and the next neighbor slot to read
+            private int batchStart = 0;
+
+            private int batchEnd = 0;
+
+            private int slot = 0;
+
+            private boolean hullDone = false;
+
+            private SimpleFeature next = null;
+
+            private int featureID = 1;
+
+            public KNearestNeighborFeatureIterator(KNearestNeighborFeatureCollection collection) {
+                this.collection = collection;
+                this.builder = new SimpleFeatureBuilder(collection.getSchema());
+
+                int capacity = Math.min(BATCH_SIZE, collection.events.size())
+                        * collection.neighbor;
+                this.nearest = new int[capacity];
+                this.distances = new double[capacity];
+            }
+
+            @Override
+            public void close() {
+                // nothing to do
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (next != null) {
+                    return true;
+                }
+
+                final SpatialEventStore events = collection.events;
+                final int neighbor = collection.neighbor;
+                while (neighbor > 0 && batchStart < events.size()) {
+                    if (slot == (batchEnd - batchStart) * neighbor) {
+                        batchStart = batchEnd;
+                        if (batchStart >= events.size()) {
+                            break;
+                        }
+                        batchEnd = Math.min(events.size(), batchStart + BATCH_SIZE);
+                        collection.query(batchStart, batchEnd, nearest, distances);
+                        slot = 0;
+                        continue;
+                    }
+
+                    int k = slot++;
+                    int end = nearest[k];
+                    double distance = distances[k];
+                    if (end < 0 || distance == 0) {
                         continue;
                     }
-                    SimpleFeature newFeature = featureWriter.buildFeature(Integer
-                            .toString(featureID++));
-                    newFeature.setDefaultGeometry(line);
-                    newFeature.setAttribute(FIELDS[0], start.oid);
-                    newFeature.setAttribute(FIELDS[1], nearest.oid);
-                    newFeature.setAttribute(FIELDS[2], distance);
-                    newFeature.setAttribute(FIELDS[3], "Nearest");
-                    featureWriter.write(newFeature);
+
+                    int start = batchStart + (k / neighbor);
+                    Geometry line = collection.gf.createLineString(new Coordinate[] {
+                            new Coordinate(events.getX(start), events.getY(start)),
+                            new Coordinate(events.getX(end), events.getY(end)) });
+
+                    next = builder.buildFeature(Integer.toString(featureID++));
+                    next.setDefaultGeometry(line);
+                    next.setAttribute(FIELDS[0], events.getOid(start));
+                    next.setAttribute(FIELDS[1], events.getOid(end));
+                    next.setAttribute(FIELDS[2], distance);
+                    next.setAttribute(FIELDS[3], "Nearest");
+                    return true;
                 }
+
+                if (!hullDone) {
+                    hullDone = true;
+                    Geometry boundary = collection.createConvexHull();
+                    if (boundary != null) {
+                        next = builder.buildFeature(Integer.toString(featureID++));
+                        next.setDefaultGeometry(boundary);
+                        next.setAttribute(FIELDS[3], "ConvexHull");
+                        return true;
+                    }
+                }
+                return false;
             }
 
-            // convexhull
-            if (convexHull) {
-                Geometry convexHullGeom = getConvexHull(events);
-                SimpleFeature newFeature = featureWriter
-                        .buildFeature(Integer.toString(featureID++));
-                newFeature.setDefaultGeometry(convexHullGeom.getBoundary());
-                newFeature.setAttribute(FIELDS[3], "ConvexHull");
-                featureWriter.write(newFeature);
+            @Override
+            public SimpleFeature next() throws NoSuchElementException {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("hasNext() returned false!");
+                }
+                SimpleFeature result = next;
+                next = null;
+                return result;
             }
-        } catch (Exception e) {
-            featureWriter.rollback(e);
-        } finally {
-            featureWriter.close();
         }
-
-        return featureWriter.getFeatureCollection();
     }
-
 }
@@ -21,22 +21,27 @@ import java.util.List;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.process.spatialstatistics.core.DistanceFactory;
 import org.geotools.process.spatialstatistics.core.FormatUtils;
+import org.geotools.process.spatialstatistics.core.MonotoneChainHull;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.PointKdTree;
 import org.geotools.process.spatialstatistics.core.SSUtils;
 import org.geotools.process.spatialstatistics.core.SSUtils.StatEnum;
 import org.geotools.process.spatialstatistics.core.SpatialEvent;
+import org.geotools.process.spatialstatistics.core.SpatialEventStore;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.operations.GeneralOperation;
 import org.geotools.util.logging.Logging;
 
-import com.vividsolutions.jts.algorithm.ConvexHull;
-import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.GeometryFactory;
-
 /**
  * Calculates a nearest neighbor index based on the average distance from each feature to its nearest neighboring feature.
+ * <br>
+ * Nearest neighbors are found with a KD-tree, in parallel, and the default study area is the area
+ * of the convex hull of the features. The edge-corrected variant uses Donnelly's expected mean
+ * distance and standard error, which account for the perimeter of the study area.
+ * 
+ * @reference Donnelly, K. (1978) Simulations to determine the variance and edge-effect of total
+ *            nearest neighbour distance. In Hodder, I. (ed.) Simulation Methods in Archaeology.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -45,14 +50,21 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 public class NNIOperation extends GeneralOperation {
     protected static final Logger LOGGER = Logging.getLogger(NNIOperation.class);
 
-    private final DistanceFactory factory = DistanceFactory.newInstance();
+    // number of features of a parallel chunk
+    static final int CHUNK_SIZE = 4096;
 
     private DistanceMethod distanceMethod = DistanceMethod.Euclidean;
 
+    private boolean edgeCorrection = false;
+
+    private int parallelism = 1;
+
     private int featureCount = 0;
 
     private double studyArea = 0;
 
+    private double studyPerimeter = 0;
+
     private double observedMeanDist = 0;
 
     private String typeName = "Average Nearest Neighbor Ratio";
@@ -61,17 +73,35 @@ public class NNIOperation extends GeneralOperation {
         this.distanceMethod = distanceMethod;
     }
 
-    public double getConvexHullArea(List<SpatialEvent> srcEvents) {
-        Coordinate[] coordinates = new Coordinate[srcEvents.size()];
-        for (int k = 0; k < srcEvents.size(); k++) {
-            SpatialEvent srcEvent = srcEvents.get(k);
-            coordinates[k] = new Coordinate(srcEvent.x, srcEvent.y);
-        }
+    public boolean isEdgeCorrection() {
+        return edgeCorrection;
+    }
 
-        ConvexHull cbxBuidler = new ConvexHull(coordinates, new GeometryFactory());
-        Geometry convexHull = cbxBuidler.getConvexHull();
+    /**
+     * Sets whether the expected mean distance and the standard error are corrected for the edge
+     * of the study area. With a given study area, the area is taken as a square.
+     */
+    public void setEdgeCorrection(boolean edgeCorrection) {
+        this.edgeCorrection = edgeCorrection;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
 
-        return convexHull.getArea();
+    /**
+     * Sets the number of threads searching nearest neighbors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public double getConvexHullArea(List<SpatialEvent> srcEvents) {
+        return getConvexHullArea(SpatialEventStore.fromEvents(srcEvents));
+    }
+
+    public double getConvexHullArea(SpatialEventStore events) {
+        return new MonotoneChainHull(events.getXs(), events.getYs(), events.size()).getArea();
     }
 
     public NearestNeighborResult execute(SimpleFeatureCollection features) {
@@ -80,34 +110,68 @@ public class NNIOperation extends GeneralOperation {
 
     public NearestNeighborResult execute(SimpleFeatureCollection features, double studyArea) {
         typeName = features.getSchema().getTypeName();
-        return execute(DistanceFactory.loadEvents(features, null), studyArea);
+        return execute(SpatialEventStore.load(features, null), studyArea);
     }
 
     public NearestNeighborResult execute(List<SpatialEvent> events, double studyArea) {
-        observedMeanDist = 0.0;
+        return execute(SpatialEventStore.fromEvents(events), studyArea);
+    }
 
-        factory.DistanceType = distanceMethod;
+    public NearestNeighborResult execute(SpatialEventStore events, double studyArea) {
+        observedMeanDist = 0.0;
 
         featureCount = events.size();
         if (studyArea == 0) {
-            this.studyArea = getConvexHullArea(events);
+            MonotoneChainHull hull = new MonotoneChainHull(events.getXs(), events.getYs(),
+                    featureCount);
+            this.studyArea = hull.getArea();
+            this.studyPerimeter = hull.getPerimeter();
         } else {
             this.studyArea = studyArea;
+            this.studyPerimeter = 4.0 * Math.sqrt(studyArea);
         }
 
-        double minDistance = 0.0;
-        double sumNearestDist = 0.0;
-
-        for (SpatialEvent curEvent : events) {
-            minDistance = factory.getMinimumDistance(events, curEvent);
-            sumNearestDist += minDistance;
-        }
-
-        observedMeanDist = sumNearestDist / (featureCount * 1.0);
+        observedMeanDist = sumNearestDistances(events) / (featureCount * 1.0);
 
         return buildResult();
     }
 
+    private double sumNearestDistances(SpatialEventStore events) {
+        final double[] x = events.getXs();
+        final double[] y = events.getYs();
+        final PointKdTree spatialIndex = events.buildSpatialIndex();
+
+        final int chunks = (featureCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final double[] chunkSums = new double[chunks];
+        int threads = parallelism <= 0 ? ParallelRange.getDefaultParallelism() : parallelism;
+        ParallelRange.execute(threads, chunks, 1, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                for (int chunk = start; chunk < end; chunk++) {
+                    double sum = 0.0;
+                    int last = Math.min(featureCount, (chunk + 1) * CHUNK_SIZE);
+                    for (int i = chunk * CHUNK_SIZE; i < last; i++) {
+                        int j = spatialIndex.nearest(x[i], y[i], i, distanceMethod);
+                        if (j == -1) {
+                            sum = Double.POSITIVE_INFINITY; // a single feature
+                        } else {
+                            sum += PointKdTree.distance(x[i], y[i], x[j], y[j],
+                                    distanceMethod);
+                        }
+                    }
+                    chunkSums[chunk] = sum;
+                }
+            }
+        });
+
+        // chunk order keeps the sum independent of the number of threads
+        double sumNearestDist = 0.0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            sumNearestDist += chunkSums[chunk];
+        }
+        return sumNearestDist;
+    }
+
     private NearestNeighborResult buildResult() {
         double nearestNeighborIndex = 0;
         double expectedMeanDist = 0;
@@ -125,11 +189,18 @@ public class NNIOperation extends GeneralOperation {
             // ArcGIS & CrimeStat
             // expectedMeanDist = 1.0 / (2.0 * ((N / studyArea)**0.5))
             expectedMeanDist = 0.5 * Math.sqrt(studyArea / featureCount);
-            nearestNeighborIndex = observedMeanDist / expectedMeanDist;
             // double variance = (1.0 / Math.PI - 0.25) * studyArea / Math.pow(N, 2.0);
             // standardError = 0.26136 / ((N**2.0 / studyArea)**0.5)
             standardError = Math.sqrt(((4 - Math.PI) * studyArea)
                     / (4 * Math.PI * featureCount * featureCount));
+            if (edgeCorrection) {
+                // Donnelly
+                final double n = featureCount;
+                expectedMeanDist += (0.0514 + (0.041 / Math.sqrt(n))) * (studyPerimeter / n);
+                standardError = Math.sqrt((0.0703 * studyArea / (n * n))
+                        + (0.037 * studyPerimeter * Math.sqrt(studyArea / Math.pow(n, 5.0))));
+            }
+            nearestNeighborIndex = observedMeanDist / expectedMeanDist;
             zScore = (observedMeanDist - expectedMeanDist) / standardError;
             pValue = SSUtils.zProb(zScore, StatEnum.BOTH);
         }
@@ -0,0 +1,390 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2014, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.spatialstatistics.pattern;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.process.spatialstatistics.core.ConditionalPermutation;
+import org.geotools.process.spatialstatistics.core.ConditionalPermutation.SplitMix;
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.geotools.process.spatialstatistics.core.PointKdTree;
+import org.geotools.process.spatialstatistics.core.SpatialEventStore;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+import org.geotools.process.spatialstatistics.operations.GeneralOperation;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Ripley's K function, reported as its square root transformation L(d), over a series of
+ * increasing distance bands. <br>
+ * The pairs within the largest band are found with the KD-tree and each pair is counted in the
+ * first band that contains it, so one cumulative sweep over the bands gives every K(d). With edge
+ * correction, each pair is weighted by the translation correction of the study area, the extent
+ * of the features. The confidence envelope is the range of L(d) over point sets placed at random
+ * in the same extent, each drawn from its own stream of the seed.
+ * 
+ * @author Minpa Lee, MangoSystem
+ * 
+ * @source $URL$
+ */
+public class RipleysKOperation extends GeneralOperation {
+    protected static final Logger LOGGER = Logging.getLogger(RipleysKOperation.class);
+
+    static final int DEFAULT_NUMBER_OF_BANDS = 10;
+
+    // events whose pairs are counted into one partial sum
+    static final int CHUNK_SIZE = 1024;
+
+    private int numberOfBands = DEFAULT_NUMBER_OF_BANDS;
+
+    private double beginDistance = 0.0;
+
+    private double distanceIncrement = 0.0;
+
+    private boolean edgeCorrection = false;
+
+    private int permutations = 0;
+
+    private long seed = ConditionalPermutation.DEFAULT_SEED;
+
+    private int parallelism = 1;
+
+    public int getNumberOfBands() {
+        return numberOfBands;
+    }
+
+    public void setNumberOfBands(int numberOfBands) {
+        this.numberOfBands = numberOfBands;
+    }
+
+    public double getBeginDistance() {
+        return beginDistance;
+    }
+
+    /**
+     * Sets the first distance band, 0 (the default) uses the distance increment.
+     */
+    public void setBeginDistance(double beginDistance) {
+        this.beginDistance = beginDistance;
+    }
+
+    public double getDistanceIncrement() {
+        return distanceIncrement;
+    }
+
+    /**
+     * Sets the distance between two bands, 0 (the default) divides a quarter of the longer side
+     * of the extent by the number of bands.
+     */
+    public void setDistanceIncrement(double distanceIncrement) {
+        this.distanceIncrement = distanceIncrement;
+    }
+
+    public boolean isEdgeCorrection() {
+        return edgeCorrection;
+    }
+
+    /**
+     * Sets whether every pair is weighted by the inverse of the share of the study area in which
+     * it could be observed (translation correction).
+     */
+    public void setEdgeCorrection(boolean edgeCorrection) {
+        this.edgeCorrection = edgeCorrection;
+    }
+
+    public int getPermutations() {
+        return permutations;
+    }
+
+    /**
+     * Sets the number of random point sets building the confidence envelope, 0 for none.
+     */
+    public void setPermutations(int permutations) {
+        this.permutations = permutations;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the seed of the random point sets, the same seed gives the same envelope.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads counting pairs and simulating point sets.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public RipleysK execute(SimpleFeatureCollection inputFeatures) throws IOException {
+        SpatialEventStore events = SpatialEventStore.load(inputFeatures, null);
+        final int size = events.size();
+        final int threads = parallelism <= 0 ? ParallelRange.getDefaultParallelism()
+                : parallelism;
+
+        final ReferencedEnvelope extent = new ReferencedEnvelope(inputFeatures.getSchema()
+                .getCoordinateReferenceSystem());
+        for (int i = 0; i < size; i++) {
+            extent.expandToInclude(events.getX(i), events.getY(i));
+        }
+
+        final double[] bands = buildDistanceBands(extent);
+        double[] observed = computeL(events.getXs(), events.getYs(), size, extent, bands, threads);
+
+        // confidence envelope, one random point set per task
+        double[] lower = new double[bands.length];
+        double[] upper = new double[bands.length];
+        Arrays.fill(lower, Double.NaN);
+        Arrays.fill(upper, Double.NaN);
+        if (permutations > 0 && size > 1 && extent.getArea() > 0) {
+            final double[][] simulated = new double[permutations][];
+            ParallelRange.execute(threads, permutations, 1, new ParallelRange.Task() {
+                @Override
+                public void compute(int start, int end) {
+                    SplitMix random = new SplitMix();
+                    double[] xs = new double[size];
+                    double[] ys = new double[size];
+                    for (int s = start; s < end; s++) {
+                        random.setSeed(seed, s);
+                        for (int i = 0; i < size; i++) {
+                            xs[i] = extent.getMinX() + random.nextDouble() * extent.getWidth();
+                            ys[i] = extent.getMinY() + random.nextDouble() * extent.getHeight();
+                        }
+                        simulated[s] = computeL(xs, ys, size, extent, bands, 1);
+                    }
+                }
+            });
+
+            Arrays.fill(lower, Double.POSITIVE_INFINITY);
+            Arrays.fill(upper, Double.NEGATIVE_INFINITY);
+            for (double[] values : simulated) {
+                for (int b = 0; b < bands.length; b++) {
+                    lower[b] = Math.min(lower[b], values[b]);
+                    upper[b] = Math.max(upper[b], values[b]);
+                }
+            }
+        }
+
+        return new RipleysK(bands, observed, lower, upper);
+    }
+
+    private double[] buildDistanceBands(ReferencedEnvelope extent) {
+        int count = Math.max(1, numberOfBands);
+
+        double increment = distanceIncrement;
+        if (increment <= 0 || Double.isNaN(increment)) {
+            double maxSide = extent.isNull() ? 0.0 : Math.max(extent.getWidth(),
+                    extent.getHeight());
+            increment = (maxSide * 0.25) / count;
+        }
+
+        double begin = beginDistance;
+        if (begin <= 0 || Double.isNaN(begin)) {
+            begin = increment;
+        }
+
+        double[] bands = new double[count];
+        for (int b = 0; b < count; b++) {
+            bands[b] = begin + (b * increment);
+        }
+        return bands;
+    }
+
+    /**
+     * Returns L(d) = sqrt(K(d) / pi) of every band, with K(d) = A / (n (n - 1)) times the sum of
+     * the pair weights within d over ordered pairs.
+     */
+    double[] computeL(final double[] xs, final double[] ys, final int size,
+            ReferencedEnvelope extent, final double[] bands, int threads) {
+        final double width = extent.isNull() ? 0.0 : extent.getWidth();
+        final double height = extent.isNull() ? 0.0 : extent.getHeight();
+        final double area = width * height;
+
+        double[] values = new double[bands.length];
+        if (size < 2 || area <= 0) {
+            Arrays.fill(values, Double.NaN);
+            return values;
+        }
+
+        final PointKdTree spatialIndex = new PointKdTree(xs, ys, size);
+        final double maxBand = bands[bands.length - 1];
+        final boolean corrected = edgeCorrection;
+
+        // weights of the unordered pairs by first band, one partial per chunk of events
+        final int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final double[][] partials = new double[chunks][];
+        ParallelRange.execute(threads, chunks, 1, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                for (int c = start; c < end; c++) {
+                    PairCounter counter = new PairCounter(xs, ys, bands, corrected ? area
+                            : 0.0, width, height);
+                    int last = Math.min(size, (c + 1) * CHUNK_SIZE);
+                    for (int i = c * CHUNK_SIZE; i < last; i++) {
+                        counter.origin = i;
+                        spatialIndex.query(xs[i], ys[i], maxBand, DistanceMethod.Euclidean,
+                                counter);
+                    }
+                    partials[c] = counter.counts;
+                }
+            }
+        });
+
+        // cumulative sweep over the bands
+        final double factor = 2.0 * area / (size * (size - 1.0));
+        double cumulative = 0.0;
+        for (int b = 0; b < bands.length; b++) {
+            for (int c = 0; c < chunks; c++) {
+                cumulative += partials[c][b];
+            }
+            values[b] = Math.sqrt((factor * cumulative) / Math.PI);
+        }
+        return values;
+    }
+
+    /**
+     * Adds the weight of every unordered pair to the first band containing it. With a positive
+     * area, a pair is weighted by the area over the overlap of the extent with itself shifted by
+     * the pair offset.
+     */
+    static final class PairCounter implements PointKdTree.Visitor {
+        private final double[] xs;
+
+        private final double[] ys;
+
+        private final double[] bands;
+
+        private final double area;
+
+        private final double width;
+
+        private final double height;
+
+        final double[] counts;
+
+        int origin;
+
+        PairCounter(double[] xs, double[] ys, double[] bands, double area, double width,
+                double height) {
+            this.xs = xs;
+            this.ys = ys;
+            this.bands = bands;
+            this.area = area;
+            this.width = width;
+            this.height = height;
+            this.counts = new double[bands.length];
+        }
+
+        @Override
+        public void visit(int index, double distance) {
+            if (index <= origin) {
+                return; // each pair once, never the event itself
+            }
+
+            double weight = 1.0;
+            if (area > 0) {
+                double overlap = (width - Math.abs(xs[origin] - xs[index]))
+                        * (height - Math.abs(ys[origin] - ys[index]));
+                if (overlap > 0) {
+                    weight = area / overlap;
+                }
+            }
+
+            int pos = Arrays.binarySearch(bands, distance);
+            if (pos < 0) {
+                pos = -pos - 1;
+            } else {
+                // first of equal bands
+                while (pos > 0 && bands[pos - 1] == distance) {
+                    pos--;
+                }
+            }
+            counts[pos] += weight;
+        }
+    }
+
+    public static final class RipleysK {
+
+        double[] distances;
+
+        double[] observed;
+
+        double[] lowerEnvelope;
+
+        double[] upperEnvelope;
+
+        public RipleysK(double[] distances, double[] observed, double[] lowerEnvelope,
+                double[] upperEnvelope) {
+            this.distances = distances;
+            this.observed = observed;
+            this.lowerEnvelope = lowerEnvelope;
+            this.upperEnvelope = upperEnvelope;
+        }
+
+        public int getBandCount() {
+            return distances.length;
+        }
+
+        public double getDistance(int band) {
+            return distances[band];
+        }
+
+        /**
+         * Returns the expected L(d) of a random pattern, the distance itself.
+         */
+        public double getExpectedL(int band) {
+            return distances[band];
+        }
+
+        public double getObservedL(int band) {
+            return observed[band];
+        }
+
+        /**
+         * Returns L(d) - d: positive values indicate clustering, negative values dispersion.
+         */
+        public double getDifference(int band) {
+            return observed[band] - distances[band];
+        }
+
+        /**
+         * Returns the lowest simulated L(d), NaN without permutations.
+         */
+        public double getLowerEnvelope(int band) {
+            return lowerEnvelope[band];
+        }
+
+        /**
+         * Returns the highest simulated L(d), NaN without permutations.
+         */
+        public double getUpperEnvelope(int band) {
+            return upperEnvelope[band];
+        }
+    }
+}
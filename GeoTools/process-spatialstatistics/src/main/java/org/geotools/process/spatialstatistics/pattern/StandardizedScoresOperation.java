@@ -17,14 +17,12 @@
 package org.geotools.process.spatialstatistics.pattern;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.logging.Logger;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.process.spatialstatistics.core.FeatureTypes;
-import org.geotools.process.spatialstatistics.core.SpatialEvent;
+import org.geotools.process.spatialstatistics.core.FieldMoments;
 import org.geotools.process.spatialstatistics.operations.GeneralOperation;
 import org.geotools.process.spatialstatistics.storage.IFeatureInserter;
 import org.geotools.util.logging.Logging;
@@ -32,11 +30,10 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.expression.Expression;
 
-import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Geometry;
-
 /**
- * Calculates a Standardized Score of Dissimilarity.
+ * Calculates a Standardized Score of Dissimilarity. <br>
+ * The totals and the spread of the differences of shares are taken from the moments of one pass
+ * over the features, so each score costs constant time in the second pass.
  * 
  * @author Minpa Lee, MangoSystem
  * 
@@ -45,41 +42,6 @@ import com.vividsolutions.jts.geom.Geometry;
 public class StandardizedScoresOperation extends GeneralOperation {
     protected static final Logger LOGGER = Logging.getLogger(StandardizedScoresOperation.class);
 
-    private int count = 0;
-
-    private double X = 0;
-
-    private double Y = 0;
-
-    private List<SpatialEvent> events = new ArrayList<SpatialEvent>();
-
-    private void preCalculate(SimpleFeatureCollection features, Expression xExpression,
-            Expression yExpression) {
-        int oid = 0;
-        SimpleFeatureIterator featureIter = features.features();
-        try {
-            while (featureIter.hasNext()) {
-                SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                Coordinate coordinate = geometry.getCentroid().getCoordinate();
-
-                Double xVal = xExpression.evaluate(feature, Double.class);
-                Double yVal = yExpression.evaluate(feature, Double.class);
-                if (xVal == null || yVal == null) {
-                    continue;
-                }
-
-                count += 1;
-                X += xVal;
-                Y += yVal;
-
-                events.add(new SpatialEvent(oid++, coordinate, xVal, yVal));
-            }
-        } finally {
-            featureIter.close();
-        }
-    }
-
     public SimpleFeatureCollection execute(SimpleFeatureCollection features, String xField,
             String yField, String targetField) throws IOException {
         xField = FeatureTypes.validateProperty(features.getSchema(), xField);
@@ -97,7 +59,15 @@ public class StandardizedScoresOperation extends GeneralOperation {
         schema = FeatureTypes.add(schema, targetField, Double.class);
 
         // 1. pre calculation
-        preCalculate(features, xExpression, yExpression);
+        FieldMoments moments = FieldMoments.scan(features, xExpression, yExpression);
+        final double X = moments.getSumX();
+        final double Y = moments.getSumY();
+
+        // mean of (x / X - y / Y)^2, the shares differences summing to zero
+        double dZSum = ((moments.getSigmaX() / (X * X))
+                - (2.0 * moments.getSigmaXY() / (X * Y)) + (moments.getSigmaY() / (Y * Y)))
+                / moments.getCount();
+        final double dZ = Math.sqrt(Math.max(0.0, dZSum));
 
         // 2. calculate standardized scores
         IFeatureInserter featureWriter = getFeatureWriter(schema);
@@ -110,17 +80,7 @@ public class StandardizedScoresOperation extends GeneralOperation {
 
                 Double stdscr = null;
                 if (xVal != null && yVal != null) {
-                    double XX = xVal / X;
-                    double YY = yVal / Y;
-
-                    double dZSum = 0.0d;
-                    for (SpatialEvent curE : events) {
-                        double xx = curE.weight / X;
-                        double yy = curE.population / Y;
-                        double dZ = Math.pow(xx - yy, 2) / count;
-                        dZSum += dZ;
-                    }
-                    stdscr = (XX - YY) / Math.sqrt(dZSum);
+                    stdscr = ((xVal / X) - (yVal / Y)) / dZ;
                 }
 
                 // create & insert feature
@@ -0,0 +1,118 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.Random;
+
+import org.geotools.process.spatialstatistics.core.CentralFeatureKernel;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CentralFeatureKernelTest extends SpatialStatisticsTestCase {
+
+    double[] x;
+
+    double[] y;
+
+    double[] weights;
+
+    double[] potentials;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // two clusters, enough events for several blocks
+        Random random = new Random(5);
+        x = new double[2000];
+        y = new double[2000];
+        weights = new double[x.length];
+        potentials = new double[x.length];
+        for (int i = 0; i < x.length; i++) {
+            double offset = i % 3 == 0 ? 5000 : 0;
+            x[i] = offset + random.nextGaussian() * 1000;
+            y[i] = offset + random.nextGaussian() * 1000;
+            weights[i] = 1 + random.nextInt(10);
+            potentials[i] = random.nextDouble() * 100;
+        }
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        DistanceMethod[] methods = { DistanceMethod.Euclidean, DistanceMethod.Manhattan };
+        for (DistanceMethod method : methods) {
+            int expected = bruteForce(weights, potentials, method);
+            for (int threads : new int[] { 1, 3, 0 }) {
+                CentralFeatureKernel kernel = new CentralFeatureKernel(x, y, weights,
+                        potentials, x.length);
+                kernel.setDistanceMethod(method);
+                kernel.setParallelism(threads);
+
+                String message = method + " threads " + threads;
+                assertEquals(message, expected, kernel.findCentralFeature());
+                double cost = cost(expected, weights, potentials, method);
+                assertEquals(message, cost, kernel.getMinimumCost(), cost * 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testPrunesCandidates() {
+        CentralFeatureKernel kernel = new CentralFeatureKernel(x, y, null, null, x.length);
+        assertEquals(bruteForce(null, null, DistanceMethod.Euclidean),
+                kernel.findCentralFeature());
+        assertTrue(kernel.getEvaluatedCount() < x.length);
+    }
+
+    @Test
+    public void testNegativeWeights() {
+        // bounds are disabled, every event is evaluated exactly
+        double[] signed = weights.clone();
+        for (int i = 0; i < signed.length; i += 7) {
+            signed[i] = -signed[i];
+        }
+
+        CentralFeatureKernel kernel = new CentralFeatureKernel(x, y, signed, null, x.length);
+        assertEquals(bruteForce(signed, null, DistanceMethod.Euclidean),
+                kernel.findCentralFeature());
+        assertEquals(x.length, kernel.getEvaluatedCount());
+    }
+
+    @Test
+    public void testEqualCostsKeepLowestIndex() {
+        // a square, every corner has the same cost
+        double[] sx = { 0, 10, 0, 10 };
+        double[] sy = { 0, 0, 10, 10 };
+        CentralFeatureKernel kernel = new CentralFeatureKernel(sx, sy, null, null, sx.length);
+        assertEquals(0, kernel.findCentralFeature());
+        assertEquals(20 + Math.sqrt(200), kernel.getMinimumCost(), 1e-12);
+
+        kernel = new CentralFeatureKernel(new double[0], new double[0], null, null, 0);
+        assertEquals(-1, kernel.findCentralFeature());
+    }
+
+    private int bruteForce(double[] w, double[] p, DistanceMethod method) {
+        int central = -1;
+        double minimum = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < x.length; i++) {
+            double cost = cost(i, w, p, method);
+            if (cost < minimum) {
+                minimum = cost;
+                central = i;
+            }
+        }
+        return central;
+    }
+
+    private double cost(int i, double[] w, double[] p, DistanceMethod method) {
+        double cost = p == null ? 0 : p[i] * (w == null ? 1 : w[i]);
+        for (int j = 0; j < x.length; j++) {
+            double dx = Math.abs(x[i] - x[j]);
+            double dy = Math.abs(y[i] - y[j]);
+            double distance = method == DistanceMethod.Manhattan ? dx + dy : Math.sqrt(dx * dx
+                    + dy * dy);
+            cost += (w == null ? 1 : w[j]) * distance;
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,129 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.operations.CollectEventsOperation;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+
+public class CollectEventsTest extends SpatialStatisticsTestCase {
+    DataStore dataStore;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testCounts() throws Exception {
+        SimpleFeatureCollection events = dataStore.getFeatureSource("events").getFeatures();
+
+        // the default tolerance 0.1 keeps 8 and 9 together across a cell border, and 10
+        // absorbs 11 but not 12, which is farther from it
+        Map<Long, Integer> expected = new LinkedHashMap<Long, Integer>();
+        expected.put(1L, 3);
+        expected.put(4L, 1);
+        expected.put(5L, 1);
+        expected.put(6L, 1);
+        expected.put(8L, 2);
+        expected.put(10L, 2);
+        expected.put(12L, 1);
+        assertEquals(expected, collect(events, null));
+
+        // exact matches only
+        expected.clear();
+        for (long cat = 1; cat <= 12; cat++) {
+            if (cat != 2 && cat != 7) {
+                expected.put(cat, cat == 1 ? 3 : 1);
+            }
+        }
+        assertEquals(expected, collect(events, Double.valueOf(0)));
+
+        expected.clear();
+        expected.put(1L, 4);
+        expected.put(4L, 1);
+        expected.put(5L, 2);
+        expected.put(8L, 2);
+        expected.put(10L, 3);
+        assertEquals(expected, collect(events, Double.valueOf(0.5)));
+    }
+
+    @Test
+    public void testMatchesPairwiseComparison() throws Exception {
+        SimpleFeatureCollection features = dataStore.getFeatureSource("bugsites").getFeatures();
+        List<SimpleFeature> list = toList(features);
+
+        for (double tolerance : new double[] { 500, 2000, 5000 }) {
+            // the first point of a group absorbs the later points within the tolerance
+            Map<Long, Integer> expected = new LinkedHashMap<Long, Integer>();
+            boolean[] collected = new boolean[list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                if (collected[i]) {
+                    continue;
+                }
+                int count = 1;
+                Point point = (Point) list.get(i).getDefaultGeometry();
+                for (int j = i + 1; j < list.size(); j++) {
+                    Geometry other = (Geometry) list.get(j).getDefaultGeometry();
+                    if (!collected[j] && point.distance(other) <= tolerance) {
+                        collected[j] = true;
+                        count++;
+                    }
+                }
+                expected.put(((Number) list.get(i).getAttribute("cat")).longValue(), count);
+            }
+
+            assertEquals(expected, collect(features, Double.valueOf(tolerance)));
+        }
+    }
+
+    private Map<Long, Integer> collect(SimpleFeatureCollection features, Double tolerance)
+            throws Exception {
+        CollectEventsOperation operation = new CollectEventsOperation();
+        if (tolerance != null) {
+            operation.setTolerance(tolerance.doubleValue());
+        }
+
+        Map<Long, Integer> counts = new LinkedHashMap<Long, Integer>();
+        for (SimpleFeature feature : toList(operation.execute(features, "icount"))) {
+            long cat = ((Number) feature.getAttribute("cat")).longValue();
+            counts.put(cat, ((Number) feature.getAttribute("icount")).intValue());
+        }
+        return counts;
+    }
+
+    private List<SimpleFeature> toList(SimpleFeatureCollection collection) {
+        List<SimpleFeature> list = new ArrayList<SimpleFeature>();
+        SimpleFeatureIterator featureIter = collection.features();
+        try {
+            while (featureIter.hasNext()) {
+                list.add(featureIter.next());
+            }
+        } finally {
+            featureIter.close();
+        }
+        return list;
+    }
+}
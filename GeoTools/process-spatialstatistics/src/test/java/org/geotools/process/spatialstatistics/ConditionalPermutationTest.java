@@ -0,0 +1,158 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.geotools.process.spatialstatistics.core.ConditionalPermutation;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConditionalPermutationTest extends SpatialStatisticsTestCase {
+
+    SparseWeightMatrix weights;
+
+    double[] values;
+
+    // local Moran's I style statistic: z(i) * sum(w(ij) * z(j))
+    ConditionalPermutation.Statistic statistic = new ConditionalPermutation.Statistic() {
+        @Override
+        public double compute(int i, int[] neighbors, double[] rowWeights, int count) {
+            double lag = 0;
+            for (int k = 0; k < count; k++) {
+                assertTrue(neighbors[k] != i);
+                lag += rowWeights[k] * values[neighbors[k]];
+            }
+            return values[i] * lag;
+        }
+    };
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // 20 x 20 rook lattice, values rising from left to right, one row without neighbors
+        int side = 20;
+        Random random = new Random(3);
+        values = new double[side * side + 1];
+        SparseWeightMatrix.Builder builder = new SparseWeightMatrix.Builder();
+        for (int i = 0; i < side * side; i++) {
+            int row = i / side;
+            int col = i % side;
+            values[i] = col - side / 2.0 + random.nextGaussian();
+            if (col > 0) {
+                builder.add(i, i - 1, 1.0);
+            }
+            if (col < side - 1) {
+                builder.add(i, i + 1, 1.0);
+            }
+            if (row > 0) {
+                builder.add(i, i - side, 1.0);
+            }
+            if (row < side - 1) {
+                builder.add(i, i + side, 1.0);
+            }
+        }
+        builder.ensureRowCount(values.length);
+        weights = builder.build();
+    }
+
+    @Test
+    public void testReproducibleAcrossThreads() {
+        ConditionalPermutation permutation = new ConditionalPermutation(199, 42L);
+        double[] expected = permutation.execute(weights, statistic);
+        assertEquals(values.length, expected.length);
+
+        for (int parallelism : new int[] { 1, 2, 3, 8, 0 }) {
+            permutation.setParallelism(parallelism);
+            double[] actual = permutation.execute(weights, statistic);
+            assertTrue("parallelism " + parallelism, Arrays.equals(expected, actual));
+        }
+    }
+
+    @Test
+    public void testSeed() {
+        double[] first = new ConditionalPermutation(99, 1L).execute(weights, statistic);
+        double[] same = new ConditionalPermutation(99, 1L).execute(weights, statistic);
+        double[] other = new ConditionalPermutation(99, 2L).execute(weights, statistic);
+        assertTrue(Arrays.equals(first, same));
+        assertFalse(Arrays.equals(first, other));
+    }
+
+    @Test
+    public void testPseudoPValues() {
+        int permutations = 499;
+        double[] pValues = new ConditionalPermutation(permutations, 7L).execute(weights,
+                statistic);
+
+        double min = 1.0 / (permutations + 1);
+        int edges = 0;
+        int significant = 0;
+        for (int i = 0; i < values.length - 1; i++) {
+            assertTrue(pValues[i] >= min);
+            assertTrue(pValues[i] <= 0.5 + min);
+
+            // the gradient is strongly clustered at the left and right edges
+            int col = i % 20;
+            if (col < 4 || col >= 16) {
+                edges++;
+                if (pValues[i] <= 0.05) {
+                    significant++;
+                }
+            }
+        }
+        assertTrue(significant > edges * 0.9);
+
+        // no neighbors, no p-value
+        assertTrue(Double.isNaN(pValues[values.length - 1]));
+    }
+
+    @Test
+    public void testDegenerateInput() {
+        ConditionalPermutation.Statistic constant = new ConditionalPermutation.Statistic() {
+            @Override
+            public double compute(int i, int[] neighbors, double[] rowWeights, int count) {
+                return 1.0;
+            }
+        };
+
+        // every permutation ties with the observed value
+        double[] pValues = new ConditionalPermutation(9, 0L).execute(weights, constant);
+        assertEquals(0.1, pValues[0], 1e-12);
+
+        ConditionalPermutation.Statistic undefined = new ConditionalPermutation.Statistic() {
+            @Override
+            public double compute(int i, int[] neighbors, double[] rowWeights, int count) {
+                return Double.NaN;
+            }
+        };
+        pValues = new ConditionalPermutation(9, 0L).execute(weights, undefined);
+        assertTrue(Double.isNaN(pValues[0]));
+
+        pValues = new ConditionalPermutation(0, 0L).execute(weights, statistic);
+        assertTrue(Double.isNaN(pValues[0]));
+    }
+
+    @Test
+    public void testSplitMix() {
+        ConditionalPermutation.SplitMix first = new ConditionalPermutation.SplitMix();
+        ConditionalPermutation.SplitMix second = new ConditionalPermutation.SplitMix();
+        first.setSeed(5L, 17);
+        second.setSeed(5L, 17);
+
+        int[] counts = new int[7];
+        for (int k = 0; k < 7000; k++) {
+            int value = first.nextInt(7);
+            assertEquals(value, second.nextInt(7));
+            counts[value]++;
+
+            double uniform = first.nextDouble();
+            assertEquals(uniform, second.nextDouble(), 0d);
+            assertTrue(uniform >= 0 && uniform < 1);
+        }
+        for (int count : counts) {
+            assertTrue(count > 800 && count < 1200);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.process.spatialstatistics.distribution.MeanCenter;
+import org.geotools.process.spatialstatistics.distribution.MeanCenterVisitor;
+import org.geotools.process.spatialstatistics.distribution.StandardDistance;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Point;
+
+public class DistributionMergeTest extends SpatialStatisticsTestCase {
+
+    double[] x;
+
+    double[] y;
+
+    double[] weights;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // far from the origin, where the textbook sums lose precision
+        Random random = new Random(23);
+        x = new double[1000];
+        y = new double[1000];
+        weights = new double[x.length];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = 300000 + random.nextGaussian() * 500;
+            y[i] = 4000000 + random.nextGaussian() * 200;
+            weights[i] = random.nextDouble() * 10;
+        }
+    }
+
+    @Test
+    public void testSinglePassMatchesTwoPasses() {
+        StandardDistance standardDistance = new StandardDistance();
+        for (int i = 0; i < x.length; i++) {
+            standardDistance.addValue(new Coordinate(x[i], y[i], 0), weights[i]);
+        }
+
+        double sumW = 0, sumX = 0, sumY = 0;
+        for (int i = 0; i < x.length; i++) {
+            sumW += weights[i];
+            sumX += weights[i] * x[i];
+            sumY += weights[i] * y[i];
+        }
+        double meanX = sumX / sumW;
+        double meanY = sumY / sumW;
+
+        double sigma = 0;
+        for (int i = 0; i < x.length; i++) {
+            double dx = x[i] - meanX;
+            double dy = y[i] - meanY;
+            sigma += weights[i] * (dx * dx + dy * dy);
+        }
+
+        Point center = standardDistance.getMeanCenter();
+        assertEquals(meanX, center.getX(), 1e-6);
+        assertEquals(meanY, center.getY(), 1e-6);
+        assertEquals(Math.sqrt(sigma / sumW) * 2, standardDistance.getStdDist(2), 1e-8);
+    }
+
+    @Test
+    public void testMergeMatchesSinglePass() {
+        StandardDistance single = new StandardDistance();
+        MeanCenter singleCenter = new MeanCenter();
+        for (int i = 0; i < x.length; i++) {
+            single.addValue(new Coordinate(x[i], y[i], i), weights[i]);
+            singleCenter.addValue(new Coordinate(x[i], y[i], i), weights[i], i);
+        }
+
+        // uneven parts, one of them empty
+        int[] bounds = { 0, 1, 1, 300, 999, 1000 };
+        StandardDistance merged = new StandardDistance();
+        MeanCenter mergedCenter = new MeanCenter();
+        for (int p = 0; p + 1 < bounds.length; p++) {
+            StandardDistance part = new StandardDistance();
+            MeanCenter partCenter = new MeanCenter();
+            for (int i = bounds[p]; i < bounds[p + 1]; i++) {
+                part.addValue(new Coordinate(x[i], y[i], i), weights[i]);
+                partCenter.addValue(new Coordinate(x[i], y[i], i), weights[i], i);
+            }
+            merged.merge(part);
+            mergedCenter.merge(partCenter);
+        }
+
+        assertEquals(single.getStdDist(1), merged.getStdDist(1), 1e-8);
+        assertEquals(single.getMeanCenter().getX(), merged.getMeanCenter().getX(), 1e-8);
+        assertEquals(single.getMeanCenter().getY(), merged.getMeanCenter().getY(), 1e-8);
+        assertEquals(singleCenter.getMeanCenter().getCoordinate().z, mergedCenter
+                .getMeanCenter().getCoordinate().z, 1e-8);
+        assertEquals(singleCenter.getDimension(), mergedCenter.getDimension(), 1e-9);
+    }
+
+    @Test
+    public void testVisitorMergeKeepsCaseOrder() {
+        MeanCenterVisitor first = new MeanCenterVisitor();
+        MeanCenterVisitor second = new MeanCenterVisitor();
+        MeanCenterVisitor single = new MeanCenterVisitor();
+        String[] cases = { "b", "a", "c" };
+        for (int i = 0; i < x.length; i++) {
+            // "c" only appears in the second half
+            String caseVal = i < x.length / 2 ? cases[i % 2] : cases[i % 3];
+            Coordinate coordinate = new Coordinate(x[i], y[i], 0);
+            (i < x.length / 2 ? first : second).visit(coordinate, caseVal, weights[i], 0);
+            single.visit(coordinate, caseVal, weights[i], 0);
+        }
+        first.merge(second);
+
+        List<Object> expected = new ArrayList<Object>(single.getResult().keySet());
+        assertEquals(expected, new ArrayList<Object>(first.getResult().keySet()));
+        for (Object caseVal : expected) {
+            Point expectedCenter = ((MeanCenter) single.getResult().get(caseVal)).getMeanCenter();
+            Point actualCenter = ((MeanCenter) first.getResult().get(caseVal)).getMeanCenter();
+            assertEquals(expectedCenter.getX(), actualCenter.getX(), 1e-8);
+            assertEquals(expectedCenter.getY(), actualCenter.getY(), 1e-8);
+        }
+    }
+}
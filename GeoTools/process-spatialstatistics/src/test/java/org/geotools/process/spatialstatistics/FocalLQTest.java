@@ -0,0 +1,162 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.autocorrelation.FocalLQOperation;
+import org.geotools.process.spatialstatistics.core.FormatUtils;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Point;
+
+public class FocalLQTest extends SpatialStatisticsTestCase {
+    DataStore dataStore;
+
+    SimpleFeatureCollection features;
+
+    double[] x, y, obs, pop;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+        features = dataStore.getFeatureSource("grid").getFeatures();
+
+        List<SimpleFeature> list = new ArrayList<SimpleFeature>();
+        SimpleFeatureIterator featureIter = features.features();
+        try {
+            while (featureIter.hasNext()) {
+                list.add(featureIter.next());
+            }
+        } finally {
+            featureIter.close();
+        }
+
+        int size = list.size();
+        x = new double[size];
+        y = new double[size];
+        obs = new double[size];
+        pop = new double[size];
+        for (int i = 0; i < size; i++) {
+            SimpleFeature feature = list.get(i);
+            Point point = (Point) feature.getDefaultGeometry();
+            x[i] = point.getX();
+            y[i] = point.getY();
+            obs[i] = ((Number) feature.getAttribute("obs")).doubleValue();
+            pop[i] = ((Number) feature.getAttribute("pop")).doubleValue();
+        }
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testDistanceBandWindow() throws Exception {
+        // the feature, its 4 edge neighbors and its 4 diagonal neighbors
+        FocalLQOperation operation = new FocalLQOperation();
+        operation.setDistanceBand(150);
+        SimpleFeatureCollection result = operation.execute(features, "obs", "pop");
+
+        double[][] windows = new double[x.length][];
+        for (int i = 0; i < x.length; i++) {
+            double obsSum = 0, popSum = 0;
+            for (int j = 0; j < x.length; j++) {
+                if (Math.hypot(x[i] - x[j], y[i] - y[j]) <= 150) {
+                    obsSum += obs[j];
+                    popSum += pop[j];
+                }
+            }
+            windows[i] = new double[] { obsSum, popSum };
+        }
+        assertFocalLQ(result, windows);
+    }
+
+    @Test
+    public void testAdaptiveWindow() throws Exception {
+        // ties on the grid are broken by the lower feature index
+        for (final int k : new int[] { 1, 4, 6 }) {
+            FocalLQOperation operation = new FocalLQOperation();
+            operation.setNumberOfNeighbors(k);
+            SimpleFeatureCollection result = operation.execute(features, "obs", "pop");
+
+            double[][] windows = new double[x.length][];
+            for (int i = 0; i < x.length; i++) {
+                final int origin = i;
+                Integer[] order = new Integer[x.length];
+                for (int j = 0; j < x.length; j++) {
+                    order[j] = Integer.valueOf(j);
+                }
+                Arrays.sort(order, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        int c = Double.compare(distance(origin, a), distance(origin, b));
+                        return c != 0 ? c : a.compareTo(b);
+                    }
+                });
+
+                // order[0] is the feature itself
+                double obsSum = 0, popSum = 0;
+                for (int n = 0; n <= k; n++) {
+                    obsSum += obs[order[n]];
+                    popSum += pop[order[n]];
+                }
+                windows[i] = new double[] { obsSum, popSum };
+            }
+            assertFocalLQ(result, windows);
+        }
+    }
+
+    private double distance(int i, int j) {
+        return i == j ? -1 : Math.hypot(x[i] - x[j], y[i] - y[j]);
+    }
+
+    private void assertFocalLQ(SimpleFeatureCollection result, double[][] windows) {
+        double obsTotal = 0, popTotal = 0;
+        for (int i = 0; i < x.length; i++) {
+            obsTotal += obs[i];
+            popTotal += pop[i];
+        }
+        double dXY = obsTotal / popTotal;
+
+        int idx = 0;
+        SimpleFeatureIterator featureIter = result.features();
+        try {
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                double obsSum = windows[idx][0];
+                double popSum = windows[idx][1];
+
+                double flqd = (obsSum / popSum) / dXY;
+                double flq = (pop[idx] / obs[idx]) / dXY;
+                double fz = (popSum - obsSum * dXY) / Math.sqrt(obsSum * dXY);
+
+                String message = "feature " + idx;
+                assertEquals(message, FormatUtils.round(flqd),
+                        ((Number) feature.getAttribute("flqd")).doubleValue(), 2e-6);
+                assertEquals(message, FormatUtils.round(flq),
+                        ((Number) feature.getAttribute("flq")).doubleValue(), 2e-6);
+                assertEquals(message, FormatUtils.round(fz),
+                        ((Number) feature.getAttribute("fz")).doubleValue(), 2e-6);
+                idx++;
+            }
+        } finally {
+            featureIter.close();
+        }
+        assertEquals(x.length, idx);
+    }
+}
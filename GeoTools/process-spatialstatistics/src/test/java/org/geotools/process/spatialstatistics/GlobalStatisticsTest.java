@@ -0,0 +1,127 @@
+package org.geotools.process.spatialstatistics;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalGStatisticOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalGStatisticOperation.GeneralG;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalGearysCOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalGearysCOperation.GearysC;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalMoranIStatisticOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalMoranIStatisticOperation.MoransI;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalStatisticsOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalStatisticsOperation.GlobalStatistics;
+import org.geotools.process.spatialstatistics.core.SpatialEventStore;
+import org.geotools.process.spatialstatistics.core.SpatialWeightMatrix;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GlobalStatisticsTest extends SpatialStatisticsTestCase {
+    DataStore dataStore;
+
+    SimpleFeatureCollection features;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+        features = dataStore.getFeatureSource("bugsites").getFeatures();
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testObservedIndicesMatchDenseWeights() throws Exception {
+        SpatialConcept[] concepts = { SpatialConcept.FIXEDDISTANCEBAND,
+                SpatialConcept.INVERSEDISTANCE };
+        for (SpatialConcept concept : concepts) {
+            GlobalStatisticsOperation operation = new GlobalStatisticsOperation();
+            operation.setSpatialConceptType(concept);
+            operation.setDistanceBand(2000);
+            GlobalStatistics result = operation.execute(features, "cat");
+
+            // the same statistics from a dense weights matrix
+            SpatialWeightMatrix swMatrix = operation.getSpatialWeightMatrix();
+            SpatialEventStore store = swMatrix.getEventStore();
+            int n = store.size();
+            double mean = store.getWeightSum() / n;
+
+            double sumW = 0, moran = 0, geary = 0, dev2 = 0, neighborProducts = 0, products = 0;
+            for (int i = 0; i < n; i++) {
+                double zi = store.getWeight(i);
+                dev2 += (zi - mean) * (zi - mean);
+                for (int j = 0; j < n; j++) {
+                    if (i == j) {
+                        continue;
+                    }
+                    double zj = store.getWeight(j);
+                    double wij = swMatrix.getWeight(i, j);
+                    sumW += wij;
+                    moran += wij * (zi - mean) * (zj - mean);
+                    geary += wij * (zi - zj) * (zi - zj);
+                    neighborProducts += wij * zi * zj;
+                    products += zi * zj;
+                }
+            }
+
+            assertEquals(concept.name(), (n / sumW) * (moran / dev2),
+                    result.getMoransI().getObservedIndex(), 1e-9);
+            assertEquals(concept.name(), ((n - 1) * geary) / (2 * sumW * dev2),
+                    result.getGearysC().getObservedIndex(), 1e-9);
+            assertEquals(concept.name(), neighborProducts / products,
+                    result.getGeneralG().getObservedIndex(), 1e-12);
+            assertEquals(-1.0 / (n - 1), result.getMoransI().getExpectedIndex(), 1e-12);
+            assertEquals(sumW / (n * (n - 1.0)), result.getGeneralG().getExpectedIndex(), 1e-12);
+        }
+    }
+
+    @Test
+    public void testMatchesSeparateOperations() throws Exception {
+        StandardizationMethod[] methods = { StandardizationMethod.NONE,
+                StandardizationMethod.ROW };
+        for (StandardizationMethod method : methods) {
+            GlobalStatisticsOperation operation = new GlobalStatisticsOperation();
+            operation.setSpatialConceptType(SpatialConcept.INVERSEDISTANCE);
+            operation.setStandardizationType(method);
+            operation.setDistanceBand(2000);
+            GlobalStatistics result = operation.execute(features, "cat");
+
+            GlobalMoranIStatisticOperation moranOperation = new GlobalMoranIStatisticOperation();
+            moranOperation.setSpatialConceptType(SpatialConcept.INVERSEDISTANCE);
+            moranOperation.setStandardizationType(method);
+            moranOperation.setDistanceBand(2000);
+            MoransI moransI = moranOperation.execute(features, "cat");
+            assertEquals(moransI.getObservedIndex(), result.getMoransI().getObservedIndex(), 0d);
+            assertEquals(moransI.getZScore(), result.getMoransI().getZScore(), 0d);
+            assertEquals(method, moransI.getRowStandardization());
+            assertEquals(2000, moransI.getDistanceThreshold(), 0d);
+
+            GlobalGearysCOperation gearyOperation = new GlobalGearysCOperation();
+            gearyOperation.setSpatialConceptType(SpatialConcept.INVERSEDISTANCE);
+            gearyOperation.setStandardizationType(method);
+            gearyOperation.setDistanceBand(2000);
+            GearysC gearysC = gearyOperation.execute(features, "cat");
+            assertEquals(gearysC.getObservedIndex(), result.getGearysC().getObservedIndex(), 0d);
+            assertEquals(gearysC.getZScore(), result.getGearysC().getZScore(), 0d);
+
+            GlobalGStatisticOperation gOperation = new GlobalGStatisticOperation();
+            gOperation.setSpatialConceptType(SpatialConcept.INVERSEDISTANCE);
+            gOperation.setStandardizationType(method);
+            gOperation.setDistanceBand(2000);
+            GeneralG generalG = gOperation.execute(features, "cat");
+            assertEquals(generalG.getObservedIndex(), result.getGeneralG().getObservedIndex(), 0d);
+            assertEquals(generalG.getZScore(), result.getGeneralG().getZScore(), 0d);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.geotools.process.spatialstatistics;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalMoranIStatisticOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalMoranIStatisticOperation.MoransI;
+import org.geotools.process.spatialstatistics.autocorrelation.IncrementalMoransIOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.IncrementalMoransIOperation.IncrementalMoransI;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IncrementalMoransITest extends SpatialStatisticsTestCase {
+    DataStore dataStore;
+
+    SimpleFeatureCollection features;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+        features = dataStore.getFeatureSource("bugsites").getFeatures();
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testMatchesGlobalMoransIAtEachBand() throws Exception {
+        SpatialConcept[] concepts = { SpatialConcept.FIXEDDISTANCEBAND,
+                SpatialConcept.INVERSEDISTANCE, SpatialConcept.INVERSEDISTANCESQUARED };
+        for (SpatialConcept concept : concepts) {
+            IncrementalMoransIOperation operation = new IncrementalMoransIOperation();
+            operation.setSpatialConceptType(concept);
+            operation.setBeginDistance(1000);
+            operation.setDistanceIncrement(250);
+            operation.setNumberOfBands(8);
+            IncrementalMoransI result = operation.execute(features, "cat");
+            assertEquals(8, result.getBandCount());
+
+            for (int b = 0; b < result.getBandCount(); b++) {
+                assertEquals(1000 + b * 250, result.getDistance(b), 1e-9);
+
+                GlobalMoranIStatisticOperation global = new GlobalMoranIStatisticOperation();
+                global.setSpatialConceptType(concept);
+                global.setStandardizationType(StandardizationMethod.NONE);
+                global.setDistanceBand(result.getDistance(b));
+                MoransI expected = global.execute(features, "cat");
+
+                MoransI actual = result.getMoransI(b);
+                String message = concept + " band " + b;
+                assertEquals(message, expected.getObservedIndex(), actual.getObservedIndex(), 1e-9);
+                assertEquals(message, expected.getExpectedIndex(), actual.getExpectedIndex(), 1e-12);
+                assertEquals(message, expected.getZVariance(), actual.getZVariance(), 1e-9);
+                assertEquals(message, expected.getZScore(), actual.getZScore(), 1e-6);
+                assertEquals(result.getDistance(b), actual.getDistanceThreshold(), 0d);
+            }
+        }
+    }
+
+    @Test
+    public void testPeaks() throws Exception {
+        IncrementalMoransIOperation operation = new IncrementalMoransIOperation();
+        operation.setNumberOfBands(12);
+        IncrementalMoransI result = operation.execute(features, "cat");
+
+        int firstPeak = result.getFirstPeak();
+        int maxPeak = result.getMaxPeak();
+        if (firstPeak == -1) {
+            assertEquals(-1, maxPeak);
+            assertTrue(Double.isNaN(result.getFirstPeakDistance()));
+            return;
+        }
+
+        assertTrue(firstPeak <= maxPeak);
+        for (int peak : new int[] { firstPeak, maxPeak }) {
+            double zScore = result.getMoransI(peak).getZScore();
+            assertTrue(zScore > result.getMoransI(peak - 1).getZScore());
+            assertTrue(zScore >= result.getMoransI(peak + 1).getZScore());
+        }
+        assertTrue(result.getMoransI(maxPeak).getZScore() >= result.getMoransI(firstPeak)
+                .getZScore());
+        assertEquals(result.getDistance(maxPeak), result.getMaxPeakDistance(), 0d);
+    }
+
+    @Test
+    public void testUnsupportedSettings() throws Exception {
+        IncrementalMoransIOperation operation = new IncrementalMoransIOperation();
+        operation.setStandardizationType(StandardizationMethod.ROW);
+        try {
+            operation.execute(features, "cat");
+            fail("row standardization is not supported");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        operation = new IncrementalMoransIOperation();
+        operation.setSpatialConceptType(SpatialConcept.POLYGONCONTIGUITY);
+        try {
+            operation.execute(features, "cat");
+            fail("contiguity weights are not supported");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.process.spatialstatistics.autocorrelation.JoinCountStatisticsOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.JoinCountStatisticsOperation.JoinCount;
+import org.geotools.process.spatialstatistics.core.PolygonContiguity;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
+import org.geotools.process.spatialstatistics.enumeration.ContiguityType;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class JoinCountStatisticsTest extends SpatialStatisticsTestCase {
+
+    static final int SIZE = 6;
+
+    // SIZE x SIZE grid of squares, row by row from the top left
+    private List<Geometry> createGrid() throws Exception {
+        WKTReader reader = new WKTReader();
+        List<Geometry> geometries = new ArrayList<Geometry>();
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                int minx = col * 10;
+                int maxy = (SIZE - row) * 10;
+                geometries.add(reader.read("POLYGON ((" + minx + " " + maxy + ", " + (minx + 10)
+                        + " " + maxy + ", " + (minx + 10) + " " + (maxy - 10) + ", " + minx + " "
+                        + (maxy - 10) + ", " + minx + " " + maxy + "))"));
+            }
+        }
+        return geometries;
+    }
+
+    @Test
+    public void testMatchesPairwiseIntersections() throws Exception {
+        List<Geometry> geometries = createGrid();
+        PolygonContiguity contiguity = new PolygonContiguity(geometries);
+
+        Random random = new Random(3);
+        BitSet black = new BitSet();
+        for (int i = 0; i < geometries.size(); i++) {
+            if (random.nextInt(3) == 0) {
+                black.set(i);
+            }
+        }
+
+        for (ContiguityType type : ContiguityType.values()) {
+            JoinCountStatisticsOperation operation = new JoinCountStatisticsOperation();
+            JoinCount joinCount = operation.execute("grid", black, contiguity.build(type), type);
+
+            // the joins of the former one intersects query per feature
+            int bb = 0, ww = 0, bw = 0;
+            double m = 0;
+            for (int i = 0; i < geometries.size(); i++) {
+                int neighborCount = 0;
+                for (int j = 0; j < geometries.size(); j++) {
+                    if (i == j || !isNeighbor(geometries.get(i), geometries.get(j), type)) {
+                        continue;
+                    }
+                    neighborCount++;
+                    if (j < i) {
+                        continue;
+                    }
+                    if (black.get(i) && black.get(j)) {
+                        bb++;
+                    } else if (!black.get(i) && !black.get(j)) {
+                        ww++;
+                    } else {
+                        bw++;
+                    }
+                }
+                m += neighborCount * (neighborCount - 1);
+            }
+
+            assertEquals(type.name(), bb, joinCount.getObservedBB());
+            assertEquals(type.name(), ww, joinCount.getObservedWW());
+            assertEquals(type.name(), bw, joinCount.getObservedBW());
+            assertEquals(black.cardinality(), joinCount.getBlackCount());
+            assertEquals(geometries.size() - black.cardinality(), joinCount.getWhiteCount());
+
+            JoinCount expected = new JoinCount("grid", type);
+            expected.setFeatureCount(geometries.size());
+            expected.setBlackCount(black.cardinality());
+            expected.setWhiteCount(geometries.size() - black.cardinality());
+            expected.setObservedBB(bb);
+            expected.setObservedWW(ww);
+            expected.setObservedBW(bw);
+            expected.postProcess(m / 2.0);
+            assertEquals(expected.getzScoreBB(), joinCount.getzScoreBB(), 1e-12);
+            assertEquals(expected.getzScoreWW(), joinCount.getzScoreWW(), 1e-12);
+            assertEquals(expected.getzScoreBW(), joinCount.getzScoreBW(), 1e-12);
+            assertTrue(Double.isNaN(joinCount.getpValueBB()));
+        }
+    }
+
+    @Test
+    public void testCheckerboard() throws Exception {
+        BitSet black = new BitSet();
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            if (((i / SIZE) + (i % SIZE)) % 2 == 0) {
+                black.set(i);
+            }
+        }
+
+        SparseWeightMatrix rook = new PolygonContiguity(createGrid()).build(ContiguityType.Rook);
+        JoinCount joinCount = new JoinCountStatisticsOperation().execute("grid", black, rook,
+                ContiguityType.Rook);
+        assertEquals(0, joinCount.getObservedBB());
+        assertEquals(0, joinCount.getObservedWW());
+        assertEquals(2 * SIZE * (SIZE - 1), joinCount.getObservedBW());
+        assertEquals(2 * SIZE * (SIZE - 1), joinCount.getNumberOfJoins());
+    }
+
+    @Test
+    public void testCountsEachJoinOnce() throws Exception {
+        // the left half is black, each join counted once (the former visits gave twice as many)
+        BitSet black = new BitSet();
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            if (i % SIZE < SIZE / 2) {
+                black.set(i);
+            }
+        }
+        PolygonContiguity contiguity = new PolygonContiguity(createGrid());
+
+        JoinCount rook = new JoinCountStatisticsOperation().execute("grid", black,
+                contiguity.build(ContiguityType.Rook), ContiguityType.Rook);
+        assertEquals(27, rook.getObservedBB());
+        assertEquals(6, rook.getObservedBW());
+        assertEquals(27, rook.getObservedWW());
+        assertEquals(60, rook.getNumberOfJoins());
+
+        JoinCount queen = new JoinCountStatisticsOperation().execute("grid", black,
+                contiguity.build(ContiguityType.Queen), ContiguityType.Queen);
+        assertEquals(47, queen.getObservedBB());
+        assertEquals(16, queen.getObservedBW());
+        assertEquals(47, queen.getObservedWW());
+        assertEquals(110, queen.getNumberOfJoins());
+    }
+
+    @Test
+    public void testPermutations() throws Exception {
+        // the left half is black: far too many BB and WW joins
+        BitSet black = new BitSet();
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            if (i % SIZE < SIZE / 2) {
+                black.set(i);
+            }
+        }
+        SparseWeightMatrix rook = new PolygonContiguity(createGrid()).build(ContiguityType.Rook);
+
+        JoinCount first = null;
+        for (int threads : new int[] { 1, 3, 0 }) {
+            JoinCountStatisticsOperation operation = new JoinCountStatisticsOperation();
+            operation.setPermutations(199);
+            operation.setPermutationSeed(42L);
+            operation.setParallelism(threads);
+            JoinCount joinCount = operation.execute("grid", black, rook, ContiguityType.Rook);
+            assertEquals(199, joinCount.getPermutations());
+
+            if (first == null) {
+                first = joinCount;
+                assertEquals(1.0 / 200, joinCount.getpValueBB(), 1e-12);
+                assertEquals(1.0 / 200, joinCount.getpValueBW(), 1e-12);
+                assertTrue(joinCount.getpValueWW() <= 0.5);
+            } else {
+                // one random stream per permutation, whatever the number of threads
+                assertEquals(first.getpValueBB(), joinCount.getpValueBB(), 0d);
+                assertEquals(first.getpValueWW(), joinCount.getpValueWW(), 0d);
+                assertEquals(first.getpValueBW(), joinCount.getpValueBW(), 0d);
+            }
+        }
+    }
+
+    private boolean isNeighbor(Geometry geometry, Geometry other, ContiguityType type) {
+        if (!geometry.intersects(other)) {
+            return false;
+        }
+        Geometry intersection = geometry.intersection(other);
+        boolean touchesAtPoints = intersection instanceof Point
+                || intersection instanceof MultiPoint;
+        switch (type) {
+        case Rook:
+            return !touchesAtPoints;
+        case Bishops:
+            return touchesAtPoints;
+        default:
+            return true;
+        }
+    }
+}
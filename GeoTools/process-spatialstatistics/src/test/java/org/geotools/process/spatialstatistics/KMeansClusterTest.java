@@ -0,0 +1,119 @@
+package org.geotools.process.spatialstatistics;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.process.spatialstatistics.pattern.Cluster.PointEvent;
+import org.geotools.process.spatialstatistics.pattern.KMeansCluster;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KMeansClusterTest extends SpatialStatisticsTestCase {
+    DataStore dataStore;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testSeparatedGroups() throws Exception {
+        // three groups of 15 points, the group is stored in cat
+        SimpleFeatureCollection features = dataStore.getFeatureSource("clusters").getFeatures();
+        KMeansCluster kmeans = new KMeansCluster(features);
+        kmeans.setSeed(42L);
+        PointEvent[] centers = kmeans.cluster(3);
+
+        int[] clusterOfGroup = { -1, -1, -1 };
+        for (PointEvent point : kmeans.getPoints()) {
+            int group = ((Number) point.feature.getAttribute("cat")).intValue() - 1;
+            if (clusterOfGroup[group] == -1) {
+                clusterOfGroup[group] = point.cluster;
+            }
+            assertEquals(clusterOfGroup[group], point.cluster);
+        }
+        assertTrue(clusterOfGroup[0] != clusterOfGroup[1]);
+        assertTrue(clusterOfGroup[0] != clusterOfGroup[2]);
+        assertTrue(clusterOfGroup[1] != clusterOfGroup[2]);
+        assertConverged(kmeans.getPoints(), centers);
+    }
+
+    @Test
+    public void testSameSeedSameClusters() throws Exception {
+        SimpleFeatureCollection features = dataStore.getFeatureSource("bugsites").getFeatures();
+        KMeansCluster expected = new KMeansCluster(features);
+        expected.setSeed(7L);
+        PointEvent[] expectedCenters = expected.cluster(5);
+        assertConverged(expected.getPoints(), expectedCenters);
+
+        for (int threads : new int[] { 1, 3, 0 }) {
+            KMeansCluster actual = new KMeansCluster(features);
+            actual.setSeed(7L);
+            actual.setParallelism(threads);
+            PointEvent[] actualCenters = actual.cluster(5);
+
+            for (int j = 0; j < expectedCenters.length; j++) {
+                assertEquals(expectedCenters[j].x, actualCenters[j].x, 0d);
+                assertEquals(expectedCenters[j].y, actualCenters[j].y, 0d);
+            }
+            for (int i = 0; i < expected.getPoints().length; i++) {
+                assertEquals(expected.getPoints()[i].cluster, actual.getPoints()[i].cluster);
+            }
+        }
+    }
+
+    @Test
+    public void testMiniBatchAssignsNearestCenter() throws Exception {
+        SimpleFeatureCollection features = dataStore.getFeatureSource("bugsites").getFeatures();
+        KMeansCluster kmeans = new KMeansCluster(features);
+        kmeans.setSeed(11L);
+        kmeans.setMiniBatchSize(30);
+        PointEvent[] centers = kmeans.cluster(4);
+
+        for (PointEvent point : kmeans.getPoints()) {
+            assertEquals(nearest(point, centers), point.cluster);
+        }
+    }
+
+    // every point belongs to its nearest center, every center is the mean of its points
+    private void assertConverged(PointEvent[] points, PointEvent[] centers) {
+        double[] sumX = new double[centers.length];
+        double[] sumY = new double[centers.length];
+        int[] counts = new int[centers.length];
+        for (PointEvent point : points) {
+            assertEquals(nearest(point, centers), point.cluster);
+            sumX[point.cluster] += point.x;
+            sumY[point.cluster] += point.y;
+            counts[point.cluster]++;
+        }
+
+        for (int j = 0; j < centers.length; j++) {
+            assertTrue(counts[j] > 0);
+            assertEquals(sumX[j] / counts[j], centers[j].x, 1e-6);
+            assertEquals(sumY[j] / counts[j], centers[j].y, 1e-6);
+        }
+    }
+
+    private int nearest(PointEvent point, PointEvent[] centers) {
+        int nearest = 0;
+        for (int j = 1; j < centers.length; j++) {
+            double distance = Math.hypot(point.x - centers[j].x, point.y - centers[j].y);
+            if (distance < Math.hypot(point.x - centers[nearest].x, point.y
+                    - centers[nearest].y)) {
+                nearest = j;
+            }
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,157 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.pattern.KNearestNeighborMapOperation;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+
+public class KNearestNeighborMapTest extends SpatialStatisticsTestCase {
+    DataStore dataStore;
+
+    SimpleFeatureCollection features;
+
+    double[] x, y;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+        features = dataStore.getFeatureSource("grid").getFeatures();
+
+        List<SimpleFeature> list = toList(features);
+        x = new double[list.size()];
+        y = new double[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            Point point = (Point) list.get(i).getDefaultGeometry();
+            x[i] = point.getX();
+            y[i] = point.getY();
+        }
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testMatchesFullDistanceSort() throws Exception {
+        // ties on the grid are broken by the lower feature index
+        for (int k : new int[] { 1, 4, 6 }) {
+            KNearestNeighborMapOperation operation = new KNearestNeighborMapOperation();
+            SimpleFeatureCollection result = operation.execute(features, k, false);
+            List<SimpleFeature> lines = toList(result);
+            assertEquals(x.length * k, lines.size());
+            assertEquals(lines.size(), result.size());
+
+            int line = 0;
+            for (int i = 0; i < x.length; i++) {
+                final int origin = i;
+                Integer[] order = new Integer[x.length];
+                for (int j = 0; j < x.length; j++) {
+                    order[j] = Integer.valueOf(j);
+                }
+                Arrays.sort(order, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        int c = Double.compare(distance(origin, a), distance(origin, b));
+                        return c != 0 ? c : a.compareTo(b);
+                    }
+                });
+
+                // order[0] is the feature itself, oids of the grid features are 1 based
+                for (int n = 1; n <= k; n++) {
+                    SimpleFeature feature = lines.get(line++);
+                    assertEquals(i + 1, ((Number) feature.getAttribute("orig")).intValue());
+                    assertEquals(order[n] + 1, ((Number) feature.getAttribute("dest")).intValue());
+                    assertEquals(distance(i, order[n]),
+                            ((Number) feature.getAttribute("distance")).doubleValue(), 1e-9);
+                    assertEquals("Nearest", feature.getAttribute("group"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConvexHull() throws Exception {
+        KNearestNeighborMapOperation operation = new KNearestNeighborMapOperation();
+        SimpleFeatureCollection result = operation.execute(features, 2, true);
+        List<SimpleFeature> lines = toList(result);
+        assertEquals(x.length * 2 + 1, lines.size());
+        assertEquals(lines.size(), result.size());
+
+        // the last feature is the boundary of the hull, the corners of the grid
+        SimpleFeature hull = lines.get(lines.size() - 1);
+        assertEquals("ConvexHull", hull.getAttribute("group"));
+        Geometry boundary = (Geometry) hull.getDefaultGeometry();
+        assertTrue(boundary instanceof LinearRing);
+        assertEquals(5, boundary.getNumPoints());
+        assertEquals(2800, boundary.getLength(), 1e-9);
+    }
+
+    @Test
+    public void testSizeSkipsCoincidentNeighbors() throws Exception {
+        // three of the 12 events share a location, their links to each other are skipped
+        SimpleFeatureCollection events = dataStore.getFeatureSource("events").getFeatures();
+        int[][] expected = { { 1, 9 }, { 2, 18 }, { 3, 30 }, { 20, 126 } };
+        for (int[] pair : expected) {
+            KNearestNeighborMapOperation operation = new KNearestNeighborMapOperation();
+            SimpleFeatureCollection result = operation.execute(events, pair[0], false);
+            assertEquals(pair[1], result.size());
+            assertEquals(pair[1], toList(result).size());
+        }
+    }
+
+    @Test
+    public void testIndependentOfThreads() throws Exception {
+        List<String> expected = attributeStrings(new KNearestNeighborMapOperation().execute(
+                features, 5, false));
+        for (int threads : new int[] { 2, 3, 0 }) {
+            KNearestNeighborMapOperation operation = new KNearestNeighborMapOperation();
+            operation.setParallelism(threads);
+            assertEquals(expected, attributeStrings(operation.execute(features, 5, false)));
+        }
+    }
+
+    private double distance(int i, int j) {
+        return i == j ? -1 : Math.hypot(x[i] - x[j], y[i] - y[j]);
+    }
+
+    private List<String> attributeStrings(SimpleFeatureCollection result) {
+        List<String> values = new ArrayList<String>();
+        for (SimpleFeature feature : toList(result)) {
+            values.add(feature.getAttributes().toString());
+        }
+        return values;
+    }
+
+    private List<SimpleFeature> toList(SimpleFeatureCollection collection) {
+        List<SimpleFeature> list = new ArrayList<SimpleFeature>();
+        SimpleFeatureIterator featureIter = collection.features();
+        try {
+            while (featureIter.hasNext()) {
+                list.add(featureIter.next());
+            }
+        } finally {
+            featureIter.close();
+        }
+        return list;
+    }
+}
@@ -0,0 +1,120 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.autocorrelation.AbstractStatisticsOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.LocalGStatisticOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.LocalGearysCOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.LocalLeesSOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.LocalMoranIStatisticOperation;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+
+public class LocalStatisticsParallelismTest extends SpatialStatisticsTestCase {
+    DataStore dataStore;
+
+    SimpleFeatureCollection features;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+        features = dataStore.getFeatureSource("bugsites").getFeatures();
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testLocalMoransI() throws Exception {
+        assertSameResults(new LocalMoranIStatisticOperation(), new LocalMoranIStatisticOperation());
+    }
+
+    @Test
+    public void testLocalGStatistic() throws Exception {
+        assertSameResults(new LocalGStatisticOperation(), new LocalGStatisticOperation());
+    }
+
+    @Test
+    public void testLocalGearysC() throws Exception {
+        assertSameResults(new LocalGearysCOperation(), new LocalGearysCOperation());
+    }
+
+    @Test
+    public void testLocalLeesS() throws Exception {
+        assertSameResults(new LocalLeesSOperation(), new LocalLeesSOperation());
+    }
+
+    @Test
+    public void testPseudoPValues() throws Exception {
+        LocalMoranIStatisticOperation sequential = new LocalMoranIStatisticOperation();
+        sequential.setPermutations(99);
+        LocalMoranIStatisticOperation parallel = new LocalMoranIStatisticOperation();
+        parallel.setPermutations(99);
+        assertSameResults(sequential, parallel);
+
+        // the pseudo p-values get their own attribute
+        SimpleFeatureCollection result = sequential.execute(features, "cat");
+        assertNotNull(result.getSchema().getDescriptor("LMiPseudoP"));
+    }
+
+    private void assertSameResults(AbstractStatisticsOperation sequential,
+            AbstractStatisticsOperation parallel) throws Exception {
+        sequential.setSpatialConceptType(SpatialConcept.FIXEDDISTANCEBAND);
+        sequential.setDistanceBand(2000);
+        sequential.setParallelism(1);
+
+        parallel.setSpatialConceptType(SpatialConcept.FIXEDDISTANCEBAND);
+        parallel.setDistanceBand(2000);
+        parallel.setParallelism(4);
+
+        List<List<Object>> expected = attributes(execute(sequential));
+        List<List<Object>> actual = attributes(execute(parallel));
+        assertEquals(features.size(), expected.size());
+        assertEquals(expected, actual);
+    }
+
+    private SimpleFeatureCollection execute(AbstractStatisticsOperation operation)
+            throws Exception {
+        if (operation instanceof LocalMoranIStatisticOperation) {
+            return ((LocalMoranIStatisticOperation) operation).execute(features, "cat");
+        } else if (operation instanceof LocalGStatisticOperation) {
+            return ((LocalGStatisticOperation) operation).execute(features, "cat");
+        } else if (operation instanceof LocalGearysCOperation) {
+            return ((LocalGearysCOperation) operation).execute(features, "cat");
+        }
+        return ((LocalLeesSOperation) operation).execute(features, "cat");
+    }
+
+    private List<List<Object>> attributes(SimpleFeatureCollection result) {
+        List<List<Object>> values = new ArrayList<List<Object>>();
+        SimpleFeatureIterator iter = result.features();
+        try {
+            while (iter.hasNext()) {
+                SimpleFeature feature = iter.next();
+                List<Object> row = new ArrayList<Object>();
+                for (Object value : feature.getAttributes()) {
+                    row.add(value == null ? null : value.toString());
+                }
+                values.add(row);
+            }
+        } finally {
+            iter.close();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,145 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.autocorrelation.LocalGStatisticOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.LocalMoranIStatisticOperation;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+public class LocalStatisticsUpdateTest extends SpatialStatisticsTestCase {
+    DataStore dataStore;
+
+    MemoryDataStore memoryStore;
+
+    String typeName;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+
+        // edits go to a copy, not to the test data
+        memoryStore = new MemoryDataStore(dataStore.getFeatureSource("bugsites").getFeatures());
+        typeName = memoryStore.getTypeNames()[0];
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        memoryStore.dispose();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testLocalMoranIUpdate() throws Exception {
+        LocalMoranIStatisticOperation operation = new LocalMoranIStatisticOperation();
+        operation.setSpatialConceptType(SpatialConcept.INVERSEDISTANCE);
+        operation.setDistanceBand(2000);
+        operation.execute(getFeatures(), "cat");
+
+        List<String> edited = editValues();
+        SimpleFeatureCollection updated = operation.update(getFeatures(), edited);
+
+        LocalMoranIStatisticOperation expected = new LocalMoranIStatisticOperation();
+        expected.setSpatialConceptType(SpatialConcept.INVERSEDISTANCE);
+        expected.setDistanceBand(2000);
+        assertSameAttributes(expected.execute(getFeatures(), "cat"), updated);
+    }
+
+    @Test
+    public void testLocalGUpdate() throws Exception {
+        LocalGStatisticOperation operation = new LocalGStatisticOperation();
+        operation.setDistanceBand(2000);
+        operation.execute(getFeatures(), "cat");
+
+        List<String> edited = editValues();
+        SimpleFeatureCollection updated = operation.update(getFeatures(), edited);
+
+        LocalGStatisticOperation expected = new LocalGStatisticOperation();
+        expected.setDistanceBand(2000);
+        assertSameAttributes(expected.execute(getFeatures(), "cat"), updated);
+    }
+
+    @Test
+    public void testUpdateWithoutChanges() throws Exception {
+        LocalGStatisticOperation operation = new LocalGStatisticOperation();
+        operation.setDistanceBand(2000);
+        SimpleFeatureCollection result = operation.execute(getFeatures(), "cat");
+        List<String> before = attributeStrings(result);
+
+        SimpleFeatureCollection updated = operation.update(getFeatures(),
+                new ArrayList<String>());
+        assertEquals(before, attributeStrings(updated));
+    }
+
+    private SimpleFeatureCollection getFeatures() throws Exception {
+        return memoryStore.getFeatureSource(typeName).getFeatures();
+    }
+
+    // multiplies the value of every 10th feature by 7
+    private List<String> editValues() throws Exception {
+        List<String> edited = new ArrayList<String>();
+        FeatureWriter<SimpleFeatureType, SimpleFeature> writer = memoryStore.getFeatureWriter(
+                typeName, Filter.INCLUDE, Transaction.AUTO_COMMIT);
+        try {
+            while (writer.hasNext()) {
+                SimpleFeature feature = writer.next();
+                long cat = ((Number) feature.getAttribute("cat")).longValue();
+                if (cat % 10 == 0) {
+                    feature.setAttribute("cat", Long.valueOf(cat * 7));
+                    writer.write();
+                    edited.add(feature.getID());
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        assertEquals(9, edited.size());
+        return edited;
+    }
+
+    private void assertSameAttributes(SimpleFeatureCollection expected,
+            SimpleFeatureCollection actual) {
+        List<String> expectedValues = attributeStrings(expected);
+        List<String> actualValues = attributeStrings(actual);
+        assertEquals(expectedValues.size(), actualValues.size());
+
+        // the output store may list the rewritten features in another order
+        String[] sortedExpected = expectedValues.toArray(new String[0]);
+        String[] sortedActual = actualValues.toArray(new String[0]);
+        Arrays.sort(sortedExpected);
+        Arrays.sort(sortedActual);
+        assertTrue(Arrays.equals(sortedExpected, sortedActual));
+    }
+
+    private List<String> attributeStrings(SimpleFeatureCollection features) {
+        List<String> values = new ArrayList<String>();
+        SimpleFeatureIterator featureIter = features.features();
+        try {
+            while (featureIter.hasNext()) {
+                values.add(featureIter.next().getAttributes().toString());
+            }
+        } finally {
+            featureIter.close();
+        }
+        return values;
+    }
+}
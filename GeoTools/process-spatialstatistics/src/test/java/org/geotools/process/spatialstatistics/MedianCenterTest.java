@@ -0,0 +1,105 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.Random;
+
+import org.geotools.process.spatialstatistics.distribution.MedianCenter;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Point;
+
+public class MedianCenterTest extends SpatialStatisticsTestCase {
+
+    double[] x;
+
+    double[] y;
+
+    double[] weights;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // skewed events, enough for several reduction chunks
+        Random random = new Random(17);
+        x = new double[10000];
+        y = new double[10000];
+        weights = new double[x.length];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = Math.pow(random.nextDouble(), 3) * 10000;
+            y[i] = random.nextGaussian() * 1000;
+            weights[i] = 1 + random.nextInt(5);
+        }
+    }
+
+    @Test
+    public void testMinimizesWeightedDistances() {
+        Point median = createMedianCenter(x, y, weights, 1).getMedianCenter();
+        double cost = cost(median.getX(), median.getY());
+
+        // the mean center is the initial guess, the median must be better
+        double sumX = 0, sumY = 0, sumW = 0;
+        for (int i = 0; i < x.length; i++) {
+            sumX += weights[i] * x[i];
+            sumY += weights[i] * y[i];
+            sumW += weights[i];
+        }
+        assertTrue(cost < cost(sumX / sumW, sumY / sumW));
+
+        // no nearby point does better, up to the convergence tolerance
+        for (double step : new double[] { 0.1, 1, 10 }) {
+            for (int angle = 0; angle < 8; angle++) {
+                double dx = step * Math.cos(angle * Math.PI / 4);
+                double dy = step * Math.sin(angle * Math.PI / 4);
+                assertTrue(cost <= cost(median.getX() + dx, median.getY() + dy) + cost * 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testIndependentOfThreads() {
+        Point expected = createMedianCenter(x, y, weights, 1).getMedianCenter();
+        for (int threads : new int[] { 2, 3, 0 }) {
+            Point actual = createMedianCenter(x, y, weights, threads).getMedianCenter();
+            assertEquals(expected.getX(), actual.getX(), 0d);
+            assertEquals(expected.getY(), actual.getY(), 0d);
+        }
+    }
+
+    @Test
+    public void testMedianOnEvent() {
+        // the middle of three collinear events
+        double[] lx = { 0, 1, 10 };
+        double[] ly = { 0, 0, 0 };
+        Point median = createMedianCenter(lx, ly, null, 1).getMedianCenter();
+        assertEquals(1, median.getX(), 1e-5);
+        assertEquals(0, median.getY(), 1e-5);
+
+        // an event holding more than half of the weight is the median
+        double[] sx = { 0, 10, 0, 10, 3 };
+        double[] sy = { 0, 0, 10, 10, 7 };
+        double[] sw = { 1, 1, 1, 1, 5 };
+        median = createMedianCenter(sx, sy, sw, 1).getMedianCenter();
+        assertEquals(3, median.getX(), 1e-5);
+        assertEquals(7, median.getY(), 1e-5);
+    }
+
+    private MedianCenter createMedianCenter(double[] px, double[] py, double[] pw, int threads) {
+        MedianCenter medianCenter = new MedianCenter();
+        medianCenter.setParallelism(threads);
+        for (int i = 0; i < px.length; i++) {
+            medianCenter.addValue(new Coordinate(px[i], py[i]), pw == null ? 1 : pw[i], null);
+        }
+        return medianCenter;
+    }
+
+    private double cost(double cx, double cy) {
+        double cost = 0;
+        for (int i = 0; i < x.length; i++) {
+            cost += weights[i] * Math.hypot(x[i] - cx, y[i] - cy);
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,103 @@
+package org.geotools.process.spatialstatistics;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.process.spatialstatistics.core.MonotoneChainHull;
+import org.geotools.process.spatialstatistics.pattern.NNIOperation;
+import org.geotools.process.spatialstatistics.pattern.NNIOperation.NearestNeighborResult;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NNITest extends SpatialStatisticsTestCase {
+    DataStore dataStore;
+
+    SimpleFeatureCollection grid;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+
+        // 8 x 8 points 100 m apart: hull area 700^2, perimeter 4 * 700
+        grid = dataStore.getFeatureSource("grid").getFeatures();
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testRegularGrid() throws Exception {
+        NNIOperation operation = new NNIOperation();
+        NearestNeighborResult nni = operation.execute(grid, 0);
+
+        assertEquals(64, nni.getObserved_Point_Count());
+        assertEquals(490000, nni.getStudy_Area(), 1e-6);
+        assertEquals(100, nni.getObserved_Mean_Distance(), 1e-6);
+        assertEquals(43.75, nni.getExpected_Mean_Distance(), 1e-6);
+        assertEquals(100 / 43.75, nni.getNearest_Neighbor_Ratio(), 1e-5);
+
+        double standardError = Math.sqrt(((4 - Math.PI) * 490000) / (4 * Math.PI * 64 * 64));
+        assertEquals(standardError, nni.getStandard_Error(), 1e-5);
+        assertEquals((100 - 43.75) / standardError, nni.getZ_Score(), 1e-5);
+    }
+
+    @Test
+    public void testDonnellyEdgeCorrection() throws Exception {
+        NNIOperation operation = new NNIOperation();
+        operation.setEdgeCorrection(true);
+
+        // the hull of the grid
+        NearestNeighborResult nni = operation.execute(grid, 0);
+        assertEquals(46.22296875, nni.getExpected_Mean_Distance(), 1e-5);
+        assertEquals(3.2593015931, nni.getStandard_Error(), 1e-5);
+        assertEquals(100 / 46.22296875, nni.getNearest_Neighbor_Ratio(), 1e-5);
+        assertEquals((100 - 46.22296875) / 3.2593015931, nni.getZ_Score(), 1e-4);
+
+        // a given area is taken as a square of perimeter 4 * 1000
+        nni = operation.execute(grid, 1000000);
+        double n = 64;
+        double expected = 0.5 * Math.sqrt(1000000 / n) + (0.0514 + 0.041 / Math.sqrt(n))
+                * (4000 / n);
+        double standardError = Math.sqrt(0.0703 * 1000000 / (n * n) + 0.037 * 4000
+                * Math.sqrt(1000000 / Math.pow(n, 5)));
+        assertEquals(expected, nni.getExpected_Mean_Distance(), 1e-5);
+        assertEquals(standardError, nni.getStandard_Error(), 1e-5);
+    }
+
+    @Test
+    public void testHullOfGrid() {
+        // collinear points along the edges are not hull vertices
+        double[] x = new double[64];
+        double[] y = new double[64];
+        for (int i = 0; i < 64; i++) {
+            x[i] = 1000 + (i % 8) * 100;
+            y[i] = 1000 + (i / 8) * 100;
+        }
+        MonotoneChainHull hull = new MonotoneChainHull(x, y);
+        assertEquals(4, hull.size());
+        assertEquals(490000, hull.getArea(), 1e-9);
+        assertEquals(2800, hull.getPerimeter(), 1e-9);
+    }
+
+    @Test
+    public void testIndependentOfThreads() throws Exception {
+        SimpleFeatureCollection features = dataStore.getFeatureSource("bugsites").getFeatures();
+        NearestNeighborResult expected = new NNIOperation().execute(features, 0);
+        for (int threads : new int[] { 2, 3, 0 }) {
+            NNIOperation operation = new NNIOperation();
+            operation.setParallelism(threads);
+            NearestNeighborResult actual = operation.execute(features, 0);
+            assertEquals(expected.getObserved_Mean_Distance(),
+                    actual.getObserved_Mean_Distance(), 0d);
+            assertEquals(expected.getZ_Score(), actual.getZ_Score(), 0d);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.geotools.process.spatialstatistics.core.ParallelRange;
+import org.junit.Test;
+
+public class ParallelRangeTest extends SpatialStatisticsTestCase {
+
+    @Test
+    public void testEveryIndexOnce() {
+        int[] counts = { 0, 1, 63, 64, 65, 1000, 100000 };
+        for (int parallelism = 1; parallelism <= 4; parallelism++) {
+            for (int count : counts) {
+                final AtomicIntegerArray visits = new AtomicIntegerArray(Math.max(1, count));
+                ParallelRange.execute(parallelism, count, new ParallelRange.Task() {
+                    @Override
+                    public void compute(int start, int end) {
+                        assertTrue(start < end || start == 0);
+                        for (int i = start; i < end; i++) {
+                            visits.incrementAndGet(i);
+                        }
+                    }
+                });
+
+                for (int i = 0; i < count; i++) {
+                    assertEquals(1, visits.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSequentialRunsOnCaller() {
+        final Thread caller = Thread.currentThread();
+        final int[] calls = new int[1];
+        ParallelRange.execute(1, 10000, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                assertSame(caller, Thread.currentThread());
+                assertEquals(0, start);
+                assertEquals(10000, end);
+                calls[0]++;
+            }
+        });
+        assertEquals(1, calls[0]);
+
+        // ranges below the grain are not split
+        ParallelRange.execute(8, 100, 1000, new ParallelRange.Task() {
+            @Override
+            public void compute(int start, int end) {
+                assertSame(caller, Thread.currentThread());
+                calls[0]++;
+            }
+        });
+        assertEquals(2, calls[0]);
+    }
+
+    @Test
+    public void testRepeatedAndNestedCalls() {
+        final long[] sums = new long[100];
+        for (int pass = 0; pass < 200; pass++) {
+            ParallelRange.execute(4, sums.length, 1, new ParallelRange.Task() {
+                @Override
+                public void compute(int start, int end) {
+                    for (int i = start; i < end; i++) {
+                        final long[] inner = new long[256];
+                        ParallelRange.execute(4, inner.length, 1, new ParallelRange.Task() {
+                            @Override
+                            public void compute(int s, int e) {
+                                for (int j = s; j < e; j++) {
+                                    inner[j] = j;
+                                }
+                            }
+                        });
+
+                        long sum = 0;
+                        for (long value : inner) {
+                            sum += value;
+                        }
+                        sums[i] += sum;
+                    }
+                }
+            });
+        }
+
+        for (long sum : sums) {
+            assertEquals(200L * (255 * 256 / 2), sum);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.geotools.process.spatialstatistics.core.PointKdTree;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PointKdTreeTest extends SpatialStatisticsTestCase {
+
+    double[] x;
+
+    double[] y;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        Random random = new Random(7);
+        x = new double[500];
+        y = new double[500];
+        for (int i = 0; i < x.length; i++) {
+            // rounded coordinates produce coincident points and equal distances
+            x[i] = Math.floor(random.nextDouble() * 100);
+            y[i] = Math.floor(random.nextDouble() * 100);
+        }
+    }
+
+    @Test
+    public void testRangeQuery() {
+        PointKdTree tree = new PointKdTree(x, y);
+        assertEquals(x.length, tree.size());
+
+        Random random = new Random(11);
+        for (DistanceMethod method : DistanceMethod.values()) {
+            for (int q = 0; q < 50; q++) {
+                double qx = random.nextDouble() * 120 - 10;
+                double qy = random.nextDouble() * 120 - 10;
+                double radius = q == 0 ? 0 : random.nextDouble() * 30;
+
+                int[] expected = bruteForce(qx, qy, radius, method);
+                int[] actual = tree.query(qx, qy, radius, method);
+                assertTrue(method + " radius " + radius, Arrays.equals(expected, actual));
+            }
+        }
+    }
+
+    @Test
+    public void testRangeQueryOnPoint() {
+        PointKdTree tree = new PointKdTree(x, y);
+        for (int i = 0; i < x.length; i += 25) {
+            // a zero radius finds the point itself and every coincident point
+            int[] found = tree.query(x[i], y[i], 0, DistanceMethod.Euclidean);
+            assertTrue(Arrays.binarySearch(found, i) >= 0);
+            assertTrue(Arrays.equals(bruteForce(x[i], y[i], 0, DistanceMethod.Euclidean), found));
+        }
+    }
+
+    @Test
+    public void testVisitorDistances() {
+        PointKdTree tree = new PointKdTree(x, y);
+        final double qx = 50.5;
+        final double qy = 49.5;
+        final int[] visits = new int[1];
+        tree.query(qx, qy, 15, DistanceMethod.Manhattan, new PointKdTree.Visitor() {
+            @Override
+            public void visit(int index, double distance) {
+                visits[0]++;
+                assertEquals(Math.abs(qx - x[index]) + Math.abs(qy - y[index]), distance, 1e-12);
+                assertTrue(distance <= 15);
+            }
+        });
+        assertEquals(bruteForce(qx, qy, 15, DistanceMethod.Manhattan).length, visits[0]);
+    }
+
+    @Test
+    public void testPartialSize() {
+        PointKdTree tree = new PointKdTree(x, y, 100);
+        assertEquals(100, tree.size());
+
+        int[] found = tree.query(50, 50, 1000, DistanceMethod.Euclidean);
+        assertEquals(100, found.length);
+        assertEquals(0, found[0]);
+        assertEquals(99, found[99]);
+    }
+
+    @Test
+    public void testEmptyTree() {
+        PointKdTree tree = new PointKdTree(new double[0], new double[0]);
+        assertEquals(0, tree.query(0, 0, 10, DistanceMethod.Euclidean).length);
+    }
+
+    @Test
+    public void testNearestNeighborDistances() {
+        PointKdTree tree = new PointKdTree(x, y);
+        for (DistanceMethod method : DistanceMethod.values()) {
+            double[] distances = tree.nearestNeighborDistances(method);
+            assertEquals(x.length, distances.length);
+            for (int i = 0; i < x.length; i++) {
+                double expected = Double.POSITIVE_INFINITY;
+                for (int j = 0; j < x.length; j++) {
+                    if (i != j) {
+                        expected = Math.min(expected,
+                                PointKdTree.distance(x[i], y[i], x[j], y[j], method));
+                    }
+                }
+                assertEquals(method + " " + i, expected, distances[i], 0d);
+            }
+        }
+    }
+
+    @Test
+    public void testNearestNeighborDistanceEdgeCases() {
+        PointKdTree single = new PointKdTree(new double[] { 1 }, new double[] { 2 });
+        double[] distances = single.nearestNeighborDistances(DistanceMethod.Euclidean);
+        assertTrue(Double.isInfinite(distances[0]));
+        assertEquals(-1, single.nearest(1, 2, 0, DistanceMethod.Euclidean));
+
+        PointKdTree coincident = new PointKdTree(new double[] { 5, 5, 9 }, new double[] { 5, 5,
+                5 });
+        distances = coincident.nearestNeighborDistances(DistanceMethod.Euclidean);
+        assertEquals(0.0, distances[0], 0d);
+        assertEquals(0.0, distances[1], 0d);
+        assertEquals(4.0, distances[2], 0d);
+    }
+
+    @Test
+    public void testNearest() {
+        PointKdTree tree = new PointKdTree(x, y);
+        Random random = new Random(13);
+        for (int q = 0; q < 100; q++) {
+            double qx = random.nextDouble() * 100;
+            double qy = random.nextDouble() * 100;
+            int exclude = q % 2 == 0 ? -1 : random.nextInt(x.length);
+
+            int found = tree.nearest(qx, qy, exclude, DistanceMethod.Euclidean);
+            assertTrue(found != exclude);
+
+            double expected = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < x.length; j++) {
+                if (j != exclude) {
+                    expected = Math.min(expected,
+                            PointKdTree.distance(qx, qy, x[j], y[j], DistanceMethod.Euclidean));
+                }
+            }
+            assertEquals(expected,
+                    PointKdTree.distance(qx, qy, x[found], y[found], DistanceMethod.Euclidean), 0d);
+        }
+    }
+
+    @Test
+    public void testNearestNeighborsOnGrid() {
+        double[] gx = new double[100];
+        double[] gy = new double[100];
+        for (int i = 0; i < 100; i++) {
+            gx[i] = i % 10;
+            gy[i] = i / 10;
+        }
+        PointKdTree tree = new PointKdTree(gx, gy);
+
+        // point 55 has four neighbors at distance 1: 45, 54, 56 and 65
+        PointKdTree.NeighborHeap heap = new PointKdTree.NeighborHeap(4);
+        tree.nearest(gx[55], gy[55], 55, DistanceMethod.Euclidean, heap);
+        heap.sort();
+        assertEquals(4, heap.size());
+        int[] expected = { 45, 54, 56, 65 };
+        for (int n = 0; n < 4; n++) {
+            assertEquals(expected[n], heap.getIndex(n));
+            assertEquals(1.0, heap.getDistance(n), 0d);
+        }
+
+        // the fifth neighbor is the lowest of the four diagonal points 44, 46, 64 and 66
+        heap = new PointKdTree.NeighborHeap(5);
+        tree.nearest(gx[55], gy[55], 55, DistanceMethod.Euclidean, heap);
+        heap.sort();
+        assertEquals(5, heap.size());
+        assertEquals(44, heap.getIndex(4));
+        assertEquals(Math.sqrt(2), heap.getDistance(4), 1e-12);
+
+        // with the Manhattan distance the diagonals are at 2, as far as 35, 53, 57 and 75
+        heap = new PointKdTree.NeighborHeap(6);
+        tree.nearest(gx[55], gy[55], 55, DistanceMethod.Manhattan, heap);
+        heap.sort();
+        assertEquals(35, heap.getIndex(4));
+        assertEquals(44, heap.getIndex(5));
+    }
+
+    @Test
+    public void testNearestNeighborsTies() {
+        PointKdTree tree = new PointKdTree(x, y);
+        for (int k : new int[] { 0, 1, 3, 8, 20 }) {
+            PointKdTree.NeighborHeap heap = new PointKdTree.NeighborHeap(k);
+            for (int i = 0; i < x.length; i += 7) {
+                tree.nearest(x[i], y[i], i, DistanceMethod.Euclidean, heap);
+                heap.sort();
+
+                // expected order: ascending distance, then ascending index
+                Integer[] order = new Integer[x.length - 1];
+                for (int j = 0, n = 0; j < x.length; j++) {
+                    if (j != i) {
+                        order[n++] = Integer.valueOf(j);
+                    }
+                }
+                final double qx = x[i];
+                final double qy = y[i];
+                Arrays.sort(order, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        int c = Double.compare(
+                                PointKdTree.distance(qx, qy, x[a], y[a], DistanceMethod.Euclidean),
+                                PointKdTree.distance(qx, qy, x[b], y[b], DistanceMethod.Euclidean));
+                        return c != 0 ? c : a.compareTo(b);
+                    }
+                });
+
+                assertEquals(k, heap.size());
+                for (int n = 0; n < k; n++) {
+                    assertEquals("k " + k + " point " + i, order[n].intValue(), heap.getIndex(n));
+                }
+            }
+        }
+    }
+
+    private int[] bruteForce(double qx, double qy, double radius, DistanceMethod method) {
+        int[] found = new int[x.length];
+        int count = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (PointKdTree.distance(qx, qy, x[i], y[i], method) <= radius) {
+                found[count++] = i;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+}
@@ -0,0 +1,115 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.process.spatialstatistics.core.PolygonContiguity;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
+import org.geotools.process.spatialstatistics.enumeration.ContiguityType;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class PolygonContiguityTest extends SpatialStatisticsTestCase {
+
+    // 3 x 3 grid of unit squares, row by row from the top left
+    private List<Geometry> createGrid() throws Exception {
+        WKTReader reader = new WKTReader();
+        List<Geometry> geometries = new ArrayList<Geometry>();
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                int minx = col * 10;
+                int maxy = 30 - row * 10;
+                geometries.add(reader.read("POLYGON ((" + minx + " " + maxy + ", " + (minx + 10)
+                        + " " + maxy + ", " + (minx + 10) + " " + (maxy - 10) + ", " + minx + " "
+                        + (maxy - 10) + ", " + minx + " " + maxy + "))"));
+            }
+        }
+        return geometries;
+    }
+
+    @Test
+    public void testRookBishopsQueen() throws Exception {
+        PolygonContiguity contiguity = new PolygonContiguity(createGrid());
+        assertEquals(9, contiguity.size());
+
+        SparseWeightMatrix rook = contiguity.build(ContiguityType.Rook);
+        assertNeighbors(rook, 4, 1, 3, 5, 7);
+        assertNeighbors(rook, 0, 1, 3);
+        assertNeighbors(rook, 8, 5, 7);
+        assertEquals(24, rook.getNonZeroCount());
+
+        SparseWeightMatrix bishops = contiguity.build(ContiguityType.Bishops);
+        assertNeighbors(bishops, 4, 0, 2, 6, 8);
+        assertNeighbors(bishops, 0, 4);
+        assertNeighbors(bishops, 1, 3, 5);
+        assertEquals(16, bishops.getNonZeroCount());
+
+        SparseWeightMatrix queen = contiguity.build(ContiguityType.Queen);
+        assertNeighbors(queen, 4, 0, 1, 2, 3, 5, 6, 7, 8);
+        assertNeighbors(queen, 0, 1, 3, 4);
+        assertEquals(rook.getNonZeroCount() + bishops.getNonZeroCount(),
+                queen.getNonZeroCount());
+    }
+
+    @Test
+    public void testUnmatchedVertices() throws Exception {
+        WKTReader reader = new WKTReader();
+        List<Geometry> geometries = new ArrayList<Geometry>();
+        // 0 and 1 share part of an edge without sharing a vertex
+        geometries.add(reader.read("POLYGON ((0 0, 0 10, 10 10, 10 0, 0 0))"));
+        geometries.add(reader.read("POLYGON ((10 -5, 10 15, 20 15, 20 -5, 10 -5))"));
+        // 2 touches the corner of 1
+        geometries.add(reader.read("POLYGON ((20 15, 20 25, 30 25, 30 15, 20 15))"));
+        // 3 touches the inside of an edge of 1 with one vertex
+        geometries.add(reader.read("POLYGON ((20 5, 25 0, 30 5, 25 10, 20 5))"));
+        // 4 is an island
+        geometries.add(reader.read("POLYGON ((100 100, 100 110, 110 110, 110 100, 100 100))"));
+
+        PolygonContiguity contiguity = new PolygonContiguity(geometries);
+
+        SparseWeightMatrix rook = contiguity.build(ContiguityType.Rook);
+        assertNeighbors(rook, 0, 1);
+        assertNeighbors(rook, 1, 0);
+        assertNeighbors(rook, 2);
+        assertNeighbors(rook, 3);
+        assertNeighbors(rook, 4);
+
+        SparseWeightMatrix bishops = contiguity.build(ContiguityType.Bishops);
+        assertNeighbors(bishops, 1, 2, 3);
+        assertNeighbors(bishops, 0);
+        assertNeighbors(bishops, 4);
+
+        SparseWeightMatrix queen = contiguity.build(ContiguityType.Queen);
+        assertNeighbors(queen, 1, 0, 2, 3);
+        assertNeighbors(queen, 4);
+        assertEquals(5, queen.getRowCount());
+    }
+
+    @Test
+    public void testHigherOrder() throws Exception {
+        PolygonContiguity contiguity = new PolygonContiguity(createGrid());
+        SparseWeightMatrix rook = contiguity.build(ContiguityType.Rook);
+
+        assertSame(rook, PolygonContiguity.expand(rook, 1));
+
+        SparseWeightMatrix second = PolygonContiguity.expand(rook, 2);
+        assertNeighbors(second, 0, 1, 2, 3, 4, 6);
+        assertNeighbors(second, 4, 0, 1, 2, 3, 5, 6, 7, 8);
+
+        SparseWeightMatrix fourth = PolygonContiguity.expand(rook, 4);
+        assertNeighbors(fourth, 0, 1, 2, 3, 4, 5, 6, 7, 8);
+        for (int row = 0; row < fourth.getRowCount(); row++) {
+            assertFalse(fourth.isNeighbor(row, row));
+            assertEquals(1.0, fourth.getWeight(row, (row + 1) % 9), 0d);
+        }
+    }
+
+    private void assertNeighbors(SparseWeightMatrix matrix, int row, int... expected) {
+        assertEquals("neighbors of " + row, expected.length, matrix.getNeighborCount(row));
+        for (int column : expected) {
+            assertTrue(row + " - " + column, matrix.isNeighbor(row, column));
+        }
+    }
+}
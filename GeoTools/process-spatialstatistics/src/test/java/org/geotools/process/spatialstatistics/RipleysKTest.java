@@ -0,0 +1,191 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.pattern.RipleysKOperation;
+import org.geotools.process.spatialstatistics.pattern.RipleysKOperation.RipleysK;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Point;
+
+public class RipleysKTest extends SpatialStatisticsTestCase {
+    DataStore dataStore;
+
+    SimpleFeatureCollection grid;
+
+    double[] x, y;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+
+        // 8 x 8 points 100 m apart, the extent is 700 x 700
+        grid = dataStore.getFeatureSource("grid").getFeatures();
+
+        List<Point> points = new ArrayList<Point>();
+        SimpleFeatureIterator featureIter = grid.features();
+        try {
+            while (featureIter.hasNext()) {
+                points.add((Point) featureIter.next().getDefaultGeometry());
+            }
+        } finally {
+            featureIter.close();
+        }
+        x = new double[points.size()];
+        y = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            x[i] = points.get(i).getX();
+            y[i] = points.get(i).getY();
+        }
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testRegularGrid() throws Exception {
+        RipleysKOperation operation = new RipleysKOperation();
+        operation.setBeginDistance(50);
+        operation.setDistanceIncrement(50);
+        operation.setNumberOfBands(8);
+        RipleysK ripleysK = operation.execute(grid);
+
+        assertEquals(8, ripleysK.getBandCount());
+        for (int b = 0; b < ripleysK.getBandCount(); b++) {
+            double distance = 50 + b * 50;
+            assertEquals(distance, ripleysK.getDistance(b), 1e-9);
+            assertEquals(distance, ripleysK.getExpectedL(b), 1e-9);
+            assertEquals(bruteForceL(distance, false), ripleysK.getObservedL(b), 1e-9);
+            assertTrue(Double.isNaN(ripleysK.getLowerEnvelope(b)));
+            assertTrue(Double.isNaN(ripleysK.getUpperEnvelope(b)));
+        }
+
+        // no pair closer than the spacing, and the 112 pairs at the spacing show dispersion
+        assertEquals(0, ripleysK.getObservedL(0), 0d);
+        double expected = Math.sqrt((2 * 490000 * 112) / (64 * 63 * Math.PI));
+        assertEquals(expected, ripleysK.getObservedL(1), 1e-9);
+        assertTrue(ripleysK.getDifference(1) < 0);
+    }
+
+    @Test
+    public void testEdgeCorrection() throws Exception {
+        RipleysKOperation operation = new RipleysKOperation();
+        operation.setBeginDistance(50);
+        operation.setDistanceIncrement(50);
+        operation.setNumberOfBands(8);
+        operation.setEdgeCorrection(true);
+        RipleysK ripleysK = operation.execute(grid);
+
+        for (int b = 0; b < ripleysK.getBandCount(); b++) {
+            double distance = ripleysK.getDistance(b);
+            assertEquals(bruteForceL(distance, true), ripleysK.getObservedL(b), 1e-9);
+            if (b > 0) {
+                // pairs near the border weigh more than one
+                assertTrue(ripleysK.getObservedL(b) > bruteForceL(distance, false));
+            }
+        }
+    }
+
+    @Test
+    public void testDefaultBands() throws Exception {
+        // a quarter of the longer side over 10 bands, starting at the increment
+        RipleysK ripleysK = new RipleysKOperation().execute(grid);
+        assertEquals(10, ripleysK.getBandCount());
+        for (int b = 0; b < ripleysK.getBandCount(); b++) {
+            assertEquals(17.5 * (b + 1), ripleysK.getDistance(b), 1e-9);
+        }
+    }
+
+    @Test
+    public void testEnvelope() throws Exception {
+        RipleysKOperation operation = new RipleysKOperation();
+        operation.setPermutations(9);
+        RipleysK ripleysK = operation.execute(grid);
+
+        for (int b = 0; b < ripleysK.getBandCount(); b++) {
+            assertFalse(Double.isNaN(ripleysK.getLowerEnvelope(b)));
+            assertTrue(ripleysK.getLowerEnvelope(b) <= ripleysK.getUpperEnvelope(b));
+        }
+    }
+
+    @Test
+    public void testSameSeedSameEnvelope() throws Exception {
+        RipleysKOperation operation = new RipleysKOperation();
+        operation.setPermutations(9);
+        operation.setSeed(42);
+        RipleysK expected = operation.execute(grid);
+
+        for (int threads : new int[] { 1, 3, 0 }) {
+            operation = new RipleysKOperation();
+            operation.setPermutations(9);
+            operation.setSeed(42);
+            operation.setParallelism(threads);
+            RipleysK actual = operation.execute(grid);
+            for (int b = 0; b < expected.getBandCount(); b++) {
+                assertEquals(expected.getLowerEnvelope(b), actual.getLowerEnvelope(b), 0d);
+                assertEquals(expected.getUpperEnvelope(b), actual.getUpperEnvelope(b), 0d);
+            }
+        }
+
+        // another seed draws other point sets
+        operation = new RipleysKOperation();
+        operation.setPermutations(9);
+        operation.setSeed(43);
+        RipleysK other = operation.execute(grid);
+        boolean differs = false;
+        for (int b = 0; b < expected.getBandCount(); b++) {
+            differs |= expected.getUpperEnvelope(b) != other.getUpperEnvelope(b);
+        }
+        assertTrue(differs);
+    }
+
+    @Test
+    public void testIndependentOfThreads() throws Exception {
+        SimpleFeatureCollection features = dataStore.getFeatureSource("bugsites").getFeatures();
+        RipleysKOperation operation = new RipleysKOperation();
+        operation.setEdgeCorrection(true);
+        RipleysK expected = operation.execute(features);
+
+        for (int threads : new int[] { 2, 3, 0 }) {
+            operation = new RipleysKOperation();
+            operation.setEdgeCorrection(true);
+            operation.setParallelism(threads);
+            RipleysK actual = operation.execute(features);
+            for (int b = 0; b < expected.getBandCount(); b++) {
+                assertEquals(expected.getObservedL(b), actual.getObservedL(b), 0d);
+            }
+        }
+    }
+
+    // L(d) over the unordered pairs of the grid, weighted by the translation correction
+    private double bruteForceL(double distance, boolean edgeCorrection) {
+        final double width = 700, height = 700, area = width * height;
+        final int n = x.length;
+
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double dx = Math.abs(x[i] - x[j]);
+                double dy = Math.abs(y[i] - y[j]);
+                if (Math.sqrt(dx * dx + dy * dy) <= distance) {
+                    sum += edgeCorrection ? area / ((width - dx) * (height - dy)) : 1.0;
+                }
+            }
+        }
+        return Math.sqrt((2 * area * sum) / (n * (n - 1.0) * Math.PI));
+    }
+}
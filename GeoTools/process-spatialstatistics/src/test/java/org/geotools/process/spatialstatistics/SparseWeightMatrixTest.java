@@ -0,0 +1,118 @@
+package org.geotools.process.spatialstatistics;
+
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
+import org.junit.Test;
+
+public class SparseWeightMatrixTest extends SpatialStatisticsTestCase {
+
+    @Test
+    public void testBuildSortsColumns() {
+        SparseWeightMatrix.Builder builder = new SparseWeightMatrix.Builder();
+        builder.add(2, 0, 2.0);
+        builder.add(0, 3, 3.0);
+        builder.add(0, 1, 1.0);
+        builder.add(2, 1, 4.0);
+        builder.add(0, 2, 2.0);
+
+        SparseWeightMatrix matrix = builder.build();
+        assertEquals(4, matrix.getRowCount());
+        assertEquals(5, matrix.getNonZeroCount());
+
+        int[] offsets = matrix.getRowOffsets();
+        assertEquals(0, offsets[0]);
+        assertEquals(3, offsets[1]);
+        assertEquals(3, offsets[2]);
+        assertEquals(5, offsets[3]);
+        assertEquals(5, offsets[4]);
+
+        int[] columns = matrix.getColumns();
+        assertEquals(1, columns[0]);
+        assertEquals(2, columns[1]);
+        assertEquals(3, columns[2]);
+        assertEquals(0, columns[3]);
+        assertEquals(1, columns[4]);
+
+        assertEquals(1.0, matrix.getWeight(0, 1), 0d);
+        assertEquals(3.0, matrix.getWeight(0, 3), 0d);
+        assertEquals(2.0, matrix.getWeight(2, 0), 0d);
+        assertEquals(0.0, matrix.getWeight(0, 0), 0d);
+        assertEquals(0.0, matrix.getWeight(1, 2), 0d);
+        assertTrue(matrix.isNeighbor(2, 1));
+        assertFalse(matrix.isNeighbor(1, 2));
+        assertEquals(3, matrix.getMaxNeighborCount());
+    }
+
+    @Test
+    public void testLastDuplicateWins() {
+        SparseWeightMatrix.Builder builder = new SparseWeightMatrix.Builder();
+        builder.add(0, 1, 1.0);
+        builder.add(0, 2, 5.0);
+        builder.add(0, 1, 7.0);
+        builder.add(1, 0, 1.0);
+        builder.add(0, 1, 9.0);
+
+        SparseWeightMatrix matrix = builder.build();
+        assertEquals(3, matrix.getNonZeroCount());
+        assertEquals(2, matrix.getNeighborCount(0));
+        assertEquals(9.0, matrix.getWeight(0, 1), 0d);
+        assertEquals(5.0, matrix.getWeight(0, 2), 0d);
+        assertEquals(14.0, matrix.getRowSum(0), 0d);
+        assertEquals(1.0, matrix.getRowSum(1), 0d);
+    }
+
+    @Test
+    public void testEmptyRows() {
+        SparseWeightMatrix.Builder builder = new SparseWeightMatrix.Builder();
+        builder.add(1, 2, 1.0);
+        builder.ensureRowCount(6);
+
+        SparseWeightMatrix matrix = builder.build();
+        assertEquals(6, matrix.getRowCount());
+        assertEquals(0, matrix.getNeighborCount(0));
+        assertEquals(1, matrix.getNeighborCount(1));
+        assertEquals(0, matrix.getNeighborCount(5));
+        assertEquals(0.0, matrix.getRowSum(5), 0d);
+
+        builder.clear();
+        matrix = builder.build();
+        assertEquals(0, matrix.getRowCount());
+        assertEquals(0, matrix.getNonZeroCount());
+    }
+
+    @Test
+    public void testGrowth() {
+        SparseWeightMatrix.Builder builder = new SparseWeightMatrix.Builder(1);
+        int count = 200;
+        for (int row = count - 1; row >= 0; row--) {
+            builder.add(row, (row + 1) % count, 1.0);
+            builder.add(row, (row + count - 1) % count, 1.0);
+        }
+        assertEquals(count * 2, builder.size());
+
+        SparseWeightMatrix matrix = builder.build();
+        assertEquals(count, matrix.getRowCount());
+        for (int row = 0; row < count; row++) {
+            assertEquals(2, matrix.getNeighborCount(row));
+            assertTrue(matrix.isNeighbor(row, (row + 1) % count));
+            assertTrue(matrix.isNeighbor(row, (row + count - 1) % count));
+            assertEquals(2.0, matrix.getRowSum(row), 0d);
+        }
+    }
+
+    @Test
+    public void testInvalidArrays() {
+        try {
+            new SparseWeightMatrix(2, new int[] { 0, 1 }, new int[] { 1 }, new double[] { 1.0 });
+            fail("rowOffsets must have rowCount + 1 entries");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            new SparseWeightMatrix(1, new int[] { 0, 2 }, new int[] { 1 }, new double[] { 1.0 });
+            fail("columns must cover the last row offset");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.core.IdDictionary;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
+import org.geotools.process.spatialstatistics.core.SpatialWeightMatrixKNearestNeighbors;
+import org.geotools.process.spatialstatistics.core.SpatialWeightMatrixResult;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+public class SpatialWeightMatrixKNearestNeighborsTest extends SpatialStatisticsTestCase {
+    DataStore dataStore;
+
+    SimpleFeatureCollection features;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+        features = dataStore.getFeatureSource("bugsites").getFeatures();
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testNearestNeighbors() throws Exception {
+        Map<Object, Coordinate> coordinates = new HashMap<Object, Coordinate>();
+        SimpleFeatureIterator iter = features.features();
+        try {
+            while (iter.hasNext()) {
+                SimpleFeature feature = iter.next();
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                coordinates.put(feature.getAttribute("cat"), geometry.getCoordinate());
+            }
+        } finally {
+            iter.close();
+        }
+
+        SpatialWeightMatrixKNearestNeighbors builder = new SpatialWeightMatrixKNearestNeighbors();
+        assertEquals(1, builder.getParallelism());
+        builder.setNumberOfNeighbors(6);
+
+        SpatialWeightMatrixResult result = builder.execute(features, "cat");
+        SparseWeightMatrix matrix = result.getWeightMatrix();
+        IdDictionary ids = result.getIdDictionary();
+        assertEquals(features.size(), matrix.getRowCount());
+
+        int[] columns = matrix.getColumns();
+        double[] weights = matrix.getWeights();
+        for (int row = 0; row < matrix.getRowCount(); row++) {
+            assertEquals(6, matrix.getNeighborCount(row));
+            assertFalse(matrix.isNeighbor(row, row));
+
+            // the stored distances are the six smallest distances of the row
+            Coordinate origin = coordinates.get(ids.getId(row));
+            double[] all = new double[matrix.getRowCount() - 1];
+            for (int col = 0, n = 0; col < matrix.getRowCount(); col++) {
+                if (col != row) {
+                    all[n++] = origin.distance(coordinates.get(ids.getId(col)));
+                }
+            }
+            Arrays.sort(all);
+
+            double[] stored = new double[6];
+            for (int k = matrix.getRowStart(row), n = 0; k < matrix.getRowEnd(row); k++, n++) {
+                stored[n] = weights[k];
+                assertEquals(origin.distance(coordinates.get(ids.getId(columns[k]))), weights[k],
+                        1e-9);
+            }
+            Arrays.sort(stored);
+            for (int n = 0; n < 6; n++) {
+                assertEquals(all[n], stored[n], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelism() throws Exception {
+        SpatialWeightMatrixKNearestNeighbors sequential;
+        sequential = new SpatialWeightMatrixKNearestNeighbors();
+        sequential.setNumberOfNeighbors(8);
+        SparseWeightMatrix expected = sequential.execute(features, "cat").getWeightMatrix();
+
+        SpatialWeightMatrixKNearestNeighbors parallel = new SpatialWeightMatrixKNearestNeighbors();
+        parallel.setNumberOfNeighbors(8);
+        parallel.setParallelism(4);
+        SparseWeightMatrix actual = parallel.execute(features, "cat").getWeightMatrix();
+
+        assertTrue(Arrays.equals(expected.getRowOffsets(), actual.getRowOffsets()));
+        assertTrue(Arrays.equals(expected.getColumns(), actual.getColumns()));
+        assertTrue(Arrays.equals(expected.getWeights(), actual.getWeights()));
+    }
+
+    @Test
+    public void testFewerFeaturesThanNeighbors() throws Exception {
+        SimpleFeatureCollection zones = dataStore.getFeatureSource("zones").getFeatures();
+        SpatialWeightMatrixKNearestNeighbors builder = new SpatialWeightMatrixKNearestNeighbors();
+        builder.setNumberOfNeighbors(10);
+
+        SparseWeightMatrix matrix = builder.execute(zones, "cat2").getWeightMatrix();
+        for (int row = 0; row < matrix.getRowCount(); row++) {
+            assertEquals(zones.size() - 1, matrix.getNeighborCount(row));
+        }
+    }
+}
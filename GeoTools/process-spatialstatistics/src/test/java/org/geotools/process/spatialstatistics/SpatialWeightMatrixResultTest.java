@@ -0,0 +1,204 @@
+package org.geotools.process.spatialstatistics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.geotools.process.spatialstatistics.core.AbstractSpatialWeightMatrix.SpatialWeightMatrixType;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
+import org.geotools.process.spatialstatistics.core.SpatialWeightMatrixResult;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.junit.Test;
+
+public class SpatialWeightMatrixResultTest extends SpatialStatisticsTestCase {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private SpatialWeightMatrixResult createDistanceWeights() {
+        SpatialWeightMatrixResult swm = new SpatialWeightMatrixResult(
+                SpatialWeightMatrixType.Distance);
+        swm.setupVariables("points", "code");
+        swm.addFeature("a");
+        swm.visit("a", "b", 10.5);
+        swm.visit("a", "c", 2.25);
+        swm.visit("b", "a", 10.5);
+        swm.visit("c", "a", 2.25);
+        swm.visit("c", "d", 7.0);
+        swm.addFeature("island");
+        swm.visit("d", "c", 7.0);
+        return swm;
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        SpatialWeightMatrixResult swm = createDistanceWeights();
+        SparseWeightMatrix expected = swm.getWeightMatrix();
+        assertEquals(5, expected.getRowCount());
+
+        File file = File.createTempFile("weights", ".swm");
+        try {
+            swm.saveBinary(file);
+            assertTrue(SpatialWeightMatrixResult.isBinaryFile(file));
+
+            SpatialWeightMatrixResult loaded = new SpatialWeightMatrixResult(
+                    SpatialWeightMatrixType.Contiguity);
+            assertTrue(loaded.load(file, UTF8));
+            assertEquals(SpatialWeightMatrixType.Distance, loaded.getSpatialWeightMatrixType());
+            assertEquals("points", loaded.getTypeName());
+            assertEquals("code", loaded.getUniqueField());
+            assertEquals(5, loaded.getFeatureCount());
+            assertEquals("island", loaded.getIdDictionary().getId(4));
+
+            SparseWeightMatrix actual = loaded.getWeightMatrix();
+            assertTrue(Arrays.equals(expected.getRowOffsets(), actual.getRowOffsets()));
+            assertTrue(Arrays.equals(expected.getColumns(), actual.getColumns()));
+            assertTrue(Arrays.equals(expected.getWeights(), actual.getWeights()));
+
+            // a loaded matrix can still be edited
+            loaded.visit("island", "d", 99.0);
+            assertEquals(99.0, loaded.getWeightMatrix().getWeight(4, 3), 0d);
+            assertEquals(2.25, loaded.getWeightMatrix().getWeight(0, 2), 0d);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testTruncatedBinaryFile() throws Exception {
+        File file = File.createTempFile("weights", ".swm");
+        try {
+            createDistanceWeights().saveBinary(file);
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(raf.length() - 4);
+            } finally {
+                raf.close();
+            }
+
+            SpatialWeightMatrixResult loaded = new SpatialWeightMatrixResult(
+                    SpatialWeightMatrixType.Distance);
+            assertFalse(loaded.load(file, UTF8));
+            assertEquals(0, loaded.getFeatureCount());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testTextRoundTrip() throws Exception {
+        File file = File.createTempFile("weights", ".gwt");
+        try {
+            SpatialWeightMatrixResult swm = createDistanceWeights();
+            swm.save(file, UTF8);
+            assertFalse(SpatialWeightMatrixResult.isBinaryFile(file));
+
+            SpatialWeightMatrixResult loaded = new SpatialWeightMatrixResult(
+                    SpatialWeightMatrixType.Contiguity);
+            assertTrue(loaded.load(file, UTF8));
+            assertEquals(SpatialWeightMatrixType.Distance, loaded.getSpatialWeightMatrixType());
+
+            // rows without links are not written to a GWT file
+            SparseWeightMatrix actual = loaded.getWeightMatrix();
+            int a = loaded.getIdDictionary().indexOf("a");
+            int c = loaded.getIdDictionary().indexOf("c");
+            assertEquals(4, actual.getRowCount());
+            assertEquals(6, actual.getNonZeroCount());
+            assertEquals(2.25, actual.getWeight(a, c), 0d);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testContiguityText() throws Exception {
+        File file = File.createTempFile("weights", ".gal");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                String text = "0 3 zones code\n1 2\n2 3\n2 1\n1\n3 1\n1\n";
+                out.write(text.getBytes(UTF8));
+            } finally {
+                out.close();
+            }
+
+            SpatialWeightMatrixResult loaded = new SpatialWeightMatrixResult(
+                    SpatialWeightMatrixType.Distance);
+            assertTrue(loaded.load(file, UTF8));
+            assertEquals(SpatialWeightMatrixType.Contiguity, loaded.getSpatialWeightMatrixType());
+            assertEquals("zones", loaded.getTypeName());
+            assertEquals(4, loaded.getWeightMatrix().getNonZeroCount());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testAlignConvertsDistances() {
+        SpatialWeightMatrixResult swm = createDistanceWeights();
+
+        // features in another order, "b" missing, an unknown feature added
+        SparseWeightMatrix aligned = swm.alignWeightMatrix(Arrays.asList("d", "c", "x", "a"),
+                SpatialConcept.SPATIALWEIGHTSFROMFILE);
+        assertEquals(4, aligned.getRowCount());
+        assertEquals(1.0 / 7.0, aligned.getWeight(0, 1), 0d);
+        assertEquals(1.0 / 7.0, aligned.getWeight(1, 0), 0d);
+        assertEquals(1.0 / 2.25, aligned.getWeight(1, 3), 0d);
+        assertEquals(1.0 / 2.25, aligned.getWeight(3, 1), 0d);
+        assertEquals(0, aligned.getNeighborCount(2));
+        assertEquals(1, aligned.getNeighborCount(3));
+        assertEquals(4, aligned.getNonZeroCount());
+
+        aligned = swm.alignWeightMatrix(Arrays.asList("d", "c", "x", "a"),
+                SpatialConcept.INVERSEDISTANCESQUARED);
+        assertEquals(1.0 / 49.0, aligned.getWeight(0, 1), 0d);
+        assertEquals(1.0 / (2.25 * 2.25), aligned.getWeight(1, 3), 0d);
+    }
+
+    @Test
+    public void testAlignWeightsFile() throws Exception {
+        File file = File.createTempFile("weights", ".gwt");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                String text = "1 3 points code\n1 2 0.5\n1 3 40.0\n2 1 0.5\n3 1 40.0\n";
+                out.write(text.getBytes(UTF8));
+            } finally {
+                out.close();
+            }
+
+            SpatialWeightMatrixResult loaded = new SpatialWeightMatrixResult(
+                    SpatialWeightMatrixType.Contiguity);
+            assertTrue(loaded.load(file, UTF8));
+            SparseWeightMatrix aligned = loaded.alignWeightMatrix(Arrays.asList("1", "2", "3"),
+                    SpatialConcept.SPATIALWEIGHTSFROMFILE);
+
+            // the farther neighbor weighs less, distances within 1 weigh 1
+            assertEquals(1.0, aligned.getWeight(0, 1), 0d);
+            assertEquals(0.025, aligned.getWeight(0, 2), 0d);
+            assertTrue(aligned.getWeight(0, 2) < aligned.getWeight(0, 1));
+            assertEquals(aligned.getWeight(0, 2), aligned.getWeight(2, 0), 0d);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testAlignContiguity() {
+        SpatialWeightMatrixResult swm = new SpatialWeightMatrixResult(
+                SpatialWeightMatrixType.Contiguity);
+        swm.visit(Long.valueOf(1), Long.valueOf(2));
+        swm.visit(Long.valueOf(2), Long.valueOf(1));
+        swm.visit(Long.valueOf(2), Long.valueOf(3));
+        swm.visit(Long.valueOf(3), Long.valueOf(2));
+
+        // ids are matched on their string form
+        SparseWeightMatrix aligned = swm.alignWeightMatrix(Arrays.asList("3", "2", "1"),
+                SpatialConcept.INVERSEDISTANCE);
+        assertEquals(1.0, aligned.getWeight(0, 1), 0d);
+        assertEquals(1.0, aligned.getWeight(1, 2), 0d);
+        assertEquals(2, aligned.getNeighborCount(1));
+        assertFalse(aligned.isNeighbor(0, 2));
+    }
+}
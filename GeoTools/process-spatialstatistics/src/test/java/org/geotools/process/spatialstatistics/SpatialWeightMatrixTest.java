@@ -0,0 +1,185 @@
+package org.geotools.process.spatialstatistics;
+
+import java.util.Arrays;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.process.spatialstatistics.core.PointKdTree;
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
+import org.geotools.process.spatialstatistics.core.SpatialEventStore;
+import org.geotools.process.spatialstatistics.core.SpatialWeightMatrix;
+import org.geotools.process.spatialstatistics.core.SpatialWeightsCache;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpatialWeightMatrixTest extends SpatialStatisticsTestCase {
+    DataStore dataStore;
+
+    SimpleFeatureCollection features;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+        features = dataStore.getFeatureSource("bugsites").getFeatures();
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testRowStandardization() throws Exception {
+        SpatialConcept[] concepts = { SpatialConcept.FIXEDDISTANCEBAND,
+                SpatialConcept.INVERSEDISTANCE, SpatialConcept.INVERSEDISTANCESQUARED };
+        for (SpatialConcept concept : concepts) {
+            SpatialWeightMatrix swMatrix = new SpatialWeightMatrix(concept,
+                    StandardizationMethod.ROW);
+            swMatrix.distanceBandWidth = 2000;
+            swMatrix.buildWeightMatrix(features, "cat", DistanceMethod.Euclidean);
+
+            SparseWeightMatrix weights = swMatrix.getSparseWeights(true);
+            assertEquals(features.size(), weights.getRowCount());
+
+            int withNeighbors = 0;
+            for (int row = 0; row < weights.getRowCount(); row++) {
+                assertFalse(weights.isNeighbor(row, row));
+                if (weights.getNeighborCount(row) > 0) {
+                    assertEquals(concept.name(), 1.0, weights.getRowSum(row), 1e-9);
+                    withNeighbors++;
+                }
+            }
+            assertTrue(withNeighbors > 0);
+
+            SparseWeightMatrix raw = swMatrix.getSparseWeights(false);
+            assertEquals(weights.getNonZeroCount(), raw.getNonZeroCount());
+        }
+    }
+
+    @Test
+    public void testIndexedNeighborsMatchAllPairs() throws Exception {
+        for (DistanceMethod method : DistanceMethod.values()) {
+            SpatialWeightMatrix swMatrix = new SpatialWeightMatrix(
+                    SpatialConcept.FIXEDDISTANCEBAND, StandardizationMethod.NONE);
+            swMatrix.distanceBandWidth = 1500;
+            swMatrix.buildWeightMatrix(features, "cat", method);
+            assertNotNull(swMatrix.getSpatialIndex());
+
+            SpatialEventStore store = swMatrix.getEventStore();
+            SparseWeightMatrix weights = swMatrix.getSparseWeights(false);
+
+            int links = 0;
+            for (int i = 0; i < store.size(); i++) {
+                for (int j = 0; j < store.size(); j++) {
+                    double dist = PointKdTree.distance(store.getX(i), store.getY(i),
+                            store.getX(j), store.getY(j), method);
+                    boolean expected = i != j && dist <= swMatrix.distanceBandWidth;
+                    assertEquals(method + " " + i + "-" + j, expected, weights.isNeighbor(i, j));
+                    if (expected) {
+                        assertEquals(1.0, weights.getWeight(i, j), 0d);
+                        links++;
+                    }
+                }
+            }
+            assertEquals(links, weights.getNonZeroCount());
+        }
+    }
+
+    @Test
+    public void testIndexedWeights() throws Exception {
+        SpatialWeightMatrix swMatrix = new SpatialWeightMatrix(SpatialConcept.INVERSEDISTANCE,
+                StandardizationMethod.ROW);
+        swMatrix.distanceBandWidth = 2000;
+        swMatrix.buildWeightMatrix(features, "cat", DistanceMethod.Euclidean);
+
+        // event i is the i-th input feature
+        SpatialEventStore store = swMatrix.getEventStore();
+        assertEquals(features.size(), swMatrix.getEventCount());
+        assertEquals(store.size(), swMatrix.getEventCount());
+
+        for (int i = 0; i < swMatrix.getEventCount(); i++) {
+            double rowSum = 0;
+            for (int j : swMatrix.getNeighbors(i)) {
+                double dist = store.distance(i, j, DistanceMethod.Euclidean);
+                double expected = dist > 2000 ? 0.0 : dist <= 1.0 ? 1.0 : 1.0 / dist;
+                assertEquals(i + "-" + j, expected, swMatrix.getWeight(i, j), 1e-12);
+                if (i != j) {
+                    rowSum += swMatrix.standardizeWeight(i, swMatrix.getWeight(i, j));
+                }
+            }
+            if (rowSum > 0) {
+                assertEquals(1.0, rowSum, 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testDefaultThreshold() throws Exception {
+        SpatialWeightMatrix swMatrix = new SpatialWeightMatrix(SpatialConcept.INVERSEDISTANCE,
+                StandardizationMethod.NONE);
+        swMatrix.buildWeightMatrix(features, "cat", DistanceMethod.Euclidean);
+
+        // the largest nearest neighbor distance, increased for rounding error
+        SpatialEventStore store = swMatrix.getEventStore();
+        double maxNearest = 0;
+        for (int i = 0; i < store.size(); i++) {
+            double nearest = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < store.size(); j++) {
+                if (i != j) {
+                    nearest = Math.min(nearest, store.distance(i, j, DistanceMethod.Euclidean));
+                }
+            }
+            maxNearest = Math.max(maxNearest, nearest);
+        }
+        assertEquals(maxNearest * 1.0001, swMatrix.distanceBandWidth, 1e-6);
+
+        // every feature has at least one neighbor within the default threshold
+        SparseWeightMatrix weights = swMatrix.getSparseWeights(false);
+        for (int row = 0; row < weights.getRowCount(); row++) {
+            assertTrue(weights.getNeighborCount(row) > 0);
+        }
+    }
+
+    @Test
+    public void testWeightsCache() throws Exception {
+        SpatialWeightsCache cache = new SpatialWeightsCache(4, 1000000);
+
+        SpatialWeightMatrix first = new SpatialWeightMatrix(SpatialConcept.INVERSEDISTANCE,
+                StandardizationMethod.NONE);
+        first.setWeightsCache(cache);
+        first.buildWeightMatrix(features, "cat", DistanceMethod.Euclidean);
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMissCount());
+
+        SpatialWeightMatrix second = new SpatialWeightMatrix(SpatialConcept.INVERSEDISTANCE,
+                StandardizationMethod.NONE);
+        second.setWeightsCache(cache);
+        second.buildWeightMatrix(features, "cat", DistanceMethod.Euclidean);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(first.distanceBandWidth, second.distanceBandWidth, 0d);
+
+        SparseWeightMatrix expected = first.getSparseWeights(false);
+        SparseWeightMatrix actual = second.getSparseWeights(false);
+        assertTrue(Arrays.equals(expected.getRowOffsets(), actual.getRowOffsets()));
+        assertTrue(Arrays.equals(expected.getColumns(), actual.getColumns()));
+        assertTrue(Arrays.equals(expected.getWeights(), actual.getWeights()));
+
+        // another concept is built and cached separately
+        SpatialWeightMatrix third = new SpatialWeightMatrix(SpatialConcept.FIXEDDISTANCEBAND,
+                StandardizationMethod.NONE);
+        third.setWeightsCache(cache);
+        third.buildWeightMatrix(features, "cat", DistanceMethod.Euclidean);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getHitCount());
+    }
+}
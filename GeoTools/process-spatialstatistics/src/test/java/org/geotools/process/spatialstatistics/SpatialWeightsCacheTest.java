@@ -0,0 +1,117 @@
+package org.geotools.process.spatialstatistics;
+
+import org.geotools.process.spatialstatistics.core.SparseWeightMatrix;
+import org.geotools.process.spatialstatistics.core.SpatialEventStore;
+import org.geotools.process.spatialstatistics.core.SpatialWeightsCache;
+import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.junit.Test;
+
+public class SpatialWeightsCacheTest extends SpatialStatisticsTestCase {
+
+    private SpatialEventStore createEvents(double shift) {
+        SpatialEventStore events = new SpatialEventStore();
+        for (int i = 0; i < 10; i++) {
+            events.add(i, i * 10 + (i == 5 ? shift : 0), i * 5, 1.0, 1.0);
+        }
+        return events;
+    }
+
+    private SpatialWeightsCache.Key createKey(String typeName, SpatialEventStore events,
+            double distanceBand) {
+        return new SpatialWeightsCache.Key(typeName, events, SpatialConcept.FIXEDDISTANCEBAND,
+                DistanceMethod.Euclidean, distanceBand, 0);
+    }
+
+    private SpatialWeightsCache.Entry createEntry(int links) {
+        SparseWeightMatrix.Builder builder = new SparseWeightMatrix.Builder();
+        for (int k = 0; k < links; k++) {
+            builder.add(k, k + 1, 1.0);
+        }
+        return new SpatialWeightsCache.Entry(builder.build(), 25.0);
+    }
+
+    @Test
+    public void testKeys() {
+        SpatialWeightsCache cache = new SpatialWeightsCache(8, 1000);
+        SpatialWeightsCache.Entry entry = createEntry(5);
+        cache.put(createKey("bugsites", createEvents(0), 25), entry);
+        assertEquals(1, cache.size());
+        assertEquals(5, cache.getLinkCount());
+
+        // same layer, locations and parameters
+        assertSame(entry, cache.get(createKey("bugsites", createEvents(0), 25)));
+        assertEquals(25.0, entry.getDistanceBand(), 0d);
+
+        // a moved feature, another band, concept or layer
+        assertNull(cache.get(createKey("bugsites", createEvents(0.001), 25)));
+        assertNull(cache.get(createKey("bugsites", createEvents(0), 30)));
+        assertNull(cache.get(createKey("other", createEvents(0), 25)));
+        assertNull(cache.get(new SpatialWeightsCache.Key("bugsites", createEvents(0),
+                SpatialConcept.INVERSEDISTANCE, DistanceMethod.Euclidean, 25, 0)));
+        assertNull(cache.get(new SpatialWeightsCache.Key("bugsites", createEvents(0),
+                SpatialConcept.FIXEDDISTANCEBAND, DistanceMethod.Manhattan, 25, 0)));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(5, cache.getMissCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        SpatialWeightsCache cache = new SpatialWeightsCache(2, 1000);
+        SpatialWeightsCache.Key first = createKey("a", createEvents(0), 10);
+        SpatialWeightsCache.Key second = createKey("b", createEvents(0), 10);
+        SpatialWeightsCache.Key third = createKey("c", createEvents(0), 10);
+
+        cache.put(first, createEntry(1));
+        cache.put(second, createEntry(1));
+        assertNotNull(cache.get(first)); // second is now the oldest
+        cache.put(third, createEntry(1));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNotNull(cache.get(first));
+        assertNull(cache.get(second));
+        assertNotNull(cache.get(third));
+    }
+
+    @Test
+    public void testLinkLimit() {
+        SpatialWeightsCache cache = new SpatialWeightsCache(10, 10);
+        cache.put(createKey("a", createEvents(0), 10), createEntry(6));
+        cache.put(createKey("b", createEvents(0), 10), createEntry(6));
+        assertEquals(1, cache.size());
+        assertEquals(6, cache.getLinkCount());
+        assertNull(cache.get(createKey("a", createEvents(0), 10)));
+
+        // larger than the whole cache, never stored
+        cache.put(createKey("c", createEvents(0), 10), createEntry(11));
+        assertNull(cache.get(createKey("c", createEvents(0), 10)));
+        assertEquals(6, cache.getLinkCount());
+
+        // replacing an entry releases its links
+        cache.put(createKey("b", createEvents(0), 10), createEntry(2));
+        assertEquals(2, cache.getLinkCount());
+
+        cache.setMaxEntries(0);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getLinkCount());
+    }
+
+    @Test
+    public void testInvalidate() {
+        SpatialWeightsCache cache = new SpatialWeightsCache(10, 1000);
+        cache.put(createKey("a", createEvents(0), 10), createEntry(3));
+        cache.put(createKey("a", createEvents(0), 20), createEntry(3));
+        cache.put(createKey("b", createEvents(0), 10), createEntry(3));
+
+        cache.invalidate("a");
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getLinkCount());
+        assertNotNull(cache.get(createKey("b", createEvents(0), 10)));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getLinkCount());
+    }
+}
@@ -0,0 +1,171 @@
+package org.geotools.process.spatialstatistics;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.core.FieldMoments;
+import org.geotools.process.spatialstatistics.pattern.StandardizedScoresOperation;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+
+public class StandardizedScoresTest extends SpatialStatisticsTestCase {
+    DataStore dataStore;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testMomentsMatchTwoPasses() {
+        // far from zero, where the textbook sums of squares lose precision
+        Random random = new Random(31);
+        double[] x = new double[5000];
+        double[] y = new double[x.length];
+        FieldMoments moments = new FieldMoments();
+        for (int i = 0; i < x.length; i++) {
+            x[i] = 1e8 + random.nextGaussian() * 10;
+            y[i] = 5e7 - x[i] * 0.25 + random.nextGaussian();
+            moments.add(x[i], y[i]);
+        }
+        moments.add(Double.NaN, 1);
+
+        // exact totals, the compensated sums should round to them
+        BigDecimal exactX = BigDecimal.ZERO, exactY = BigDecimal.ZERO;
+        for (int i = 0; i < x.length; i++) {
+            exactX = exactX.add(new BigDecimal(x[i]));
+            exactY = exactY.add(new BigDecimal(y[i]));
+        }
+        double sumX = exactX.doubleValue();
+        double sumY = exactY.doubleValue();
+        double meanX = sumX / x.length;
+        double meanY = sumY / x.length;
+
+        double sigmaX = 0, sigmaY = 0, sigmaXY = 0;
+        for (int i = 0; i < x.length; i++) {
+            sigmaX += (x[i] - meanX) * (x[i] - meanX);
+            sigmaY += (y[i] - meanY) * (y[i] - meanY);
+            sigmaXY += (x[i] - meanX) * (y[i] - meanY);
+        }
+
+        assertEquals(x.length, moments.getCount());
+        assertEquals(sumX, moments.getSumX(), 0d);
+        assertEquals(sumY, moments.getSumY(), 0d);
+        assertEquals(meanX, moments.getMeanX(), 1e-6);
+        assertEquals(meanY, moments.getMeanY(), 1e-6);
+        assertEquals(sigmaX, moments.getSigmaX(), sigmaX * 1e-9);
+        assertEquals(sigmaY, moments.getSigmaY(), sigmaY * 1e-9);
+        assertEquals(sigmaXY, moments.getSigmaXY(), Math.abs(sigmaXY) * 1e-9);
+    }
+
+    @Test
+    public void testMergeMatchesSinglePass() {
+        Random random = new Random(5);
+        double[] x = new double[1000];
+        double[] y = new double[x.length];
+        FieldMoments single = new FieldMoments();
+        for (int i = 0; i < x.length; i++) {
+            x[i] = random.nextDouble() * 100;
+            y[i] = x[i] + random.nextGaussian() * 5;
+            single.add(x[i], y[i]);
+        }
+
+        // uneven parts, one of them empty
+        int[] bounds = { 0, 1, 1, 400, 999, 1000 };
+        FieldMoments merged = new FieldMoments();
+        for (int p = 0; p + 1 < bounds.length; p++) {
+            FieldMoments part = new FieldMoments();
+            for (int i = bounds[p]; i < bounds[p + 1]; i++) {
+                part.add(x[i], y[i]);
+            }
+            merged.merge(part);
+        }
+
+        assertEquals(single.getCount(), merged.getCount());
+        assertEquals(single.getSumX(), merged.getSumX(), 1e-9);
+        assertEquals(single.getSumY(), merged.getSumY(), 1e-9);
+        assertEquals(single.getMeanX(), merged.getMeanX(), 1e-9);
+        assertEquals(single.getMeanY(), merged.getMeanY(), 1e-9);
+        assertEquals(single.getSigmaX(), merged.getSigmaX(), 1e-6);
+        assertEquals(single.getSigmaY(), merged.getSigmaY(), 1e-6);
+        assertEquals(single.getSigmaXY(), merged.getSigmaXY(), 1e-6);
+
+        FieldMoments empty = new FieldMoments();
+        assertEquals(0, empty.getCount());
+        assertTrue(Double.isNaN(empty.getMeanX()));
+    }
+
+    @Test
+    public void testScoresMatchDefinition() throws Exception {
+        SimpleFeatureCollection features = dataStore.getFeatureSource("grid").getFeatures();
+
+        // reference scores from the shares of the totals, as before the one-pass moments
+        int count = 0;
+        double sumObs = 0, sumPop = 0;
+        SimpleFeatureIterator featureIter = features.features();
+        try {
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                sumObs += ((Number) feature.getAttribute("obs")).doubleValue();
+                sumPop += ((Number) feature.getAttribute("pop")).doubleValue();
+                count++;
+            }
+        } finally {
+            featureIter.close();
+        }
+
+        double sumSquares = 0;
+        featureIter = features.features();
+        try {
+            while (featureIter.hasNext()) {
+                double diff = share(featureIter.next(), sumObs, sumPop);
+                sumSquares += diff * diff;
+            }
+        } finally {
+            featureIter.close();
+        }
+        double dZ = Math.sqrt(sumSquares / count);
+
+        StandardizedScoresOperation operation = new StandardizedScoresOperation();
+        SimpleFeatureCollection result = operation.execute(features, "obs", "pop", "stdscr");
+        assertEquals(count, result.size());
+
+        int scored = 0;
+        featureIter = result.features();
+        try {
+            while (featureIter.hasNext()) {
+                SimpleFeature feature = featureIter.next();
+                double expected = share(feature, sumObs, sumPop) / dZ;
+                Double actual = (Double) feature.getAttribute("stdscr");
+                assertNotNull(actual);
+                assertEquals(expected, actual.doubleValue(), 1e-9);
+                scored++;
+            }
+        } finally {
+            featureIter.close();
+        }
+        assertEquals(count, scored);
+    }
+
+    private double share(SimpleFeature feature, double sumObs, double sumPop) {
+        double obs = ((Number) feature.getAttribute("obs")).doubleValue();
+        double pop = ((Number) feature.getAttribute("pop")).doubleValue();
+        return obs / sumObs - pop / sumPop;
+    }
+}
@@ -0,0 +1,220 @@
+package org.geotools.process.spatialstatistics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalStatisticsOperation;
+import org.geotools.process.spatialstatistics.autocorrelation.GlobalStatisticsOperation.GlobalStatistics;
+import org.geotools.process.spatialstatistics.autocorrelation.LocalMoranIStatisticOperation;
+import org.geotools.process.spatialstatistics.core.SpatialWeightMatrixDistance;
+import org.geotools.process.spatialstatistics.core.SpatialWeightMatrixKNearestNeighbors;
+import org.geotools.process.spatialstatistics.core.SpatialWeightMatrixResult;
+import org.geotools.process.spatialstatistics.core.TiledWeightMatrix;
+import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
+import org.geotools.process.spatialstatistics.enumeration.StandardizationMethod;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+
+public class TiledWeightMatrixTest extends SpatialStatisticsTestCase {
+    static final SpatialConcept[] CONCEPTS = { SpatialConcept.FIXEDDISTANCEBAND,
+            SpatialConcept.INVERSEDISTANCE, SpatialConcept.INVERSEDISTANCESQUARED };
+
+    static final StandardizationMethod[] METHODS = { StandardizationMethod.NONE,
+            StandardizationMethod.ROW };
+
+    DataStore dataStore;
+
+    SimpleFeatureCollection features;
+
+    File file;
+
+    TiledWeightMatrix weights;
+
+    @Override
+    @Before
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataStore = new PropertyDataStore(TestData.file(this, null));
+        features = dataStore.getFeatureSource("bugsites").getFeatures();
+
+        // several tiles, so that links cross the tile boundaries
+        SpatialWeightMatrixDistance distance = new SpatialWeightMatrixDistance();
+        distance.setThresholdDistance(2000);
+        distance.setFeaturesPerTile(16);
+        file = File.createTempFile("weights", ".swmt");
+        weights = distance.executeTiled(features, "cat", file);
+    }
+
+    @Override
+    @After
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        weights.close();
+        file.delete();
+        dataStore.dispose();
+    }
+
+    @Test
+    public void testGlobalStatisticsMatchInMemoryWeights() throws Exception {
+        assertTrue(weights.getTileCount() > 1);
+        for (SpatialConcept concept : CONCEPTS) {
+            for (StandardizationMethod method : METHODS) {
+                GlobalStatisticsOperation operation = new GlobalStatisticsOperation();
+                operation.setSpatialConceptType(concept);
+                operation.setStandardizationType(method);
+                operation.setDistanceBand(2000);
+                GlobalStatistics expected = operation.execute(features, "cat");
+                GlobalStatistics actual = operation.execute(features, "cat", weights);
+
+                String message = concept + " " + method;
+                assertEquals(message, expected.getMoransI().getObservedIndex(), actual
+                        .getMoransI().getObservedIndex(), 1e-9);
+                assertEquals(message, expected.getMoransI().getZScore(), actual.getMoransI()
+                        .getZScore(), 1e-6);
+                assertEquals(message, expected.getGearysC().getObservedIndex(), actual
+                        .getGearysC().getObservedIndex(), 1e-9);
+                assertEquals(message, expected.getGearysC().getZScore(), actual.getGearysC()
+                        .getZScore(), 1e-6);
+                assertEquals(message, expected.getGeneralG().getObservedIndex(), actual
+                        .getGeneralG().getObservedIndex(), 1e-12);
+                assertEquals(message, expected.getGeneralG().getZScore(), actual.getGeneralG()
+                        .getZScore(), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testWeightsFileMatchesInMemoryWeights() throws Exception {
+        // the same distances, loaded in memory as a weights file
+        SpatialWeightMatrixDistance distance = new SpatialWeightMatrixDistance();
+        distance.setThresholdDistance(2000);
+        SpatialWeightMatrixResult swm = distance.execute(features, "cat");
+        assertGlobalStatisticsMatch(swm, weights);
+
+        // stored distances weigh as inverse distances within the same band
+        GlobalStatisticsOperation operation = new GlobalStatisticsOperation();
+        operation.setSpatialConceptType(SpatialConcept.INVERSEDISTANCE);
+        operation.setDistanceBand(2000);
+        GlobalStatistics expected = operation.execute(features, "cat");
+
+        operation = new GlobalStatisticsOperation();
+        operation.setSpatialConceptType(SpatialConcept.SPATIALWEIGHTSFROMFILE);
+        operation.setSpatialWeights(swm);
+        GlobalStatistics actual = operation.execute(features, "cat");
+        assertEquals(expected.getMoransI().getObservedIndex(), actual.getMoransI()
+                .getObservedIndex(), 1e-9);
+        assertEquals(expected.getMoransI().getZScore(), actual.getMoransI().getZScore(), 1e-6);
+    }
+
+    @Test
+    public void testAsymmetricWeightsMatchInMemoryWeights() throws Exception {
+        SpatialWeightMatrixKNearestNeighbors knn = new SpatialWeightMatrixKNearestNeighbors();
+        knn.setNumberOfNeighbors(3);
+        knn.setFeaturesPerTile(16);
+        SpatialWeightMatrixResult swm = knn.execute(features, "cat");
+
+        File knnFile = File.createTempFile("knn", ".swmt");
+        TiledWeightMatrix knnWeights = knn.executeTiled(features, "cat", knnFile);
+        try {
+            assertFalse(knnWeights.isSymmetric());
+            assertTrue(knnWeights.getTileCount() > 1);
+            assertGlobalStatisticsMatch(swm, knnWeights);
+        } finally {
+            knnWeights.close();
+            knnFile.delete();
+        }
+    }
+
+    // stored distances of a weights file, in memory and tiled
+    private void assertGlobalStatisticsMatch(SpatialWeightMatrixResult swm,
+            TiledWeightMatrix tiled) throws Exception {
+        for (StandardizationMethod method : METHODS) {
+            GlobalStatisticsOperation operation = new GlobalStatisticsOperation();
+            operation.setSpatialConceptType(SpatialConcept.SPATIALWEIGHTSFROMFILE);
+            operation.setSpatialWeights(swm);
+            operation.setStandardizationType(method);
+            GlobalStatistics expected = operation.execute(features, "cat");
+            GlobalStatistics actual = operation.execute(features, "cat", tiled);
+
+            String message = method.toString();
+            assertEquals(message, expected.getMoransI().getObservedIndex(), actual.getMoransI()
+                    .getObservedIndex(), 1e-9);
+            assertEquals(message, expected.getMoransI().getZScore(), actual.getMoransI()
+                    .getZScore(), 1e-6);
+            assertEquals(message, expected.getGearysC().getObservedIndex(), actual.getGearysC()
+                    .getObservedIndex(), 1e-9);
+            assertEquals(message, expected.getGearysC().getZScore(), actual.getGearysC()
+                    .getZScore(), 1e-6);
+            assertEquals(message, expected.getGeneralG().getZScore(), actual.getGeneralG()
+                    .getZScore(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testLocalMoranIMatchesInMemoryWeights() throws Exception {
+        for (SpatialConcept concept : CONCEPTS) {
+            for (StandardizationMethod method : METHODS) {
+                LocalMoranIStatisticOperation operation = new LocalMoranIStatisticOperation();
+                operation.setSpatialConceptType(concept);
+                operation.setStandardizationType(method);
+                operation.setDistanceBand(2000);
+                List<SimpleFeature> expected = toList(operation.execute(features, "cat"));
+                List<SimpleFeature> actual = toList(operation.execute(features, "cat", weights));
+                assertEquals(expected.size(), actual.size());
+
+                for (int i = 0; i < expected.size(); i++) {
+                    String message = concept + " " + method + " feature " + i;
+                    for (String field : new String[] { "LMiIndex", "LMiZScore", "LMiwzValue" }) {
+                        assertEquals(message, ((Number) expected.get(i).getAttribute(field))
+                                .doubleValue(), ((Number) actual.get(i).getAttribute(field))
+                                .doubleValue(), 1e-6);
+                    }
+                    assertEquals(message, expected.get(i).getAttribute("COType"), actual.get(i)
+                            .getAttribute("COType"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupportedConcepts() throws Exception {
+        GlobalStatisticsOperation operation = new GlobalStatisticsOperation();
+        operation.setSpatialConceptType(SpatialConcept.ZONEOFINDIFFERENCE);
+        try {
+            operation.execute(features, "cat", weights);
+            fail("the zone of indifference is not supported by tiled weights");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        LocalMoranIStatisticOperation localOperation = new LocalMoranIStatisticOperation();
+        localOperation.setSpatialConceptType(SpatialConcept.ZONEOFINDIFFERENCE);
+        try {
+            localOperation.execute(features, "cat", weights);
+            fail("the zone of indifference is not supported by tiled weights");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private List<SimpleFeature> toList(SimpleFeatureCollection features) {
+        List<SimpleFeature> list = new ArrayList<SimpleFeature>();
+        SimpleFeatureIterator featureIter = features.features();
+        try {
+            while (featureIter.hasNext()) {
+                list.add(featureIter.next());
+            }
+        } finally {
+            featureIter.close();
+        }
+        return list;
+    }
+}
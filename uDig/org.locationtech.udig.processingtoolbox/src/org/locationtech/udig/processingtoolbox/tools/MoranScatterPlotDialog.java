@@ -48,7 +48,7 @@ import org.geotools.process.spatialstatistics.GlobalMoransIProcess;
 import org.geotools.process.spatialstatistics.GlobalMoransIProcess.MoransIProcessResult;
 import org.geotools.process.spatialstatistics.GlobalMoransIProcessFactory;
 import org.geotools.process.spatialstatistics.autocorrelation.LocalMoranIStatisticOperation;
-import org.geotools.process.spatialstatistics.core.SpatialEvent;
+import org.geotools.process.spatialstatistics.core.SpatialEventStore;
 import org.geotools.process.spatialstatistics.core.SpatialWeightMatrix;
 import org.geotools.process.spatialstatistics.enumeration.DistanceMethod;
 import org.geotools.process.spatialstatistics.enumeration.SpatialConcept;
@@ -86,9 +86,6 @@ import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.util.ProgressListener;
 
-import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Geometry;
-
 /**
  * Moran Scatter Plot Dialog
  * 
@@ -476,12 +473,14 @@ public class MoranScatterPlotDialog extends AbstractGeoProcessingDialog implemen
         XYSeries xySeries = new XYSeries(features.getSchema().getTypeName());
         minMaxVisitor.reset();
 
+        // the result features keep the order of the events in the weight matrix
+        SpatialEventStore eventStore = swMatrix.getEventStore();
         SimpleFeatureIterator featureIter = features.features();
         try {
+            int i = -1;
             while (featureIter.hasNext()) {
                 SimpleFeature feature = featureIter.next();
-                Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                Coordinate coordinate = geometry.getCentroid().getCoordinate();
+                i++;
 
                 // The X axis of the scatter plot represents the standardised Z values of your
                 // variable (that is, they’ve been standardised to their Z scores, with a mean of
@@ -500,22 +499,20 @@ public class MoranScatterPlotDialog extends AbstractGeoProcessingDialog implemen
                 // areas that share a border with the area of interest.
                 // Double y = Converters.convert(feature.getAttribute("LMiIndex"), Double.class);
 
-                SpatialEvent curE = new SpatialEvent(0, coordinate);
                 int neighborCount = 0;
                 double zScoreSum = 0d;
-                for (int j = 0; j < swMatrix.Events.size(); j++) {
-                    SpatialEvent destE = swMatrix.Events.get(j);
-                    Coordinate destCoord = new Coordinate(destE.x, destE.y);
-                    if (destCoord.equals(coordinate))
+                for (int j : swMatrix.getNeighbors(i)) {
+                    if (eventStore.getX(j) == eventStore.getX(i)
+                            && eventStore.getY(j) == eventStore.getY(i))
                         continue;
 
                     if (spatialConcept == SpatialConcept.FIXEDDISTANCEBAND) {
-                        if (destE.getDistance(curE) > searchDistance) {
+                        if (eventStore.distance(i, j, distanceMethod) > searchDistance) {
                             continue;
                         }
                     }
 
-                    double dWeight = swMatrix.getWeight(curE, destE);
+                    double dWeight = swMatrix.getWeight(i, j);
                     if (dWeight > 0) {
                         neighborCount++;
                         zScoreSum += zScore[j];